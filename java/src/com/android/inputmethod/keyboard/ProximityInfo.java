@@ -20,6 +20,7 @@ import android.graphics.Rect;
 import android.text.TextUtils;
 import android.util.Log;
 
+import com.android.inputmethod.annotations.UsedForTesting;
 import com.android.inputmethod.keyboard.internal.TouchPositionCorrection;
 import com.android.inputmethod.latin.Constants;
 import com.android.inputmethod.latin.utils.JniUtils;
@@ -94,6 +95,8 @@ public class ProximityInfo {
 
     private static native void releaseProximityInfoNative(long nativeProximityInfo);
 
+    private static native int getKeyDistanceTableIdNative(long nativeProximityInfo);
+
     private static boolean needsProximityInfo(final Key key) {
         // Don't include special keys into ProximityInfo.
         return key.getCode() >= Constants.CODE_SPACE;
@@ -226,13 +229,30 @@ public class ProximityInfo {
         return mNativeProximityInfo;
     }
 
+    // Returns the id of the native key distance table, which is shared by the instances with the
+    // same key geometry, or 0 if there is no table.
+    @UsedForTesting
+    int getKeyDistanceTableIdForTests() {
+        return getKeyDistanceTableIdNative(mNativeProximityInfo);
+    }
+
+    // Releases the native instance without waiting for the finalizer.
+    @UsedForTesting
+    void releaseForTests() {
+        releaseNativeProximityInfo();
+    }
+
+    private void releaseNativeProximityInfo() {
+        if (mNativeProximityInfo != 0) {
+            releaseProximityInfoNative(mNativeProximityInfo);
+            mNativeProximityInfo = 0;
+        }
+    }
+
     @Override
     protected void finalize() throws Throwable {
         try {
-            if (mNativeProximityInfo != 0) {
-                releaseProximityInfoNative(mNativeProximityInfo);
-                mNativeProximityInfo = 0;
-            }
+            releaseNativeProximityInfo();
         } finally {
             super.finalize();
         }
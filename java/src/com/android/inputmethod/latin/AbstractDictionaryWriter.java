@@ -19,6 +19,7 @@ package com.android.inputmethod.latin;
 import android.content.Context;
 import android.util.Log;
 
+import com.android.inputmethod.latin.makedict.BinaryDictIOUtils;
 import com.android.inputmethod.latin.makedict.DictEncoder;
 import com.android.inputmethod.latin.makedict.UnsupportedFormatException;
 import com.android.inputmethod.latin.makedict.Ver3DictEncoder;
@@ -70,11 +71,22 @@ abstract public class AbstractDictionaryWriter extends Dictionary {
         try {
             final DictEncoder dictEncoder = new Ver3DictEncoder(tempFile);
             writeDictionary(dictEncoder, attributeMap);
-            tempFile.renameTo(file);
+            // The encoder has synced the temporary file, so renaming atomically replaces the
+            // dictionary with a complete one.
+            if (!tempFile.renameTo(file)) {
+                Log.e(TAG, "Cannot rename " + tempFile + " to " + file);
+                tempFile.delete();
+                return;
+            }
+            // The journal of the native dictionary doesn't apply to the new file. It is removed
+            // only now, so that the old file keeps its journal if the rename fails.
+            BinaryDictIOUtils.deleteJournalFile(file);
         } catch (IOException e) {
             Log.e(TAG, "IO exception while writing file", e);
+            tempFile.delete();
         } catch (UnsupportedFormatException e) {
             Log.e(TAG, "Unsupported format", e);
+            tempFile.delete();
         }
     }
 }
@@ -28,8 +28,8 @@ import com.android.inputmethod.latin.utils.JniUtils;
 import com.android.inputmethod.latin.utils.StringUtils;
 
 import java.io.File;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Locale;
 import java.util.Map;
 
@@ -41,9 +41,9 @@ public final class BinaryDictionary extends Dictionary {
     private static final String TAG = BinaryDictionary.class.getSimpleName();
 
     // Must be equal to MAX_WORD_LENGTH in native/jni/src/defines.h
-    private static final int MAX_WORD_LENGTH = Constants.DICTIONARY_MAX_WORD_LENGTH;
+    static final int MAX_WORD_LENGTH = Constants.DICTIONARY_MAX_WORD_LENGTH;
     // Must be equal to MAX_RESULTS in native/jni/src/defines.h
-    private static final int MAX_RESULTS = 18;
+    static final int MAX_RESULTS = 18;
     // The cutoff returned by native for auto-commit confidence.
     // Must be equal to CONFIDENCE_TO_AUTO_COMMIT in native/jni/src/defines.h
     private static final int CONFIDENCE_TO_AUTO_COMMIT = 1000000;
@@ -56,20 +56,36 @@ public final class BinaryDictionary extends Dictionary {
     public static final String MAX_UNIGRAM_COUNT_QUERY = "MAX_UNIGRAM_COUNT";
     @UsedForTesting
     public static final String MAX_BIGRAM_COUNT_QUERY = "MAX_BIGRAM_COUNT";
-
-    private long mNativeDict;
+    // Must be equal to SUGGEST_STATS_QUERY in native/jni/src/suggest/core/dictionary/dictionary.cpp
+    public static final String SUGGEST_STATS_QUERY = "SUGGEST_STATS";
+    // Must be equal to SUGGESTION_RESULTS_CACHE_STATS_QUERY in
+    // native/jni/src/suggest/core/dictionary/dictionary.cpp. The native dictionary caches the
+    // results of the last few getSuggestions calls, and returns the hit and miss counts as
+    // "HITS=<count> MISSES=<count> HIT_RATE_PERCENT=<percent>" for this query.
+    public static final String SUGGESTION_RESULTS_CACHE_STATS_QUERY =
+            "SUGGESTION_RESULTS_CACHE_STATS";
+    // Must be equal to CANCELLED_SUGGESTION_COUNT_QUERY in
+    // native/jni/src/suggest/core/dictionary/dictionary.cpp. Returns the number of suggestion
+    // requests that have been cancelled by {@link #cancelSuggestions}.
+    public static final String CANCELLED_SUGGESTION_COUNT_QUERY = "CANCELLED_SUGGESTION_COUNT";
+
+    // This is volatile because the lookups are not synchronized on this object. See close().
+    private volatile long mNativeDict;
     private final Locale mLocale;
     private final long mDictSize;
     private final String mDictFilePath;
-    private final int[] mInputCodePoints = new int[MAX_WORD_LENGTH];
-    private final int[] mOutputCodePoints = new int[MAX_WORD_LENGTH * MAX_RESULTS];
-    private final int[] mSpaceIndices = new int[MAX_RESULTS];
-    private final int[] mOutputScores = new int[MAX_RESULTS];
-    private final int[] mOutputTypes = new int[MAX_RESULTS];
-    // Only one result is ever used
-    private final int[] mOutputAutoCommitFirstWordConfidence = new int[1];
-
-    private final NativeSuggestOptions mNativeSuggestOptions = new NativeSuggestOptions();
+    // Used by getWordsWithinEditDistance, which synchronizes on it. The suggestion lookups use
+    // the buffers of their DicTraverseSession instead.
+    private final NativeSuggestionResults mEditDistanceResults = new NativeSuggestionResults();
+    private boolean mIsRunningGCIncrementally = false;
+
+    // The search options that are shared by all the sessions.
+    private final boolean mUseFullEditDistance;
+    private volatile int mParallelExpansionWorkerCount = 0;
+    private volatile int mTypingSearchTimeBudgetMs = 0;
+    private volatile int mTypingSearchExpansionBudget = 0;
+    private volatile int mGestureSearchTimeBudgetMs = 0;
+    private volatile int mGestureSearchExpansionBudget = 0;
 
     private final SparseArray<DicTraverseSession> mDicTraverseSessions =
             CollectionUtils.newSparseArray();
@@ -107,7 +123,7 @@ public final class BinaryDictionary extends Dictionary {
         mLocale = locale;
         mDictSize = length;
         mDictFilePath = filename;
-        mNativeSuggestOptions.setUseFullEditDistance(useFullEditDistance);
+        mUseFullEditDistance = useFullEditDistance;
         loadDictionary(filename, offset, length, isUpdatable);
     }
 
@@ -122,20 +138,29 @@ public final class BinaryDictionary extends Dictionary {
     private static native void flushNative(long dict, String filePath);
     private static native boolean needsToRunGCNative(long dict, boolean mindsBlockByGC);
     private static native void flushWithGCNative(long dict, String filePath);
+    private static native boolean runGCIncrementallyNative(long dict, String filePath,
+            int maxPtNodeCount);
     private static native void closeNative(long dict);
     private static native int getProbabilityNative(long dict, int[] word);
     private static native int getBigramProbabilityNative(long dict, int[] word0, int[] word1);
     private static native int getSuggestionsNative(long dict, long proximityInfo,
             long traverseSession, int[] xCoordinates, int[] yCoordinates, int[] times,
-            int[] pointerIds, int[] inputCodePoints, int inputSize, int commitPoint,
-            int[] suggestOptions, int[] prevWordCodePointArray,
-            int[] outputCodePoints, int[] outputScores, int[] outputIndices, int[] outputTypes,
-            int[] outputAutoCommitFirstWordConfidence);
+            int[] pointerIds, int inputSize, int commitPoint, int[] suggestOptions,
+            int prevWordLength, int cancelRequestCount, ByteBuffer resultsBuffer);
+    private static native int getWordsWithinEditDistanceNative(long dict, int[] word,
+            int maxEditDistance, ByteBuffer resultsBuffer);
     private static native float calcNormalizedScoreNative(int[] before, int[] after, int score);
+    private static native void calcNormalizedScoresNative(int[] before, int[] afterCodePoints,
+            int[] afterLengths, int[] scores, int count, float[] outNormalizedScores);
     private static native int editDistanceNative(int[] before, int[] after);
     private static native void addUnigramWordNative(long dict, int[] word, int probability);
     private static native void addBigramWordsNative(long dict, int[] word0, int[] word1,
             int probability);
+    private static native int addUnigramWordsNative(long dict, int[] codePoints,
+            int[] wordLengths, int[] probabilities, int startIndex, int count);
+    private static native int addBigramWordsArrayNative(long dict, int[] word0CodePoints,
+            int[] word0Lengths, int[] word1CodePoints, int[] word1Lengths, int[] probabilities,
+            int startIndex, int count);
     private static native void removeBigramWordsNative(long dict, int[] word0, int[] word1);
     private static native int calculateProbabilityNative(long dict, int unigramProbability,
             int bigramProbability);
@@ -169,78 +194,224 @@ public final class BinaryDictionary extends Dictionary {
                 additionalFeaturesOptions, 0 /* sessionId */);
     }
 
+    // Lookups on the same session are serialized because they share the buffers of the session.
+    // Lookups on different sessions run concurrently. A lookup waiting for the session is
+    // cancelled by cancelSuggestions too, and a lookup on an interrupted thread returns nothing.
     @Override
-    public ArrayList<SuggestedWordInfo> getSuggestionsWithSessionId(final WordComposer composer,
-            final String prevWord, final ProximityInfo proximityInfo,
+    public ArrayList<SuggestedWordInfo> getSuggestionsWithSessionId(
+            final WordComposer composer, final String prevWord, final ProximityInfo proximityInfo,
             final boolean blockOffensiveWords, final int[] additionalFeaturesOptions,
             final int sessionId) {
         if (!isValidDictionary()) return null;
-
-        Arrays.fill(mInputCodePoints, Constants.NOT_A_CODE);
-        // TODO: toLowerCase in the native code
-        final int[] prevWordCodePointArray = (null == prevWord)
-                ? null : StringUtils.toCodePointArray(prevWord);
-        final int composerSize = composer.size();
-
-        final boolean isGesture = composer.isBatchMode();
-        if (composerSize <= 1 || !isGesture) {
-            if (composerSize > MAX_WORD_LENGTH - 1) return null;
-            for (int i = 0; i < composerSize; i++) {
-                mInputCodePoints[i] = composer.getCodeAt(i);
+        final DicTraverseSession traverseSession = getTraverseSession(sessionId);
+        final int cancelRequestCount = traverseSession.getCancelRequestCount();
+        synchronized (traverseSession) {
+            final NativeSuggestionResults results = traverseSession.getResults();
+            if (!getSuggestionResultsLocked(composer, prevWord, proximityInfo,
+                    additionalFeaturesOptions, traverseSession, cancelRequestCount, results)) {
+                return null;
             }
+            return newSuggestedWordInfosFromResults(results, blockOffensiveWords);
         }
+    }
 
-        final InputPointers ips = composer.getInputPointers();
-        final int inputSize = isGesture ? ips.getPointerSize() : composerSize;
-        mNativeSuggestOptions.setIsGesture(isGesture);
-        mNativeSuggestOptions.setAdditionalFeaturesOptions(additionalFeaturesOptions);
-        // proximityInfo and/or prevWordForBigrams may not be null.
-        final int count = getSuggestionsNative(mNativeDict, proximityInfo.getNativeProximityInfo(),
-                getTraverseSession(sessionId).getSession(), ips.getXCoordinates(),
-                ips.getYCoordinates(), ips.getTimes(), ips.getPointerIds(), mInputCodePoints,
-                inputSize, 0 /* commitPoint */, mNativeSuggestOptions.getOptions(),
-                prevWordCodePointArray, mOutputCodePoints, mOutputScores, mSpaceIndices,
-                mOutputTypes, mOutputAutoCommitFirstWordConfidence);
-        final ArrayList<SuggestedWordInfo> suggestions = CollectionUtils.newArrayList();
+    private ArrayList<SuggestedWordInfo> newSuggestedWordInfosFromResults(
+            final NativeSuggestionResults results, final boolean blockOffensiveWords) {
+        final int count = results.getCount();
+        final ArrayList<SuggestedWordInfo> suggestions = CollectionUtils.newArrayList(count);
         for (int j = 0; j < count; ++j) {
-            final int start = j * MAX_WORD_LENGTH;
-            int len = 0;
-            while (len < MAX_WORD_LENGTH && mOutputCodePoints[start + len] != 0) {
-                ++len;
-            }
-            if (len > 0) {
-                final int flags = mOutputTypes[j] & SuggestedWordInfo.KIND_MASK_FLAGS;
-                if (blockOffensiveWords
-                        && 0 != (flags & SuggestedWordInfo.KIND_FLAG_POSSIBLY_OFFENSIVE)
-                        && 0 == (flags & SuggestedWordInfo.KIND_FLAG_EXACT_MATCH)) {
+            if (results.getCodePointCount(j) > 0) {
+                if (blockOffensiveWords && results.isBlockedAsOffensive(j)) {
                     // If we block potentially offensive words, and if the word is possibly
                     // offensive, then we don't output it unless it's also an exact match.
                     continue;
                 }
-                final int kind = mOutputTypes[j] & SuggestedWordInfo.KIND_MASK_KIND;
+                final int kind = results.getType(j) & SuggestedWordInfo.KIND_MASK_KIND;
                 final int score = SuggestedWordInfo.KIND_WHITELIST == kind
-                        ? SuggestedWordInfo.MAX_SCORE : mOutputScores[j];
+                        ? SuggestedWordInfo.MAX_SCORE : results.getScore(j);
                 // TODO: check that all users of the `kind' parameter are ready to accept
-                // flags too and pass mOutputTypes[j] instead of kind
-                suggestions.add(new SuggestedWordInfo(new String(mOutputCodePoints, start, len),
-                        score, kind, this /* sourceDict */,
-                        mSpaceIndices[j] /* indexOfTouchPointOfSecondWord */,
-                        mOutputAutoCommitFirstWordConfidence[0]));
+                // flags too and pass results.getType(j) instead of kind
+                suggestions.add(new SuggestedWordInfo(results.getWord(j), score, kind,
+                        this /* sourceDict */,
+                        results.getIndexOfTouchPointOfSecondWord(j),
+                        results.getAutoCommitFirstWordConfidence()));
             }
         }
         return suggestions;
     }
 
+    /**
+     * Looks up the suggestions and writes them to outResults, without building strings or
+     * SuggestedWordInfo objects. Reusing outResults makes the lookup free of garbage, and the
+     * caller builds the words only for the results it actually uses. Unlike
+     * {@link #getSuggestionsWithSessionId}, possibly offensive words are not filtered out. See
+     * {@link NativeSuggestionResults#isBlockedAsOffensive}.
+     *
+     * @return false if the dictionary is not valid or the input is too long, true otherwise.
+     */
+    public boolean getSuggestionResults(final WordComposer composer,
+            final String prevWord, final ProximityInfo proximityInfo,
+            final int[] additionalFeaturesOptions, final int sessionId,
+            final NativeSuggestionResults outResults) {
+        outResults.onResultsWritten(0);
+        if (!isValidDictionary()) return false;
+        final DicTraverseSession traverseSession = getTraverseSession(sessionId);
+        final int cancelRequestCount = traverseSession.getCancelRequestCount();
+        synchronized (traverseSession) {
+            return getSuggestionResultsLocked(composer, prevWord, proximityInfo,
+                    additionalFeaturesOptions, traverseSession, cancelRequestCount, outResults);
+        }
+    }
+
+    // This must be called while synchronizing on traverseSession. cancelRequestCount must have
+    // been read from traverseSession before waiting for it.
+    private boolean getSuggestionResultsLocked(final WordComposer composer,
+            final String prevWord, final ProximityInfo proximityInfo,
+            final int[] additionalFeaturesOptions, final DicTraverseSession traverseSession,
+            final int cancelRequestCount, final NativeSuggestionResults outResults) {
+        outResults.onResultsWritten(0);
+        // The thread is interrupted when the caller has given up on the lookup, which may then
+        // be cancelled before it reads the cancel request count.
+        if (Thread.currentThread().isInterrupted()) return false;
+        // The dictionary or the session may have been closed in the meantime.
+        final long nativeDict = mNativeDict;
+        final long nativeSession = traverseSession.getSession();
+        if (nativeDict == 0 || nativeSession == 0) return false;
+
+        outResults.clearInputCodePoints();
+        // TODO: toLowerCase in the native code
+        final int prevWordLength = outResults.setPrevWord(prevWord);
+        final int composerSize = composer.size();
+
+        final boolean isGesture = composer.isBatchMode();
+        if (composerSize <= 1 || !isGesture) {
+            if (!outResults.setInputCodePoints(composer)) return false;
+        }
+
+        final InputPointers ips = composer.getInputPointers();
+        final int inputSize = isGesture ? ips.getPointerSize() : composerSize;
+        final NativeSuggestOptions options = traverseSession.getNativeSuggestOptions();
+        options.setIsGesture(isGesture);
+        options.setUseFullEditDistance(mUseFullEditDistance);
+        options.setParallelExpansionWorkerCount(mParallelExpansionWorkerCount);
+        options.setSearchTimeBudgetMs(
+                isGesture ? mGestureSearchTimeBudgetMs : mTypingSearchTimeBudgetMs);
+        options.setSearchExpansionBudget(
+                isGesture ? mGestureSearchExpansionBudget : mTypingSearchExpansionBudget);
+        options.setAdditionalFeaturesOptions(additionalFeaturesOptions);
+        // proximityInfo and/or prevWordForBigrams may not be null.
+        final int count = getSuggestionsNative(nativeDict, proximityInfo.getNativeProximityInfo(),
+                nativeSession, ips.getXCoordinates(), ips.getYCoordinates(), ips.getTimes(),
+                ips.getPointerIds(), inputSize, 0 /* commitPoint */, options.getOptions(),
+                prevWordLength, cancelRequestCount, outResults.getBuffer());
+        outResults.onResultsWritten(count);
+        return true;
+    }
+
+    @Override
+    public ArrayList<SuggestedWordInfo> getWordsWithinEditDistance(
+            final String word, final int maxEditDistance, final boolean blockOffensiveWords) {
+        final int[] codePoints = StringUtils.toCodePointArray(word);
+        if (codePoints.length > MAX_WORD_LENGTH) return null;
+        synchronized (mEditDistanceResults) {
+            if (!isValidDictionary()) return null;
+            final int count = getWordsWithinEditDistanceNative(mNativeDict, codePoints,
+                    maxEditDistance, mEditDistanceResults.getBuffer());
+            mEditDistanceResults.onResultsWritten(count);
+            return newSuggestedWordInfosFromResults(mEditDistanceResults, blockOffensiveWords);
+        }
+    }
+
     public boolean isValidDictionary() {
         return mNativeDict != 0;
     }
 
+    /**
+     * Sets the number of worker threads used to expand the search frontier in parallel with the
+     * calling thread. The suggestions are the same as with the serial expansion. The number of
+     * worker threads of all the dictionaries is capped for the process, so a dictionary may get
+     * fewer threads than requested, or none, in which case it expands serially.
+     *
+     * @param workerCount the number of worker threads, or 0 to expand serially.
+     */
+    @Override
+    public void setParallelExpansionWorkerCount(final int workerCount) {
+        mParallelExpansionWorkerCount = workerCount;
+    }
+
+    /**
+     * Sets the budget of the native search for the typing or the gesture input. When the search
+     * has taken the given time or expanded the given number of dic nodes, it is narrowed to the
+     * best candidates found so far and finishes quickly. Such results are flagged as partial in
+     * {@link #getLastSuggestStats}.
+     *
+     * @param isGesture whether the budget is for the gesture input.
+     * @param timeBudgetMs the time budget in milliseconds, or 0 for no limit.
+     * @param expansionBudget the maximum number of dic nodes to expand, or 0 for no limit.
+     */
+    @Override
+    public void setSearchBudget(final boolean isGesture, final int timeBudgetMs,
+            final int expansionBudget) {
+        if (isGesture) {
+            mGestureSearchTimeBudgetMs = timeBudgetMs;
+            mGestureSearchExpansionBudget = expansionBudget;
+        } else {
+            mTypingSearchTimeBudgetMs = timeBudgetMs;
+            mTypingSearchExpansionBudget = expansionBudget;
+        }
+    }
+
+    // This is not synchronized, so that it can be called while getSuggestionsWithSessionId is
+    // running on another thread.
+    @Override
+    public void cancelSuggestions(final int sessionId) {
+        synchronized (mDicTraverseSessions) {
+            final DicTraverseSession traverseSession = mDicTraverseSessions.get(sessionId);
+            if (traverseSession != null) {
+                traverseSession.cancel();
+            }
+        }
+    }
+
     public static float calcNormalizedScore(final String before, final String after,
             final int score) {
         return calcNormalizedScoreNative(StringUtils.toCodePointArray(before),
                 StringUtils.toCodePointArray(after), score);
     }
 
+    /**
+     * Computes the normalized scores of multiple words against the same typed word in one native
+     * call.
+     *
+     * @param before the typed word.
+     * @param afters the words to score.
+     * @param scores the score of each word.
+     * @return the normalized score of each word, in the same order as afters.
+     */
+    public static float[] calcNormalizedScores(final String before, final String[] afters,
+            final int[] scores) {
+        final int count = afters.length;
+        final float[] normalizedScores = new float[count];
+        if (count == 0) return normalizedScores;
+        final int[] afterLengths = new int[count];
+        int codePointCount = 0;
+        for (int i = 0; i < count; ++i) {
+            afterLengths[i] = afters[i].codePointCount(0, afters[i].length());
+            codePointCount += afterLengths[i];
+        }
+        final int[] afterCodePoints = new int[codePointCount];
+        int offset = 0;
+        for (int i = 0; i < count; ++i) {
+            final String after = afters[i];
+            for (int j = 0; j < after.length(); j = after.offsetByCodePoints(j, 1)) {
+                afterCodePoints[offset++] = after.codePointAt(j);
+            }
+        }
+        calcNormalizedScoresNative(StringUtils.toCodePointArray(before), afterCodePoints,
+                afterLengths, scores, count, normalizedScores);
+        return normalizedScores;
+    }
+
     public static int editDistance(final String before, final String after) {
         if (before == null || after == null) {
             throw new IllegalArgumentException();
@@ -293,6 +464,66 @@ public final class BinaryDictionary extends Dictionary {
         addBigramWordsNative(mNativeDict, codePoints0, codePoints1, probability);
     }
 
+    /**
+     * Adds multiple unigram entries to the binary dictionary in one native call.
+     *
+     * @param codePoints the code points of all the words, packed one after another.
+     * @param wordLengths the length of each word in code points.
+     * @param probabilities the probability of each word.
+     * @param startIndex the index of the first word to add.
+     * @param count the number of words in the arrays.
+     * @return the index of the first word that has not been added. This is less than count when
+     * the dictionary needs to run GC before more words can be added.
+     * @throws IllegalArgumentException if the indices are out of the arrays, or a word is empty or
+     * longer than MAX_WORD_LENGTH.
+     */
+    public int addUnigramWords(final int[] codePoints, final int[] wordLengths,
+            final int[] probabilities, final int startIndex, final int count) {
+        if (startIndex < 0 || count > probabilities.length
+                || !isValidPackedWords(codePoints, wordLengths, count)) {
+            throw new IllegalArgumentException();
+        }
+        if (!isValidDictionary() || startIndex >= count) return startIndex;
+        return addUnigramWordsNative(mNativeDict, codePoints, wordLengths, probabilities,
+                startIndex, count);
+    }
+
+    /**
+     * Adds multiple bigram entries to the binary dictionary in one native call. The arrays are
+     * packed in the same way as for {@link #addUnigramWords}.
+     *
+     * @return the index of the first bigram that has not been added. This is less than count
+     * when the dictionary needs to run GC before more bigrams can be added.
+     * @throws IllegalArgumentException if the indices are out of the arrays, or a word is empty or
+     * longer than MAX_WORD_LENGTH.
+     */
+    public int addBigramWords(final int[] word0CodePoints, final int[] word0Lengths,
+            final int[] word1CodePoints, final int[] word1Lengths, final int[] probabilities,
+            final int startIndex, final int count) {
+        if (startIndex < 0 || count > probabilities.length
+                || !isValidPackedWords(word0CodePoints, word0Lengths, count)
+                || !isValidPackedWords(word1CodePoints, word1Lengths, count)) {
+            throw new IllegalArgumentException();
+        }
+        if (!isValidDictionary() || startIndex >= count) return startIndex;
+        return addBigramWordsArrayNative(mNativeDict, word0CodePoints, word0Lengths,
+                word1CodePoints, word1Lengths, probabilities, startIndex, count);
+    }
+
+    // Returns whether the first count words packed in codePoints are within the arrays, and each
+    // of them has 1 to MAX_WORD_LENGTH code points. The native code checks this too.
+    private static boolean isValidPackedWords(final int[] codePoints, final int[] wordLengths,
+            final int count) {
+        if (count > wordLengths.length) return false;
+        int totalLength = 0;
+        for (int i = 0; i < count; ++i) {
+            if (wordLengths[i] <= 0 || wordLengths[i] > MAX_WORD_LENGTH) return false;
+            totalLength += wordLengths[i];
+            if (totalLength > codePoints.length) return false;
+        }
+        return true;
+    }
+
     // Remove a bigram entry form binary dictionary in native code.
     public void removeBigramWords(final String word0, final String word1) {
         if (TextUtils.isEmpty(word0) || TextUtils.isEmpty(word1)) {
@@ -310,16 +541,50 @@ public final class BinaryDictionary extends Dictionary {
                 dictFile.length(), true /* isUpdatable */);
     }
 
+    /**
+     * Persists the updates since the last flush. The updates are appended to the journal of the
+     * dictionary file and the dictionary file itself is rewritten only by GC, so the native
+     * dictionary doesn't have to be reopened.
+     */
     public void flush() {
         if (!isValidDictionary()) return;
+        if (mIsRunningGCIncrementally) {
+            // The dictionary has been partially updated by the GC. It has to be finished.
+            flushWithGC();
+            return;
+        }
         flushNative(mNativeDict, mDictFilePath);
-        reopen();
     }
 
+    /**
+     * Runs GC and writes the dictionary to the file. This finishes the incremental GC in
+     * progress if any.
+     */
     public void flushWithGC() {
         if (!isValidDictionary()) return;
         flushWithGCNative(mNativeDict, mDictFilePath);
+        mIsRunningGCIncrementally = false;
+        reopen();
+    }
+
+    /**
+     * Runs a slice of GC that processes at most maxPtNodeCount PtNodes. The dictionary can be
+     * read between slices, but must not be updated until this method returns true. When the GC
+     * is finished, the GCed dictionary is written to the file and reopened.
+     * @param maxPtNodeCount the maximum number of PtNodes to process in this slice.
+     * @return whether the GC has been finished.
+     */
+    public boolean runGCIncrementally(final int maxPtNodeCount) {
+        if (!isValidDictionary()) return true;
+        mIsRunningGCIncrementally = !runGCIncrementallyNative(mNativeDict, mDictFilePath,
+                maxPtNodeCount);
+        if (mIsRunningGCIncrementally) return false;
         reopen();
+        return true;
+    }
+
+    public boolean isRunningGCIncrementally() {
+        return mIsRunningGCIncrementally && isValidDictionary();
     }
 
     /**
@@ -339,6 +604,15 @@ public final class BinaryDictionary extends Dictionary {
         return calculateProbabilityNative(mNativeDict, unigramProbability, bigramProbability);
     }
 
+    /**
+     * Returns the statistics of the last suggestion request on this dictionary, or null if the
+     * dictionary is not valid.
+     */
+    public synchronized SuggestStats getLastSuggestStats() {
+        if (!isValidDictionary()) return null;
+        return SuggestStats.parse(getPropertyNative(mNativeDict, SUGGEST_STATS_QUERY));
+    }
+
     @UsedForTesting
     public String getPropertyForTests(String query) {
         if (!isValidDictionary()) return "";
@@ -350,6 +624,9 @@ public final class BinaryDictionary extends Dictionary {
         return candidate.mAutoCommitFirstWordConfidence > CONFIDENCE_TO_AUTO_COMMIT;
     }
 
+    // The lookups are not synchronized on this object. Each session is closed while
+    // synchronizing on it, so this waits for the lookups running on the sessions to finish, and
+    // the native dictionary is closed after them.
     @Override
     public void close() {
         synchronized (mDicTraverseSessions) {
@@ -357,12 +634,16 @@ public final class BinaryDictionary extends Dictionary {
             for (int index = 0; index < sessionsSize; ++index) {
                 final DicTraverseSession traverseSession = mDicTraverseSessions.valueAt(index);
                 if (traverseSession != null) {
-                    traverseSession.close();
+                    synchronized (traverseSession) {
+                        traverseSession.close();
+                    }
                 }
             }
             mDicTraverseSessions.clear();
+            synchronized (mEditDistanceResults) {
+                closeInternalLocked();
+            }
         }
-        closeInternalLocked();
     }
 
     private synchronized void closeInternalLocked() {
@@ -16,9 +16,11 @@
 
 package com.android.inputmethod.latin;
 
+import com.android.inputmethod.latin.settings.NativeSuggestOptions;
 import com.android.inputmethod.latin.utils.JniUtils;
 
 import java.util.Locale;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public final class DicTraverseSession {
     static {
@@ -29,9 +31,19 @@ public final class DicTraverseSession {
     private static native void initDicTraverseSessionNative(long nativeDicTraverseSession,
             long dictionary, int[] previousWord, int previousWordLength);
     private static native void releaseDicTraverseSessionNative(long nativeDicTraverseSession);
+    private static native void cancelDicTraverseSessionNative(long nativeDicTraverseSession,
+            int cancelRequestCount);
 
     private long mNativeDicTraverseSession;
 
+    // The buffers of the lookups on this session. BinaryDictionary synchronizes on the session
+    // while it uses them, so that lookups on different sessions can run concurrently.
+    private final NativeSuggestionResults mResults = new NativeSuggestionResults();
+    private final NativeSuggestOptions mNativeSuggestOptions = new NativeSuggestOptions();
+    // The number of cancel requests so far. A lookup is cancelled by the cancel requests made
+    // after it has read this count, even if its native search has not started yet.
+    private final AtomicInteger mCancelRequestCount = new AtomicInteger();
+
     public DicTraverseSession(Locale locale, long dictionary, long dictSize) {
         mNativeDicTraverseSession = createNativeDicTraverseSession(
                 locale != null ? locale.toString() : "", dictSize);
@@ -42,6 +54,14 @@ public final class DicTraverseSession {
         return mNativeDicTraverseSession;
     }
 
+    public NativeSuggestionResults getResults() {
+        return mResults;
+    }
+
+    public NativeSuggestOptions getNativeSuggestOptions() {
+        return mNativeSuggestOptions;
+    }
+
     public void initSession(long dictionary) {
         initSession(dictionary, null, 0);
     }
@@ -51,6 +71,27 @@ public final class DicTraverseSession {
                 mNativeDicTraverseSession, dictionary, previousWord, previousWordLength);
     }
 
+    /**
+     * Returns the number of cancel requests so far, to be read when a lookup is requested and
+     * passed to its native search. See {@link #cancel}.
+     */
+    public int getCancelRequestCount() {
+        return mCancelRequestCount.get();
+    }
+
+    /**
+     * Cancels the native searches of the lookups requested on this session so far, including
+     * those which wait for the session and have not started yet. This can be called from any
+     * thread. The cancelled searches return no suggestions. Lookups requested after this call
+     * are not affected.
+     */
+    public void cancel() {
+        final int cancelRequestCount = mCancelRequestCount.incrementAndGet();
+        if (mNativeDicTraverseSession != 0) {
+            cancelDicTraverseSessionNative(mNativeDicTraverseSession, cancelRequestCount);
+        }
+    }
+
     private final long createNativeDicTraverseSession(String locale, long dictSize) {
         return setDicTraverseSessionNative(locale, dictSize);
     }
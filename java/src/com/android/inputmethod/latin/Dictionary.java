@@ -27,6 +27,9 @@ import java.util.ArrayList;
  */
 public abstract class Dictionary {
     public static final int NOT_A_PROBABILITY = -1;
+    // The maximum edit distance for getWordsWithinEditDistance. Must be the same as
+    // LevenshteinAutomaton::MAX_EDIT_DISTANCE in the native code.
+    public static final int MAX_EDIT_DISTANCE = 2;
 
     // The following types do not actually come from real dictionary instances, so we create
     // corresponding instances.
@@ -91,6 +94,56 @@ public abstract class Dictionary {
                 additionalFeaturesOptions);
     }
 
+    /**
+     * Cancels the lookup running with the session id, if any, so that it returns as soon as
+     * possible. This can be called from any thread, typically when a newer input makes the
+     * results of the lookup obsolete. The default implementation does nothing.
+     * @param sessionId the session id passed to {@link #getSuggestionsWithSessionId}.
+     */
+    public void cancelSuggestions(final int sessionId) {
+        // empty base implementation
+    }
+
+    /**
+     * Sets the number of worker threads used to expand the search in parallel with the calling
+     * thread. The suggestions are the same as with the serial expansion. The default
+     * implementation does nothing.
+     * @param workerCount the number of worker threads, or 0 to expand serially.
+     */
+    public void setParallelExpansionWorkerCount(final int workerCount) {
+        // empty base implementation
+    }
+
+    /**
+     * Sets the budget of the search for the typing or the gesture input. A search that has used
+     * up its budget returns the best suggestions found so far. The default implementation does
+     * nothing.
+     * @param isGesture whether the budget is for the gesture input.
+     * @param timeBudgetMs the time budget in milliseconds, or 0 for no limit.
+     * @param expansionBudget the maximum number of dic nodes to expand, or 0 for no limit.
+     */
+    public void setSearchBudget(final boolean isGesture, final int timeBudgetMs,
+            final int expansionBudget) {
+        // empty base implementation
+    }
+
+    /**
+     * Searches for the words within the given edit distance of a finished word, ignoring the case
+     * and the accents. A transposition of two adjacent letters counts as one edit. Unlike
+     * {@link #getSuggestions}, this uses no keyboard proximity, so that the spell checker can
+     * look up a word without its touch coordinates. The default implementation does not support
+     * this.
+     * @param word the word to look up.
+     * @param maxEditDistance the maximum edit distance, up to {@link #MAX_EDIT_DISTANCE}.
+     * @param blockOffensiveWords whether possibly offensive words are filtered out.
+     * @return the words, or null if the dictionary can't look them up. Then the caller should
+     * use {@link #getSuggestions} instead.
+     */
+    public ArrayList<SuggestedWordInfo> getWordsWithinEditDistance(final String word,
+            final int maxEditDistance, final boolean blockOffensiveWords) {
+        return null;
+    }
+
     /**
      * Checks if the given word occurs in the dictionary
      * @param word the word to search for. The search should be case-insensitive.
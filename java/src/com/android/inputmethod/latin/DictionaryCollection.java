@@ -59,22 +59,75 @@ public final class DictionaryCollection extends Dictionary {
     public ArrayList<SuggestedWordInfo> getSuggestions(final WordComposer composer,
             final String prevWord, final ProximityInfo proximityInfo,
             final boolean blockOffensiveWords, final int[] additionalFeaturesOptions) {
+        return getSuggestionsWithSessionId(composer, prevWord, proximityInfo, blockOffensiveWords,
+                additionalFeaturesOptions, 0 /* sessionId */);
+    }
+
+    @Override
+    public ArrayList<SuggestedWordInfo> getSuggestionsWithSessionId(final WordComposer composer,
+            final String prevWord, final ProximityInfo proximityInfo,
+            final boolean blockOffensiveWords, final int[] additionalFeaturesOptions,
+            final int sessionId) {
         final CopyOnWriteArrayList<Dictionary> dictionaries = mDictionaries;
         if (dictionaries.isEmpty()) return null;
         // To avoid creating unnecessary objects, we get the list out of the first
         // dictionary and add the rest to it if not null, hence the get(0)
-        ArrayList<SuggestedWordInfo> suggestions = dictionaries.get(0).getSuggestions(composer,
-                prevWord, proximityInfo, blockOffensiveWords, additionalFeaturesOptions);
+        ArrayList<SuggestedWordInfo> suggestions = dictionaries.get(0).getSuggestionsWithSessionId(
+                composer, prevWord, proximityInfo, blockOffensiveWords, additionalFeaturesOptions,
+                sessionId);
         if (null == suggestions) suggestions = CollectionUtils.newArrayList();
         final int length = dictionaries.size();
         for (int i = 1; i < length; ++ i) {
-            final ArrayList<SuggestedWordInfo> sugg = dictionaries.get(i).getSuggestions(composer,
-                    prevWord, proximityInfo, blockOffensiveWords, additionalFeaturesOptions);
+            final ArrayList<SuggestedWordInfo> sugg = dictionaries.get(i)
+                    .getSuggestionsWithSessionId(composer, prevWord, proximityInfo,
+                            blockOffensiveWords, additionalFeaturesOptions, sessionId);
             if (null != sugg) suggestions.addAll(sugg);
         }
         return suggestions;
     }
 
+    // Returns null only if none of the dictionaries can look up the words.
+    @Override
+    public ArrayList<SuggestedWordInfo> getWordsWithinEditDistance(final String word,
+            final int maxEditDistance, final boolean blockOffensiveWords) {
+        ArrayList<SuggestedWordInfo> words = null;
+        for (final Dictionary dict : mDictionaries) {
+            final ArrayList<SuggestedWordInfo> dictWords =
+                    dict.getWordsWithinEditDistance(word, maxEditDistance, blockOffensiveWords);
+            if (null == dictWords) continue;
+            if (null == words) {
+                words = dictWords;
+            } else {
+                words.addAll(dictWords);
+            }
+        }
+        return words;
+    }
+
+    @Override
+    public void cancelSuggestions(final int sessionId) {
+        for (final Dictionary dict : mDictionaries) {
+            dict.cancelSuggestions(sessionId);
+        }
+    }
+
+    @Override
+    public void setParallelExpansionWorkerCount(final int workerCount) {
+        // The worker threads are capped for the process, so this does not multiply them by the
+        // number of dictionaries.
+        for (final Dictionary dict : mDictionaries) {
+            dict.setParallelExpansionWorkerCount(workerCount);
+        }
+    }
+
+    @Override
+    public void setSearchBudget(final boolean isGesture, final int timeBudgetMs,
+            final int expansionBudget) {
+        for (final Dictionary dict : mDictionaries) {
+            dict.setSearchBudget(isGesture, timeBudgetMs, expansionBudget);
+        }
+    }
+
     @Override
     public boolean isValidWord(final String word) {
         for (int i = mDictionaries.size() - 1; i >= 0; --i)
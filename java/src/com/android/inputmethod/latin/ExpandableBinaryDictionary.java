@@ -18,6 +18,7 @@ package com.android.inputmethod.latin;
 
 import android.content.Context;
 import android.os.SystemClock;
+import android.text.TextUtils;
 import android.util.Log;
 
 import com.android.inputmethod.annotations.UsedForTesting;
@@ -28,14 +29,18 @@ import com.android.inputmethod.latin.SuggestedWords.SuggestedWordInfo;
 import com.android.inputmethod.latin.utils.AsyncResultHolder;
 import com.android.inputmethod.latin.utils.CollectionUtils;
 import com.android.inputmethod.latin.utils.PrioritizedSerialExecutor;
+import com.android.inputmethod.latin.utils.ResizableIntArray;
 
 import java.io.File;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 /**
  * Abstract base class for an expandable dictionary that can be created and updated dynamically
@@ -57,8 +62,21 @@ abstract public class ExpandableBinaryDictionary extends Dictionary {
     /** Whether to call binary dictionary dynamically updating methods. */
     public static boolean ENABLE_BINARY_DICTIONARY_DYNAMIC_UPDATE = true;
 
+    /**
+     * Whether to run read operations on the calling thread under a read lock instead of
+     * queueing them on the executor. Reads then don't wait for queued writes, and several reads
+     * can run at the same time.
+     */
+    public static boolean ENABLE_CONCURRENT_READ_OPS = true;
+
     private static final int TIMEOUT_FOR_READ_OPS_IN_MILLISECONDS = 100;
 
+    /**
+     * The number of PtNodes processed by each slice of an incremental GC. The write lock is
+     * released between slices, so this bounds how long a lookup may wait for the GC.
+     */
+    private static final int GC_SLICE_PT_NODE_COUNT = 1000;
+
     /**
      * The maximum length of a word in this dictionary.
      */
@@ -119,6 +137,43 @@ abstract public class ExpandableBinaryDictionary extends Dictionary {
     private final AtomicReference<Runnable> mUnfinishedFlushingTask =
             new AtomicReference<Runnable>();
 
+    /**
+     * Guards mBinaryDictionary when ENABLE_CONCURRENT_READ_OPS is true. Operations that modify
+     * or replace the binary dictionary are still serialized by the executor, and hold the write
+     * lock while they touch the dictionary. Read operations hold the read lock.
+     */
+    private final ReentrantReadWriteLock mLock = new ReentrantReadWriteLock();
+
+    /** Guards mOpenDynamicUpdateBatch and orders the tasks that close it. */
+    private final Object mDynamicUpdateBatchLock = new Object();
+
+    /**
+     * The dynamic updates to be applied by the last task queued on the executor, or null if
+     * another task has been queued after it. Updates join this batch only while no other task
+     * is queued behind it, so that they are never reordered across operations such as clear,
+     * close or reload.
+     */
+    private ArrayList<DynamicUpdate> mOpenDynamicUpdateBatch = null;
+
+    /**
+     * Whether an incremental GC is running. The dictionary can't be updated until the GC is
+     * finished. Unlike regenerating, this doesn't make read operations fail: they take the read
+     * lock between slices. This is only accessed on the executor.
+     */
+    private boolean mIsRunningGCIncrementally = false;
+
+    /** The number of read operations performed on this dictionary. */
+    private final AtomicInteger mReadOpCount = new AtomicInteger();
+
+    /**
+     * The number of read operations that took longer than TIMEOUT_FOR_READ_OPS_IN_MILLISECONDS.
+     * With the executor-based read path, these reads would have timed out and returned nothing.
+     */
+    private final AtomicInteger mSlowReadOpCount = new AtomicInteger();
+
+    /** The number of read operations that gave up waiting for the read lock. */
+    private final AtomicInteger mTimedOutReadOpCount = new AtomicInteger();
+
     /**
      * Abstract method for loading the unigrams and bigrams of a given dictionary in a background
      * thread.
@@ -205,12 +260,17 @@ abstract public class ExpandableBinaryDictionary extends Dictionary {
      */
     @Override
     public void close() {
-        getExecutor(mFilename).execute(new Runnable() {
+        executeAfterDynamicUpdates(new Runnable() {
             @Override
             public void run() {
-                if (mBinaryDictionary!= null) {
-                    mBinaryDictionary.close();
-                    mBinaryDictionary = null;
+                mLock.writeLock().lock();
+                try {
+                    if (mBinaryDictionary!= null) {
+                        mBinaryDictionary.close();
+                        mBinaryDictionary = null;
+                    }
+                } finally {
+                    mLock.writeLock().unlock();
                 }
                 if (mDictionaryWriter != null) {
                     mDictionaryWriter.close();
@@ -221,12 +281,17 @@ abstract public class ExpandableBinaryDictionary extends Dictionary {
 
     protected void closeBinaryDictionary() {
         // Ensure that no other threads are accessing the local binary dictionary.
-        getExecutor(mFilename).execute(new Runnable() {
+        executeAfterDynamicUpdates(new Runnable() {
             @Override
             public void run() {
-                if (mBinaryDictionary != null) {
-                    mBinaryDictionary.close();
-                    mBinaryDictionary = null;
+                mLock.writeLock().lock();
+                try {
+                    if (mBinaryDictionary != null) {
+                        mBinaryDictionary.close();
+                        mBinaryDictionary = null;
+                    }
+                } finally {
+                    mLock.writeLock().unlock();
                 }
             }
         });
@@ -241,17 +306,22 @@ abstract public class ExpandableBinaryDictionary extends Dictionary {
     }
 
     protected void clear() {
-        getExecutor(mFilename).execute(new Runnable() {
+        executeAfterDynamicUpdates(new Runnable() {
             @Override
             public void run() {
                 if (ENABLE_BINARY_DICTIONARY_DYNAMIC_UPDATE && mDictionaryWriter == null) {
-                    mBinaryDictionary.close();
-                    final File file = new File(mContext.getFilesDir(), mFilename);
-                    BinaryDictionary.createEmptyDictFile(file.getAbsolutePath(),
-                            DICTIONARY_FORMAT_VERSION, getHeaderAttributeMap());
-                    mBinaryDictionary = new BinaryDictionary(
-                            file.getAbsolutePath(), 0 /* offset */, file.length(),
-                            true /* useFullEditDistance */, null, mDictType, mIsUpdatable);
+                    mLock.writeLock().lock();
+                    try {
+                        mBinaryDictionary.close();
+                        final File file = new File(mContext.getFilesDir(), mFilename);
+                        BinaryDictionary.createEmptyDictFile(file.getAbsolutePath(),
+                                DICTIONARY_FORMAT_VERSION, getHeaderAttributeMap());
+                        mBinaryDictionary = new BinaryDictionary(
+                                file.getAbsolutePath(), 0 /* offset */, file.length(),
+                                true /* useFullEditDistance */, null, mDictType, mIsUpdatable);
+                    } finally {
+                        mLock.writeLock().unlock();
+                    }
                 } else {
                     mDictionaryWriter.clear();
                 }
@@ -284,10 +354,13 @@ abstract public class ExpandableBinaryDictionary extends Dictionary {
 
     /**
      * Check whether GC is needed and run GC if required.
+     * @param mindsBlockByGC whether the caller minds lookups being blocked by GC. If true, GC
+     * runs in slices and the dictionary can be read between them. Otherwise, e.g. in idle time,
+     * GC runs in one pass.
      */
     protected void runGCIfRequired(final boolean mindsBlockByGC) {
         if (!ENABLE_BINARY_DICTIONARY_DYNAMIC_UPDATE) return;
-        getExecutor(mFilename).execute(new Runnable() {
+        executeAfterDynamicUpdates(new Runnable() {
             @Override
             public void run() {
                 runGCIfRequiredInternalLocked(mindsBlockByGC);
@@ -297,20 +370,67 @@ abstract public class ExpandableBinaryDictionary extends Dictionary {
 
     private void runGCIfRequiredInternalLocked(final boolean mindsBlockByGC) {
         if (!ENABLE_BINARY_DICTIONARY_DYNAMIC_UPDATE) return;
+        if (mIsRunningGCIncrementally) return;
         // Calls to needsToRunGC() need to be serialized.
-        if (mBinaryDictionary.needsToRunGC(mindsBlockByGC)) {
-            if (setIsRegeneratingIfNotRegenerating()) {
-                // Run GC after currently existing time sensitive operations.
-                getExecutor(mFilename).executePrioritized(new Runnable() {
-                    @Override
-                    public void run() {
-                        try {
+        if (mBinaryDictionary == null || !mBinaryDictionary.needsToRunGC(mindsBlockByGC)) return;
+        if (mindsBlockByGC) {
+            // Run GC in slices after currently existing time sensitive operations, so that
+            // lookups are never blocked for a whole GC pass.
+            mIsRunningGCIncrementally = true;
+            getExecutor(mFilename).executePrioritized(new IncrementalGCTask(mBinaryDictionary));
+        } else if (setIsRegeneratingIfNotRegenerating()) {
+            // The caller doesn't mind blocking, e.g. in idle time, so GC runs in one pass.
+            getExecutor(mFilename).executePrioritized(new Runnable() {
+                @Override
+                public void run() {
+                    mLock.writeLock().lock();
+                    try {
+                        if (mBinaryDictionary != null) {
                             mBinaryDictionary.flushWithGC();
-                        } finally {
-                            mFilenameDictionaryUpdateController.mIsRegenerating.set(false);
                         }
+                    } finally {
+                        mLock.writeLock().unlock();
+                        mFilenameDictionaryUpdateController.mIsRegenerating.set(false);
                     }
-                });
+                }
+            });
+        }
+    }
+
+    /**
+     * Runs GC on a binary dictionary in slices. Each slice holds the write lock only while it
+     * runs and queues the next slice behind the tasks queued in the meantime, so lookups are
+     * never blocked for a whole GC pass. The dictionary is not marked as regenerating, so that
+     * lookups between slices are answered from it.
+     */
+    private final class IncrementalGCTask implements Runnable {
+        private final BinaryDictionary mDictionaryToGC;
+        private boolean mHasStarted = false;
+
+        public IncrementalGCTask(final BinaryDictionary dictionaryToGC) {
+            mDictionaryToGC = dictionaryToGC;
+        }
+
+        @Override
+        public void run() {
+            boolean isFinished = true;
+            mLock.writeLock().lock();
+            try {
+                // The GC may have been finished by a blocking flush or by a task applying dynamic
+                // updates in the meantime.
+                if (mIsRunningGCIncrementally
+                        && (!mHasStarted || mDictionaryToGC.isRunningGCIncrementally())) {
+                    mHasStarted = true;
+                    isFinished = mDictionaryToGC.runGCIncrementally(GC_SLICE_PT_NODE_COUNT);
+                }
+            } finally {
+                mLock.writeLock().unlock();
+                if (isFinished) {
+                    mIsRunningGCIncrementally = false;
+                }
+            }
+            if (!isFinished) {
+                getExecutor(mFilename).execute(this);
             }
         }
     }
@@ -324,17 +444,18 @@ abstract public class ExpandableBinaryDictionary extends Dictionary {
             Log.w(TAG, "addWordDynamically is called for non-updatable dictionary: " + mFilename);
             return;
         }
+        if (ENABLE_BINARY_DICTIONARY_DYNAMIC_UPDATE) {
+            if (TextUtils.isEmpty(word)) return;
+            enqueueDynamicUpdate(new DynamicUpdate(DynamicUpdate.TYPE_ADD_UNIGRAM, null /* word0 */,
+                    word, frequency));
+            return;
+        }
         getExecutor(mFilename).execute(new Runnable() {
             @Override
             public void run() {
-                if (ENABLE_BINARY_DICTIONARY_DYNAMIC_UPDATE) {
-                    runGCIfRequiredInternalLocked(true /* mindsBlockByGC */);
-                    mBinaryDictionary.addUnigramWord(word, frequency);
-                } else {
-                    // TODO: Remove.
-                    mDictionaryWriter.addUnigramWord(word, shortcutTarget, frequency, shortcutFreq,
-                            isNotAWord);
-                }
+                // TODO: Remove.
+                mDictionaryWriter.addUnigramWord(word, shortcutTarget, frequency, shortcutFreq,
+                        isNotAWord);
             }
         });
     }
@@ -349,17 +470,18 @@ abstract public class ExpandableBinaryDictionary extends Dictionary {
                     + mFilename);
             return;
         }
+        if (ENABLE_BINARY_DICTIONARY_DYNAMIC_UPDATE) {
+            if (TextUtils.isEmpty(word0) || TextUtils.isEmpty(word1)) return;
+            enqueueDynamicUpdate(new DynamicUpdate(DynamicUpdate.TYPE_ADD_BIGRAM, word0, word1,
+                    frequency));
+            return;
+        }
         getExecutor(mFilename).execute(new Runnable() {
             @Override
             public void run() {
-                if (ENABLE_BINARY_DICTIONARY_DYNAMIC_UPDATE) {
-                    runGCIfRequiredInternalLocked(true /* mindsBlockByGC */);
-                    mBinaryDictionary.addBigramWords(word0, word1, frequency);
-                } else {
-                    // TODO: Remove.
-                    mDictionaryWriter.addBigramWords(word0, word1, frequency, isValid,
-                            0 /* lastTouchedTime */);
-                }
+                // TODO: Remove.
+                mDictionaryWriter.addBigramWords(word0, word1, frequency, isValid,
+                        0 /* lastTouchedTime */);
             }
         });
     }
@@ -373,20 +495,207 @@ abstract public class ExpandableBinaryDictionary extends Dictionary {
                     + mFilename);
             return;
         }
+        if (ENABLE_BINARY_DICTIONARY_DYNAMIC_UPDATE) {
+            if (TextUtils.isEmpty(word0) || TextUtils.isEmpty(word1)) return;
+            enqueueDynamicUpdate(new DynamicUpdate(DynamicUpdate.TYPE_REMOVE_BIGRAM, word0, word1,
+                    Dictionary.NOT_A_PROBABILITY));
+            return;
+        }
         getExecutor(mFilename).execute(new Runnable() {
             @Override
             public void run() {
-                if (ENABLE_BINARY_DICTIONARY_DYNAMIC_UPDATE) {
-                    runGCIfRequiredInternalLocked(true /* mindsBlockByGC */);
-                    mBinaryDictionary.removeBigramWords(word0, word1);
-                } else {
-                    // TODO: Remove.
-                    mDictionaryWriter.removeBigramWords(word0, word1);
-                }
+                // TODO: Remove.
+                mDictionaryWriter.removeBigramWords(word0, word1);
             }
         });
     }
 
+    /**
+     * Queues a task on the executor after the dynamic updates enqueued so far. The open batch
+     * of updates is closed, so that the updates enqueued from now on are applied after the task.
+     */
+    private void executeAfterDynamicUpdates(final Runnable task) {
+        synchronized (mDynamicUpdateBatchLock) {
+            mOpenDynamicUpdateBatch = null;
+            getExecutor(mFilename).execute(task);
+        }
+    }
+
+    /**
+     * Queues a dynamic update. Consecutive updates are applied to the binary dictionary by a
+     * single task on the executor, so that a burst of updates is coalesced into a few native
+     * calls.
+     */
+    private void enqueueDynamicUpdate(final DynamicUpdate update) {
+        // Make sure that the dictionary is loaded before the update is applied.
+        reloadDictionaryIfRequired();
+        synchronized (mDynamicUpdateBatchLock) {
+            if (mOpenDynamicUpdateBatch != null) {
+                mOpenDynamicUpdateBatch.add(update);
+                return;
+            }
+            final ArrayList<DynamicUpdate> batch = CollectionUtils.newArrayList();
+            batch.add(update);
+            mOpenDynamicUpdateBatch = batch;
+            getExecutor(mFilename).execute(new Runnable() {
+                @Override
+                public void run() {
+                    synchronized (mDynamicUpdateBatchLock) {
+                        // The updates enqueued from now on go to a new batch.
+                        if (mOpenDynamicUpdateBatch == batch) {
+                            mOpenDynamicUpdateBatch = null;
+                        }
+                    }
+                    applyDynamicUpdatesLocked(batch);
+                }
+            });
+        }
+    }
+
+    /**
+     * Finishes the incremental GC in progress, if any. Each slice holds the write lock only
+     * while it runs, so lookups can still be answered between slices.
+     */
+    private void finishIncrementalGCLocked() {
+        while (mIsRunningGCIncrementally) {
+            mLock.writeLock().lock();
+            try {
+                if (mBinaryDictionary == null || !mBinaryDictionary.isRunningGCIncrementally()
+                        || mBinaryDictionary.runGCIncrementally(GC_SLICE_PT_NODE_COUNT)) {
+                    mIsRunningGCIncrementally = false;
+                }
+            } finally {
+                mLock.writeLock().unlock();
+            }
+        }
+    }
+
+    private void applyDynamicUpdatesLocked(final ArrayList<DynamicUpdate> updates) {
+        // The dictionary can't be updated during an incremental GC. Deferring the updates would
+        // reorder them across the tasks queued in the meantime, so the GC is finished first.
+        finishIncrementalGCLocked();
+        if (mBinaryDictionary == null) {
+            // The dictionary has been closed, or it couldn't be loaded.
+            Log.w(TAG, "Dropped " + updates.size() + " dynamic updates because the dictionary "
+                    + mFilename + " is not loaded.");
+            return;
+        }
+        mLock.writeLock().lock();
+        try {
+            // Updates between two bigram removals are applied as one batch of unigrams followed
+            // by one batch of bigrams. Adding a unigram earlier never changes the result, and it
+            // makes sure that both words of each bigram are in the dictionary.
+            int batchStart = 0;
+            final int updateCount = updates.size();
+            for (int i = 0; i <= updateCount; ++i) {
+                if (i < updateCount
+                        && updates.get(i).mType != DynamicUpdate.TYPE_REMOVE_BIGRAM) {
+                    continue;
+                }
+                addUnigramsAndBigramsLocked(updates, batchStart, i);
+                if (i < updateCount) {
+                    final DynamicUpdate removal = updates.get(i);
+                    mBinaryDictionary.removeBigramWords(removal.mWord0, removal.mWord1);
+                }
+                batchStart = i + 1;
+            }
+        } finally {
+            mLock.writeLock().unlock();
+        }
+        runGCIfRequiredInternalLocked(true /* mindsBlockByGC */);
+    }
+
+    private void addUnigramsAndBigramsLocked(final ArrayList<DynamicUpdate> updates,
+            final int start, final int end) {
+        if (start >= end) return;
+        final int capacity = end - start;
+        final ResizableIntArray unigramCodePoints = new ResizableIntArray(capacity * 8);
+        final ResizableIntArray unigramLengths = new ResizableIntArray(capacity);
+        final ResizableIntArray unigramProbabilities = new ResizableIntArray(capacity);
+        final ResizableIntArray word0CodePoints = new ResizableIntArray(capacity * 8);
+        final ResizableIntArray word0Lengths = new ResizableIntArray(capacity);
+        final ResizableIntArray word1CodePoints = new ResizableIntArray(capacity * 8);
+        final ResizableIntArray word1Lengths = new ResizableIntArray(capacity);
+        final ResizableIntArray bigramProbabilities = new ResizableIntArray(capacity);
+        for (int i = start; i < end; ++i) {
+            final DynamicUpdate update = updates.get(i);
+            // The native dictionary can't store longer words, and a batch containing one would be
+            // rejected as a whole.
+            if (!isValidWordLength(update.mWord1) || (update.mType == DynamicUpdate.TYPE_ADD_BIGRAM
+                    && !isValidWordLength(update.mWord0))) {
+                continue;
+            }
+            if (update.mType == DynamicUpdate.TYPE_ADD_UNIGRAM) {
+                unigramLengths.add(appendCodePoints(unigramCodePoints, update.mWord1));
+                unigramProbabilities.add(update.mProbability);
+            } else {
+                word0Lengths.add(appendCodePoints(word0CodePoints, update.mWord0));
+                word1Lengths.add(appendCodePoints(word1CodePoints, update.mWord1));
+                bigramProbabilities.add(update.mProbability);
+            }
+        }
+        final int unigramCount = unigramLengths.getLength();
+        int index = 0;
+        while (index < unigramCount) {
+            index = mBinaryDictionary.addUnigramWords(unigramCodePoints.getPrimitiveArray(),
+                    unigramLengths.getPrimitiveArray(), unigramProbabilities.getPrimitiveArray(),
+                    index, unigramCount);
+            if (index < unigramCount) {
+                // The native dictionary stopped because it needs GC to accept more entries.
+                mBinaryDictionary.flushWithGC();
+            }
+        }
+        final int bigramCount = bigramProbabilities.getLength();
+        index = 0;
+        while (index < bigramCount) {
+            index = mBinaryDictionary.addBigramWords(word0CodePoints.getPrimitiveArray(),
+                    word0Lengths.getPrimitiveArray(), word1CodePoints.getPrimitiveArray(),
+                    word1Lengths.getPrimitiveArray(), bigramProbabilities.getPrimitiveArray(),
+                    index, bigramCount);
+            if (index < bigramCount) {
+                mBinaryDictionary.flushWithGC();
+            }
+        }
+    }
+
+    private static boolean isValidWordLength(final String word) {
+        return word.codePointCount(0, word.length()) <= MAX_WORD_LENGTH;
+    }
+
+    // Appends the code points of the word to the array and returns the number of code points.
+    private static int appendCodePoints(final ResizableIntArray array, final String word) {
+        final int length = word.length();
+        int codePointCount = 0;
+        for (int i = 0; i < length; i = word.offsetByCodePoints(i, 1)) {
+            array.add(word.codePointAt(i));
+            ++codePointCount;
+        }
+        return codePointCount;
+    }
+
+    /**
+     * A dynamic update that has been requested but not applied to the binary dictionary yet.
+     */
+    private static final class DynamicUpdate {
+        public static final int TYPE_ADD_UNIGRAM = 0;
+        public static final int TYPE_ADD_BIGRAM = 1;
+        public static final int TYPE_REMOVE_BIGRAM = 2;
+
+        public final int mType;
+        // mWord0 is null for unigrams.
+        public final String mWord0;
+        public final String mWord1;
+        public final int mProbability;
+
+        public DynamicUpdate(final int type, final String word0, final String word1,
+                final int probability) {
+            mType = type;
+            mWord0 = word0;
+            mWord1 = word1;
+            mProbability = probability;
+        }
+    }
+
     @Override
     public ArrayList<SuggestedWordInfo> getSuggestionsWithSessionId(final WordComposer composer,
             final String prevWord, final ProximityInfo proximityInfo,
@@ -396,7 +705,23 @@ abstract public class ExpandableBinaryDictionary extends Dictionary {
         if (isRegenerating()) {
             return null;
         }
-        final ArrayList<SuggestedWordInfo> suggestions = CollectionUtils.newArrayList();
+        if (ENABLE_BINARY_DICTIONARY_DYNAMIC_UPDATE && ENABLE_CONCURRENT_READ_OPS) {
+            final long startTime = SystemClock.uptimeMillis();
+            if (!tryLockForRead()) {
+                return null;
+            }
+            try {
+                if (mBinaryDictionary == null) {
+                    return null;
+                }
+                return mBinaryDictionary.getSuggestionsWithSessionId(composer, prevWord,
+                        proximityInfo, blockOffensiveWords, additionalFeaturesOptions,
+                        sessionId);
+            } finally {
+                mLock.readLock().unlock();
+                recordReadOp(startTime);
+            }
+        }
         final AsyncResultHolder<ArrayList<SuggestedWordInfo>> holder =
                 new AsyncResultHolder<ArrayList<SuggestedWordInfo>>();
         getExecutor(mFilename).executePrioritized(new Runnable() {
@@ -449,6 +774,58 @@ abstract public class ExpandableBinaryDictionary extends Dictionary {
                 additionalFeaturesOptions, 0 /* sessionId */);
     }
 
+    @Override
+    public ArrayList<SuggestedWordInfo> getWordsWithinEditDistance(final String word,
+            final int maxEditDistance, final boolean blockOffensiveWords) {
+        reloadDictionaryIfRequired();
+        // The in-memory dictionary that is used without the dynamic update can't look up the
+        // words.
+        if (isRegenerating() || !ENABLE_BINARY_DICTIONARY_DYNAMIC_UPDATE) {
+            return null;
+        }
+        if (ENABLE_CONCURRENT_READ_OPS) {
+            final long startTime = SystemClock.uptimeMillis();
+            if (!tryLockForRead()) {
+                return null;
+            }
+            try {
+                return getWordsWithinEditDistanceLocked(word, maxEditDistance,
+                        blockOffensiveWords);
+            } finally {
+                mLock.readLock().unlock();
+                recordReadOp(startTime);
+            }
+        }
+        final AsyncResultHolder<ArrayList<SuggestedWordInfo>> holder =
+                new AsyncResultHolder<ArrayList<SuggestedWordInfo>>();
+        getExecutor(mFilename).executePrioritized(new Runnable() {
+            @Override
+            public void run() {
+                holder.set(getWordsWithinEditDistanceLocked(word, maxEditDistance,
+                        blockOffensiveWords));
+            }
+        });
+        return holder.get(null, TIMEOUT_FOR_READ_OPS_IN_MILLISECONDS);
+    }
+
+    private ArrayList<SuggestedWordInfo> getWordsWithinEditDistanceLocked(final String word,
+            final int maxEditDistance, final boolean blockOffensiveWords) {
+        if (mBinaryDictionary == null) {
+            return null;
+        }
+        return mBinaryDictionary.getWordsWithinEditDistance(word, maxEditDistance,
+                blockOffensiveWords);
+    }
+
+    // This does not take mLock, so that it can be called while a lookup holds the lock.
+    @Override
+    public void cancelSuggestions(final int sessionId) {
+        final BinaryDictionary binaryDictionary = mBinaryDictionary;
+        if (binaryDictionary != null) {
+            binaryDictionary.cancelSuggestions(sessionId);
+        }
+    }
+
     @Override
     public boolean isValidWord(final String word) {
         reloadDictionaryIfRequired();
@@ -459,6 +836,18 @@ abstract public class ExpandableBinaryDictionary extends Dictionary {
         if (isRegenerating()) {
             return false;
         }
+        if (ENABLE_CONCURRENT_READ_OPS) {
+            final long startTime = SystemClock.uptimeMillis();
+            if (!tryLockForRead()) {
+                return false;
+            }
+            try {
+                return isValidWordLocked(word);
+            } finally {
+                mLock.readLock().unlock();
+                recordReadOp(startTime);
+            }
+        }
         final AsyncResultHolder<Boolean> holder = new AsyncResultHolder<Boolean>();
         getExecutor(mFilename).executePrioritized(new Runnable() {
             @Override
@@ -469,6 +858,54 @@ abstract public class ExpandableBinaryDictionary extends Dictionary {
         return holder.get(false, TIMEOUT_FOR_READ_OPS_IN_MILLISECONDS);
     }
 
+    /**
+     * Acquires the read lock, waiting at most TIMEOUT_FOR_READ_OPS_IN_MILLISECONDS.
+     * @return true if the read lock has been acquired.
+     */
+    private boolean tryLockForRead() {
+        try {
+            if (mLock.readLock().tryLock(TIMEOUT_FOR_READ_OPS_IN_MILLISECONDS,
+                    TimeUnit.MILLISECONDS)) {
+                return true;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        mReadOpCount.incrementAndGet();
+        mTimedOutReadOpCount.incrementAndGet();
+        return false;
+    }
+
+    private void recordReadOp(final long startTime) {
+        mReadOpCount.incrementAndGet();
+        if (SystemClock.uptimeMillis() - startTime > TIMEOUT_FOR_READ_OPS_IN_MILLISECONDS) {
+            mSlowReadOpCount.incrementAndGet();
+        }
+    }
+
+    /**
+     * Returns the number of read operations performed on this dictionary.
+     */
+    public int getReadOpCount() {
+        return mReadOpCount.get();
+    }
+
+    /**
+     * Returns the number of read operations that took longer than the timeout of the
+     * executor-based read path, that is, reads that would have returned nothing before.
+     */
+    public int getSlowReadOpCount() {
+        return mSlowReadOpCount.get();
+    }
+
+    /**
+     * Returns the number of read operations that returned nothing because a write operation
+     * held the dictionary for longer than the timeout.
+     */
+    public int getTimedOutReadOpCount() {
+        return mTimedOutReadOpCount.get();
+    }
+
     protected boolean isValidWordLocked(final String word) {
         if (mBinaryDictionary == null) return false;
         return mBinaryDictionary.isValidWord(word);
@@ -514,9 +951,14 @@ abstract public class ExpandableBinaryDictionary extends Dictionary {
         getExecutor(mFilename).executePrioritized(new Runnable() {
             @Override
             public void run() {
-                mBinaryDictionary = newBinaryDictionary;
-                if (oldBinaryDictionary != null) {
-                    oldBinaryDictionary.close();
+                mLock.writeLock().lock();
+                try {
+                    mBinaryDictionary = newBinaryDictionary;
+                    if (oldBinaryDictionary != null) {
+                        oldBinaryDictionary.close();
+                    }
+                } finally {
+                    mLock.writeLock().unlock();
                 }
             }
         });
@@ -543,16 +985,22 @@ abstract public class ExpandableBinaryDictionary extends Dictionary {
             mDictionaryWriter.write(mFilename, getHeaderAttributeMap());
         } else {
             if (ENABLE_BINARY_DICTIONARY_DYNAMIC_UPDATE) {
-                if (mBinaryDictionary == null || !mBinaryDictionary.isValidDictionary()) {
-                    final File file = new File(mContext.getFilesDir(), mFilename);
-                    BinaryDictionary.createEmptyDictFile(file.getAbsolutePath(),
-                            DICTIONARY_FORMAT_VERSION, getHeaderAttributeMap());
-                } else {
-                    if (mBinaryDictionary.needsToRunGC(false /* mindsBlockByGC */)) {
-                        mBinaryDictionary.flushWithGC();
+                // Flushing with GC reopens the native dictionary.
+                mLock.writeLock().lock();
+                try {
+                    if (mBinaryDictionary == null || !mBinaryDictionary.isValidDictionary()) {
+                        final File file = new File(mContext.getFilesDir(), mFilename);
+                        BinaryDictionary.createEmptyDictFile(file.getAbsolutePath(),
+                                DICTIONARY_FORMAT_VERSION, getHeaderAttributeMap());
                     } else {
-                        mBinaryDictionary.flush();
+                        if (mBinaryDictionary.needsToRunGC(false /* mindsBlockByGC */)) {
+                            mBinaryDictionary.flushWithGC();
+                        } else {
+                            mBinaryDictionary.flush();
+                        }
                     }
+                } finally {
+                    mLock.writeLock().unlock();
                 }
             } else {
                 mDictionaryWriter.write(mFilename, getHeaderAttributeMap());
@@ -611,7 +1059,7 @@ abstract public class ExpandableBinaryDictionary extends Dictionary {
     private final void reloadDictionary() {
         // Ensure that only one thread attempts to read or write to the shared binary dictionary
         // file at the same time.
-        getExecutor(mFilename).execute(new Runnable() {
+        executeAfterDynamicUpdates(new Runnable() {
             @Override
             public void run() {
                 try {
@@ -686,8 +1134,11 @@ abstract public class ExpandableBinaryDictionary extends Dictionary {
                 writeBinaryDictionary();
             }
         };
-        final Runnable oldTask = mUnfinishedFlushingTask.getAndSet(newTask);
-        getExecutor(mFilename).replaceAndExecute(oldTask, newTask);
+        synchronized (mDynamicUpdateBatchLock) {
+            mOpenDynamicUpdateBatch = null;
+            final Runnable oldTask = mUnfinishedFlushingTask.getAndSet(newTask);
+            getExecutor(mFilename).replaceAndExecute(oldTask, newTask);
+        }
     }
 
     /**
@@ -631,6 +631,8 @@ public class LatinIME extends InputMethodService implements KeyboardActionListen
         if (settingsValues.mCorrectionEnabled) {
             newSuggest.setAutoCorrectionThreshold(settingsValues.mAutoCorrectionThreshold);
         }
+        newSuggest.setParallelExpansionWorkerCount(settingsValues.mParallelExpansionWorkerCount);
+        newSuggest.setParallelLookupEnabled(settingsValues.mParallelLookupEnabled);
 
         mIsMainDictionaryAvailable = DictionaryFactory.isDictionaryAvailable(this, subtypeLocale);
         if (ProductionFlag.USES_DEVELOPMENT_ONLY_DIAGNOSTICS) {
@@ -926,6 +928,11 @@ public class LatinIME extends InputMethodService implements KeyboardActionListen
             if (suggest != null && currentSettingsValues.mCorrectionEnabled) {
                 suggest.setAutoCorrectionThreshold(currentSettingsValues.mAutoCorrectionThreshold);
             }
+            if (suggest != null) {
+                suggest.setParallelExpansionWorkerCount(
+                        currentSettingsValues.mParallelExpansionWorkerCount);
+                suggest.setParallelLookupEnabled(currentSettingsValues.mParallelLookupEnabled);
+            }
 
             switcher.loadKeyboard(editorInfo, currentSettingsValues);
             if (!canReachInputConnection) {
@@ -1821,6 +1828,9 @@ public class LatinIME extends InputMethodService implements KeyboardActionListen
         private final LatinIME mLatinIme;
         private final Object mLock = new Object();
         private boolean mInBatchInput; // synchronized using {@link #mLock}.
+        // Set in the UI thread when the batch input ends or is canceled. The suggestions of the
+        // updates that are still running are obsolete then.
+        private volatile boolean mIsBatchInputEnding;
 
         private InputUpdater(final LatinIME latinIme) {
             final HandlerThread handlerThread = new HandlerThread(
@@ -1854,6 +1864,7 @@ public class LatinIME extends InputMethodService implements KeyboardActionListen
             synchronized (mLock) {
                 mHandler.removeMessages(MSG_UPDATE_GESTURE_PREVIEW_AND_SUGGESTION_STRIP);
                 mInBatchInput = true;
+                mIsBatchInputEnding = false;
                 mLatinIme.mHandler.showGesturePreviewAndSuggestionStrip(
                         SuggestedWords.EMPTY, false /* dismissGestureFloatingPreviewText */);
             }
@@ -1871,6 +1882,10 @@ public class LatinIME extends InputMethodService implements KeyboardActionListen
                         new OnGetSuggestedWordsCallback() {
                     @Override
                     public void onGetSuggestedWords(final SuggestedWords suggestedWords) {
+                        if (mIsBatchInputEnding) {
+                            // The lookup may have been cancelled and the suggestions be empty.
+                            return;
+                        }
                         mLatinIme.mHandler.showGesturePreviewAndSuggestionStrip(
                                 suggestedWords, false /* dismissGestureFloatingPreviewText */);
                     }
@@ -1889,6 +1904,7 @@ public class LatinIME extends InputMethodService implements KeyboardActionListen
         }
 
         public void onCancelBatchInput() {
+            cancelBatchInputUpdate();
             synchronized (mLock) {
                 mInBatchInput = false;
                 mLatinIme.mHandler.showGesturePreviewAndSuggestionStrip(
@@ -1898,6 +1914,7 @@ public class LatinIME extends InputMethodService implements KeyboardActionListen
 
         // Run in the UI thread.
         public void onEndBatchInput(final InputPointers batchPointers) {
+            cancelBatchInputUpdate();
             synchronized(mLock) {
                 getSuggestedWordsGestureLocked(batchPointers, SuggestedWords.NOT_A_SEQUENCE_NUMBER,
                         new OnGetSuggestedWordsCallback() {
@@ -1912,6 +1929,16 @@ public class LatinIME extends InputMethodService implements KeyboardActionListen
             }
         }
 
+        // Run in the UI thread. Cancels the lookup of the batch input update that is running, so
+        // that the lookup of the final input starts sooner.
+        private void cancelBatchInputUpdate() {
+            mIsBatchInputEnding = true;
+            final Suggest suggest = mLatinIme.mSuggest;
+            if (suggest != null) {
+                suggest.cancelSuggestions(Suggest.SESSION_GESTURE);
+            }
+        }
+
         // {@link LatinIME#getSuggestedWords(int)} method calls with same session id have to
         // be synchronized.
         private void getSuggestedWordsGestureLocked(final InputPointers batchPointers,
@@ -3313,5 +3340,17 @@ public class LatinIME extends InputMethodService implements KeyboardActionListen
         p.println("  mVibrateOn=" + settingsValues.mVibrateOn);
         p.println("  mKeyPreviewPopupOn=" + settingsValues.mKeyPreviewPopupOn);
         p.println("  inputAttributes=" + settingsValues.mInputAttributes);
+        final Suggest suggest = mSuggest;
+        if (suggest != null) {
+            for (final Dictionary dictionary : suggest.getUnigramDictionaries().values()) {
+                if (!(dictionary instanceof ExpandableBinaryDictionary)) continue;
+                final ExpandableBinaryDictionary expandableDictionary =
+                        (ExpandableBinaryDictionary) dictionary;
+                p.println("  " + dictionary.mDictType + " reads="
+                        + expandableDictionary.getReadOpCount() + " slowReads="
+                        + expandableDictionary.getSlowReadOpCount() + " timedOutReads="
+                        + expandableDictionary.getTimedOutReadOpCount());
+            }
+        }
     }
 }
@@ -0,0 +1,188 @@
+/*
+ * Copyright (C) 2013 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.inputmethod.latin;
+
+import com.android.inputmethod.latin.SuggestedWords.SuggestedWordInfo;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+
+/**
+ * Reusable holder of the input and the results of a suggestion request to a native dictionary.
+ *
+ * The code points of the input and of the previous word, and all the results are exchanged with
+ * the native code through a direct buffer, so that a request neither copies them across JNI nor
+ * allocates. The words are converted to strings only by {@link #getWord}, so that the candidates
+ * that are never shown cost no garbage.
+ *
+ * The layout of the buffer must be kept in sync with
+ * native/jni/com_android_inputmethod_latin_BinaryDictionary.cpp. All the offsets are in ints.
+ *
+ * This class is not thread safe. The results are valid until the next request that uses this
+ * instance.
+ */
+public final class NativeSuggestionResults {
+    private static final int MAX_WORD_LENGTH = BinaryDictionary.MAX_WORD_LENGTH;
+    private static final int MAX_RESULTS = BinaryDictionary.MAX_RESULTS;
+
+    private static final int INPUT_CODE_POINTS_OFFSET = 0;
+    private static final int PREV_WORD_CODE_POINTS_OFFSET =
+            INPUT_CODE_POINTS_OFFSET + MAX_WORD_LENGTH;
+    private static final int OUTPUT_CODE_POINTS_OFFSET =
+            PREV_WORD_CODE_POINTS_OFFSET + MAX_WORD_LENGTH;
+    private static final int SCORES_OFFSET = OUTPUT_CODE_POINTS_OFFSET
+            + MAX_WORD_LENGTH * MAX_RESULTS;
+    private static final int SPACE_INDICES_OFFSET = SCORES_OFFSET + MAX_RESULTS;
+    private static final int OUTPUT_TYPES_OFFSET = SPACE_INDICES_OFFSET + MAX_RESULTS;
+    private static final int AUTO_COMMIT_FIRST_WORD_CONFIDENCE_OFFSET =
+            OUTPUT_TYPES_OFFSET + MAX_RESULTS;
+    private static final int BUFFER_SIZE = AUTO_COMMIT_FIRST_WORD_CONFIDENCE_OFFSET + 1;
+
+    // The value of the previous word length when there is no previous word.
+    static final int NO_PREV_WORD = -1;
+
+    private final ByteBuffer mBuffer;
+    private final IntBuffer mInts;
+    // The words that have been built by getWord() for the current results.
+    private final String[] mWords = new String[MAX_RESULTS];
+    private final int[] mCodePoints = new int[MAX_WORD_LENGTH];
+    // The number of input code points written by the current request. The rest of the input
+    // code points are Constants.NOT_A_CODE.
+    private int mInputCodePointCount = MAX_WORD_LENGTH;
+    private int mCount = 0;
+
+    public NativeSuggestionResults() {
+        mBuffer = ByteBuffer.allocateDirect(BUFFER_SIZE * 4).order(ByteOrder.nativeOrder());
+        mInts = mBuffer.asIntBuffer();
+        clearInputCodePoints();
+    }
+
+    // The buffer passed to the native code.
+    ByteBuffer getBuffer() {
+        return mBuffer;
+    }
+
+    /**
+     * Clears the input code points, so that the native dictionary sees no typed code point. This
+     * only writes the code points that have been set since the last call.
+     */
+    void clearInputCodePoints() {
+        for (int i = 0; i < mInputCodePointCount; ++i) {
+            mInts.put(INPUT_CODE_POINTS_OFFSET + i, Constants.NOT_A_CODE);
+        }
+        mInputCodePointCount = 0;
+    }
+
+    /**
+     * Sets the input code points of the request from the composer. Must be called after
+     * {@link #clearInputCodePoints}.
+     * @return false if the composer is too long.
+     */
+    boolean setInputCodePoints(final WordComposer composer) {
+        final int composerSize = composer.size();
+        if (composerSize > MAX_WORD_LENGTH - 1) return false;
+        for (int i = 0; i < composerSize; ++i) {
+            mInts.put(INPUT_CODE_POINTS_OFFSET + i, composer.getCodeAt(i));
+        }
+        mInputCodePointCount = composerSize;
+        return true;
+    }
+
+    /**
+     * Sets the code points of the previous word of the request.
+     * @return the number of code points of the previous word, or {@link #NO_PREV_WORD} if there
+     * is no previous word. A word that is too long to be in the dictionary counts as no word.
+     */
+    int setPrevWord(final String prevWord) {
+        if (null == prevWord) return NO_PREV_WORD;
+        final int length = prevWord.length();
+        int codePointCount = 0;
+        for (int i = 0; i < length; i = prevWord.offsetByCodePoints(i, 1)) {
+            if (codePointCount >= MAX_WORD_LENGTH) return NO_PREV_WORD;
+            mInts.put(PREV_WORD_CODE_POINTS_OFFSET + codePointCount, prevWord.codePointAt(i));
+            ++codePointCount;
+        }
+        return codePointCount;
+    }
+
+    // Must be called when the native code has written the results.
+    void onResultsWritten(final int count) {
+        mCount = Math.max(0, Math.min(count, MAX_RESULTS));
+        Arrays.fill(mWords, null);
+    }
+
+    public int getCount() {
+        return mCount;
+    }
+
+    public int getScore(final int index) {
+        return mInts.get(SCORES_OFFSET + index);
+    }
+
+    // The kind and the flags of the result. See SuggestedWordInfo.KIND_MASK_KIND and
+    // SuggestedWordInfo.KIND_MASK_FLAGS.
+    public int getType(final int index) {
+        return mInts.get(OUTPUT_TYPES_OFFSET + index);
+    }
+
+    public int getIndexOfTouchPointOfSecondWord(final int index) {
+        return mInts.get(SPACE_INDICES_OFFSET + index);
+    }
+
+    // This is the same for all the results. See SuggestedWordInfo.mAutoCommitFirstWordConfidence.
+    public int getAutoCommitFirstWordConfidence() {
+        return mInts.get(AUTO_COMMIT_FIRST_WORD_CONFIDENCE_OFFSET);
+    }
+
+    public int getCodePointCount(final int index) {
+        final int start = OUTPUT_CODE_POINTS_OFFSET + index * MAX_WORD_LENGTH;
+        int length = 0;
+        while (length < MAX_WORD_LENGTH && mInts.get(start + length) != 0) {
+            ++length;
+        }
+        return length;
+    }
+
+    public int getCodePointAt(final int index, final int codePointIndex) {
+        return mInts.get(OUTPUT_CODE_POINTS_OFFSET + index * MAX_WORD_LENGTH + codePointIndex);
+    }
+
+    /**
+     * Returns the word of the result. The string is built when this is first called for the
+     * result and returned again by the next calls.
+     */
+    public String getWord(final int index) {
+        if (null == mWords[index]) {
+            final int length = getCodePointCount(index);
+            for (int i = 0; i < length; ++i) {
+                mCodePoints[i] = getCodePointAt(index, i);
+            }
+            mWords[index] = new String(mCodePoints, 0, length);
+        }
+        return mWords[index];
+    }
+
+    // Whether the result must not be shown when offensive words are blocked. A possibly
+    // offensive word is still shown if it is exactly what the user typed.
+    public boolean isBlockedAsOffensive(final int index) {
+        final int flags = getType(index) & SuggestedWordInfo.KIND_MASK_FLAGS;
+        return 0 != (flags & SuggestedWordInfo.KIND_FLAG_POSSIBLY_OFFENSIVE)
+                && 0 == (flags & SuggestedWordInfo.KIND_FLAG_EXACT_MATCH);
+    }
+}
@@ -63,8 +63,8 @@ public final class ReadOnlyBinaryDictionary extends Dictionary {
             final int sessionId) {
         if (mLock.readLock().tryLock()) {
             try {
-                return mBinaryDictionary.getSuggestions(composer, prevWord, proximityInfo,
-                        blockOffensiveWords, additionalFeaturesOptions);
+                return mBinaryDictionary.getSuggestionsWithSessionId(composer, prevWord,
+                        proximityInfo, blockOffensiveWords, additionalFeaturesOptions, sessionId);
             } finally {
                 mLock.readLock().unlock();
             }
@@ -72,6 +72,36 @@ public final class ReadOnlyBinaryDictionary extends Dictionary {
         return null;
     }
 
+    @Override
+    public ArrayList<SuggestedWordInfo> getWordsWithinEditDistance(final String word,
+            final int maxEditDistance, final boolean blockOffensiveWords) {
+        if (mLock.readLock().tryLock()) {
+            try {
+                return mBinaryDictionary.getWordsWithinEditDistance(word, maxEditDistance,
+                        blockOffensiveWords);
+            } finally {
+                mLock.readLock().unlock();
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public void cancelSuggestions(final int sessionId) {
+        mBinaryDictionary.cancelSuggestions(sessionId);
+    }
+
+    @Override
+    public void setParallelExpansionWorkerCount(final int workerCount) {
+        mBinaryDictionary.setParallelExpansionWorkerCount(workerCount);
+    }
+
+    @Override
+    public void setSearchBudget(final boolean isGesture, final int timeBudgetMs,
+            final int expansionBudget) {
+        mBinaryDictionary.setSearchBudget(isGesture, timeBudgetMs, expansionBudget);
+    }
+
     @Override
     public boolean isValidWord(final String word) {
         if (mLock.readLock().tryLock()) {
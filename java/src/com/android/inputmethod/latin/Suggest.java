@@ -17,6 +17,7 @@
 package com.android.inputmethod.latin;
 
 import android.content.Context;
+import android.os.SystemClock;
 import android.preference.PreferenceManager;
 import android.text.TextUtils;
 import android.util.Log;
@@ -37,7 +38,18 @@ import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.HashSet;
 import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * This class loads a dictionary and provides a list of suggestions for a given sequence of
@@ -68,6 +80,26 @@ public final class Suggest {
 
     private static final boolean DBG = LatinImeLogger.sDBG;
 
+    // The number of threads used to look up dictionaries in parallel. There are at most five
+    // kinds of dictionaries (main, user, contacts, user history and personalization), and the
+    // main dictionary is usually the slowest one, so a small pool is enough.
+    private static final int MAX_THREADS_FOR_PARALLEL_LOOKUP = 4;
+    // The time limit for each dictionary in a parallel lookup. A dictionary that doesn't answer
+    // in time is cancelled and looked up again on the calling thread, so that the suggestions are
+    // still the same as with the sequential lookup.
+    private static final long TIMEOUT_FOR_PARALLEL_LOOKUP_IN_MILLISECONDS = 200;
+    // The number of lookups that can wait for a thread. A dictionary whose lookup doesn't fit is
+    // looked up on the calling thread once the other lookups are done.
+    private static final int MAX_QUEUED_PARALLEL_LOOKUPS = 2 * MAX_THREADS_FOR_PARALLEL_LOOKUP;
+
+    // The time budgets of the search of the main dictionary. A search that takes longer is
+    // narrowed to the best candidates found so far, so that an unusually expensive input can't
+    // hold back the suggestions. A gesture is a longer input and its search takes longer.
+    private static final int TYPING_SEARCH_TIME_BUDGET_MS = 100;
+    private static final int GESTURE_SEARCH_TIME_BUDGET_MS = 200;
+
+    private static ThreadPoolExecutor sLookupExecutor = null;
+
     private final ConcurrentHashMap<String, Dictionary> mDictionaries =
             CollectionUtils.newConcurrentHashMap();
     private HashSet<String> mOnlyDictionarySetForDebug = null;
@@ -78,6 +110,13 @@ public final class Suggest {
 
     private float mAutoCorrectionThreshold;
 
+    // Whether to look up the dictionaries concurrently for the typing input.
+    private volatile boolean mIsParallelLookupEnabled = false;
+
+    // The number of worker threads for the search of the main dictionary. This is kept to be
+    // applied to the main dictionary that is loaded asynchronously.
+    private volatile int mParallelExpansionWorkerCount = 0;
+
     // Locale used for upper- and title-casing words
     public final Locale mLocale;
 
@@ -99,6 +138,7 @@ public final class Suggest {
         final Dictionary mainDict = DictionaryFactory.createDictionaryForTest(dictionaryList,
                 false /* useFullEditDistance */, locale);
         mLocale = locale;
+        setSearchBudgets(mainDict);
         mMainDictionary = mainDict;
         addOrReplaceDictionaryInternal(Dictionary.TYPE_MAIN, mainDict);
     }
@@ -139,6 +179,8 @@ public final class Suggest {
             public void run() {
                 final DictionaryCollection newMainDict =
                         DictionaryFactory.createMainDictionaryFromManager(context, locale);
+                newMainDict.setParallelExpansionWorkerCount(mParallelExpansionWorkerCount);
+                setSearchBudgets(newMainDict);
                 addOrReplaceDictionaryInternal(Dictionary.TYPE_MAIN, newMainDict);
                 mMainDictionary = newMainDict;
                 if (listener != null) {
@@ -149,6 +191,13 @@ public final class Suggest {
         }.start();
     }
 
+    private static void setSearchBudgets(final Dictionary mainDictionary) {
+        mainDictionary.setSearchBudget(false /* isGesture */, TYPING_SEARCH_TIME_BUDGET_MS,
+                0 /* expansionBudget */);
+        mainDictionary.setSearchBudget(true /* isGesture */, GESTURE_SEARCH_TIME_BUDGET_MS,
+                0 /* expansionBudget */);
+    }
+
     // The main dictionary could have been loaded asynchronously.  Don't cache the return value
     // of this method.
     public boolean hasMainDictionary() {
@@ -210,6 +259,29 @@ public final class Suggest {
         mAutoCorrectionThreshold = threshold;
     }
 
+    /**
+     * Sets whether to look up the dictionaries concurrently for the typing input. When enabled,
+     * the latency of a lookup is bounded by the slowest dictionary instead of the sum of all of
+     * them. The suggestions and the auto-correction are the same in both modes.
+     */
+    public void setParallelLookupEnabled(final boolean enabled) {
+        mIsParallelLookupEnabled = enabled;
+    }
+
+    /**
+     * Sets the number of worker threads used to expand the search of the main dictionary. The
+     * suggestions are the same as with the serial expansion.
+     *
+     * @param workerCount the number of worker threads, or 0 to expand serially.
+     */
+    public void setParallelExpansionWorkerCount(final int workerCount) {
+        mParallelExpansionWorkerCount = workerCount;
+        final Dictionary mainDictionary = mMainDictionary;
+        if (null != mainDictionary) {
+            mainDictionary.setParallelExpansionWorkerCount(workerCount);
+        }
+    }
+
     public interface OnGetSuggestedWordsCallback {
         public void onGetSuggestedWords(final SuggestedWords suggestedWords);
     }
@@ -231,6 +303,18 @@ public final class Suggest {
         }
     }
 
+    /**
+     * Cancels the dictionary lookups running for {@link #getSuggestedWords} with the session id,
+     * so that it returns as soon as possible. The cancelled lookups return no suggestions. This
+     * can be called from any thread, when the results of the running request are not needed
+     * anymore.
+     */
+    public void cancelSuggestions(final int sessionId) {
+        for (final Dictionary dictionary : mDictionaries.values()) {
+            dictionary.cancelSuggestions(sessionId);
+        }
+    }
+
     // Retrieves suggestions for the typing input
     // and calls the callback function with the suggestions.
     private void getSuggestedWordsForTypingInput(final WordComposer wordComposer,
@@ -258,11 +342,19 @@ public final class Suggest {
             wordComposerForLookup = wordComposer;
         }
 
-        for (final String key : mDictionaries.keySet()) {
-            final Dictionary dictionary = mDictionaries.get(key);
-            suggestionsSet.addAll(dictionary.getSuggestions(wordComposerForLookup,
-                    prevWordForBigram, proximityInfo, blockOffensiveWords,
-                    additionalFeaturesOptions));
+        if (mIsParallelLookupEnabled) {
+            // A lookup that times out keeps running after this method returns, while the caller
+            // goes on modifying wordComposer. The lookups get their own copy to read from.
+            addSuggestionsFromDictionariesInParallel(suggestionsSet,
+                    new WordComposer(wordComposerForLookup), prevWordForBigram, proximityInfo,
+                    blockOffensiveWords, additionalFeaturesOptions);
+        } else {
+            for (final String key : mDictionaries.keySet()) {
+                final Dictionary dictionary = mDictionaries.get(key);
+                suggestionsSet.addAll(dictionary.getSuggestions(wordComposerForLookup,
+                        prevWordForBigram, proximityInfo, blockOffensiveWords,
+                        additionalFeaturesOptions));
+            }
         }
 
         final String whitelistedWord;
@@ -353,6 +445,108 @@ public final class Suggest {
                 !wordComposer.isComposingWord() /* isPrediction */, sequenceNumber));
     }
 
+    private static synchronized ThreadPoolExecutor getLookupExecutor() {
+        if (sLookupExecutor == null) {
+            sLookupExecutor = new ThreadPoolExecutor(MAX_THREADS_FOR_PARALLEL_LOOKUP,
+                    MAX_THREADS_FOR_PARALLEL_LOOKUP, 10 /* keepAliveTime */, TimeUnit.SECONDS,
+                    new ArrayBlockingQueue<Runnable>(MAX_QUEUED_PARALLEL_LOOKUPS),
+                    new ThreadFactory() {
+                        private final AtomicInteger mCount = new AtomicInteger();
+
+                        @Override
+                        public Thread newThread(final Runnable r) {
+                            final Thread thread = new Thread(r,
+                                    "DictionaryLookup-" + mCount.incrementAndGet());
+                            thread.setDaemon(true);
+                            return thread;
+                        }
+                    });
+            sLookupExecutor.allowCoreThreadTimeOut(true);
+        }
+        return sLookupExecutor;
+    }
+
+    // Looks up all the dictionaries concurrently and adds the results to suggestionsSet.
+    // The results are merged in the iteration order of mDictionaries once every lookup has
+    // finished, so that ties in the bounded set are broken exactly like in the sequential
+    // lookup. A lookup that times out is cancelled, including when it has not started yet, and
+    // its dictionary is looked up again on this thread, so that no results are ever missing.
+    // wordComposer must not be modified afterwards, because a cancelled lookup may still read it
+    // until it notices the cancellation.
+    private void addSuggestionsFromDictionariesInParallel(final BoundedTreeSet suggestionsSet,
+            final WordComposer wordComposer, final String prevWordForBigram,
+            final ProximityInfo proximityInfo, final boolean blockOffensiveWords,
+            final int[] additionalFeaturesOptions) {
+        final ThreadPoolExecutor executor = getLookupExecutor();
+        final ArrayList<Dictionary> dictionaries = CollectionUtils.newArrayList();
+        final ArrayList<Future<ArrayList<SuggestedWordInfo>>> futures =
+                CollectionUtils.newArrayList();
+        for (final String key : mDictionaries.keySet()) {
+            final Dictionary dictionary = mDictionaries.get(key);
+            if (null == dictionary) continue;
+            final Callable<ArrayList<SuggestedWordInfo>> lookup =
+                    new Callable<ArrayList<SuggestedWordInfo>>() {
+                @Override
+                public ArrayList<SuggestedWordInfo> call() {
+                    return getSuggestionsSerialized(dictionary, wordComposer, prevWordForBigram,
+                            proximityInfo, blockOffensiveWords, additionalFeaturesOptions);
+                }
+            };
+            final FutureTask<ArrayList<SuggestedWordInfo>> task =
+                    new FutureTask<ArrayList<SuggestedWordInfo>>(lookup);
+            try {
+                executor.execute(task);
+                futures.add(task);
+            } catch (final RejectedExecutionException e) {
+                // The queue is full of lookups that are being cancelled. This dictionary is
+                // looked up on this thread below, without holding up the other lookups.
+                futures.add(null);
+            }
+            dictionaries.add(dictionary);
+        }
+        final long deadline =
+                SystemClock.uptimeMillis() + TIMEOUT_FOR_PARALLEL_LOOKUP_IN_MILLISECONDS;
+        for (int i = 0; i < futures.size(); ++i) {
+            final Dictionary dictionary = dictionaries.get(i);
+            final Future<ArrayList<SuggestedWordInfo>> future = futures.get(i);
+            if (null != future) {
+                final long timeout = Math.max(0, deadline - SystemClock.uptimeMillis());
+                try {
+                    suggestionsSet.addAll(future.get(timeout, TimeUnit.MILLISECONDS));
+                    continue;
+                } catch (final TimeoutException e) {
+                    Log.w(TAG, "Timed out while looking up a dictionary.");
+                    // A lookup that is still in the queue won't run. One that is waiting for the
+                    // dictionary is interrupted, and one that is searching is cancelled natively,
+                    // so that it releases the dictionary for the lookup below.
+                    future.cancel(true /* mayInterruptIfRunning */);
+                    dictionary.cancelSuggestions(SESSION_TYPING);
+                } catch (final ExecutionException e) {
+                    Log.e(TAG, "Exception while looking up a dictionary.", e.getCause());
+                } catch (final InterruptedException e) {
+                    Log.w(TAG, "Interrupted while looking up a dictionary.");
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+            suggestionsSet.addAll(getSuggestionsSerialized(dictionary, wordComposer,
+                    prevWordForBigram, proximityInfo, blockOffensiveWords,
+                    additionalFeaturesOptions));
+        }
+    }
+
+    // Lookups on the same session of a dictionary are serialized. If a cancelled lookup to this
+    // dictionary is still running, this waits for it to notice the cancellation.
+    private static ArrayList<SuggestedWordInfo> getSuggestionsSerialized(
+            final Dictionary dictionary, final WordComposer wordComposer,
+            final String prevWordForBigram, final ProximityInfo proximityInfo,
+            final boolean blockOffensiveWords, final int[] additionalFeaturesOptions) {
+        synchronized (dictionary) {
+            return dictionary.getSuggestions(wordComposer, prevWordForBigram, proximityInfo,
+                    blockOffensiveWords, additionalFeaturesOptions);
+        }
+    }
+
     // Retrieves suggestions for the batch input
     // and calls the callback function with the suggestions.
     private void getSuggestedWordsForBatchInput(final WordComposer wordComposer,
@@ -425,10 +619,19 @@ public final class Suggest {
         suggestionsList.add(typedWordInfo);
         // Note: i here is the index in mScores[], but the index in mSuggestions is one more
         // than i because we added the typed word to mSuggestions without touching mScores.
+        final String[] words = new String[suggestionsSize - 1];
+        final int[] scores = new int[suggestionsSize - 1];
+        for (int i = 0; i < suggestionsSize - 1; ++i) {
+            final SuggestedWordInfo cur = suggestions.get(i + 1);
+            words[i] = cur.toString();
+            scores[i] = cur.mScore;
+        }
+        // All the candidates are scored in one native call.
+        final float[] normalizedScores =
+                BinaryDictionary.calcNormalizedScores(typedWord, words, scores);
         for (int i = 0; i < suggestionsSize - 1; ++i) {
             final SuggestedWordInfo cur = suggestions.get(i + 1);
-            final float normalizedScore = BinaryDictionary.calcNormalizedScore(
-                    typedWord, cur.toString(), cur.mScore);
+            final float normalizedScore = normalizedScores[i];
             final String scoreInfoString;
             if (normalizedScore > 0) {
                 scoreInfoString = String.format(
@@ -0,0 +1,169 @@
+/*
+ * Copyright (C) 2013 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.inputmethod.latin;
+
+import android.text.TextUtils;
+
+/**
+ * Statistics of the last suggestion request of a native dictionary.
+ *
+ * This is parsed from the result of BinaryDictionary.SUGGEST_STATS_QUERY, which is a list of
+ * space separated KEY=VALUE pairs. Must be kept in sync with
+ * native/jni/src/suggest/core/session/suggest_stats.h.
+ */
+public final class SuggestStats {
+    private static final String EXPANDED_DIC_NODES_KEY = "EXPANDED_DIC_NODES";
+    private static final String RESTORED_DIC_NODES_KEY = "RESTORED_DIC_NODES";
+    private static final String BIGRAM_CACHE_HITS_KEY = "BIGRAM_CACHE_HITS";
+    private static final String BIGRAM_CACHE_MISSES_KEY = "BIGRAM_CACHE_MISSES";
+    private static final String QUEUE_OVERFLOWS_KEY = "QUEUE_OVERFLOWS";
+    private static final String FRONTIER_SNAPSHOT_HITS_KEY = "FRONTIER_SNAPSHOT_HITS";
+    private static final String FRONTIER_SNAPSHOT_MISSES_KEY = "FRONTIER_SNAPSHOT_MISSES";
+    private static final String PARTIAL_KEY = "PARTIAL";
+    private static final String CANCELLED_KEY = "CANCELLED";
+    private static final String INITIALIZE_NS_KEY = "INITIALIZE_NS";
+    private static final String EXPAND_NS_KEY = "EXPAND_NS";
+    private static final String OUTPUT_NS_KEY = "OUTPUT_NS";
+
+    // The number of dic nodes popped from the active queue and expanded.
+    public final int mExpandedDicNodeCount;
+    // The number of dic nodes restored from the previous request for continuous suggestion.
+    public final int mRestoredDicNodeCount;
+    public final int mBigramCacheHitCount;
+    public final int mBigramCacheMissCount;
+    // The number of dic nodes dropped or evicted because a priority queue was full.
+    public final int mQueueOverflowCount;
+    // 1 if the search was restarted from a frontier snapshot kept from a previous request, e.g.
+    // after backspace. A miss is counted when the search was restarted from the root instead.
+    public final int mFrontierSnapshotHitCount;
+    public final int mFrontierSnapshotMissCount;
+    // Whether the search budget ran out and the search was narrowed to the best candidates found
+    // so far. The results may be worse than the results of the full search.
+    public final boolean mIsPartial;
+    // Whether the search was cancelled by BinaryDictionary.cancelSuggestions. No suggestions are
+    // returned then.
+    public final boolean mIsCancelled;
+    public final long mInitializeTimeNs;
+    public final long mExpandTimeNs;
+    public final long mOutputTimeNs;
+
+    public SuggestStats(final int expandedDicNodeCount, final int restoredDicNodeCount,
+            final int bigramCacheHitCount, final int bigramCacheMissCount,
+            final int queueOverflowCount, final int frontierSnapshotHitCount,
+            final int frontierSnapshotMissCount, final boolean isPartial,
+            final boolean isCancelled, final long initializeTimeNs, final long expandTimeNs,
+            final long outputTimeNs) {
+        mExpandedDicNodeCount = expandedDicNodeCount;
+        mRestoredDicNodeCount = restoredDicNodeCount;
+        mBigramCacheHitCount = bigramCacheHitCount;
+        mBigramCacheMissCount = bigramCacheMissCount;
+        mQueueOverflowCount = queueOverflowCount;
+        mFrontierSnapshotHitCount = frontierSnapshotHitCount;
+        mFrontierSnapshotMissCount = frontierSnapshotMissCount;
+        mIsPartial = isPartial;
+        mIsCancelled = isCancelled;
+        mInitializeTimeNs = initializeTimeNs;
+        mExpandTimeNs = expandTimeNs;
+        mOutputTimeNs = outputTimeNs;
+    }
+
+    public long getTotalTimeNs() {
+        return mInitializeTimeNs + mExpandTimeNs + mOutputTimeNs;
+    }
+
+    /**
+     * Parses the result of BinaryDictionary.SUGGEST_STATS_QUERY. Unknown keys are ignored and
+     * missing or malformed values are read as 0.
+     *
+     * @param stats the string returned by the native dictionary.
+     * @return the statistics, or null if stats is empty.
+     */
+    public static SuggestStats parse(final String stats) {
+        if (TextUtils.isEmpty(stats)) return null;
+        int expandedDicNodeCount = 0;
+        int restoredDicNodeCount = 0;
+        int bigramCacheHitCount = 0;
+        int bigramCacheMissCount = 0;
+        int queueOverflowCount = 0;
+        int frontierSnapshotHitCount = 0;
+        int frontierSnapshotMissCount = 0;
+        boolean isPartial = false;
+        boolean isCancelled = false;
+        long initializeTimeNs = 0;
+        long expandTimeNs = 0;
+        long outputTimeNs = 0;
+        for (final String pair : stats.trim().split(" +")) {
+            final int separatorIndex = pair.indexOf('=');
+            if (separatorIndex <= 0) continue;
+            final String key = pair.substring(0, separatorIndex);
+            final long value = parseLong(pair.substring(separatorIndex + 1));
+            if (EXPANDED_DIC_NODES_KEY.equals(key)) {
+                expandedDicNodeCount = (int)value;
+            } else if (RESTORED_DIC_NODES_KEY.equals(key)) {
+                restoredDicNodeCount = (int)value;
+            } else if (BIGRAM_CACHE_HITS_KEY.equals(key)) {
+                bigramCacheHitCount = (int)value;
+            } else if (BIGRAM_CACHE_MISSES_KEY.equals(key)) {
+                bigramCacheMissCount = (int)value;
+            } else if (QUEUE_OVERFLOWS_KEY.equals(key)) {
+                queueOverflowCount = (int)value;
+            } else if (FRONTIER_SNAPSHOT_HITS_KEY.equals(key)) {
+                frontierSnapshotHitCount = (int)value;
+            } else if (FRONTIER_SNAPSHOT_MISSES_KEY.equals(key)) {
+                frontierSnapshotMissCount = (int)value;
+            } else if (PARTIAL_KEY.equals(key)) {
+                isPartial = value != 0;
+            } else if (CANCELLED_KEY.equals(key)) {
+                isCancelled = value != 0;
+            } else if (INITIALIZE_NS_KEY.equals(key)) {
+                initializeTimeNs = value;
+            } else if (EXPAND_NS_KEY.equals(key)) {
+                expandTimeNs = value;
+            } else if (OUTPUT_NS_KEY.equals(key)) {
+                outputTimeNs = value;
+            }
+        }
+        return new SuggestStats(expandedDicNodeCount, restoredDicNodeCount, bigramCacheHitCount,
+                bigramCacheMissCount, queueOverflowCount, frontierSnapshotHitCount,
+                frontierSnapshotMissCount, isPartial, isCancelled, initializeTimeNs, expandTimeNs,
+                outputTimeNs);
+    }
+
+    private static long parseLong(final String value) {
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return EXPANDED_DIC_NODES_KEY + "=" + mExpandedDicNodeCount
+                + " " + RESTORED_DIC_NODES_KEY + "=" + mRestoredDicNodeCount
+                + " " + BIGRAM_CACHE_HITS_KEY + "=" + mBigramCacheHitCount
+                + " " + BIGRAM_CACHE_MISSES_KEY + "=" + mBigramCacheMissCount
+                + " " + QUEUE_OVERFLOWS_KEY + "=" + mQueueOverflowCount
+                + " " + FRONTIER_SNAPSHOT_HITS_KEY + "=" + mFrontierSnapshotHitCount
+                + " " + FRONTIER_SNAPSHOT_MISSES_KEY + "=" + mFrontierSnapshotMissCount
+                + " " + PARTIAL_KEY + "=" + (mIsPartial ? 1 : 0)
+                + " " + CANCELLED_KEY + "=" + (mIsCancelled ? 1 : 0)
+                + " " + INITIALIZE_NS_KEY + "=" + mInitializeTimeNs
+                + " " + EXPAND_NS_KEY + "=" + mExpandTimeNs
+                + " " + OUTPUT_NS_KEY + "=" + mOutputTimeNs;
+    }
+}
@@ -121,6 +121,121 @@ public final class BinaryDictDecoderUtils {
         }
     }
 
+    /**
+     * A read-only file mapping that is only read at absolute offsets.
+     *
+     * This class has no position, so one instance can be read by many threads at the same time.
+     * Each reader gets its own position with {@link #newDictBuffer()}, which shares the mapping
+     * instead of copying it.
+     */
+    public static final class MappedDictBuffer {
+        private final ByteBuffer mBuffer;
+
+        public MappedDictBuffer(final ByteBuffer buffer) {
+            mBuffer = buffer;
+        }
+
+        public int readUnsignedByte(final int pos) {
+            return mBuffer.get(pos) & 0xFF;
+        }
+
+        public int readUnsignedShort(final int pos) {
+            return mBuffer.getShort(pos) & 0xFFFF;
+        }
+
+        public int readUnsignedInt24(final int pos) {
+            return (readUnsignedByte(pos) << 16) + readUnsignedShort(pos + 1);
+        }
+
+        public int readInt(final int pos) {
+            return mBuffer.getInt(pos);
+        }
+
+        public int limit() {
+            return mBuffer.limit();
+        }
+
+        public int capacity() {
+            return mBuffer.capacity();
+        }
+
+        /**
+         * Returns a new DictBuffer reading this mapping, starting at position 0.
+         */
+        public DictBuffer newDictBuffer() {
+            return new CursorDictBuffer(this);
+        }
+    }
+
+    /**
+     * A DictBuffer whose only state is its position in a shared MappedDictBuffer.
+     */
+    private static final class CursorDictBuffer implements DictBuffer {
+        private final MappedDictBuffer mMapping;
+        private int mPosition;
+
+        public CursorDictBuffer(final MappedDictBuffer mapping) {
+            mMapping = mapping;
+            mPosition = 0;
+        }
+
+        @Override
+        public int readUnsignedByte() {
+            final int retval = mMapping.readUnsignedByte(mPosition);
+            mPosition += 1;
+            return retval;
+        }
+
+        @Override
+        public int readUnsignedShort() {
+            final int retval = mMapping.readUnsignedShort(mPosition);
+            mPosition += 2;
+            return retval;
+        }
+
+        @Override
+        public int readUnsignedInt24() {
+            final int retval = mMapping.readUnsignedInt24(mPosition);
+            mPosition += 3;
+            return retval;
+        }
+
+        @Override
+        public int readInt() {
+            final int retval = mMapping.readInt(mPosition);
+            mPosition += 4;
+            return retval;
+        }
+
+        @Override
+        public int position() {
+            return mPosition;
+        }
+
+        @Override
+        public void position(int newPos) {
+            if (newPos < 0 || newPos > mMapping.limit()) {
+                throw new IllegalArgumentException("Position out of range : " + newPos);
+            }
+            mPosition = newPos;
+        }
+
+        @Override
+        public void put(final byte b) {
+            throw new UnsupportedOperationException("This buffer is read-only");
+        }
+
+        @Override
+        public int limit() {
+            return mMapping.limit();
+        }
+
+        @Override
+        public int capacity() {
+            return mMapping.capacity();
+        }
+    }
+
     /**
      * A class grouping utility function for our specific character encoding.
      */
@@ -17,6 +17,7 @@
 package com.android.inputmethod.latin.makedict;
 
 import com.android.inputmethod.latin.makedict.BinaryDictDecoderUtils.CharEncoding;
+import com.android.inputmethod.latin.makedict.FormatSpec.FileHeader;
 import com.android.inputmethod.latin.makedict.FormatSpec.FormatOptions;
 import com.android.inputmethod.latin.makedict.FusionDictionary.PtNode;
 import com.android.inputmethod.latin.makedict.FusionDictionary.DictionaryOptions;
@@ -27,6 +28,7 @@ import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.util.ArrayList;
+import java.util.IdentityHashMap;
 
 /**
  * Encodes binary files for a FusionDictionary.
@@ -43,12 +45,31 @@ public class BinaryDictEncoderUtils {
         // This utility class is not publicly instantiable.
     }
 
-    // Arbitrary limit to how much passes we consider address size compression should
-    // terminate in. At the time of this writing, our largest dictionary completes
-    // compression in five passes.
-    // If the number of passes exceeds this number, makedict bails with an exception on
-    // suspicion that a bug might be causing an infinite loop.
-    private static final int MAX_PASSES = 24;
+    // Limit to how many passes address size compression may take. At the time of this writing,
+    // our largest dictionary completes compression in five passes. If compression has not
+    // terminated after this many passes, the addresses are given a fixed size instead, which
+    // takes a bounded number of passes at the cost of a slightly larger file.
+    /* package */ static final int MAX_SHRINKING_PASSES = 8;
+    // Once all addresses have a fixed size, the sizes no longer depend on the addresses: one pass
+    // computes the final addresses and a second one checks them. If the number of passes exceeds
+    // this number, makedict bails with an exception on suspicion of a bug.
+    private static final int MAX_FIXED_SIZE_PASSES = 2;
+
+    /**
+     * Statistics about a call to computeAddresses, reported by showStatistics.
+     */
+    /* package */ static final class AddressComputationStats {
+        public final int mPasses;
+        public final boolean mHasFixedSizeAddresses;
+        public final long mTimeInMillis;
+
+        public AddressComputationStats(final int passes, final boolean hasFixedSizeAddresses,
+                final long timeInMillis) {
+            mPasses = passes;
+            mHasFixedSizeAddresses = hasFixedSizeAddresses;
+            mTimeInMillis = timeInMillis;
+        }
+    }
 
     /**
      * Compute the binary size of the character array.
@@ -158,6 +179,7 @@ public class BinaryDictEncoderUtils {
         for (PtNode node : ptNodeArray.mData) {
             final int nodeSize = getPtNodeMaximumSize(node, options);
             node.mCachedSize = nodeSize;
+            node.mHasFixedSizeAddresses = false;
             size += nodeSize;
         }
         if (options.mSupportsDynamicUpdate) {
@@ -204,6 +226,23 @@ public class BinaryDictEncoderUtils {
         }
     }
 
+    /**
+     * Compute the size, in bytes, that an address stored in a PtNode will occupy.
+     *
+     * This is the same as getByteSize, except for a PtNode whose addresses have been given a
+     * fixed size by computeAddresses, in which case any address takes the maximum size.
+     *
+     * @param ptNode the PtNode the address is stored in.
+     * @param address the address
+     * @return the byte size.
+     */
+    static int getAddressSize(final PtNode ptNode, final int address) {
+        if (ptNode.mHasFixedSizeAddresses && BinaryDictIOUtils.hasChildrenAddress(address)) {
+            return FormatSpec.PTNODE_MAX_ADDRESS_SIZE;
+        }
+        return getByteSize(address);
+    }
+
     static int writeUIntToBuffer(final byte[] buffer, int position, final int value,
             final int size) {
         switch(size) {
@@ -254,32 +293,28 @@ public class BinaryDictEncoderUtils {
         final int treeSize = FusionDictionary.countPtNodes(rootNodeArray);
         MakedictLog.i("Counted nodes : " + treeSize);
         final ArrayList<PtNodeArray> flatTree = new ArrayList<PtNodeArray>(treeSize);
-        return flattenTreeInner(flatTree, rootNodeArray);
+        return flattenTreeInner(flatTree, new IdentityHashMap<PtNodeArray, Boolean>(),
+                rootNodeArray);
     }
 
     private static ArrayList<PtNodeArray> flattenTreeInner(final ArrayList<PtNodeArray> list,
+            final IdentityHashMap<PtNodeArray, Boolean> addedNodeArrays,
             final PtNodeArray ptNodeArray) {
-        // Removing the node is necessary if the tails are merged, because we would then
-        // add the same node several times when we only want it once. A number of places in
-        // the code also depends on any node being only once in the list.
-        // Merging tails can only be done if there are no attributes. Searching for attributes
-        // in LatinIME code depends on a total breadth-first ordering, which merging tails
-        // breaks. If there are no attributes, it should be fine (and reduce the file size)
-        // to merge tails, and removing the node from the list would be necessary. However,
-        // we don't merge tails because breaking the breadth-first ordering would result in
-        // extreme overhead at bigram lookup time (it would make the search function O(n) instead
-        // of the current O(log(n)), where n=number of nodes in the dictionary which is pretty
-        // high).
-        // If no nodes are ever merged, we can't have the same node twice in the list, hence
-        // searching for duplicates in unnecessary. It is also very performance consuming,
-        // since `list' is an ArrayList so it's an O(n) operation that runs on all nodes, making
-        // this simple list.remove operation O(n*n) overall. On Android this overhead is very
-        // high.
-        // For future reference, the code to remove duplicate is a simple : list.remove(node);
+        // If the tails are merged, the same node array can be reached several times, but we
+        // only want it once in the list : a number of places in the code depends on any node
+        // array being only once in the list. The node array is kept at the position where it
+        // is first reached. Searching the list itself for duplicates would make flattening
+        // O(n*n), so the already added node arrays are kept in an identity map.
+        // Merging tails breaks the depth-first ordering that searching for the word at an
+        // address depends on, so FusionDictionary#mergeTails only merges tails if there are
+        // no bigrams.
+        if (null != addedNodeArrays.put(ptNodeArray, Boolean.TRUE)) return list;
         list.add(ptNodeArray);
         final ArrayList<PtNode> branches = ptNodeArray.mData;
         for (PtNode ptNode : branches) {
-            if (null != ptNode.mChildren) flattenTreeInner(list, ptNode.mChildren);
+            if (null != ptNode.mChildren) {
+                flattenTreeInner(list, addedNodeArrays, ptNode.mChildren);
+            }
         }
         return list;
     }
@@ -356,12 +391,13 @@ public class BinaryDictEncoderUtils {
      * respect to their previous value.
      *
      * @param ptNodeArray the node array to compute the size of.
-     * @param dict the dictionary in which the word/attributes are to be found.
+     * @param bigramTargets the PtNode of the target word of each bigram.
      * @param formatOptions file format options.
      * @return false if none of the cached addresses inside the node array changed, true otherwise.
      */
     private static boolean computeActualPtNodeArraySize(final PtNodeArray ptNodeArray,
-            final FusionDictionary dict, final FormatOptions formatOptions) {
+            final IdentityHashMap<WeightedString, PtNode> bigramTargets,
+            final FormatOptions formatOptions) {
         boolean changed = false;
         int size = getPtNodeCountSize(ptNodeArray);
         for (PtNode ptNode : ptNodeArray.mData) {
@@ -380,8 +416,8 @@ public class BinaryDictEncoderUtils {
             if (formatOptions.mSupportsDynamicUpdate) {
                 nodeSize += FormatSpec.SIGNED_CHILDREN_ADDRESS_SIZE;
             } else if (null != ptNode.mChildren) {
-                nodeSize += getByteSize(getOffsetToTargetNodeArrayDuringUpdate(ptNodeArray,
-                        nodeSize + size, ptNode.mChildren));
+                nodeSize += getAddressSize(ptNode, getOffsetToTargetNodeArrayDuringUpdate(
+                        ptNodeArray, nodeSize + size, ptNode.mChildren));
             }
             if (formatOptions.mVersion < FormatSpec.FIRST_VERSION_WITH_TERMINAL_ID) {
                 nodeSize += getShortcutListSize(ptNode.mShortcutTargets);
@@ -389,8 +425,9 @@ public class BinaryDictEncoderUtils {
                     for (WeightedString bigram : ptNode.mBigrams) {
                         final int offset = getOffsetToTargetPtNodeDuringUpdate(ptNodeArray,
                                 nodeSize + size + FormatSpec.PTNODE_ATTRIBUTE_FLAGS_SIZE,
-                                FusionDictionary.findWordInTree(dict.mRootNodeArray, bigram.mWord));
-                        nodeSize += getByteSize(offset) + FormatSpec.PTNODE_ATTRIBUTE_FLAGS_SIZE;
+                                bigramTargets.get(bigram));
+                        nodeSize += getAddressSize(ptNode, offset)
+                                + FormatSpec.PTNODE_ATTRIBUTE_FLAGS_SIZE;
                     }
                 }
             }
@@ -467,6 +504,33 @@ public class BinaryDictEncoderUtils {
         }
     }
 
+    /**
+     * Looks up the target PtNode of every bigram in the dictionary.
+     *
+     * The size of a PtNode depends on the offsets to its bigram targets, so computeAddresses
+     * needs the targets in every pass. Looking them up in the tree once instead of once per pass
+     * removes most of the cost of each pass.
+     *
+     * @param dict the dictionary
+     * @param flatNodes the ordered list of PtNode arrays
+     * @return a map from each bigram to the PtNode of its target word
+     */
+    private static IdentityHashMap<WeightedString, PtNode> findBigramTargets(
+            final FusionDictionary dict, final ArrayList<PtNodeArray> flatNodes) {
+        final IdentityHashMap<WeightedString, PtNode> bigramTargets =
+                new IdentityHashMap<WeightedString, PtNode>();
+        for (final PtNodeArray ptNodeArray : flatNodes) {
+            for (final PtNode ptNode : ptNodeArray.mData) {
+                if (null == ptNode.mBigrams) continue;
+                for (final WeightedString bigram : ptNode.mBigrams) {
+                    bigramTargets.put(bigram,
+                            FusionDictionary.findWordInTree(dict.mRootNodeArray, bigram.mWord));
+                }
+            }
+        }
+        return bigramTargets;
+    }
+
     /**
      * Compute the addresses and sizes of an ordered list of PtNode arrays.
      *
@@ -478,12 +542,40 @@ public class BinaryDictEncoderUtils {
      * to find a good order; it only mechanically computes the size this order results in.
      *
      * @param dict the dictionary
-     * @param flatNodes the ordered list of PtNode arrays
+     * @param flatNodes the ordered list of PtNode arrays. The nodes are updated for address and
+     *   size.
      * @param formatOptions file format options.
-     * @return the same array it was passed. The nodes have been updated for address and size.
+     * @return the statistics about this computation.
      */
-    /* package */ static ArrayList<PtNodeArray> computeAddresses(final FusionDictionary dict,
+    /* package */ static AddressComputationStats computeAddresses(final FusionDictionary dict,
             final ArrayList<PtNodeArray> flatNodes, final FormatOptions formatOptions) {
+        return computeAddresses(dict, flatNodes, formatOptions, MAX_SHRINKING_PASSES);
+    }
+
+    /**
+     * Compute the addresses and sizes of an ordered list of PtNode arrays, in a bounded number
+     * of passes.
+     *
+     * Starting from the maximum sizes, each pass shrinks the addresses that fit in fewer bytes,
+     * until nothing changes. If this takes more than maxShrinkingPasses passes, every address is
+     * given the maximum size instead, which is a valid layout that does not depend on the
+     * addresses.
+     *
+     * @param dict the dictionary
+     * @param flatNodes the ordered list of PtNode arrays. The nodes are updated for address and
+     *   size.
+     * @param formatOptions file format options.
+     * @param maxShrinkingPasses the maximum number of passes shrinking the addresses.
+     * @return the statistics about this computation.
+     */
+    /* package */ static AddressComputationStats computeAddresses(final FusionDictionary dict,
+            final ArrayList<PtNodeArray> flatNodes, final FormatOptions formatOptions,
+            final int maxShrinkingPasses) {
+        final long startTime = System.currentTimeMillis();
+        final IdentityHashMap<WeightedString, PtNode> bigramTargets =
+                formatOptions.mVersion < FormatSpec.FIRST_VERSION_WITH_TERMINAL_ID
+                        ? findBigramTargets(dict, flatNodes)
+                        : new IdentityHashMap<WeightedString, PtNode>();
         // First get the worst possible sizes and offsets
         for (final PtNodeArray n : flatNodes) calculatePtNodeArrayMaximumSize(n, formatOptions);
         final int offset = initializePtNodeArraysCachedAddresses(flatNodes, formatOptions);
@@ -492,36 +584,141 @@ public class BinaryDictEncoderUtils {
         MakedictLog.i("(Recursively seen size : " + offset + ")");
 
         int passes = 0;
-        boolean changesDone = false;
-        do {
-            changesDone = false;
-            int ptNodeArrayStartOffset = 0;
+        boolean changesDone = true;
+        while (changesDone && passes < maxShrinkingPasses) {
+            changesDone = computeAddressesPass(flatNodes, bigramTargets, formatOptions,
+                    false /* canGrow */);
+            ++passes;
+        }
+        final boolean hasFixedSizeAddresses = changesDone;
+        if (hasFixedSizeAddresses) {
+            MakedictLog.i("Compression did not terminate in " + passes
+                    + " passes, using fixed size addresses.");
             for (final PtNodeArray ptNodeArray : flatNodes) {
-                ptNodeArray.mCachedAddressAfterUpdate = ptNodeArrayStartOffset;
-                final int oldNodeArraySize = ptNodeArray.mCachedSize;
-                final boolean changed =
-                        computeActualPtNodeArraySize(ptNodeArray, dict, formatOptions);
-                final int newNodeArraySize = ptNodeArray.mCachedSize;
-                if (oldNodeArraySize < newNodeArraySize) {
-                    throw new RuntimeException("Increased size ?!");
+                for (final PtNode ptNode : ptNodeArray.mData) {
+                    ptNode.mHasFixedSizeAddresses = true;
                 }
-                ptNodeArrayStartOffset += newNodeArraySize;
-                changesDone |= changed;
             }
-            updatePtNodeArraysCachedAddresses(flatNodes);
-            ++passes;
-            if (passes > MAX_PASSES) throw new RuntimeException("Too many passes - probably a bug");
-        } while (changesDone);
+            int fixedSizePasses = 0;
+            do {
+                changesDone = computeAddressesPass(flatNodes, bigramTargets, formatOptions,
+                        true /* canGrow */);
+                ++fixedSizePasses;
+                if (fixedSizePasses > MAX_FIXED_SIZE_PASSES) {
+                    throw new RuntimeException("Too many passes - probably a bug");
+                }
+            } while (changesDone);
+            passes += fixedSizePasses;
+        }
 
         if (formatOptions.mSupportsDynamicUpdate) {
             computeParentAddresses(flatNodes);
         }
         final PtNodeArray lastPtNodeArray = flatNodes.get(flatNodes.size() - 1);
-        MakedictLog.i("Compression complete in " + passes + " passes.");
+        final AddressComputationStats stats = new AddressComputationStats(passes,
+                hasFixedSizeAddresses, System.currentTimeMillis() - startTime);
+        MakedictLog.i("Compression complete in " + passes + " passes (" + stats.mTimeInMillis
+                + " ms).");
         MakedictLog.i("After address compression : "
                 + (lastPtNodeArray.mCachedAddressAfterUpdate + lastPtNodeArray.mCachedSize));
 
-        return flatNodes;
+        return stats;
+    }
+
+    /**
+     * Runs one pass of address computation over an ordered list of PtNode arrays.
+     *
+     * @param flatNodes the ordered list of PtNode arrays.
+     * @param bigramTargets the PtNode of the target word of each bigram.
+     * @param formatOptions file format options.
+     * @param canGrow whether the PtNode arrays may get larger in this pass. Shrinking passes
+     *   never make them larger.
+     * @return false if none of the cached addresses or sizes changed, true otherwise.
+     */
+    private static boolean computeAddressesPass(final ArrayList<PtNodeArray> flatNodes,
+            final IdentityHashMap<WeightedString, PtNode> bigramTargets,
+            final FormatOptions formatOptions, final boolean canGrow) {
+        boolean changesDone = false;
+        int ptNodeArrayStartOffset = 0;
+        for (final PtNodeArray ptNodeArray : flatNodes) {
+            ptNodeArray.mCachedAddressAfterUpdate = ptNodeArrayStartOffset;
+            final int oldNodeArraySize = ptNodeArray.mCachedSize;
+            final boolean changed =
+                    computeActualPtNodeArraySize(ptNodeArray, bigramTargets, formatOptions);
+            final int newNodeArraySize = ptNodeArray.mCachedSize;
+            if (!canGrow && oldNodeArraySize < newNodeArraySize) {
+                throw new RuntimeException("Increased size ?!");
+            }
+            ptNodeArrayStartOffset += newNodeArraySize;
+            changesDone |= changed;
+        }
+        updatePtNodeArraysCachedAddresses(flatNodes);
+        return changesDone;
+    }
+
+    /**
+     * Computes the addresses and sizes of a single PtNode array followed by the subtrees of its
+     * children.
+     *
+     * This is used to encode a dictionary one PtNode array at a time, children first. The array
+     * is placed at address 0 and the subtree of each of its children is placed right after it,
+     * in order, which is the layout of flattenTree. Like computeAddresses, this starts from the
+     * maximum sizes and shrinks them until nothing changes, and gives the same sizes, including
+     * the fixed size addresses if shrinking takes more than MAX_SHRINKING_PASSES passes.
+     *
+     * @param ptNodeArray the PtNode array. The children arrays need not hold any PtNode.
+     * @param subtreeSizes the size, in bytes, of the subtree of each children array.
+     * @param formatOptions file format options.
+     * @return the size of the PtNode array.
+     */
+    /* package */ static int computeAddressesOfPtNodeArray(final PtNodeArray ptNodeArray,
+            final IdentityHashMap<PtNodeArray, Integer> subtreeSizes,
+            final FormatOptions formatOptions) {
+        final IdentityHashMap<WeightedString, PtNode> noBigramTargets =
+                new IdentityHashMap<WeightedString, PtNode>();
+        calculatePtNodeArrayMaximumSize(ptNodeArray, formatOptions);
+        ptNodeArray.mCachedAddressBeforeUpdate = ptNodeArray.mCachedAddressAfterUpdate = 0;
+        int passes = 0;
+        boolean changed = true;
+        while (changed && passes < MAX_SHRINKING_PASSES) {
+            changed = computeAddressesOfPtNodeArrayPass(ptNodeArray, subtreeSizes, noBigramTargets,
+                    formatOptions);
+            ++passes;
+        }
+        if (changed) {
+            for (final PtNode ptNode : ptNodeArray.mData) {
+                ptNode.mHasFixedSizeAddresses = true;
+            }
+            passes = 0;
+            do {
+                changed = computeAddressesOfPtNodeArrayPass(ptNodeArray, subtreeSizes,
+                        noBigramTargets, formatOptions);
+                ++passes;
+                if (passes > MAX_FIXED_SIZE_PASSES) {
+                    throw new RuntimeException("Too many passes - probably a bug");
+                }
+            } while (changed);
+        }
+        return ptNodeArray.mCachedSize;
+    }
+
+    private static boolean computeAddressesOfPtNodeArrayPass(final PtNodeArray ptNodeArray,
+            final IdentityHashMap<PtNodeArray, Integer> subtreeSizes,
+            final IdentityHashMap<WeightedString, PtNode> noBigramTargets,
+            final FormatOptions formatOptions) {
+        int childrenAddress = ptNodeArray.mCachedSize;
+        for (final PtNode ptNode : ptNodeArray.mData) {
+            if (null == ptNode.mChildren) continue;
+            ptNode.mChildren.mCachedAddressBeforeUpdate = childrenAddress;
+            ptNode.mChildren.mCachedAddressAfterUpdate = childrenAddress;
+            childrenAddress += subtreeSizes.get(ptNode.mChildren);
+        }
+        final boolean changed =
+                computeActualPtNodeArraySize(ptNodeArray, noBigramTargets, formatOptions);
+        for (final PtNode ptNode : ptNodeArray.mData) {
+            ptNode.mCachedAddressBeforeUpdate = ptNode.mCachedAddressAfterUpdate;
+        }
+        return changed;
     }
 
     /**
@@ -560,7 +757,21 @@ public class BinaryDictEncoderUtils {
      */
     /* package */ static int writeChildrenPosition(final byte[] buffer, int index,
             final int position) {
-        switch (getByteSize(position)) {
+        return writeChildrenPosition(buffer, index, position, getByteSize(position));
+    }
+
+    /**
+     * Helper method to write a children position to a file, on a given number of bytes.
+     *
+     * @param buffer the buffer to write to.
+     * @param index the index in the buffer to write the address to.
+     * @param position the position to write.
+     * @param size the size in bytes of the address, as returned by getAddressSize.
+     * @return the size in bytes the address actually took.
+     */
+    /* package */ static int writeChildrenPosition(final byte[] buffer, int index,
+            final int position, final int size) {
+        switch (size) {
         case 1:
             buffer[index++] = (byte)position;
             return 1;
@@ -652,7 +863,7 @@ public class BinaryDictEncoderUtils {
     /* package */ static byte makePtNodeFlags(final PtNode node, final int childrenOffset,
             final FormatOptions formatOptions) {
         return (byte) makePtNodeFlags(node.mChars.length > 1, node.mFrequency >= 0,
-                getByteSize(childrenOffset),
+                getAddressSize(node, childrenOffset),
                 node.mShortcutTargets != null && !node.mShortcutTargets.isEmpty(),
                 node.mBigrams != null, node.mIsNotAWord, node.mIsBlacklistEntry, formatOptions);
     }
@@ -668,10 +879,28 @@ public class BinaryDictEncoderUtils {
      * @return the flags
      */
     /* package */ static final int makeBigramFlags(final boolean more, final int offset,
-            int bigramFrequency, final int unigramFrequency, final String word) {
+            final int bigramFrequency, final int unigramFrequency, final String word) {
+        return makeBigramFlags(more, offset, getByteSize(offset), bigramFrequency,
+                unigramFrequency, word);
+    }
+
+    /**
+     * Makes the flag value for a bigram whose offset is stored on a given number of bytes.
+     *
+     * @param more whether there are more bigrams after this one.
+     * @param offset the offset of the bigram.
+     * @param offsetSize the size in bytes of the offset, as returned by getAddressSize.
+     * @param bigramFrequency the frequency of the bigram, 0..255.
+     * @param unigramFrequency the unigram frequency of the same word, 0..255.
+     * @param word the second bigram, for debugging purposes
+     * @return the flags
+     */
+    /* package */ static final int makeBigramFlags(final boolean more, final int offset,
+            final int offsetSize, int bigramFrequency, final int unigramFrequency,
+            final String word) {
         int bigramFlags = (more ? FormatSpec.FLAG_BIGRAM_SHORTCUT_ATTR_HAS_NEXT : 0)
                 + (offset < 0 ? FormatSpec.FLAG_BIGRAM_ATTR_OFFSET_NEGATIVE : 0);
-        switch (getByteSize(offset)) {
+        switch (offsetSize) {
         case 1:
             bigramFlags |= FormatSpec.FLAG_BIGRAM_ATTR_ADDRESS_TYPE_ONEBYTE;
             break;
@@ -844,8 +1073,10 @@ public class BinaryDictEncoderUtils {
      * number of PtNode arrays, of PtNodes, the repartition of each address size, etc
      *
      * @param ptNodeArrays the list of PtNode arrays.
+     * @param addressComputationStats the statistics returned by computeAddresses.
      */
-    /* package */ static void showStatistics(ArrayList<PtNodeArray> ptNodeArrays) {
+    /* package */ static void showStatistics(ArrayList<PtNodeArray> ptNodeArrays,
+            final AddressComputationStats addressComputationStats) {
         int firstTerminalAddress = Integer.MAX_VALUE;
         int lastTerminalAddress = Integer.MIN_VALUE;
         int size = 0;
@@ -884,6 +1115,10 @@ public class BinaryDictEncoderUtils {
                         + " PtNodes per node)\n"
                 + "  first terminal at " + firstTerminalAddress + "\n"
                 + "  last terminal at " + lastTerminalAddress + "\n"
+                + "  address computation : " + addressComputationStats.mPasses
+                        + " passes in " + addressComputationStats.mTimeInMillis + " ms"
+                        + (addressComputationStats.mHasFixedSizeAddresses
+                                ? ", fixed size addresses\n" : "\n")
                 + "  PtNode stats : max = " + maxNodes);
         for (int i = 0; i < ptNodeCounts.length; ++i) {
             MakedictLog.i("    " + i + " : " + ptNodeCounts[i]);
@@ -937,6 +1172,12 @@ public class BinaryDictEncoderUtils {
         }
         // Write out the options.
         for (final String key : dict.mOptions.mAttributes.keySet()) {
+            if (FileHeader.BODY_SIZE_ATTRIBUTE.equals(key)
+                    || FileHeader.HEADER_CHECKSUM_ATTRIBUTE.equals(key)
+                    || FileHeader.FLUSH_GENERATION_ATTRIBUTE.equals(key)) {
+                // These would not match the dictionary being written.
+                continue;
+            }
             final String value = dict.mOptions.mAttributes.get(key);
             CharEncoding.writeString(headerBuffer, key);
             CharEncoding.writeString(headerBuffer, value);
@@ -516,6 +516,17 @@ public final class BinaryDictIOUtils {
         }
     }
 
+    /**
+     * Removes the journal of the dynamic updates of a dictionary file. A journal only applies to
+     * the file it has been written for, so this has to be called once the file has been
+     * replaced.
+     *
+     * @param dictFile the dictionary file.
+     */
+    public static void deleteJournalFile(final File dictFile) {
+        new File(dictFile.getPath() + FormatSpec.JOURNAL_FILE_SUFFIX).delete();
+    }
+
     /**
      * Helper method to hide the actual value of the no children address.
      */
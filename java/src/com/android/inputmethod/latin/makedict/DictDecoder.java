@@ -18,6 +18,7 @@ package com.android.inputmethod.latin.makedict;
 
 import com.android.inputmethod.annotations.UsedForTesting;
 import com.android.inputmethod.latin.makedict.BinaryDictDecoderUtils.DictBuffer;
+import com.android.inputmethod.latin.makedict.BinaryDictDecoderUtils.MappedDictBuffer;
 import com.android.inputmethod.latin.makedict.FormatSpec.FileHeader;
 import com.android.inputmethod.latin.makedict.FormatSpec.FormatOptions;
 import com.android.inputmethod.latin.utils.ByteArrayDictBuffer;
@@ -30,6 +31,9 @@ import java.io.RandomAccessFile;
 import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.TreeMap;
 
 /**
@@ -197,6 +201,103 @@ public interface DictDecoder {
         }
     }
 
+    /**
+     * Creates DictionaryBuffer sharing one read-only mapping of each file.
+     *
+     * Each file is mapped the first time it is opened, and every buffer returned for this file
+     * afterwards only holds its own position in the same mapping. Decoders created with the same
+     * factory can thus be used on different threads without mapping or copying the file again.
+     *
+     * A file is mapped again if its length, its modification time or its first bytes have
+     * changed. The first bytes of a dictionary file are its header, which records when the file
+     * was written, so a file replaced within the resolution of the modification time is detected
+     * too. This costs a read of the first bytes each time a buffer is returned. A change that is
+     * confined to the rest of the file and keeps its length and modification time is not
+     * detected. Only the most recently used files keep their mapping.
+     */
+    public static final class DictionaryBufferFromSharedMappingFactory
+            implements DictionaryBufferFactory {
+        // The number of bytes at the start of a file that are compared with its mapping.
+        private static final int VALIDATED_SIZE = 4096;
+        private static final int MAX_MAPPINGS = 8;
+
+        private static final class Mapping {
+            public final MappedDictBuffer mBuffer;
+            public final long mLength;
+            public final long mLastModified;
+            public final byte[] mFirstBytes;
+
+            public Mapping(final MappedDictBuffer buffer, final long length,
+                    final long lastModified, final byte[] firstBytes) {
+                mBuffer = buffer;
+                mLength = length;
+                mLastModified = lastModified;
+                mFirstBytes = firstBytes;
+            }
+        }
+
+        // An evicted mapping stays valid for the buffers that have already been returned.
+        private final LinkedHashMap<String, Mapping> mMappings =
+                new LinkedHashMap<String, Mapping>(MAX_MAPPINGS, 0.75f, true /* accessOrder */) {
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<String, Mapping> eldest) {
+                return size() > MAX_MAPPINGS;
+            }
+        };
+
+        @Override
+        public synchronized DictBuffer getDictionaryBuffer(final File file)
+                throws FileNotFoundException, IOException {
+            final String path = file.getAbsolutePath();
+            final long length = file.length();
+            final long lastModified = file.lastModified();
+            Mapping mapping = mMappings.get(path);
+            if (null == mapping || mapping.mLength != length
+                    || mapping.mLastModified != lastModified
+                    || !Arrays.equals(mapping.mFirstBytes, readFirstBytes(file))) {
+                FileInputStream inStream = null;
+                try {
+                    inStream = new FileInputStream(file);
+                    final ByteBuffer buffer = inStream.getChannel().map(
+                            FileChannel.MapMode.READ_ONLY, 0, length);
+                    // The bytes are taken from the mapping, so that they match what the buffers
+                    // read even if the file has changed in the meantime.
+                    final byte[] firstBytes = new byte[(int) Math.min(length, VALIDATED_SIZE)];
+                    buffer.duplicate().get(firstBytes);
+                    mapping = new Mapping(new MappedDictBuffer(buffer), length, lastModified,
+                            firstBytes);
+                } finally {
+                    if (inStream != null) {
+                        inStream.close();
+                    }
+                }
+                mMappings.put(path, mapping);
+            }
+            return mapping.mBuffer.newDictBuffer();
+        }
+
+        private static byte[] readFirstBytes(final File file) throws IOException {
+            final byte[] bytes = new byte[VALIDATED_SIZE];
+            FileInputStream inStream = null;
+            try {
+                inStream = new FileInputStream(file);
+                int size = 0;
+                while (size < bytes.length) {
+                    final int readSize = inStream.read(bytes, size, bytes.length - size);
+                    if (readSize < 0) {
+                        break;
+                    }
+                    size += readSize;
+                }
+                return Arrays.copyOf(bytes, size);
+            } finally {
+                if (inStream != null) {
+                    inStream.close();
+                }
+            }
+        }
+    }
+
     /**
      * Creates DictionaryBuffer using a writable ByteBuffer and a RandomAccessFile.
      *
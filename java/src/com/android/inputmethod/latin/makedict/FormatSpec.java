@@ -260,6 +260,11 @@ public final class FormatSpec {
     static final int PTNODE_ATTRIBUTE_MAX_ADDRESS_SIZE = 3;
     static final int PTNODE_SHORTCUT_LIST_SIZE_SIZE = 2;
 
+    // The native code journals the dynamic updates of a version 3 dictionary in this file next to
+    // the dictionary file. Note that this is the corresponding definition in native code in
+    // latinime::DictUpdateJournal.
+    static final String JOURNAL_FILE_SUFFIX = ".journal";
+
     // These values are used only by version 4 or later.
     static final String TRIE_FILE_EXTENSION = ".trie";
     static final String FREQ_FILE_EXTENSION = ".freq";
@@ -350,6 +355,11 @@ public final class FormatSpec {
         public static final String SUPPORTS_DYNAMIC_UPDATE_ATTRIBUTE = "SUPPORTS_DYNAMIC_UPDATE";
         public static final String USES_FORGETTING_CURVE_ATTRIBUTE = "USES_FORGETTING_CURVE";
         public static final String ATTRIBUTE_VALUE_TRUE = "1";
+        // Written by native code to detect broken files. These describe the file that has been
+        // read and must not be copied to another file.
+        public static final String BODY_SIZE_ATTRIBUTE = "BODY_SIZE";
+        public static final String HEADER_CHECKSUM_ATTRIBUTE = "HEADER_CHECKSUM";
+        public static final String FLUSH_GENERATION_ATTRIBUTE = "FLUSH_GENERATION";
 
         public static final String DICTIONARY_VERSION_ATTRIBUTE = "version";
         public static final String DICTIONARY_LOCALE_ATTRIBUTE = "locale";
@@ -124,6 +124,9 @@ public final class FusionDictionary implements Iterable<Word> {
         int mCachedSize; // The size, in bytes, of this PtNode.
         int mCachedAddressBeforeUpdate; // The address of this PtNode (before update)
         int mCachedAddressAfterUpdate; // The address of this PtNode (after update)
+        // Whether the addresses in this PtNode take the maximum size whatever their value. This
+        // is set by the address computation when it does not terminate in a few passes.
+        boolean mHasFixedSizeAddresses;
 
         public PtNode(final int[] chars, final ArrayList<WeightedString> shortcutTargets,
                 final ArrayList<WeightedString> bigrams, final int frequency,
@@ -414,6 +417,28 @@ public final class FusionDictionary implements Iterable<Word> {
         add(getCodePoints(word), 0, shortcutTargets, isNotAWord, true /* isBlacklistEntry */);
     }
 
+    /**
+     * Moves all the PtNodes at the root of another dictionary to the root of this dictionary.
+     *
+     * This is used to assemble a dictionary from sub-tries built independently, for example
+     * in parallel. The root PtNodes of the other dictionary must not start with the same
+     * character as any root PtNode of this dictionary, or an exception is thrown. The other
+     * dictionary must not be used after this call.
+     *
+     * @param subDictionary the dictionary whose root PtNodes should be moved.
+     */
+    public void graft(final FusionDictionary subDictionary) {
+        for (final PtNode ptNode : subDictionary.mRootNodeArray.mData) {
+            if (CHARACTER_NOT_FOUND_INDEX != findIndexOfChar(mRootNodeArray, ptNode.mChars[0])) {
+                throw new RuntimeException("Can't graft a PtNode starting with a character that"
+                        + " is already at the root of the dictionary");
+            }
+            mRootNodeArray.mData.add(findInsertionIndex(mRootNodeArray, ptNode.mChars[0]),
+                    ptNode);
+        }
+        subDictionary.mRootNodeArray.mData.clear();
+    }
+
     /**
      * Sanity check for a PtNode array.
      *
@@ -744,93 +769,107 @@ public final class FusionDictionary implements Iterable<Word> {
 
     // Historically, the tails of the words were going to be merged to save space.
     // However, that would prevent the code to search for a specific address in log(n)
-    // time so this was abandoned.
-    // The code is still of interest as it does add some compression to any dictionary
-    // that has no need for attributes. Implementations that does not read attributes should be
-    // able to read a dictionary with merged tails.
-    // Also, the following code does support frequencies, as in, it will only merges
-    // tails that share the same frequency. Though it would result in the above loss of
-    // performance while searching by address, it is still technically possible to merge
-    // tails that contain attributes, but this code does not take that into account - it does
-    // not compare attributes and will merge terminals with different attributes regardless.
+    // time, because searching for the word at an address depends on the node arrays being
+    // written in depth-first order with increasing children addresses. Merging breaks this
+    // order, so tails are only merged in dictionaries that have no bigrams, which are the only
+    // attributes referring to other words by address. Readers that do not look up words by
+    // address can read a dictionary with merged tails.
+    // Two node arrays are only merged if they are identical, including frequencies,
+    // shortcuts and flags, so merging never changes the set of words in the dictionary.
+    // The merged dictionary can only be written in a format without parent addresses or
+    // terminal ids, that is, version 2 or 3 without dynamic update support. Words must not
+    // be added to the dictionary after tails have been merged.
     public void mergeTails() {
-        MakedictLog.i("Do not merge tails");
-        return;
-
-//        MakedictLog.i("Merging PtNodes. Number of PtNodes : " + countPtNodes(root));
-//        MakedictLog.i("Number of PtNodes : " + countPtNodes(root));
-//
-//        final HashMap<String, ArrayList<PtNodeArray>> repository =
-//                  new HashMap<String, ArrayList<PtNodeArray>>();
-//        mergeTailsInner(repository, root);
-//
-//        MakedictLog.i("Number of different pseudohashes : " + repository.size());
-//        int size = 0;
-//        for (ArrayList<PtNodeArray> a : repository.values()) {
-//            size += a.size();
-//        }
-//        MakedictLog.i("Number of nodes after merge : " + (1 + size));
-//        MakedictLog.i("Recursively seen nodes : " + countNodes(root));
+        if (hasBigrams()) {
+            MakedictLog.i("Do not merge tails : the dictionary has bigrams");
+            return;
+        }
+        MakedictLog.i("Merging tails. Number of node arrays : "
+                + countNodeArrays(mRootNodeArray));
+        final HashMap<PtNodeArrayKey, PtNodeArray> repository =
+                new HashMap<PtNodeArrayKey, PtNodeArray>();
+        mergeTailsInner(repository, mRootNodeArray);
+        MakedictLog.i("Number of different node arrays after merge : " + (1 + repository.size()));
     }
 
-    // The following methods are used by the deactivated mergeTails()
-//   private static boolean isEqual(PtNodeArray a, PtNodeArray b) {
-//       if (null == a && null == b) return true;
-//       if (null == a || null == b) return false;
-//       if (a.data.size() != b.data.size()) return false;
-//       final int size = a.data.size();
-//       for (int i = size - 1; i >= 0; --i) {
-//           PtNode aPtNode = a.data.get(i);
-//           PtNode bPtNode = b.data.get(i);
-//           if (aPtNode.frequency != bPtNode.frequency) return false;
-//           if (aPtNode.alternates == null && bPtNode.alternates != null) return false;
-//           if (aPtNode.alternates != null && !aPtNode.equals(bPtNode.alternates)) return false;
-//           if (!Arrays.equals(aPtNode.chars, bPtNode.chars)) return false;
-//           if (!isEqual(aPtNode.children, bPtNode.children)) return false;
-//       }
-//       return true;
-//   }
-
-//   static private HashMap<String, ArrayList<PtNodeArray>> mergeTailsInner(
-//           final HashMap<String, ArrayList<PtNodeArray>> map, final PtNodeArray nodeArray) {
-//       final ArrayList<PtNode> branches = nodeArray.data;
-//       final int nodeSize = branches.size();
-//       for (int i = 0; i < nodeSize; ++i) {
-//           PtNode ptNode = branches.get(i);
-//           if (null != ptNode.children) {
-//               String pseudoHash = getPseudoHash(ptNode.children);
-//               ArrayList<PtNodeArray> similarList = map.get(pseudoHash);
-//               if (null == similarList) {
-//                   similarList = new ArrayList<PtNodeArray>();
-//                   map.put(pseudoHash, similarList);
-//               }
-//               boolean merged = false;
-//               for (PtNodeArray similar : similarList) {
-//                   if (isEqual(ptNode.children, similar)) {
-//                       ptNode.children = similar;
-//                       merged = true;
-//                       break;
-//                   }
-//               }
-//               if (!merged) {
-//                   similarList.add(ptNode.children);
-//               }
-//               mergeTailsInner(map, ptNode.children);
-//           }
-//       }
-//       return map;
-//   }
-
-//  private static String getPseudoHash(final PtNodeArray nodeArray) {
-//      StringBuilder s = new StringBuilder();
-//      for (PtNode ptNode : nodeArray.data) {
-//          s.append(ptNode.frequency);
-//          for (int ch : ptNode.chars) {
-//              s.append(Character.toChars(ch));
-//          }
-//      }
-//      return s.toString();
-//  }
+    /**
+     * A structural key for a PtNodeArray whose children have already been merged.
+     *
+     * Since the children are merged before their parent, two node arrays are identical if
+     * their PtNodes have the same contents and the same children instances. The hash code only
+     * needs to be computed once, so finding a node array in the repository takes a time
+     * proportional to its number of PtNodes.
+     */
+    private static final class PtNodeArrayKey {
+        public final PtNodeArray mNodeArray;
+        private final int mHashCode;
+
+        public PtNodeArrayKey(final PtNodeArray nodeArray) {
+            mNodeArray = nodeArray;
+            int hashCode = 0;
+            for (final PtNode ptNode : nodeArray.mData) {
+                hashCode = hashCode * 31 + Arrays.hashCode(new Object[] {
+                        Arrays.hashCode(ptNode.mChars), ptNode.mFrequency, ptNode.mShortcutTargets,
+                        ptNode.mIsNotAWord, ptNode.mIsBlacklistEntry,
+                        System.identityHashCode(ptNode.mChildren) });
+            }
+            mHashCode = hashCode;
+        }
+
+        @Override
+        public int hashCode() {
+            return mHashCode;
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (o == this) return true;
+            if (!(o instanceof PtNodeArrayKey)) return false;
+            final PtNodeArrayKey k = (PtNodeArrayKey)o;
+            if (mHashCode != k.mHashCode) return false;
+            final ArrayList<PtNode> a = mNodeArray.mData;
+            final ArrayList<PtNode> b = k.mNodeArray.mData;
+            if (a.size() != b.size()) return false;
+            for (int i = a.size() - 1; i >= 0; --i) {
+                final PtNode aPtNode = a.get(i);
+                final PtNode bPtNode = b.get(i);
+                if (aPtNode.mFrequency != bPtNode.mFrequency) return false;
+                if (aPtNode.mIsNotAWord != bPtNode.mIsNotAWord) return false;
+                if (aPtNode.mIsBlacklistEntry != bPtNode.mIsBlacklistEntry) return false;
+                if (aPtNode.mChildren != bPtNode.mChildren) return false;
+                if (!Arrays.equals(aPtNode.mChars, bPtNode.mChars)) return false;
+                if (null == aPtNode.mShortcutTargets ? null != bPtNode.mShortcutTargets
+                        : !aPtNode.mShortcutTargets.equals(bPtNode.mShortcutTargets)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Recursively merges the identical node arrays under a node array.
+     *
+     * The children are merged first, so that the key of each node array can compare its
+     * children by identity.
+     *
+     * @param repository the map of already seen node arrays.
+     * @param nodeArray the node array whose descendants should be merged.
+     */
+    private static void mergeTailsInner(final HashMap<PtNodeArrayKey, PtNodeArray> repository,
+            final PtNodeArray nodeArray) {
+        for (final PtNode ptNode : nodeArray.mData) {
+            if (null == ptNode.mChildren) continue;
+            mergeTailsInner(repository, ptNode.mChildren);
+            final PtNodeArrayKey key = new PtNodeArrayKey(ptNode.mChildren);
+            final PtNodeArray similar = repository.get(key);
+            if (null == similar) {
+                repository.put(key, ptNode.mChildren);
+            } else {
+                ptNode.mChildren = similar;
+            }
+        }
+    }
 
     /**
      * Iterator to walk through a dictionary.
@@ -39,6 +39,7 @@ public class Ver3DictEncoder implements DictEncoder {
     private OutputStream mOutStream;
     private byte[] mBuffer;
     private int mPosition;
+    private int mMaxShrinkingPasses = BinaryDictEncoderUtils.MAX_SHRINKING_PASSES;
 
     public Ver3DictEncoder(final File dictFile) {
         mDictFile = dictFile;
@@ -54,12 +55,20 @@ public class Ver3DictEncoder implements DictEncoder {
         mOutStream = outStream;
     }
 
+    /* package for test */ void setMaxShrinkingPassesForTests(final int maxShrinkingPasses) {
+        mMaxShrinkingPasses = maxShrinkingPasses;
+    }
+
     private void openStream() throws FileNotFoundException {
         mOutStream = new FileOutputStream(mDictFile);
     }
 
     private void close() throws IOException {
         if (mOutStream != null) {
+            if (mOutStream instanceof FileOutputStream) {
+                // Make sure the file is on the storage before it's published by renaming.
+                ((FileOutputStream)mOutStream).getFD().sync();
+            }
             mOutStream.close();
             mOutStream = null;
         }
@@ -91,7 +100,9 @@ public class Ver3DictEncoder implements DictEncoder {
         ArrayList<PtNodeArray> flatNodes = BinaryDictEncoderUtils.flattenTree(dict.mRootNodeArray);
 
         MakedictLog.i("Computing addresses...");
-        BinaryDictEncoderUtils.computeAddresses(dict, flatNodes, formatOptions);
+        final BinaryDictEncoderUtils.AddressComputationStats addressComputationStats =
+                BinaryDictEncoderUtils.computeAddresses(dict, flatNodes, formatOptions,
+                        mMaxShrinkingPasses);
         MakedictLog.i("Checking PtNode array...");
         if (MakedictLog.DBG) BinaryDictEncoderUtils.checkFlatPtNodeArrayList(flatNodes);
 
@@ -105,13 +116,37 @@ public class Ver3DictEncoder implements DictEncoder {
         for (PtNodeArray nodeArray : flatNodes) {
             BinaryDictEncoderUtils.writePlacedPtNodeArray(dict, this, nodeArray, formatOptions);
         }
-        if (MakedictLog.DBG) BinaryDictEncoderUtils.showStatistics(flatNodes);
+        if (MakedictLog.DBG) {
+            BinaryDictEncoderUtils.showStatistics(flatNodes, addressComputationStats);
+        }
         mOutStream.write(mBuffer, 0, mPosition);
 
         MakedictLog.i("Done");
         close();
     }
 
+    /**
+     * Writes a single PtNode array to a new buffer. The addresses of the array must have been
+     * computed, with the array at address 0.
+     *
+     * This is used by Ver3StreamingDictEncoder, which writes the dictionary one PtNode array
+     * at a time.
+     *
+     * @param ptNodeArray the PtNode array to write.
+     * @param formatOptions file format options.
+     * @return the buffer holding the encoded PtNode array.
+     */
+    /* package */ byte[] writePtNodeArrayToBuffer(final PtNodeArray ptNodeArray,
+            final FormatOptions formatOptions) {
+        mBuffer = new byte[ptNodeArray.mCachedSize];
+        mPosition = 0;
+        BinaryDictEncoderUtils.writePlacedPtNodeArray(null /* dict */, this, ptNodeArray,
+                formatOptions);
+        final byte[] buffer = mBuffer;
+        mBuffer = null;
+        return buffer;
+    }
+
     @Override
     public void setPosition(final int position) {
         if (mBuffer == null || position < 0 || position >= mBuffer.length) return;
@@ -172,7 +207,7 @@ public class Ver3DictEncoder implements DictEncoder {
                     childrenPos);
         } else {
             mPosition += BinaryDictEncoderUtils.writeChildrenPosition(mBuffer, mPosition,
-                    childrenPos);
+                    childrenPos, BinaryDictEncoderUtils.getAddressSize(ptNode, childrenPos));
         }
     }
 
@@ -206,13 +241,13 @@ public class Ver3DictEncoder implements DictEncoder {
     }
 
     /**
-     * Write a bigram attributes list to mBuffer.
+     * Write the bigram attributes list of a PtNode to mBuffer.
      *
-     * @param bigrams the bigram attributes list.
+     * @param ptNode the PtNode.
      * @param dict the dictionary the node array is a part of (for relative offsets).
      */
-    private void writeBigrams(final ArrayList<WeightedString> bigrams,
-            final FusionDictionary dict) {
+    private void writeBigrams(final PtNode ptNode, final FusionDictionary dict) {
+        final ArrayList<WeightedString> bigrams = ptNode.mBigrams;
         if (bigrams == null) return;
 
         final Iterator<WeightedString> bigramIterator = bigrams.iterator();
@@ -224,12 +259,14 @@ public class Ver3DictEncoder implements DictEncoder {
             final int unigramFrequencyForThisWord = target.mFrequency;
             final int offset = addressOfBigram
                     - (mPosition + FormatSpec.PTNODE_ATTRIBUTE_FLAGS_SIZE);
+            final int offsetSize = BinaryDictEncoderUtils.getAddressSize(ptNode, offset);
             final int bigramFlags = BinaryDictEncoderUtils.makeBigramFlags(bigramIterator.hasNext(),
-                    offset, bigram.mFrequency, unigramFrequencyForThisWord, bigram.mWord);
+                    offset, offsetSize, bigram.mFrequency, unigramFrequencyForThisWord,
+                    bigram.mWord);
             mPosition = BinaryDictEncoderUtils.writeUIntToBuffer(mBuffer, mPosition, bigramFlags,
                     FormatSpec.PTNODE_ATTRIBUTE_FLAGS_SIZE);
             mPosition += BinaryDictEncoderUtils.writeChildrenPosition(mBuffer, mPosition,
-                    Math.abs(offset));
+                    Math.abs(offset), offsetSize);
         }
     }
 
@@ -248,6 +285,6 @@ public class Ver3DictEncoder implements DictEncoder {
         writeFrequency(ptNode.mFrequency);
         writeChildrenPosition(ptNode, formatOptions);
         writeShortcuts(ptNode.mShortcutTargets);
-        writeBigrams(ptNode.mBigrams, dict);
+        writeBigrams(ptNode, dict);
     }
 }
@@ -0,0 +1,511 @@
+/*
+ * Copyright (C) 2013 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.inputmethod.latin.makedict;
+
+import com.android.inputmethod.latin.Constants;
+import com.android.inputmethod.latin.makedict.FormatSpec.FormatOptions;
+import com.android.inputmethod.latin.makedict.FusionDictionary.DictionaryOptions;
+import com.android.inputmethod.latin.makedict.FusionDictionary.PtNode;
+import com.android.inputmethod.latin.makedict.FusionDictionary.PtNodeArray;
+import com.android.inputmethod.latin.makedict.FusionDictionary.WeightedString;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.PriorityQueue;
+
+/**
+ * Writes a version 2 or 3 binary dictionary with bounded memory.
+ *
+ * Unlike Ver3DictEncoder, this does not need the whole FusionDictionary in memory. Words are
+ * added one by one, in any order, and spilled to sorted runs in temporary files. When the
+ * dictionary is written, the runs are merged in reverse code point order and the trie is built
+ * along the way: only the PtNodes on the path of the current word are kept in memory, and each
+ * PtNode array is encoded as soon as all its children are known. Because words come in reverse
+ * order, PtNode arrays are completed in exactly the reverse of the order in which
+ * Ver3DictEncoder lays them out, so copying the encoded arrays backwards produces the same file.
+ *
+ * Bigrams and dynamic update are not supported, because they need the addresses of other
+ * PtNodes. Like Ver3DictEncoder, each PtNode array must be within 16MB of its children.
+ */
+public class Ver3StreamingDictEncoder {
+    public static final int DEFAULT_MAX_WORDS_IN_MEMORY = 1 << 20;
+
+    private static final String TEMP_FILE_PREFIX = "makedict";
+    private static final String RUN_FILE_SUFFIX = ".run";
+    private static final String ARRAYS_FILE_SUFFIX = ".arrays";
+    private static final int PTNODE_ARRAY_LENGTH_SIZE = 4;
+
+    /**
+     * A word as it was added, waiting to be sorted.
+     */
+    private static final class PendingWord {
+        public final int[] mCodePoints;
+        public final int mFrequency;
+        public final ArrayList<WeightedString> mShortcutTargets;
+        public final boolean mIsNotAWord;
+        // Words added with addIfAbsent are only used if the word is not added otherwise.
+        public final boolean mIsOnlyIfAbsent;
+        // The order in which words were added, to merge duplicates in that order.
+        public final long mSequence;
+
+        public PendingWord(final int[] codePoints, final int frequency,
+                final ArrayList<WeightedString> shortcutTargets, final boolean isNotAWord,
+                final boolean isOnlyIfAbsent, final long sequence) {
+            mCodePoints = codePoints;
+            mFrequency = frequency;
+            mShortcutTargets = shortcutTargets;
+            mIsNotAWord = isNotAWord;
+            mIsOnlyIfAbsent = isOnlyIfAbsent;
+            mSequence = sequence;
+        }
+
+        public void writeTo(final DataOutputStream out) throws IOException {
+            out.writeShort(mCodePoints.length);
+            for (final int codePoint : mCodePoints) out.writeInt(codePoint);
+            out.writeByte(mFrequency);
+            out.writeBoolean(mIsNotAWord);
+            out.writeBoolean(mIsOnlyIfAbsent);
+            out.writeLong(mSequence);
+            if (null == mShortcutTargets) {
+                out.writeShort(-1);
+                return;
+            }
+            out.writeShort(mShortcutTargets.size());
+            for (final WeightedString shortcut : mShortcutTargets) {
+                out.writeUTF(shortcut.mWord);
+                out.writeInt(shortcut.mFrequency);
+            }
+        }
+
+        public static PendingWord readFrom(final DataInputStream in) throws IOException {
+            final int length;
+            try {
+                length = in.readShort();
+            } catch (EOFException e) {
+                return null;
+            }
+            final int[] codePoints = new int[length];
+            for (int i = 0; i < length; ++i) codePoints[i] = in.readInt();
+            final int frequency = in.readUnsignedByte();
+            final boolean isNotAWord = in.readBoolean();
+            final boolean isOnlyIfAbsent = in.readBoolean();
+            final long sequence = in.readLong();
+            final int shortcutCount = in.readShort();
+            ArrayList<WeightedString> shortcutTargets = null;
+            if (shortcutCount >= 0) {
+                shortcutTargets = new ArrayList<WeightedString>(shortcutCount);
+                for (int i = 0; i < shortcutCount; ++i) {
+                    final String word = in.readUTF();
+                    shortcutTargets.add(new WeightedString(word, in.readInt()));
+                }
+            }
+            return new PendingWord(codePoints, frequency, shortcutTargets, isNotAWord,
+                    isOnlyIfAbsent, sequence);
+        }
+    }
+
+    /**
+     * Sorts words by decreasing code points, and words that are the same by insertion order.
+     */
+    private static final Comparator<PendingWord> REVERSE_ORDER = new Comparator<PendingWord>() {
+        @Override
+        public int compare(final PendingWord w1, final PendingWord w2) {
+            final int[] a = w1.mCodePoints;
+            final int[] b = w2.mCodePoints;
+            final int length = Math.min(a.length, b.length);
+            for (int i = 0; i < length; ++i) {
+                if (a[i] != b[i]) return a[i] > b[i] ? -1 : 1;
+            }
+            if (a.length != b.length) return a.length > b.length ? -1 : 1;
+            if (w1.mSequence == w2.mSequence) return 0;
+            return w1.mSequence < w2.mSequence ? -1 : 1;
+        }
+    };
+
+    /**
+     * Reads the words of a sorted run file.
+     */
+    private static final class RunReader {
+        private final DataInputStream mIn;
+        public PendingWord mCurrent;
+
+        public RunReader(final File runFile) throws IOException {
+            mIn = new DataInputStream(new BufferedInputStream(new FileInputStream(runFile)));
+            mCurrent = PendingWord.readFrom(mIn);
+        }
+
+        public void advance() throws IOException {
+            mCurrent = PendingWord.readFrom(mIn);
+        }
+
+        public void close() throws IOException {
+            mIn.close();
+        }
+    }
+
+    /**
+     * A PtNode on the path of the current word, whose children are not all known yet.
+     * There is one OpenNode per code point of the word.
+     */
+    private static final class OpenNode {
+        public final int mCodePoint;
+        // The terminal attributes of this node, or null if it is not a terminal.
+        public PtNode mTerminal;
+        // The completed children of this node, in reverse order.
+        public final ArrayList<PtNode> mChildren = new ArrayList<PtNode>();
+
+        public OpenNode(final int codePoint) {
+            mCodePoint = codePoint;
+        }
+    }
+
+    private final File mDictFile;
+    private final File mTempDir;
+    private final int mMaxWordsInMemory;
+    private final ArrayList<PendingWord> mWords = new ArrayList<PendingWord>();
+    private final ArrayList<File> mRunFiles = new ArrayList<File>();
+    private long mSequence = 0;
+
+    // State of the trie building, only used while writing the dictionary.
+    private final ArrayList<OpenNode> mOpenNodes = new ArrayList<OpenNode>();
+    // The size of the subtree of each completed PtNode array, including the array itself.
+    private final IdentityHashMap<PtNodeArray, Integer> mSubtreeSizes =
+            new IdentityHashMap<PtNodeArray, Integer>();
+    private FormatOptions mFormatOptions;
+    private DataOutputStream mArraysOut;
+    private Ver3DictEncoder mArrayEncoder;
+    private int mPtNodeArrayCount;
+
+    /**
+     * Creates an encoder.
+     *
+     * @param dictFile the file to write the dictionary to.
+     * @param tempDir the directory for temporary files, or null for the default one.
+     * @param maxWordsInMemory the number of words to keep in memory before sorting them to a
+     *   temporary file.
+     */
+    public Ver3StreamingDictEncoder(final File dictFile, final File tempDir,
+            final int maxWordsInMemory) {
+        mDictFile = dictFile;
+        mTempDir = tempDir;
+        mMaxWordsInMemory = maxWordsInMemory;
+    }
+
+    /**
+     * Adds a word. Adding the same word several times keeps the highest frequency, merges the
+     * shortcut targets, and only makes it not a word if all the additions are not words.
+     *
+     * @param word the word to add.
+     * @param frequency the frequency of the word, in the range [0..255].
+     * @param shortcutTargets a list of shortcut targets for this word, or null.
+     * @param isNotAWord true if this should not be considered a word (e.g. shortcut only)
+     */
+    public void add(final String word, final int frequency,
+            final ArrayList<WeightedString> shortcutTargets, final boolean isNotAWord)
+            throws IOException {
+        addPendingWord(word, frequency, shortcutTargets, isNotAWord, false /* isOnlyIfAbsent */);
+    }
+
+    /**
+     * Adds a word, unless the same word is also added with {@link #add}, before or after this
+     * call. This is used for entries that only exist for their shortcuts.
+     */
+    public void addIfAbsent(final String word, final int frequency,
+            final ArrayList<WeightedString> shortcutTargets, final boolean isNotAWord)
+            throws IOException {
+        addPendingWord(word, frequency, shortcutTargets, isNotAWord, true /* isOnlyIfAbsent */);
+    }
+
+    private void addPendingWord(final String word, final int frequency,
+            final ArrayList<WeightedString> shortcutTargets, final boolean isNotAWord,
+            final boolean isOnlyIfAbsent) throws IOException {
+        final int[] codePoints = FusionDictionary.getCodePoints(word);
+        if (codePoints.length >= Constants.DICTIONARY_MAX_WORD_LENGTH) {
+            MakedictLog.w("Ignoring a word that is too long: word.length = " + codePoints.length);
+            return;
+        }
+        mWords.add(new PendingWord(codePoints, frequency, shortcutTargets, isNotAWord,
+                isOnlyIfAbsent, mSequence++));
+        if (mWords.size() >= mMaxWordsInMemory) writeRun();
+    }
+
+    private File createTempFile(final String suffix) throws IOException {
+        final File file = File.createTempFile(TEMP_FILE_PREFIX, suffix, mTempDir);
+        file.deleteOnExit();
+        return file;
+    }
+
+    private void writeRun() throws IOException {
+        Collections.sort(mWords, REVERSE_ORDER);
+        final File runFile = createTempFile(RUN_FILE_SUFFIX);
+        mRunFiles.add(runFile);
+        final DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(runFile)));
+        try {
+            for (final PendingWord word : mWords) word.writeTo(out);
+        } finally {
+            out.close();
+        }
+        mWords.clear();
+    }
+
+    /**
+     * Writes the dictionary with all the added words.
+     *
+     * @param options the options of the dictionary.
+     * @param formatOptions file format options. Dynamic update is not supported.
+     */
+    public void writeDictionary(final DictionaryOptions options,
+            final FormatOptions formatOptions) throws IOException, UnsupportedFormatException {
+        if (formatOptions.mVersion > FormatSpec.VERSION3 || formatOptions.mSupportsDynamicUpdate) {
+            throw new UnsupportedFormatException("Streaming is only supported for version 2 and"
+                    + " 3 dictionaries without dynamic update");
+        }
+        mFormatOptions = formatOptions;
+        mArrayEncoder = new Ver3DictEncoder(mDictFile);
+        mPtNodeArrayCount = 0;
+        final File arraysFile = createTempFile(ARRAYS_FILE_SUFFIX);
+        final ArrayList<RunReader> readers = new ArrayList<RunReader>();
+        try {
+            if (!mRunFiles.isEmpty()) {
+                writeRun();
+                for (final File runFile : mRunFiles) readers.add(new RunReader(runFile));
+            } else {
+                Collections.sort(mWords, REVERSE_ORDER);
+            }
+            MakedictLog.i("Building the trie from " + mSequence + " words...");
+            mArraysOut = new DataOutputStream(
+                    new BufferedOutputStream(new FileOutputStream(arraysFile)));
+            try {
+                buildTrie(readers);
+            } finally {
+                mArraysOut.close();
+            }
+            MakedictLog.i("Writing file...");
+            final OutputStream out = new BufferedOutputStream(new FileOutputStream(mDictFile));
+            try {
+                BinaryDictEncoderUtils.writeDictionaryHeader(out,
+                        new FusionDictionary(new PtNodeArray(), options), formatOptions);
+                copyPtNodeArraysBackwards(arraysFile, out);
+            } finally {
+                out.close();
+            }
+            MakedictLog.i("Done : " + mPtNodeArrayCount + " node arrays");
+        } finally {
+            for (final RunReader reader : readers) reader.close();
+            for (final File runFile : mRunFiles) runFile.delete();
+            arraysFile.delete();
+            mRunFiles.clear();
+            mWords.clear();
+            mOpenNodes.clear();
+            mSubtreeSizes.clear();
+        }
+    }
+
+    /**
+     * Merges the sorted words, or the sorted runs if there are any, and adds each word to the
+     * trie. Duplicate words are merged before being added.
+     */
+    private void buildTrie(final ArrayList<RunReader> readers)
+            throws IOException, UnsupportedFormatException {
+        mOpenNodes.add(new OpenNode(Constants.NOT_A_CODE)); // The root
+        final PriorityQueue<RunReader> queue = new PriorityQueue<RunReader>(
+                Math.max(1, readers.size()), new Comparator<RunReader>() {
+                    @Override
+                    public int compare(final RunReader r1, final RunReader r2) {
+                        return REVERSE_ORDER.compare(r1.mCurrent, r2.mCurrent);
+                    }
+                });
+        for (final RunReader reader : readers) {
+            if (null != reader.mCurrent) queue.add(reader);
+        }
+        int index = 0;
+        int[] currentWord = null;
+        PtNode terminal = null;
+        PtNode onlyIfAbsentTerminal = null;
+        while (true) {
+            final PendingWord word;
+            if (readers.isEmpty()) {
+                word = index < mWords.size() ? mWords.get(index++) : null;
+            } else {
+                final RunReader reader = queue.poll();
+                word = null == reader ? null : reader.mCurrent;
+                if (null != reader) {
+                    reader.advance();
+                    if (null != reader.mCurrent) queue.add(reader);
+                }
+            }
+            if (null != currentWord
+                    && (null == word || !Arrays.equals(currentWord, word.mCodePoints))) {
+                addWordToTrie(currentWord, null != terminal ? terminal : onlyIfAbsentTerminal);
+                terminal = null;
+                onlyIfAbsentTerminal = null;
+            }
+            if (null == word) break;
+            currentWord = word.mCodePoints;
+            if (word.mIsOnlyIfAbsent) {
+                if (null == onlyIfAbsentTerminal) onlyIfAbsentTerminal = makeTerminal(word);
+            } else if (null == terminal) {
+                terminal = makeTerminal(word);
+            } else {
+                // Same as adding the exact same word to a FusionDictionary.
+                terminal.update(word.mFrequency, word.mShortcutTargets, null /* bigrams */,
+                        terminal.mIsNotAWord && word.mIsNotAWord, false /* isBlacklistEntry */);
+            }
+        }
+        completeOpenNodes(1);
+        final PtNodeArray root = new PtNodeArray(mOpenNodes.get(0).mChildren);
+        Collections.reverse(root.mData);
+        writePtNodeArray(root);
+    }
+
+    private static PtNode makeTerminal(final PendingWord word) {
+        return new PtNode(word.mCodePoints, word.mShortcutTargets, null /* bigrams */,
+                word.mFrequency, word.mIsNotAWord, false /* isBlacklistEntry */);
+    }
+
+    /**
+     * Adds a word to the trie. Words must be added in reverse order.
+     *
+     * @param codePoints the code points of the word.
+     * @param terminal the terminal attributes of the word.
+     */
+    private void addWordToTrie(final int[] codePoints, final PtNode terminal)
+            throws IOException, UnsupportedFormatException {
+        // mOpenNodes holds the root followed by one node per code point of the previous word.
+        int commonLength = 0;
+        while (commonLength < codePoints.length && commonLength + 1 < mOpenNodes.size()
+                && mOpenNodes.get(commonLength + 1).mCodePoint == codePoints[commonLength]) {
+            ++commonLength;
+        }
+        completeOpenNodes(commonLength + 1);
+        for (int i = commonLength; i < codePoints.length; ++i) {
+            mOpenNodes.add(new OpenNode(codePoints[i]));
+        }
+        mOpenNodes.get(mOpenNodes.size() - 1).mTerminal = terminal;
+    }
+
+    /**
+     * Completes the open nodes deeper than the given depth, and adds each of them to the
+     * children of its parent.
+     */
+    private void completeOpenNodes(final int depth)
+            throws IOException, UnsupportedFormatException {
+        while (mOpenNodes.size() > depth) {
+            final OpenNode node = mOpenNodes.remove(mOpenNodes.size() - 1);
+            mOpenNodes.get(mOpenNodes.size() - 1).mChildren.add(completeOpenNode(node));
+        }
+    }
+
+    /**
+     * Makes the PtNode for an open node whose children are all known.
+     *
+     * A node that is not a terminal and has only one child is merged with this child. Otherwise,
+     * the children are encoded as a PtNode array.
+     */
+    private PtNode completeOpenNode(final OpenNode node)
+            throws IOException, UnsupportedFormatException {
+        final PtNode terminal = node.mTerminal;
+        final ArrayList<PtNode> children = node.mChildren;
+        if (null == terminal && 1 == children.size()) {
+            final PtNode child = children.get(0);
+            final int[] chars = new int[child.mChars.length + 1];
+            chars[0] = node.mCodePoint;
+            System.arraycopy(child.mChars, 0, chars, 1, child.mChars.length);
+            return new PtNode(chars, child.mShortcutTargets, null /* bigrams */,
+                    child.mFrequency, child.mIsNotAWord, child.mIsBlacklistEntry,
+                    child.mChildren);
+        }
+        PtNodeArray childArray = null;
+        if (!children.isEmpty()) {
+            childArray = new PtNodeArray(new ArrayList<PtNode>(children));
+            Collections.reverse(childArray.mData);
+            writePtNodeArray(childArray);
+        }
+        final int[] chars = new int[] { node.mCodePoint };
+        if (null == terminal) {
+            return new PtNode(chars, null /* shortcutTargets */, null /* bigrams */,
+                    PtNode.NOT_A_TERMINAL, false /* isNotAWord */, false /* isBlacklistEntry */,
+                    childArray);
+        }
+        return new PtNode(chars, terminal.mShortcutTargets, null /* bigrams */,
+                terminal.mFrequency, terminal.mIsNotAWord, terminal.mIsBlacklistEntry,
+                childArray);
+    }
+
+    /**
+     * Encodes a PtNode array whose children arrays are all written, and appends it to the
+     * temporary file, followed by its length.
+     *
+     * The array is laid out at address 0, followed by the subtrees of its children in order,
+     * which is how they will be in the final file. Since offsets are relative, the encoded
+     * bytes are the same at the final address.
+     */
+    private void writePtNodeArray(final PtNodeArray ptNodeArray)
+            throws IOException, UnsupportedFormatException {
+        int subtreeSize = BinaryDictEncoderUtils.computeAddressesOfPtNodeArray(ptNodeArray,
+                mSubtreeSizes, mFormatOptions);
+        for (final PtNode ptNode : ptNodeArray.mData) {
+            if (null == ptNode.mChildren) continue;
+            if (BinaryDictEncoderUtils.getChildrenPosition(ptNode, mFormatOptions)
+                    > FormatSpec.UINT24_MAX) {
+                throw new UnsupportedFormatException("A PtNode array is too far from its"
+                        + " children");
+            }
+            subtreeSize += mSubtreeSizes.remove(ptNode.mChildren);
+        }
+        mSubtreeSizes.put(ptNodeArray, subtreeSize);
+        final byte[] bytes = mArrayEncoder.writePtNodeArrayToBuffer(ptNodeArray, mFormatOptions);
+        mArraysOut.write(bytes);
+        mArraysOut.writeInt(bytes.length);
+        ++mPtNodeArrayCount;
+    }
+
+    private static void copyPtNodeArraysBackwards(final File arraysFile, final OutputStream out)
+            throws IOException {
+        final RandomAccessFile in = new RandomAccessFile(arraysFile, "r");
+        try {
+            byte[] buffer = new byte[0];
+            long position = in.length();
+            while (position > 0) {
+                in.seek(position - PTNODE_ARRAY_LENGTH_SIZE);
+                final int length = in.readInt();
+                position -= PTNODE_ARRAY_LENGTH_SIZE + length;
+                if (buffer.length < length) buffer = new byte[length];
+                in.seek(position);
+                in.readFully(buffer, 0, length);
+                out.write(buffer, 0, length);
+            }
+        } finally {
+            in.close();
+        }
+    }
+}
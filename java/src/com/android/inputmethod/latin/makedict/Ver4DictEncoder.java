@@ -253,7 +253,8 @@ public class Ver4DictEncoder implements DictEncoder {
         }
 
         MakedictLog.i("Computing addresses...");
-        BinaryDictEncoderUtils.computeAddresses(dict, flatNodes, formatOptions);
+        final BinaryDictEncoderUtils.AddressComputationStats addressComputationStats =
+                BinaryDictEncoderUtils.computeAddresses(dict, flatNodes, formatOptions);
         if (MakedictLog.DBG) BinaryDictEncoderUtils.checkFlatPtNodeArrayList(flatNodes);
 
         writeTerminalData(flatNodes, terminalCount);
@@ -271,7 +272,7 @@ public class Ver4DictEncoder implements DictEncoder {
             BinaryDictEncoderUtils.writePlacedPtNodeArray(dict, this, nodeArray, formatOptions);
         }
         if (MakedictLog.DBG) {
-            BinaryDictEncoderUtils.showStatistics(flatNodes);
+            BinaryDictEncoderUtils.showStatistics(flatNodes, addressComputationStats);
             MakedictLog.i("has " + terminalCount + " terminals.");
         }
         mTrieOutStream.write(mTrieBuf);
@@ -338,7 +339,8 @@ public class Ver4DictEncoder implements DictEncoder {
                     mTriePos, childrenPos);
         } else {
             mTriePos += BinaryDictEncoderUtils.writeChildrenPosition(mTrieBuf,
-                    mTriePos, childrenPos);
+                    mTriePos, childrenPos,
+                    BinaryDictEncoderUtils.getAddressSize(ptNode, childrenPos));
         }
     }
 
@@ -41,6 +41,8 @@ public final class DebugSettings extends PreferenceFragment
             "use_only_personalization_dictionary_for_debug";
     public static final String PREF_BOOST_PERSONALIZATION_DICTIONARY_FOR_DEBUG =
             "boost_personalization_dictionary_for_debug";
+    public static final String PREF_ENABLE_PARALLEL_EXPANSION = "enable_parallel_expansion";
+    public static final String PREF_ENABLE_PARALLEL_LOOKUP = "enable_parallel_lookup";
     private static final String PREF_READ_EXTERNAL_DICTIONARY = "read_external_dictionary";
     private static final boolean SHOW_STATISTICS_LOGGING = false;
 
@@ -20,7 +20,10 @@ public class NativeSuggestOptions {
     // Need to update suggest_options.h when you add, remove or reorder options.
     private static final int IS_GESTURE = 0;
     private static final int USE_FULL_EDIT_DISTANCE = 1;
-    private static final int OPTIONS_SIZE = 2;
+    private static final int PARALLEL_EXPANSION_WORKER_COUNT = 2;
+    private static final int SEARCH_TIME_BUDGET_MS = 3;
+    private static final int SEARCH_EXPANSION_BUDGET = 4;
+    private static final int OPTIONS_SIZE = 5;
 
     private final int[] mOptions = new int[OPTIONS_SIZE
             + AdditionalFeaturesSettingUtils.ADDITIONAL_FEATURES_SETTINGS_SIZE];
@@ -33,6 +36,18 @@ public class NativeSuggestOptions {
         setBooleanOption(USE_FULL_EDIT_DISTANCE, value);
     }
 
+    public void setParallelExpansionWorkerCount(final int value) {
+        setIntegerOption(PARALLEL_EXPANSION_WORKER_COUNT, value);
+    }
+
+    public void setSearchTimeBudgetMs(final int value) {
+        setIntegerOption(SEARCH_TIME_BUDGET_MS, value);
+    }
+
+    public void setSearchExpansionBudget(final int value) {
+        setIntegerOption(SEARCH_EXPANSION_BUDGET, value);
+    }
+
     public void setAdditionalFeaturesOptions(final int[] additionalOptions) {
         if (additionalOptions == null) {
             return;
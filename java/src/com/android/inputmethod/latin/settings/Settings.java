@@ -369,6 +369,18 @@ public final class Settings implements SharedPreferences.OnSharedPreferenceChang
                 DebugSettings.PREF_BOOST_PERSONALIZATION_DICTIONARY_FOR_DEBUG, false);
     }
 
+    public static int readParallelExpansionWorkerCount(final SharedPreferences prefs) {
+        if (!prefs.getBoolean(DebugSettings.PREF_ENABLE_PARALLEL_EXPANSION, false)) {
+            return 0;
+        }
+        // The calling thread expands a shard too, so one core is left for it.
+        return Math.max(0, Runtime.getRuntime().availableProcessors() - 1);
+    }
+
+    public static boolean readParallelLookupEnabled(final SharedPreferences prefs) {
+        return prefs.getBoolean(DebugSettings.PREF_ENABLE_PARALLEL_LOOKUP, false);
+    }
+
     public void writeLastUsedPersonalizationToken(byte[] token) {
         final String tokenStr = StringUtils.byteArrayToHexString(token);
         mPrefs.edit().putString(PREF_LAST_USED_PERSONALIZATION_TOKEN, tokenStr).apply();
@@ -96,6 +96,8 @@ public final class SettingsValues {
     public final int mSuggestionVisibility;
     public final boolean mBoostPersonalizationDictionaryForDebug;
     public final boolean mUseOnlyPersonalizationDictionaryForDebug;
+    public final int mParallelExpansionWorkerCount;
+    public final boolean mParallelLookupEnabled;
 
     // Setting values for additional features
     public final int[] mAdditionalFeaturesSettingValues =
@@ -177,6 +179,8 @@ public final class SettingsValues {
                 Settings.readBoostPersonalizationDictionaryForDebug(prefs);
         mUseOnlyPersonalizationDictionaryForDebug =
                 Settings.readUseOnlyPersonalizationDictionaryForDebug(prefs);
+        mParallelExpansionWorkerCount = Settings.readParallelExpansionWorkerCount(prefs);
+        mParallelLookupEnabled = Settings.readParallelLookupEnabled(prefs);
     }
 
     // Only for tests
@@ -224,6 +228,8 @@ public final class SettingsValues {
         mIsInternal = false;
         mBoostPersonalizationDictionaryForDebug = false;
         mUseOnlyPersonalizationDictionaryForDebug = false;
+        mParallelExpansionWorkerCount = 0;
+        mParallelLookupEnabled = false;
     }
 
     @UsedForTesting
@@ -33,16 +33,23 @@ import com.android.inputmethod.latin.Dictionary;
 import com.android.inputmethod.latin.SuggestedWords.SuggestedWordInfo;
 import com.android.inputmethod.latin.WordComposer;
 import com.android.inputmethod.latin.spellcheck.AndroidSpellCheckerService.SuggestionsGatherer;
+import com.android.inputmethod.latin.utils.CollectionUtils;
 import com.android.inputmethod.latin.utils.LocaleUtils;
 import com.android.inputmethod.latin.utils.StringUtils;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.Locale;
 
 public abstract class AndroidWordLevelSpellCheckerSession extends Session {
     private static final String TAG = AndroidWordLevelSpellCheckerSession.class.getSimpleName();
     private static final boolean DBG = false;
 
+    // Words up to this length are looked up within one edit rather than two, since short words
+    // are within two edits of too many words.
+    private static final int MAX_LENGTH_FOR_ONE_EDIT = 4;
+
     // Immutable, but need the locale which is not available in the constructor yet
     private DictionaryPool mDictionaryPool;
     // Likewise
@@ -245,6 +252,54 @@ public abstract class AndroidWordLevelSpellCheckerSession extends Session {
         return dict.isValidWord(StringUtils.capitalizeFirstAndDowncaseRest(lowerCaseText, mLocale));
     }
 
+    private static ArrayList<SuggestedWordInfo> getSuggestionsWithProximity(
+            final DictAndKeyboard dictInfo, final String text, final String prevWord) {
+        final WordComposer composer = new WordComposer();
+        final int length = text.length();
+        for (int i = 0; i < length; i = text.offsetByCodePoints(i, 1)) {
+            final int codePoint = text.codePointAt(i);
+            composer.addKeyInfo(codePoint, dictInfo.getKeyboard(codePoint));
+        }
+        return dictInfo.mDictionary.getSuggestions(composer, prevWord,
+                dictInfo.getProximityInfo(), true /* blockOffensiveWords */,
+                null /* additionalFeaturesOptions */);
+    }
+
+    /**
+     * Tells whether the text is made of two words of the dictionary, in which case the proximity
+     * search may suggest them separated by a space, which the edit distance lookup can't.
+     */
+    private static boolean isSplittableIntoTwoWords(final Dictionary dict, final String text) {
+        final int length = text.length();
+        for (int i = 0; i < length; i = text.offsetByCodePoints(i, 1)) {
+            if (i > 0 && dict.isValidWord(text.substring(0, i))
+                    && dict.isValidWord(text.substring(i))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Merges two lists of suggestions, keeping the best score of the words found in both.
+     */
+    private static Collection<SuggestedWordInfo> mergeSuggestions(
+            final ArrayList<SuggestedWordInfo> suggestions1,
+            final ArrayList<SuggestedWordInfo> suggestions2) {
+        final HashMap<String, SuggestedWordInfo> mergedSuggestions =
+                CollectionUtils.newHashMap();
+        for (final SuggestedWordInfo suggestion : suggestions1) {
+            mergedSuggestions.put(suggestion.mWord, suggestion);
+        }
+        for (final SuggestedWordInfo suggestion : suggestions2) {
+            final SuggestedWordInfo mergedSuggestion = mergedSuggestions.get(suggestion.mWord);
+            if (null == mergedSuggestion || mergedSuggestion.mScore < suggestion.mScore) {
+                mergedSuggestions.put(suggestion.mWord, suggestion);
+            }
+        }
+        return mergedSuggestions.values();
+    }
+
     // Note : this must be reentrant
     /**
      * Gets a list of suggestions for a specific string. This returns a list of possible
@@ -311,17 +366,32 @@ public abstract class AndroidWordLevelSpellCheckerSession extends Session {
                     return AndroidSpellCheckerService.getNotInDictEmptySuggestions(
                             false /* reportAsTypo */);
                 }
-                final WordComposer composer = new WordComposer();
-                final int length = text.length();
-                for (int i = 0; i < length; i = text.offsetByCodePoints(i, 1)) {
-                    final int codePoint = text.codePointAt(i);
-                    composer.addKeyInfo(codePoint, dictInfo.getKeyboard(codePoint));
-                }
+                // The word is finished, so it is looked up by the edit distance without the
+                // keyboard proximity, which is much cheaper than the suggestion search. Unlike
+                // the suggestion search, this lookup can't split the word with a space, so the
+                // suggestion search is still run when the word is made of two words of the
+                // dictionary, and the suggestions of both are merged. Words that would need a
+                // space in addition to a correction of either part are not suggested.
+                final int maxEditDistance =
+                        text.codePointCount(0, text.length()) <= MAX_LENGTH_FOR_ONE_EDIT
+                                ? 1 : Dictionary.MAX_EDIT_DISTANCE;
                 // TODO: make a spell checker option to block offensive words or not
-                final ArrayList<SuggestedWordInfo> suggestions =
-                        dictInfo.mDictionary.getSuggestions(composer, prevWord,
-                                dictInfo.getProximityInfo(), true /* blockOffensiveWords */,
-                                null /* additionalFeaturesOptions */);
+                final ArrayList<SuggestedWordInfo> suggestionsWithinEditDistance =
+                        dictInfo.mDictionary.getWordsWithinEditDistance(text, maxEditDistance,
+                                true /* blockOffensiveWords */);
+                final Collection<SuggestedWordInfo> suggestions;
+                if (null == suggestionsWithinEditDistance) {
+                    suggestions = getSuggestionsWithProximity(dictInfo, text, prevWord);
+                } else if (isSplittableIntoTwoWords(dictInfo.mDictionary, text)) {
+                    final ArrayList<SuggestedWordInfo> suggestionsWithProximity =
+                            getSuggestionsWithProximity(dictInfo, text, prevWord);
+                    suggestions = null == suggestionsWithProximity
+                            ? suggestionsWithinEditDistance
+                            : mergeSuggestions(suggestionsWithinEditDistance,
+                                    suggestionsWithProximity);
+                } else {
+                    suggestions = suggestionsWithinEditDistance;
+                }
                 if (suggestions != null) {
                     for (final SuggestedWordInfo suggestion : suggestions) {
                         final String suggestionStr = suggestion.mWord;
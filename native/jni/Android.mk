@@ -57,15 +57,20 @@ LATIN_IME_CORE_SRC_FILES := \
         bloom_filter.cpp \
         dictionary.cpp \
         digraph_utils.cpp \
-        multi_bigram_map.cpp) \
+        levenshtein_automaton_lookup.cpp \
+        multi_bigram_map.cpp \
+        suggestion_results_cache.cpp) \
     $(addprefix suggest/core/layout/, \
         additional_proximity_chars.cpp \
+        key_distance_table.cpp \
         proximity_info.cpp \
         proximity_info_params.cpp \
         proximity_info_state.cpp \
         proximity_info_state_utils.cpp) \
     suggest/core/policy/weighting.cpp \
-    suggest/core/session/dic_traverse_session.cpp \
+    $(addprefix suggest/core/session/, \
+        dic_traverse_session.cpp \
+        expansion_worker_pool.cpp) \
     $(addprefix suggest/policyimpl/dictionary/, \
         bigram/bigram_list_read_write_utils.cpp \
         bigram/dynamic_bigram_list_policy.cpp \
@@ -74,6 +79,7 @@ LATIN_IME_CORE_SRC_FILES := \
         shortcut/shortcut_list_reading_utils.cpp \
         dictionary_structure_with_buffer_policy_factory.cpp \
         dynamic_patricia_trie_gc_event_listeners.cpp \
+        dynamic_patricia_trie_incremental_gc.cpp \
         dynamic_patricia_trie_node_reader.cpp \
         dynamic_patricia_trie_policy.cpp \
         dynamic_patricia_trie_reading_helper.cpp \
@@ -86,6 +92,7 @@ LATIN_IME_CORE_SRC_FILES := \
         buffer_with_extendable_buffer.cpp \
         byte_array_utils.cpp \
         dict_file_writing_utils.cpp \
+        dict_update_journal.cpp \
         forgetting_curve_utils.cpp \
         format_utils.cpp) \
     suggest/policyimpl/gesture/gesture_suggest_policy_factory.cpp \
@@ -95,6 +102,7 @@ LATIN_IME_CORE_SRC_FILES := \
         typing_suggest_policy.cpp \
         typing_traversal.cpp \
         typing_weighting.cpp) \
+    suggest/policyimpl/utils/bit_vector_edit_distance.cpp \
     $(addprefix utils/, \
         autocorrection_threshold_utils.cpp \
         char_utils.cpp \
@@ -43,6 +43,12 @@ static void latinime_Keyboard_release(JNIEnv *env, jclass clazz, jlong proximity
     delete pi;
 }
 
+static jint latinime_Keyboard_getKeyDistanceTableId(JNIEnv *env, jclass clazz,
+        jlong proximityInfo) {
+    const ProximityInfo *const pi = reinterpret_cast<ProximityInfo *>(proximityInfo);
+    return pi ? pi->getKeyDistanceTableId() : 0;
+}
+
 static const JNINativeMethod sMethods[] = {
     {
         const_cast<char *>("setProximityInfoNative"),
@@ -53,6 +59,11 @@ static const JNINativeMethod sMethods[] = {
         const_cast<char *>("releaseProximityInfoNative"),
         const_cast<char *>("(J)V"),
         reinterpret_cast<void *>(latinime_Keyboard_release)
+    },
+    {
+        const_cast<char *>("getKeyDistanceTableIdNative"),
+        const_cast<char *>("(J)I"),
+        reinterpret_cast<void *>(latinime_Keyboard_getKeyDistanceTableId)
     }
 };
 
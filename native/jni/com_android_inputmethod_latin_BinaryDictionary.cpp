@@ -24,6 +24,7 @@
 #include "jni.h"
 #include "jni_common.h"
 #include "suggest/core/dictionary/dictionary.h"
+#include "suggest/core/session/dic_traverse_session.h"
 #include "suggest/core/suggest_options.h"
 #include "suggest/policyimpl/dictionary/dictionary_structure_with_buffer_policy_factory.h"
 #include "suggest/policyimpl/dictionary/utils/dict_file_writing_utils.h"
@@ -129,46 +130,73 @@ static void latinime_BinaryDictionary_flushWithGC(JNIEnv *env, jclass clazz, jlo
     dictionary->flushWithGC(filePathChars);
 }
 
+static bool latinime_BinaryDictionary_runGCIncrementally(JNIEnv *env, jclass clazz,
+        jlong dict, jstring filePath, jint maxPtNodeCount) {
+    Dictionary *dictionary = reinterpret_cast<Dictionary *>(dict);
+    if (!dictionary) return true;
+    const jsize filePathUtf8Length = env->GetStringUTFLength(filePath);
+    char filePathChars[filePathUtf8Length + 1];
+    env->GetStringUTFRegion(filePath, 0, env->GetStringLength(filePath), filePathChars);
+    filePathChars[filePathUtf8Length] = '\0';
+    return dictionary->runGCIncrementally(filePathChars, maxPtNodeCount);
+}
+
 static void latinime_BinaryDictionary_close(JNIEnv *env, jclass clazz, jlong dict) {
     Dictionary *dictionary = reinterpret_cast<Dictionary *>(dict);
     if (!dictionary) return;
     delete dictionary;
 }
 
+// The layout of the buffer of NativeSuggestionResults, in ints. Must be kept in sync with
+// NativeSuggestionResults.java.
+static const int INPUT_CODE_POINTS_OFFSET = 0;
+static const int PREV_WORD_CODE_POINTS_OFFSET = INPUT_CODE_POINTS_OFFSET + MAX_WORD_LENGTH;
+static const int OUTPUT_CODE_POINTS_OFFSET = PREV_WORD_CODE_POINTS_OFFSET + MAX_WORD_LENGTH;
+static const int SCORES_OFFSET = OUTPUT_CODE_POINTS_OFFSET + MAX_WORD_LENGTH * MAX_RESULTS;
+static const int SPACE_INDICES_OFFSET = SCORES_OFFSET + MAX_RESULTS;
+static const int OUTPUT_TYPES_OFFSET = SPACE_INDICES_OFFSET + MAX_RESULTS;
+static const int AUTO_COMMIT_FIRST_WORD_CONFIDENCE_OFFSET = OUTPUT_TYPES_OFFSET + MAX_RESULTS;
+static const int SUGGESTION_RESULTS_BUFFER_SIZE = AUTO_COMMIT_FIRST_WORD_CONFIDENCE_OFFSET + 1;
+
+// The input code points, the previous word and the outputs are in the direct buffer of
+// NativeSuggestionResults, so that they are not copied across JNI. A negative
+// prevWordLength means that there is no previous word.
 static int latinime_BinaryDictionary_getSuggestions(JNIEnv *env, jclass clazz, jlong dict,
         jlong proximityInfo, jlong dicTraverseSession, jintArray xCoordinatesArray,
         jintArray yCoordinatesArray, jintArray timesArray, jintArray pointerIdsArray,
-        jintArray inputCodePointsArray, jint inputSize, jint commitPoint, jintArray suggestOptions,
-        jintArray prevWordCodePointsForBigrams, jintArray outputCodePointsArray,
-        jintArray scoresArray, jintArray spaceIndicesArray, jintArray outputTypesArray,
-        jintArray outputAutoCommitFirstWordConfidenceArray) {
+        jint inputSize, jint commitPoint, jintArray suggestOptions, jint prevWordLength,
+        jint cancelRequestCount, jobject resultsBuffer) {
     Dictionary *dictionary = reinterpret_cast<Dictionary *>(dict);
     if (!dictionary) return 0;
     ProximityInfo *pInfo = reinterpret_cast<ProximityInfo *>(proximityInfo);
     DicTraverseSession *traverseSession =
             reinterpret_cast<DicTraverseSession *>(dicTraverseSession);
+    int *const buffer = static_cast<int *>(env->GetDirectBufferAddress(resultsBuffer));
+    if (!buffer || env->GetDirectBufferCapacity(resultsBuffer)
+            < static_cast<jlong>(sizeof(buffer[0]) * SUGGESTION_RESULTS_BUFFER_SIZE)) {
+        AKLOGE("Invalid results buffer");
+        ASSERT(false);
+        return 0;
+    }
+    if (prevWordLength > MAX_WORD_LENGTH) {
+        AKLOGE("Invalid prevWordLength: %d", prevWordLength);
+        ASSERT(false);
+        return 0;
+    }
 
     // Input values
     int xCoordinates[inputSize];
     int yCoordinates[inputSize];
     int times[inputSize];
     int pointerIds[inputSize];
-    const jsize inputCodePointsLength = env->GetArrayLength(inputCodePointsArray);
-    int inputCodePoints[inputCodePointsLength];
-    const jsize prevWordCodePointsLength =
-            prevWordCodePointsForBigrams ? env->GetArrayLength(prevWordCodePointsForBigrams) : 0;
-    int prevWordCodePointsInternal[prevWordCodePointsLength];
-    int *prevWordCodePoints = 0;
     env->GetIntArrayRegion(xCoordinatesArray, 0, inputSize, xCoordinates);
     env->GetIntArrayRegion(yCoordinatesArray, 0, inputSize, yCoordinates);
     env->GetIntArrayRegion(timesArray, 0, inputSize, times);
     env->GetIntArrayRegion(pointerIdsArray, 0, inputSize, pointerIds);
-    env->GetIntArrayRegion(inputCodePointsArray, 0, inputCodePointsLength, inputCodePoints);
-    if (prevWordCodePointsForBigrams) {
-        env->GetIntArrayRegion(prevWordCodePointsForBigrams, 0, prevWordCodePointsLength,
-                prevWordCodePointsInternal);
-        prevWordCodePoints = prevWordCodePointsInternal;
-    }
+    int *const inputCodePoints = buffer + INPUT_CODE_POINTS_OFFSET;
+    int *const prevWordCodePoints =
+            prevWordLength >= 0 ? buffer + PREV_WORD_CODE_POINTS_OFFSET : 0;
+    const int prevWordCodePointsLength = max(prevWordLength, 0);
 
     const jsize numberOfOptions = env->GetArrayLength(suggestOptions);
     int options[numberOfOptions];
@@ -176,38 +204,22 @@ static int latinime_BinaryDictionary_getSuggestions(JNIEnv *env, jclass clazz, j
     SuggestOptions givenSuggestOptions(options, numberOfOptions);
 
     // Output values
-    /* By the way, let's check the output array length here to make sure */
-    const jsize outputCodePointsLength = env->GetArrayLength(outputCodePointsArray);
-    if (outputCodePointsLength != (MAX_WORD_LENGTH * MAX_RESULTS)) {
-        AKLOGE("Invalid outputCodePointsLength: %d", outputCodePointsLength);
-        ASSERT(false);
-        return 0;
-    }
-    const jsize scoresLength = env->GetArrayLength(scoresArray);
-    if (scoresLength != MAX_RESULTS) {
-        AKLOGE("Invalid scoresLength: %d", scoresLength);
-        ASSERT(false);
-        return 0;
-    }
-    int outputCodePoints[outputCodePointsLength];
-    int scores[scoresLength];
-    const jsize spaceIndicesLength = env->GetArrayLength(spaceIndicesArray);
-    int spaceIndices[spaceIndicesLength];
-    const jsize outputTypesLength = env->GetArrayLength(outputTypesArray);
-    int outputTypes[outputTypesLength];
-    const jsize outputAutoCommitFirstWordConfidenceLength =
-            env->GetArrayLength(outputAutoCommitFirstWordConfidenceArray);
+    int *const outputCodePoints = buffer + OUTPUT_CODE_POINTS_OFFSET;
+    int *const scores = buffer + SCORES_OFFSET;
+    int *const spaceIndices = buffer + SPACE_INDICES_OFFSET;
+    int *const outputTypes = buffer + OUTPUT_TYPES_OFFSET;
     // We only use the first result, as obviously we will only ever autocommit the first one
-    ASSERT(outputAutoCommitFirstWordConfidenceLength == 1);
-    int outputAutoCommitFirstWordConfidence[outputAutoCommitFirstWordConfidenceLength];
-    memset(outputCodePoints, 0, sizeof(outputCodePoints));
-    memset(scores, 0, sizeof(scores));
-    memset(spaceIndices, 0, sizeof(spaceIndices));
-    memset(outputTypes, 0, sizeof(outputTypes));
-    memset(outputAutoCommitFirstWordConfidence, 0, sizeof(outputAutoCommitFirstWordConfidence));
+    int *const outputAutoCommitFirstWordConfidence =
+            buffer + AUTO_COMMIT_FIRST_WORD_CONFIDENCE_OFFSET;
+    // The outputs are contiguous. The words are read up to the first 0.
+    memset(outputCodePoints, 0, sizeof(buffer[0])
+            * (SUGGESTION_RESULTS_BUFFER_SIZE - OUTPUT_CODE_POINTS_OFFSET));
 
     int count;
     if (givenSuggestOptions.isGesture() || inputSize > 0) {
+        // The cancel requests made after the lookup was requested, while it waited for the
+        // session, cancel it too.
+        traverseSession->onSearchRequested(cancelRequestCount);
         count = dictionary->getSuggestions(pInfo, traverseSession, xCoordinates, yCoordinates,
                 times, pointerIds, inputCodePoints, inputSize, prevWordCodePoints,
                 prevWordCodePointsLength, commitPoint, &givenSuggestOptions, outputCodePoints,
@@ -216,18 +228,36 @@ static int latinime_BinaryDictionary_getSuggestions(JNIEnv *env, jclass clazz, j
         count = dictionary->getBigrams(prevWordCodePoints, prevWordCodePointsLength,
                 outputCodePoints, scores, outputTypes);
     }
-
-    // Copy back the output values
-    env->SetIntArrayRegion(outputCodePointsArray, 0, outputCodePointsLength, outputCodePoints);
-    env->SetIntArrayRegion(scoresArray, 0, scoresLength, scores);
-    env->SetIntArrayRegion(spaceIndicesArray, 0, spaceIndicesLength, spaceIndices);
-    env->SetIntArrayRegion(outputTypesArray, 0, outputTypesLength, outputTypes);
-    env->SetIntArrayRegion(outputAutoCommitFirstWordConfidenceArray, 0,
-            outputAutoCommitFirstWordConfidenceLength, outputAutoCommitFirstWordConfidence);
-
     return count;
 }
 
+// Looks up the words within maxEditDistance of the word and writes them to the output region of
+// resultsBuffer, which has the same layout as for getSuggestions.
+static jint latinime_BinaryDictionary_getWordsWithinEditDistance(JNIEnv *env, jclass clazz,
+        jlong dict, jintArray word, jint maxEditDistance, jobject resultsBuffer) {
+    Dictionary *dictionary = reinterpret_cast<Dictionary *>(dict);
+    if (!dictionary) return 0;
+    int *const buffer = static_cast<int *>(env->GetDirectBufferAddress(resultsBuffer));
+    if (!buffer || env->GetDirectBufferCapacity(resultsBuffer)
+            < static_cast<jlong>(sizeof(buffer[0]) * SUGGESTION_RESULTS_BUFFER_SIZE)) {
+        AKLOGE("Invalid results buffer");
+        ASSERT(false);
+        return 0;
+    }
+    const jsize wordLength = env->GetArrayLength(word);
+    if (wordLength > MAX_WORD_LENGTH) {
+        return 0;
+    }
+    int codePoints[wordLength];
+    env->GetIntArrayRegion(word, 0, wordLength, codePoints);
+    int *const outputCodePoints = buffer + OUTPUT_CODE_POINTS_OFFSET;
+    memset(outputCodePoints, 0, sizeof(buffer[0])
+            * (SUGGESTION_RESULTS_BUFFER_SIZE - OUTPUT_CODE_POINTS_OFFSET));
+    buffer[AUTO_COMMIT_FIRST_WORD_CONFIDENCE_OFFSET] = NOT_A_FIRST_WORD_CONFIDENCE;
+    return dictionary->getWordsWithinEditDistance(codePoints, wordLength, maxEditDistance,
+            outputCodePoints, buffer + SCORES_OFFSET, buffer + OUTPUT_TYPES_OFFSET);
+}
+
 static jint latinime_BinaryDictionary_getProbability(JNIEnv *env, jclass clazz, jlong dict,
         jintArray word) {
     Dictionary *dictionary = reinterpret_cast<Dictionary *>(dict);
@@ -264,6 +294,59 @@ static jfloat latinime_BinaryDictionary_calcNormalizedScore(JNIEnv *env, jclass
             afterCodePoints, afterLength, score);
 }
 
+// Returns whether the first count words packed in an array of codePointsLength code points are
+// within the array. Unlike isValidPackedWords, empty and long words are allowed.
+static bool isValidPackedCandidates(const jint *const wordLengths, const jint count,
+        const jsize codePointsLength) {
+    int totalLength = 0;
+    for (int i = 0; i < count; ++i) {
+        if (wordLengths[i] < 0 || wordLengths[i] > codePointsLength - totalLength) {
+            return false;
+        }
+        totalLength += wordLengths[i];
+    }
+    return true;
+}
+
+// Computes the normalized scores of count words against the same typed word in one call. The
+// code points of the words are packed one after another in afterCodePoints.
+static void latinime_BinaryDictionary_calcNormalizedScores(JNIEnv *env, jclass clazz,
+        jintArray before, jintArray afterCodePoints, jintArray afterLengths, jintArray scores,
+        jint count, jfloatArray outNormalizedScores) {
+    if (count <= 0) {
+        return;
+    }
+    // When the arguments are invalid, outNormalizedScores is left untouched.
+    if (count > env->GetArrayLength(afterLengths) || count > env->GetArrayLength(scores)
+            || count > env->GetArrayLength(outNormalizedScores)) {
+        AKLOGE("Invalid candidate count: %d", count);
+        ASSERT(false);
+        return;
+    }
+    jint *const afterLengthsArray = env->GetIntArrayElements(afterLengths, 0);
+    if (!isValidPackedCandidates(afterLengthsArray, count,
+            env->GetArrayLength(afterCodePoints))) {
+        AKLOGE("Invalid candidate lengths. count: %d", count);
+        ASSERT(false);
+        env->ReleaseIntArrayElements(afterLengths, afterLengthsArray, JNI_ABORT);
+        return;
+    }
+    // The arrays are accessed in place, because their sizes are given by the caller and may be
+    // too large for the stack.
+    const jsize beforeLength = env->GetArrayLength(before);
+    jint *const beforeCodePointsArray = env->GetIntArrayElements(before, 0);
+    jint *const afterCodePointsArray = env->GetIntArrayElements(afterCodePoints, 0);
+    jint *const scoresArray = env->GetIntArrayElements(scores, 0);
+    jfloat *const normalizedScoresArray = env->GetFloatArrayElements(outNormalizedScores, 0);
+    AutocorrectionThresholdUtils::calcNormalizedScores(beforeCodePointsArray, beforeLength,
+            afterCodePointsArray, afterLengthsArray, scoresArray, count, normalizedScoresArray);
+    env->ReleaseFloatArrayElements(outNormalizedScores, normalizedScoresArray, 0);
+    env->ReleaseIntArrayElements(scores, scoresArray, JNI_ABORT);
+    env->ReleaseIntArrayElements(afterCodePoints, afterCodePointsArray, JNI_ABORT);
+    env->ReleaseIntArrayElements(before, beforeCodePointsArray, JNI_ABORT);
+    env->ReleaseIntArrayElements(afterLengths, afterLengthsArray, JNI_ABORT);
+}
+
 static jint latinime_BinaryDictionary_editDistance(JNIEnv *env, jclass clazz, jintArray before,
         jintArray after) {
     jsize beforeLength = env->GetArrayLength(before);
@@ -304,6 +387,129 @@ static void latinime_BinaryDictionary_addBigramWords(JNIEnv *env, jclass clazz,
             word1Length, probability);
 }
 
+// Returns whether the first count words packed in an array of codePointsLength code points are
+// within the array, and each of them has 1 to MAX_WORD_LENGTH code points.
+static bool isValidPackedWords(const jint *const wordLengths, const jint count,
+        const jsize codePointsLength) {
+    int totalLength = 0;
+    for (int i = 0; i < count; ++i) {
+        if (wordLengths[i] <= 0 || wordLengths[i] > MAX_WORD_LENGTH) {
+            return false;
+        }
+        totalLength += wordLengths[i];
+        if (totalLength > codePointsLength) {
+            return false;
+        }
+    }
+    return true;
+}
+
+// Adds the unigrams from startIndex to count - 1 in one call. The code points of all words are
+// packed one after another in codePoints, and wordLengths holds the length of each word. Stops
+// when the dictionary needs GC, and returns the index of the first unigram that has not been
+// added.
+static int latinime_BinaryDictionary_addUnigramWords(JNIEnv *env, jclass clazz, jlong dict,
+        jintArray codePoints, jintArray wordLengths, jintArray probabilities, jint startIndex,
+        jint count) {
+    Dictionary *dictionary = reinterpret_cast<Dictionary *>(dict);
+    if (!dictionary) {
+        return startIndex;
+    }
+    // When the arguments are invalid, nothing is added and count is returned so that the caller
+    // doesn't retry.
+    if (startIndex < 0 || startIndex >= count || count > env->GetArrayLength(wordLengths)
+            || count > env->GetArrayLength(probabilities)) {
+        AKLOGE("Invalid unigram indices. startIndex: %d, count: %d", startIndex, count);
+        ASSERT(false);
+        return count;
+    }
+    jint *const wordLengthsArray = env->GetIntArrayElements(wordLengths, 0);
+    if (!isValidPackedWords(wordLengthsArray, count, env->GetArrayLength(codePoints))) {
+        AKLOGE("Invalid unigram lengths. count: %d", count);
+        ASSERT(false);
+        env->ReleaseIntArrayElements(wordLengths, wordLengthsArray, JNI_ABORT);
+        return count;
+    }
+    jint *const codePointsArray = env->GetIntArrayElements(codePoints, 0);
+    jint *const probabilitiesArray = env->GetIntArrayElements(probabilities, 0);
+    int codePointOffset = 0;
+    for (int i = 0; i < startIndex; ++i) {
+        codePointOffset += wordLengthsArray[i];
+    }
+    int index = startIndex;
+    for (; index < count; ++index) {
+        // At least one entry is added in each call so that the caller always makes progress.
+        if (index > startIndex && dictionary->needsToRunGC(true /* mindsBlockByGC */)) {
+            break;
+        }
+        dictionary->addUnigramWord(codePointsArray + codePointOffset, wordLengthsArray[index],
+                probabilitiesArray[index]);
+        codePointOffset += wordLengthsArray[index];
+    }
+    env->ReleaseIntArrayElements(probabilities, probabilitiesArray, JNI_ABORT);
+    env->ReleaseIntArrayElements(wordLengths, wordLengthsArray, JNI_ABORT);
+    env->ReleaseIntArrayElements(codePoints, codePointsArray, JNI_ABORT);
+    return index;
+}
+
+// Adds the bigrams from startIndex to count - 1 in one call. The arrays are packed in the same
+// way as for addUnigramWords. Returns the index of the first bigram that has not been added.
+static int latinime_BinaryDictionary_addBigramWordsArray(JNIEnv *env, jclass clazz, jlong dict,
+        jintArray word0CodePoints, jintArray word0Lengths, jintArray word1CodePoints,
+        jintArray word1Lengths, jintArray probabilities, jint startIndex, jint count) {
+    Dictionary *dictionary = reinterpret_cast<Dictionary *>(dict);
+    if (!dictionary) {
+        return startIndex;
+    }
+    // When the arguments are invalid, nothing is added and count is returned so that the caller
+    // doesn't retry.
+    if (startIndex < 0 || startIndex >= count || count > env->GetArrayLength(word0Lengths)
+            || count > env->GetArrayLength(word1Lengths)
+            || count > env->GetArrayLength(probabilities)) {
+        AKLOGE("Invalid bigram indices. startIndex: %d, count: %d", startIndex, count);
+        ASSERT(false);
+        return count;
+    }
+    jint *const word0LengthsArray = env->GetIntArrayElements(word0Lengths, 0);
+    jint *const word1LengthsArray = env->GetIntArrayElements(word1Lengths, 0);
+    if (!isValidPackedWords(word0LengthsArray, count, env->GetArrayLength(word0CodePoints))
+            || !isValidPackedWords(word1LengthsArray, count,
+                    env->GetArrayLength(word1CodePoints))) {
+        AKLOGE("Invalid bigram lengths. count: %d", count);
+        ASSERT(false);
+        env->ReleaseIntArrayElements(word1Lengths, word1LengthsArray, JNI_ABORT);
+        env->ReleaseIntArrayElements(word0Lengths, word0LengthsArray, JNI_ABORT);
+        return count;
+    }
+    jint *const word0CodePointsArray = env->GetIntArrayElements(word0CodePoints, 0);
+    jint *const word1CodePointsArray = env->GetIntArrayElements(word1CodePoints, 0);
+    jint *const probabilitiesArray = env->GetIntArrayElements(probabilities, 0);
+    int word0Offset = 0;
+    int word1Offset = 0;
+    for (int i = 0; i < startIndex; ++i) {
+        word0Offset += word0LengthsArray[i];
+        word1Offset += word1LengthsArray[i];
+    }
+    int index = startIndex;
+    for (; index < count; ++index) {
+        // At least one entry is added in each call so that the caller always makes progress.
+        if (index > startIndex && dictionary->needsToRunGC(true /* mindsBlockByGC */)) {
+            break;
+        }
+        dictionary->addBigramWords(word0CodePointsArray + word0Offset, word0LengthsArray[index],
+                word1CodePointsArray + word1Offset, word1LengthsArray[index],
+                probabilitiesArray[index]);
+        word0Offset += word0LengthsArray[index];
+        word1Offset += word1LengthsArray[index];
+    }
+    env->ReleaseIntArrayElements(probabilities, probabilitiesArray, JNI_ABORT);
+    env->ReleaseIntArrayElements(word1Lengths, word1LengthsArray, JNI_ABORT);
+    env->ReleaseIntArrayElements(word1CodePoints, word1CodePointsArray, JNI_ABORT);
+    env->ReleaseIntArrayElements(word0Lengths, word0LengthsArray, JNI_ABORT);
+    env->ReleaseIntArrayElements(word0CodePoints, word0CodePointsArray, JNI_ABORT);
+    return index;
+}
+
 static void latinime_BinaryDictionary_removeBigramWords(JNIEnv *env, jclass clazz, jlong dict,
         jintArray word0, jintArray word1) {
     Dictionary *dictionary = reinterpret_cast<Dictionary *>(dict);
@@ -340,7 +546,7 @@ static jstring latinime_BinaryDictionary_getProperty(JNIEnv *env, jclass clazz,
     char queryChars[queryUtf8Length + 1];
     env->GetStringUTFRegion(query, 0, env->GetStringLength(query), queryChars);
     queryChars[queryUtf8Length] = '\0';
-    static const int GET_PROPERTY_RESULT_LENGTH = 100;
+    static const int GET_PROPERTY_RESULT_LENGTH = 256;
     char resultChars[GET_PROPERTY_RESULT_LENGTH];
     resultChars[0] = '\0';
     dictionary->getProperty(queryChars, resultChars, GET_PROPERTY_RESULT_LENGTH);
@@ -378,11 +584,21 @@ static const JNINativeMethod sMethods[] = {
         const_cast<char *>("(JLjava/lang/String;)V"),
         reinterpret_cast<void *>(latinime_BinaryDictionary_flushWithGC)
     },
+    {
+        const_cast<char *>("runGCIncrementallyNative"),
+        const_cast<char *>("(JLjava/lang/String;I)Z"),
+        reinterpret_cast<void *>(latinime_BinaryDictionary_runGCIncrementally)
+    },
     {
         const_cast<char *>("getSuggestionsNative"),
-        const_cast<char *>("(JJJ[I[I[I[I[III[I[I[I[I[I[I[I)I"),
+        const_cast<char *>("(JJJ[I[I[I[III[IIILjava/nio/ByteBuffer;)I"),
         reinterpret_cast<void *>(latinime_BinaryDictionary_getSuggestions)
     },
+    {
+        const_cast<char *>("getWordsWithinEditDistanceNative"),
+        const_cast<char *>("(J[IILjava/nio/ByteBuffer;)I"),
+        reinterpret_cast<void *>(latinime_BinaryDictionary_getWordsWithinEditDistance)
+    },
     {
         const_cast<char *>("getProbabilityNative"),
         const_cast<char *>("(J[I)I"),
@@ -398,6 +614,11 @@ static const JNINativeMethod sMethods[] = {
         const_cast<char *>("([I[II)F"),
         reinterpret_cast<void *>(latinime_BinaryDictionary_calcNormalizedScore)
     },
+    {
+        const_cast<char *>("calcNormalizedScoresNative"),
+        const_cast<char *>("([I[I[I[II[F)V"),
+        reinterpret_cast<void *>(latinime_BinaryDictionary_calcNormalizedScores)
+    },
     {
         const_cast<char *>("editDistanceNative"),
         const_cast<char *>("([I[I)I"),
@@ -413,6 +634,16 @@ static const JNINativeMethod sMethods[] = {
         const_cast<char *>("(J[I[II)V"),
         reinterpret_cast<void *>(latinime_BinaryDictionary_addBigramWords)
     },
+    {
+        const_cast<char *>("addUnigramWordsNative"),
+        const_cast<char *>("(J[I[I[III)I"),
+        reinterpret_cast<void *>(latinime_BinaryDictionary_addUnigramWords)
+    },
+    {
+        const_cast<char *>("addBigramWordsArrayNative"),
+        const_cast<char *>("(J[I[I[I[I[III)I"),
+        reinterpret_cast<void *>(latinime_BinaryDictionary_addBigramWordsArray)
+    },
     {
         const_cast<char *>("removeBigramWordsNative"),
         const_cast<char *>("(J[I[I)V"),
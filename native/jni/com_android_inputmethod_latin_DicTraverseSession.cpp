@@ -51,6 +51,16 @@ static void latinime_releaseDicTraverseSession(JNIEnv *env, jclass clazz, jlong
     DicTraverseSession::releaseSessionInstance(ts);
 }
 
+// Called while getSuggestions may be running on this session on another thread.
+static void latinime_cancelDicTraverseSession(JNIEnv *env, jclass clazz, jlong traverseSession,
+        jint cancelRequestCount) {
+    DicTraverseSession *ts = reinterpret_cast<DicTraverseSession *>(traverseSession);
+    if (!ts) {
+        return;
+    }
+    ts->requestCancel(cancelRequestCount);
+}
+
 static const JNINativeMethod sMethods[] = {
     {
         const_cast<char *>("setDicTraverseSessionNative"),
@@ -66,6 +76,11 @@ static const JNINativeMethod sMethods[] = {
         const_cast<char *>("releaseDicTraverseSessionNative"),
         const_cast<char *>("(J)V"),
         reinterpret_cast<void *>(latinime_releaseDicTraverseSession)
+    },
+    {
+        const_cast<char *>("cancelDicTraverseSessionNative"),
+        const_cast<char *>("(JI)V"),
+        reinterpret_cast<void *>(latinime_cancelDicTraverseSession)
     }
 };
 
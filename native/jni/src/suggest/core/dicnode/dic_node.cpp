@@ -18,6 +18,10 @@
 
 namespace latinime {
 
+#ifdef FLAG_DO_PROFILE
+int DicNodeProfiler::sDicNodeCopyCount = 0;
+#endif
+
 DicNode::DicNode(const DicNode &dicNode)
         :
 #if DEBUG_DICT
@@ -26,7 +30,7 @@ DicNode::DicNode(const DicNode &dicNode)
           mDicNodeProperties(dicNode.mDicNodeProperties), mDicNodeState(dicNode.mDicNodeState),
           mIsCachedForNextSuggestion(dicNode.mIsCachedForNextSuggestion), mIsUsed(dicNode.mIsUsed),
           mReleaseListener(0) {
-    /* empty */
+    PROF_DIC_NODE_COPY;
 }
 
 DicNode &DicNode::operator=(const DicNode &dicNode) {
@@ -38,6 +42,7 @@ DicNode &DicNode::operator=(const DicNode &dicNode) {
     mIsCachedForNextSuggestion = dicNode.mIsCachedForNextSuggestion;
     mIsUsed = dicNode.mIsUsed;
     mReleaseListener = dicNode.mReleaseListener;
+    PROF_DIC_NODE_COPY;
     return *this;
 }
 
@@ -105,6 +105,7 @@ class DicNode {
         mDicNodeProperties.init(&dicNode->mDicNodeProperties);
         mDicNodeState.init(&dicNode->mDicNodeState);
         PROF_NODE_COPY(&dicNode->mProfiler, mProfiler);
+        PROF_DIC_NODE_COPY;
     }
 
     // Init for root with prevWordNodePos which is used for bigram
@@ -155,6 +156,7 @@ class DicNode {
         mDicNodeProperties.init(&parentNode->mDicNodeProperties, c);
         mDicNodeState.init(&parentNode->mDicNodeState);
         PROF_NODE_COPY(&parentNode->mProfiler, mProfiler);
+        PROF_DIC_NODE_COPY;
     }
 
     void initAsChild(const DicNode *const dicNode, const int pos, const int childrenPos,
@@ -171,6 +173,7 @@ class DicNode {
         mDicNodeState.init(&dicNode->mDicNodeState, mergedNodeCodePointCount,
                 mergedNodeCodePoints);
         PROF_NODE_COPY(&dicNode->mProfiler, mProfiler);
+        PROF_DIC_NODE_COPY;
     }
 
     AK_FORCE_INLINE void remove() {
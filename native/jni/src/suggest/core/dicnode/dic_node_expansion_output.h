@@ -0,0 +1,142 @@
+/*
+ * Copyright (C) 2013 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+#ifndef LATINIME_DIC_NODE_EXPANSION_OUTPUT_H
+#define LATINIME_DIC_NODE_EXPANSION_OUTPUT_H
+
+#include <stdint.h>
+#include <vector>
+
+#include "defines.h"
+#include "suggest/core/dicnode/dic_node.h"
+#include "suggest/core/dicnode/dic_node_vector.h"
+#include "suggest/core/dicnode/dic_nodes_cache.h"
+
+namespace latinime {
+
+class MultiBigramMap;
+
+/*
+ * Destination of the dicNodes created by expanding active dicNodes. For serial expansion, the
+ * dicNodes are pushed to the DicNodesCache directly. For parallel expansion, each shard records
+ * them, and the records are replayed to the DicNodesCache in the order of the shards. As the
+ * priority queues receive the same dicNodes in the same order as the serial expansion, the result
+ * is identical.
+ *
+ * This also keeps the vectors for the children of the dicNodes being expanded. They are reused for
+ * all the expansions in the session, so that the search doesn't allocate memory in the steady
+ * state.
+ */
+class DicNodeExpansionOutput {
+ public:
+    DicNodeExpansionOutput()
+            : mDicNodesCache(0), mMultiBigramMap(0), mRecordedDicNodes(),
+              mRecordedDicNodeTypes(), mChildDicNodes(), mCorrectionChildDicNodes(),
+              mCorrectionGrandchildDicNodes() {}
+    ~DicNodeExpansionOutput() {}
+
+    void initToPushDirectly(DicNodesCache *const dicNodesCache,
+            MultiBigramMap *const multiBigramMap) {
+        mDicNodesCache = dicNodesCache;
+        mMultiBigramMap = multiBigramMap;
+        clearRecords();
+    }
+
+    void initToRecord(MultiBigramMap *const multiBigramMap) {
+        mDicNodesCache = 0;
+        mMultiBigramMap = multiBigramMap;
+        clearRecords();
+    }
+
+    // The bigram map must not be shared with other shards because it is not thread-safe.
+    MultiBigramMap *getMultiBigramMap() const {
+        return mMultiBigramMap;
+    }
+
+    // The children of the dicNode popped from the active queue.
+    DicNodeVector *getChildDicNodes() {
+        return &mChildDicNodes;
+    }
+
+    // The children of a dicNode that is processed as a correction, e.g. an omission.
+    DicNodeVector *getCorrectionChildDicNodes() {
+        return &mCorrectionChildDicNodes;
+    }
+
+    // The grandchildren of a dicNode that is processed as a transposition.
+    DicNodeVector *getCorrectionGrandchildDicNodes() {
+        return &mCorrectionGrandchildDicNodes;
+    }
+
+    AK_FORCE_INLINE void copyPushNextActive(DicNode *dicNode) {
+        if (mDicNodesCache) {
+            mDicNodesCache->copyPushNextActive(dicNode);
+        } else {
+            record(TYPE_NEXT_ACTIVE, dicNode);
+        }
+    }
+
+    AK_FORCE_INLINE void copyPushTerminal(DicNode *dicNode) {
+        if (mDicNodesCache) {
+            mDicNodesCache->copyPushTerminal(dicNode);
+        } else {
+            record(TYPE_TERMINAL, dicNode);
+        }
+    }
+
+    void replayRecords(DicNodesCache *const dicNodesCache) {
+        const int recordCount = static_cast<int>(mRecordedDicNodes.size());
+        for (int i = 0; i < recordCount; ++i) {
+            if (mRecordedDicNodeTypes[i] == TYPE_NEXT_ACTIVE) {
+                dicNodesCache->copyPushNextActive(&mRecordedDicNodes[i]);
+            } else {
+                dicNodesCache->copyPushTerminal(&mRecordedDicNodes[i]);
+            }
+        }
+        clearRecords();
+    }
+
+ private:
+    // An array of instances is kept for the shards. The default constructor is used for it, so
+    // only copying is disallowed.
+    DISALLOW_COPY_AND_ASSIGN(DicNodeExpansionOutput);
+
+    enum RecordType {
+        TYPE_NEXT_ACTIVE = 0,
+        TYPE_TERMINAL
+    };
+
+    DicNodesCache *mDicNodesCache;
+    MultiBigramMap *mMultiBigramMap;
+    // The vectors are reused so that their memory is allocated only once.
+    std::vector<DicNode> mRecordedDicNodes;
+    std::vector<uint8_t> mRecordedDicNodeTypes;
+    DicNodeVector mChildDicNodes;
+    DicNodeVector mCorrectionChildDicNodes;
+    DicNodeVector mCorrectionGrandchildDicNodes;
+
+    AK_FORCE_INLINE void record(const RecordType type, const DicNode *const dicNode) {
+        mRecordedDicNodes.push_back(*dicNode);
+        mRecordedDicNodeTypes.push_back(static_cast<uint8_t>(type));
+    }
+
+    void clearRecords() {
+        mRecordedDicNodes.clear();
+        mRecordedDicNodeTypes.clear();
+    }
+};
+} // namespace latinime
+#endif // LATINIME_DIC_NODE_EXPANSION_OUTPUT_H
@@ -30,7 +30,8 @@ class DicNodePriorityQueue : public DicNodeReleaseListener {
  public:
     AK_FORCE_INLINE explicit DicNodePriorityQueue(const int capacity)
             : mCapacity(capacity), mMaxSize(capacity), mDicNodesBuf(),
-              mUnusedNodeIndices(), mNextUnusedNodeId(0), mDicNodesQueue() {
+              mUnusedNodeIndices(), mNextUnusedNodeId(0), mDicNodesQueue(),
+              mOverflowCount(0) {
         mDicNodesBuf.resize(mCapacity + 1);
         mUnusedNodeIndices.resize(mCapacity + 1);
         clearAndResizeToCapacity();
@@ -47,6 +48,12 @@ class DicNodePriorityQueue : public DicNodeReleaseListener {
         return mMaxSize;
     }
 
+    // The number of dic nodes dropped or evicted because the queue was full since the queue was
+    // created. This is never reset, since queues are cleared and swapped during a search.
+    int getOverflowCount() const {
+        return mOverflowCount;
+    }
+
     AK_FORCE_INLINE void setMaxSize(const int maxSize) {
         ASSERT(maxSize <= mCapacity);
         mMaxSize = min(maxSize, mCapacity);
@@ -134,6 +141,7 @@ class DicNodePriorityQueue : public DicNodeReleaseListener {
     std::vector<int> mUnusedNodeIndices;
     int mNextUnusedNodeId;
     DicNodesQueue mDicNodesQueue;
+    int mOverflowCount;
 
     inline bool isFull(const int maxSize) const {
         return getSize() >= maxSize;
@@ -184,6 +192,7 @@ class DicNodePriorityQueue : public DicNodeReleaseListener {
             mDicNodesQueue.push(dicNode);
             return dicNode;
         }
+        ++mOverflowCount;
         if (betterThanWorstDicNode(dicNode)) {
             pop();
             mDicNodesQueue.push(dicNode);
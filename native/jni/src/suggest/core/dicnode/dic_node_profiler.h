@@ -55,10 +55,39 @@
 #define PROF_NODE_COPY(src, dest)
 #endif
 
+#ifdef FLAG_DO_PROFILE
+// Counts the DicNode copies of all threads. Suggest outputs the number of copied bytes per query.
+#define PROF_DIC_NODE_COPY DicNodeProfiler::onDicNodeCopied()
+#define PROF_DIC_NODE_COPY_RESET DicNodeProfiler::resetDicNodeCopyCount()
+#define PROF_DIC_NODE_COPY_OUT(dicNodeSize) \
+        AKLOGI("Copied %d DicNodes, %d bytes.", DicNodeProfiler::getDicNodeCopyCount(), \
+                DicNodeProfiler::getDicNodeCopyCount() * static_cast<int>(dicNodeSize))
+#else
+#define PROF_DIC_NODE_COPY
+#define PROF_DIC_NODE_COPY_RESET
+#define PROF_DIC_NODE_COPY_OUT(dicNodeSize)
+#endif
+
 namespace latinime {
 
 class DicNodeProfiler {
  public:
+#ifdef FLAG_DO_PROFILE
+    static void onDicNodeCopied() {
+        __sync_fetch_and_add(&sDicNodeCopyCount, 1);
+    }
+
+    static void resetDicNodeCopyCount() {
+        sDicNodeCopyCount = 0;
+    }
+
+    static int getDicNodeCopyCount() {
+        return sDicNodeCopyCount;
+    }
+
+    static int sDicNodeCopyCount;
+#endif
+
 #if DEBUG_DICT
     AK_FORCE_INLINE DicNodeProfiler()
             : mProfOmission(0), mProfInsertion(0), mProfTransposition(0),
@@ -24,6 +24,9 @@
 
 namespace latinime {
 
+// The DicNode instances are kept when the vector is cleared and re-initialized when they are pushed
+// again, so that a vector that is reused doesn't allocate memory or copy DicNodes once it has
+// grown.
 class DicNodeVector {
  public:
 #ifdef FLAG_DBG
@@ -32,10 +35,11 @@ class DicNodeVector {
 #else
     static const int DEFAULT_NODES_SIZE_FOR_OPTIMIZATION = 60;
 #endif
-    AK_FORCE_INLINE DicNodeVector() : mDicNodes(0), mLock(false), mEmptyNode() {}
+    AK_FORCE_INLINE DicNodeVector() : mDicNodes(0), mSize(0), mLock(false), mEmptyNode() {}
 
     // Specify the capacity of the vector
-    AK_FORCE_INLINE DicNodeVector(const int size) : mDicNodes(0), mLock(false), mEmptyNode() {
+    AK_FORCE_INLINE DicNodeVector(const int size)
+            : mDicNodes(0), mSize(0), mLock(false), mEmptyNode() {
         mDicNodes.reserve(size);
     }
 
@@ -43,23 +47,26 @@ class DicNodeVector {
     AK_FORCE_INLINE ~DicNodeVector() {}
 
     AK_FORCE_INLINE void clear() {
-        mDicNodes.clear();
+        mSize = 0;
         mLock = false;
     }
 
+    void reserve(const int size) {
+        mDicNodes.reserve(size);
+    }
+
     int getSizeAndLock() {
         mLock = true;
-        return static_cast<int>(mDicNodes.size());
+        return mSize;
     }
 
     bool exceeds(const size_t limit) const {
-        return mDicNodes.size() >= limit;
+        return static_cast<size_t>(mSize) >= limit;
     }
 
     void pushPassingChild(DicNode *dicNode) {
         ASSERT(!mLock);
-        mDicNodes.push_back(mEmptyNode);
-        mDicNodes.back().initAsPassingChild(dicNode);
+        pushDicNode()->initAsPassingChild(dicNode);
     }
 
     void pushLeavingChild(const DicNode *const dicNode, const int pos, const int childrenPos,
@@ -67,27 +74,35 @@ class DicNodeVector {
             const bool isBlacklistedOrNotAWord, const uint16_t mergedNodeCodePointCount,
             const int *const mergedNodeCodePoints) {
         ASSERT(!mLock);
-        mDicNodes.push_back(mEmptyNode);
-        mDicNodes.back().initAsChild(dicNode, pos, childrenPos, probability, isTerminal,
+        pushDicNode()->initAsChild(dicNode, pos, childrenPos, probability, isTerminal,
                 hasChildren, isBlacklistedOrNotAWord, mergedNodeCodePointCount,
                 mergedNodeCodePoints);
     }
 
     DicNode *operator[](const int id) {
-        ASSERT(id < static_cast<int>(mDicNodes.size()));
+        ASSERT(id < mSize);
         return &mDicNodes[id];
     }
 
     DicNode *front() {
-        ASSERT(1 <= static_cast<int>(mDicNodes.size()));
+        ASSERT(1 <= mSize);
         return &mDicNodes[0];
     }
 
  private:
     DISALLOW_COPY_AND_ASSIGN(DicNodeVector);
+    // mDicNodes may have more elements than mSize. They are reused by the following pushes.
     std::vector<DicNode> mDicNodes;
+    int mSize;
     bool mLock;
     DicNode mEmptyNode;
+
+    AK_FORCE_INLINE DicNode *pushDicNode() {
+        if (mSize == static_cast<int>(mDicNodes.size())) {
+            mDicNodes.push_back(mEmptyNode);
+        }
+        return &mDicNodes[mSize++];
+    }
 };
 } // namespace latinime
 #endif // LATINIME_DIC_NODE_VECTOR_H
@@ -27,6 +27,8 @@ namespace latinime {
 const int DicNodesCache::LARGE_PRIORITY_QUEUE_CAPACITY = 310;
 // Capacity for reducing memory footprint.
 const int DicNodesCache::SMALL_PRIORITY_QUEUE_CAPACITY = 100;
+// The dicNodes are cached when the input index is this much behind the input size.
+const int DicNodesCache::CACHE_BACK_LENGTH = 3;
 
 /**
  * Truncates all of the dicNodes so that they start at the given commit point.
@@ -61,4 +63,85 @@ DicNode *DicNodesCache::setCommitPoint(int commitPoint) {
     mInputIndex -= commitPoint;
     return topDicNode;
 }
+
+void DicNodesCache::discardInvalidFrontierSnapshots(const int unchangedInputSize) {
+    while (mFrontierSnapshotCount > 0
+            && mFrontierSnapshotInputIndices[mFrontierSnapshotCount - 1] + CACHE_BACK_LENGTH
+                    > unchangedInputSize) {
+        --mFrontierSnapshotCount;
+    }
+}
+
+int DicNodesCache::restoreLatestFrontierSnapshot() {
+    if (mFrontierSnapshotCount == 0) {
+        return 0;
+    }
+    const int top = mFrontierSnapshotCount - 1;
+    std::vector<DicNode> *const snapshot = &mFrontierSnapshots[top];
+    for (std::vector<DicNode>::iterator it = snapshot->begin(); it != snapshot->end(); ++it) {
+        mActiveDicNodes->copyPush(&*it);
+    }
+    // The snapshot is kept since it is still valid. It is replaced if the search passes the
+    // cache border at the same input index.
+    mInputIndex = mFrontierSnapshotInputIndices[top];
+    mLastCachedInputIndex = NOT_AN_INDEX;
+    return activeSize();
+}
+
+void DicNodesCache::narrowActiveDicNodes(const int maxSize) {
+    if (mNarrowedInputIndex == NOT_AN_INDEX) {
+        mNarrowedInputIndex = mInputIndex;
+        mNextActiveMaxSizeBeforeNarrowing = mNextActiveDicNodes->getMaxSize();
+    }
+    while (mActiveDicNodes->getSize() > maxSize) {
+        // The top of the queue is the worst dicNode.
+        mActiveDicNodes->copyPop(0);
+    }
+    mNextActiveDicNodes->setMaxSize(min(maxSize, mNextActiveMaxSizeBeforeNarrowing));
+}
+
+void DicNodesCache::finishNarrowedSearch() {
+    if (mNarrowedInputIndex == NOT_AN_INDEX) {
+        return;
+    }
+    mNextActiveDicNodes->setMaxSize(mNextActiveMaxSizeBeforeNarrowing);
+    if (mLastCachedInputIndex >= mNarrowedInputIndex) {
+        mCachedDicNodesForContinuousSuggestion->clear();
+    }
+    while (mFrontierSnapshotCount > 0
+            && mFrontierSnapshotInputIndices[mFrontierSnapshotCount - 1] >= mNarrowedInputIndex) {
+        --mFrontierSnapshotCount;
+    }
+    mNarrowedInputIndex = NOT_AN_INDEX;
+}
+
+void DicNodesCache::abortSearch() {
+    if (mCachingInputIndex == mInputIndex) {
+        mCachedDicNodesForContinuousSuggestion->clear();
+        while (mFrontierSnapshotCount > 0
+                && mFrontierSnapshotInputIndices[mFrontierSnapshotCount - 1] >= mInputIndex) {
+            --mFrontierSnapshotCount;
+        }
+    }
+    resetTemporaryCaches();
+}
+
+void DicNodesCache::pushFrontierSnapshot(const int inputIndex) {
+    // Snapshots at the same or later input indices are replaced.
+    while (mFrontierSnapshotCount > 0
+            && mFrontierSnapshotInputIndices[mFrontierSnapshotCount - 1] >= inputIndex) {
+        --mFrontierSnapshotCount;
+    }
+    if (mFrontierSnapshotCount == MAX_FRONTIER_SNAPSHOT_COUNT) {
+        // Drop the oldest snapshot.
+        for (int i = 1; i < MAX_FRONTIER_SNAPSHOT_COUNT; ++i) {
+            mFrontierSnapshots[i - 1].swap(mFrontierSnapshots[i]);
+            mFrontierSnapshotInputIndices[i - 1] = mFrontierSnapshotInputIndices[i];
+        }
+        --mFrontierSnapshotCount;
+    }
+    mFrontierSnapshots[mFrontierSnapshotCount].clear();
+    mFrontierSnapshotInputIndices[mFrontierSnapshotCount] = inputIndex;
+    ++mFrontierSnapshotCount;
+}
 }  // namespace latinime
@@ -18,6 +18,7 @@
 #define LATINIME_DIC_NODES_CACHE_H
 
 #include <stdint.h>
+#include <vector>
 
 #include "defines.h"
 #include "suggest/core/dicnode/dic_node_priority_queue.h"
@@ -41,13 +42,17 @@ class DicNodesCache {
               mNextActiveDicNodes(&mDicNodePriorityQueue1),
               mCachedDicNodesForContinuousSuggestion(&mDicNodePriorityQueue2),
               mTerminalDicNodes(&mDicNodePriorityQueueForTerminal),
-              mInputIndex(0), mLastCachedInputIndex(0) {}
+              mInputIndex(0), mLastCachedInputIndex(0), mCachingInputIndex(NOT_AN_INDEX),
+              mFrontierSnapshotCount(0),
+              mNarrowedInputIndex(NOT_AN_INDEX), mNextActiveMaxSizeBeforeNarrowing(0) {}
 
     AK_FORCE_INLINE virtual ~DicNodesCache() {}
 
     AK_FORCE_INLINE void reset(const int nextActiveSize, const int terminalSize) {
         mInputIndex = 0;
         mLastCachedInputIndex = 0;
+        mCachingInputIndex = NOT_AN_INDEX;
+        mNarrowedInputIndex = NOT_AN_INDEX;
         // We want to use the max capacity for the current active dic node queue.
         mActiveDicNodes->clearAndResizeToCapacity();
         // nextActiveSize is used to limit the next iteration's active dic node size.
@@ -60,6 +65,7 @@ class DicNodesCache {
     }
 
     AK_FORCE_INLINE void continueSearch() {
+        mCachingInputIndex = NOT_AN_INDEX;
         resetTemporaryCaches();
         restoreActiveDicNodesFromCache();
     }
@@ -78,6 +84,12 @@ class DicNodesCache {
     DicNode *setCommitPoint(int commitPoint);
 
     int activeSize() const { return mActiveDicNodes->getSize(); }
+    int getQueueOverflowCount() const {
+        return mDicNodePriorityQueue0.getOverflowCount()
+                + mDicNodePriorityQueue1.getOverflowCount()
+                + mDicNodePriorityQueue2.getOverflowCount()
+                + mDicNodePriorityQueueForTerminal.getOverflowCount();
+    }
     int terminalSize() const { return mTerminalDicNodes->getSize(); }
     bool isLookAheadCorrectionInputIndex(const int inputIndex) const {
         return inputIndex == mInputIndex - 1;
@@ -125,18 +137,60 @@ class DicNodesCache {
     }
 
     AK_FORCE_INLINE bool isCacheBorderForTyping(const int inputSize) const {
-        // TODO: Move this variable to header
-        static const int CACHE_BACK_LENGTH = 3;
         const int cacheInputIndex = inputSize - CACHE_BACK_LENGTH;
         const bool shouldCache = (cacheInputIndex == mInputIndex)
                 && (cacheInputIndex != mLastCachedInputIndex);
         return shouldCache;
     }
 
+    // Also starts a frontier snapshot for the current input index.
     AK_FORCE_INLINE void updateLastCachedInputIndex() {
         mLastCachedInputIndex = mInputIndex;
+        mCachingInputIndex = mInputIndex;
+        pushFrontierSnapshot(mInputIndex);
+    }
+
+    AK_FORCE_INLINE void copyPushFrontierSnapshot(const DicNode *const dicNode) {
+        if (mFrontierSnapshotCount > 0) {
+            mFrontierSnapshots[mFrontierSnapshotCount - 1].push_back(*dicNode);
+        }
+    }
+
+    // Frontier snapshots are the dicNodes cached for continuous suggestion at past cache
+    // borders. Unlike the continuous suggestion cache, they are kept when the input is shortened
+    // or edited, so that backspace and retyping can restart from the longest valid snapshot
+    // instead of the root. A snapshot taken at input index i depends on the first
+    // i + CACHE_BACK_LENGTH input points, so it is discarded when any of them has changed.
+    void discardInvalidFrontierSnapshots(const int unchangedInputSize);
+
+    void discardAllFrontierSnapshots() {
+        mFrontierSnapshotCount = 0;
     }
 
+    bool hasFrontierSnapshot() const {
+        return mFrontierSnapshotCount > 0;
+    }
+
+    // Pushes the latest frontier snapshot to the active dicNodes and moves the input index to the
+    // index of the snapshot. Must be called after reset(). Returns the number of restored
+    // dicNodes.
+    int restoreLatestFrontierSnapshot();
+
+    // Keeps only the best maxSize active dicNodes and limits the next active dicNodes to maxSize
+    // for the rest of the search, so that the search finishes quickly with the best dicNodes
+    // found so far. finishNarrowedSearch() must be called when the search is finished.
+    void narrowActiveDicNodes(const int maxSize);
+
+    // Restores the size limit of the next active dicNodes, and discards the dicNodes cached for
+    // the continuous suggestion and the frontier snapshots since the search was narrowed,
+    // because they lack the dropped dicNodes.
+    void finishNarrowedSearch();
+
+    // Discards the dicNodes of the search, which has been cancelled. If the search was caching
+    // dicNodes at the current input index, the dicNodes cached for the continuous suggestion and
+    // the frontier snapshot at the index are discarded too because they may be incomplete.
+    void abortSearch();
+
  private:
     DISALLOW_COPY_AND_ASSIGN(DicNodesCache);
 
@@ -177,6 +231,8 @@ class DicNodesCache {
 
     static const int LARGE_PRIORITY_QUEUE_CAPACITY;
     static const int SMALL_PRIORITY_QUEUE_CAPACITY;
+    static const int CACHE_BACK_LENGTH;
+    static const int MAX_FRONTIER_SNAPSHOT_COUNT = 4;
 
     const bool mUsesLargeCapacityCache;
     // Instances
@@ -195,6 +251,20 @@ class DicNodesCache {
     DicNodePriorityQueue *mTerminalDicNodes;
     int mInputIndex;
     int mLastCachedInputIndex;
+    // The input index where the current search has started caching dicNodes, or NOT_AN_INDEX.
+    // Unlike mLastCachedInputIndex, this is not the index of the dicNodes restored from the cache
+    // by continueSearch().
+    int mCachingInputIndex;
+    // A stack of frontier snapshots in ascending order of the input index. The vectors are
+    // reused so that their memory is allocated only once.
+    std::vector<DicNode> mFrontierSnapshots[MAX_FRONTIER_SNAPSHOT_COUNT];
+    int mFrontierSnapshotInputIndices[MAX_FRONTIER_SNAPSHOT_COUNT];
+    int mFrontierSnapshotCount;
+    // The input index where the search was narrowed, or NOT_AN_INDEX.
+    int mNarrowedInputIndex;
+    int mNextActiveMaxSizeBeforeNarrowing;
+
+    void pushFrontierSnapshot(const int inputIndex);
 };
 } // namespace latinime
 #endif // LATINIME_DIC_NODES_CACHE_H
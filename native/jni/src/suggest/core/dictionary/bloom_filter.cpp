@@ -18,8 +18,23 @@
 
 namespace latinime {
 
-// Must be smaller than BIGRAM_FILTER_BYTE_SIZE * 8, and preferably prime. 1021 is the largest
-// prime under 128 * 8.
-const int BloomFilter::BIGRAM_FILTER_MODULO = 1021;
+const int BloomFilter::FILTER_BIT_COUNT_PER_ELEMENT = 16;
+// 64 bits, i.e. 8 bytes.
+const int BloomFilter::FILTER_BIT_COUNT_LOG2_MIN = 6;
+const int BloomFilter::FILTER_BIT_COUNT_LOG2_MAX = 16;
+
+void BloomFilter::init(const int elementCount) {
+    if (elementCount <= 0) {
+        mFilter.clear();
+        return;
+    }
+    int bitCountLog2 = FILTER_BIT_COUNT_LOG2_MIN;
+    while (bitCountLog2 < FILTER_BIT_COUNT_LOG2_MAX
+            && (1 << bitCountLog2) < elementCount * FILTER_BIT_COUNT_PER_ELEMENT) {
+        ++bitCountLog2;
+    }
+    mFilter.assign((1 << bitCountLog2) / 8, 0);
+    mHashShift = 32 - bitCountLog2;
+}
 
 } // namespace latinime
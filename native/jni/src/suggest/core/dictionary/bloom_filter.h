@@ -18,6 +18,7 @@
 #define LATINIME_BLOOM_FILTER_H
 
 #include <stdint.h>
+#include <vector>
 
 #include "defines.h"
 
@@ -31,40 +32,65 @@ namespace latinime {
 //   Total 145900.64 (sum of others 145874.30)
 //  always read binary dictionary:
 //   Total 148603.14 (sum of others 148579.90)
+// The filter is sized for the number of elements passed to init(), so that long bigram lists
+// don't saturate it and short lists don't waste memory.
 class BloomFilter {
  public:
-    BloomFilter() {
-        ASSERT(BIGRAM_FILTER_BYTE_SIZE * 8 >= BIGRAM_FILTER_MODULO);
-    }
+    BloomFilter() : mFilter(), mHashShift(0) {}
+
+    // Note that this clears the filter.
+    void init(const int elementCount);
 
     // TODO: uint32_t position
     AK_FORCE_INLINE void setInFilter(const int32_t position) {
-        const uint32_t bucket = static_cast<uint32_t>(position % BIGRAM_FILTER_MODULO);
-        mFilter[bucket >> 3] |= static_cast<uint8_t>(1 << (bucket & 0x7));
+        if (mFilter.empty()) {
+            return;
+        }
+        const uint32_t hash = getHash(position);
+        setBit(hash >> mHashShift);
+        setBit((hash << FILTER_BIT_COUNT_LOG2_MAX) >> mHashShift);
     }
 
     // TODO: uint32_t position
     AK_FORCE_INLINE bool isInFilter(const int32_t position) const {
-        const uint32_t bucket = static_cast<uint32_t>(position % BIGRAM_FILTER_MODULO);
-        return (mFilter[bucket >> 3] & static_cast<uint8_t>(1 << (bucket & 0x7))) != 0;
+        if (mFilter.empty()) {
+            return false;
+        }
+        const uint32_t hash = getHash(position);
+        return isBitSet(hash >> mHashShift)
+                && isBitSet((hash << FILTER_BIT_COUNT_LOG2_MAX) >> mHashShift);
     }
 
  private:
-    // Size, in bytes, of the bloom filter index for bigrams
-    // 128 gives us 1024 buckets. The probability of false positive is (1 - e ** (-kn/m))**k,
-    // where k is the number of hash functions, n the number of bigrams, and m the number of
-    // bits we can test.
-    // At the moment 100 is the maximum number of bigrams for a word with the current
-    // dictionaries, so n = 100. 1024 buckets give us m = 1024.
-    // With 1 hash function, our false positive rate is about 9.3%, which should be enough for
-    // our uses since we are only using this to increase average performance. For the record,
-    // k = 2 gives 3.1% and k = 3 gives 1.6%. With k = 1, making m = 2048 gives 4.8%,
-    // and m = 4096 gives 2.4%.
-    // This is assigned here because it is used for array size.
-    static const int BIGRAM_FILTER_BYTE_SIZE = 128;
-    static const int BIGRAM_FILTER_MODULO;
+    // NOTE: The BloomFilter class doesn't use DISALLOW_COPY_AND_ASSIGN() because its default
+    // copy constructor is needed for use in hash_map.
+
+    // The probability of false positive is (1 - e ** (-kn/m))**k, where k is the number of hash
+    // functions, n the number of elements, and m the number of bits we can test.
+    // With m = 16n and k = 2, our false positive rate is about 1.4%. For the record, the
+    // previous fixed size filter had m = 1024 and k = 1, which gave 9.3% for n = 100 but
+    // saturated for longer lists.
+    static const int FILTER_BIT_COUNT_PER_ELEMENT;
+    // The two bit indices are taken from the upper and the lower halves of the hash, so the
+    // filter can have at most 2 ** 16 bits.
+    static const int FILTER_BIT_COUNT_LOG2_MIN;
+    static const int FILTER_BIT_COUNT_LOG2_MAX;
 
-    uint8_t mFilter[BIGRAM_FILTER_BYTE_SIZE];
+    std::vector<uint8_t> mFilter;
+    int mHashShift;
+
+    static AK_FORCE_INLINE uint32_t getHash(const int32_t position) {
+        // Fibonacci hashing; positions are dictionary offsets, which are far from random.
+        return static_cast<uint32_t>(position) * 0x9E3779B1u;
+    }
+
+    AK_FORCE_INLINE void setBit(const uint32_t bit) {
+        mFilter[bit >> 3] |= static_cast<uint8_t>(1 << (bit & 0x7));
+    }
+
+    AK_FORCE_INLINE bool isBitSet(const uint32_t bit) const {
+        return (mFilter[bit >> 3] & static_cast<uint8_t>(1 << (bit & 0x7))) != 0;
+    }
 };
 } // namespace latinime
 #endif // LATINIME_BLOOM_FILTER_H
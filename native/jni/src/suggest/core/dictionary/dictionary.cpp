@@ -18,10 +18,13 @@
 
 #include "suggest/core/dictionary/dictionary.h"
 
+#include <cstdio>
+#include <cstring>
 #include <stdint.h>
 
 #include "defines.h"
 #include "suggest/core/dictionary/bigram_dictionary.h"
+#include "suggest/core/dictionary/levenshtein_automaton_lookup.h"
 #include "suggest/core/policy/dictionary_header_structure_policy.h"
 #include "suggest/core/policy/dictionary_structure_with_buffer_policy.h"
 #include "suggest/core/session/dic_traverse_session.h"
@@ -34,17 +37,28 @@
 namespace latinime {
 
 const int Dictionary::HEADER_ATTRIBUTE_BUFFER_SIZE = 32;
+// Must be the same as BinaryDictionary.SUGGEST_STATS_QUERY.
+const char *const Dictionary::SUGGEST_STATS_QUERY = "SUGGEST_STATS";
+// Must be the same as BinaryDictionary.SUGGESTION_RESULTS_CACHE_STATS_QUERY.
+const char *const Dictionary::SUGGESTION_RESULTS_CACHE_STATS_QUERY =
+        "SUGGESTION_RESULTS_CACHE_STATS";
+// Must be the same as BinaryDictionary.CANCELLED_SUGGESTION_COUNT_QUERY.
+const char *const Dictionary::CANCELLED_SUGGESTION_COUNT_QUERY = "CANCELLED_SUGGESTION_COUNT";
 
 Dictionary::Dictionary(JNIEnv *env,
         DictionaryStructureWithBufferPolicy *const dictionaryStructureWithBufferPolicy)
         : mDictionaryStructureWithBufferPolicy(dictionaryStructureWithBufferPolicy),
           mBigramDictionary(new BigramDictionary(mDictionaryStructureWithBufferPolicy)),
           mGestureSuggest(new Suggest(GestureSuggestPolicyFactory::getGestureSuggestPolicy())),
-          mTypingSuggest(new Suggest(TypingSuggestPolicyFactory::getTypingSuggestPolicy())) {
+          mTypingSuggest(new Suggest(TypingSuggestPolicyFactory::getTypingSuggestPolicy())),
+          mLastSuggestStats(), mSuggestionResultsCache(), mCancelledSuggestionCount(0),
+          mSharedStateMutex(), mUpdateCount(0) {
+    pthread_mutex_init(&mSharedStateMutex, 0);
     logDictionaryInfo(env);
 }
 
 Dictionary::~Dictionary() {
+    pthread_mutex_destroy(&mSharedStateMutex);
     delete mBigramDictionary;
     delete mGestureSuggest;
     delete mTypingSuggest;
@@ -57,28 +71,46 @@ int Dictionary::getSuggestions(ProximityInfo *proximityInfo, DicTraverseSession
         const SuggestOptions *const suggestOptions, int *outWords, int *frequencies,
         int *spaceIndices, int *outputTypes, int *outputAutoCommitFirstWordConfidence) const {
     int result = 0;
-    if (suggestOptions->isGesture()) {
-        DicTraverseSession::initSessionInstance(
-                traverseSession, this, prevWordCodePoints, prevWordLength, suggestOptions);
-        result = mGestureSuggest->getSuggestions(proximityInfo, traverseSession, xcoordinates,
-                ycoordinates, times, pointerIds, inputCodePoints, inputSize, commitPoint, outWords,
-                frequencies, spaceIndices, outputTypes, outputAutoCommitFirstWordConfidence);
-        if (DEBUG_DICT) {
-            DUMP_RESULT(outWords, frequencies);
-        }
-        return result;
-    } else {
-        DicTraverseSession::initSessionInstance(
-                traverseSession, this, prevWordCodePoints, prevWordLength, suggestOptions);
-        result = mTypingSuggest->getSuggestions(proximityInfo, traverseSession, xcoordinates,
-                ycoordinates, times, pointerIds, inputCodePoints, inputSize, commitPoint,
-                outWords, frequencies, spaceIndices, outputTypes,
-                outputAutoCommitFirstWordConfidence);
-        if (DEBUG_DICT) {
-            DUMP_RESULT(outWords, frequencies);
-        }
+    // Lookups on different sessions may run concurrently. Only the cache and the statistics are
+    // shared between them, and they are accessed with mSharedStateMutex held. The search itself
+    // runs without the mutex.
+    pthread_mutex_lock(&mSharedStateMutex);
+    // mUpdateCount is a part of the key, so that the dictionary updates invalidate the results.
+    mSuggestionResultsCache.setKey(mUpdateCount, proximityInfo, xcoordinates, ycoordinates, times,
+            pointerIds, inputCodePoints, inputSize, prevWordCodePoints, prevWordLength,
+            commitPoint, suggestOptions);
+    if (mSuggestionResultsCache.lookUp(&result, outWords, frequencies, spaceIndices, outputTypes,
+            outputAutoCommitFirstWordConfidence)) {
+        // Nothing has been expanded for this call.
+        mLastSuggestStats.reset();
+        pthread_mutex_unlock(&mSharedStateMutex);
         return result;
     }
+    pthread_mutex_unlock(&mSharedStateMutex);
+    const SuggestInterface *const suggest =
+            suggestOptions->isGesture() ? mGestureSuggest : mTypingSuggest;
+    DicTraverseSession::initSessionInstance(
+            traverseSession, this, prevWordCodePoints, prevWordLength, suggestOptions);
+    result = suggest->getSuggestions(proximityInfo, traverseSession, xcoordinates, ycoordinates,
+            times, pointerIds, inputCodePoints, inputSize, commitPoint, outWords, frequencies,
+            spaceIndices, outputTypes, outputAutoCommitFirstWordConfidence);
+    pthread_mutex_lock(&mSharedStateMutex);
+    mLastSuggestStats = *traverseSession->getSuggestStats();
+    if (mLastSuggestStats.isCancelled()) {
+        ++mCancelledSuggestionCount;
+    } else if (!mLastSuggestStats.isPartial()) {
+        // Another lookup may have set a different key in the meantime.
+        mSuggestionResultsCache.setKey(mUpdateCount, proximityInfo, xcoordinates, ycoordinates,
+                times, pointerIds, inputCodePoints, inputSize, prevWordCodePoints,
+                prevWordLength, commitPoint, suggestOptions);
+        mSuggestionResultsCache.put(result, outWords, frequencies, spaceIndices,
+                outputTypes, outputAutoCommitFirstWordConfidence);
+    }
+    pthread_mutex_unlock(&mSharedStateMutex);
+    if (DEBUG_DICT) {
+        DUMP_RESULT(outWords, frequencies);
+    }
+    return result;
 }
 
 int Dictionary::getBigrams(const int *word, int length, int *outWords, int *frequencies,
@@ -87,6 +119,13 @@ int Dictionary::getBigrams(const int *word, int length, int *outWords, int *freq
     return mBigramDictionary->getPredictions(word, length, outWords, frequencies, outputTypes);
 }
 
+int Dictionary::getWordsWithinEditDistance(const int *word, int length, int maxEditDistance,
+        int *outWords, int *frequencies, int *outputTypes) const {
+    return LevenshteinAutomatonLookup::getWordsWithinEditDistance(
+            mDictionaryStructureWithBufferPolicy, word, length, maxEditDistance, MAX_RESULTS,
+            outWords, frequencies, outputTypes);
+}
+
 int Dictionary::getProbability(const int *word, int length) const {
     int pos = getDictionaryStructurePolicy()->getTerminalNodePositionOfWord(word, length,
             false /* forceLowerCaseSearch */);
@@ -102,17 +141,20 @@ int Dictionary::getBigramProbability(const int *word0, int length0, const int *w
 }
 
 void Dictionary::addUnigramWord(const int *const word, const int length, const int probability) {
+    ++mUpdateCount;
     mDictionaryStructureWithBufferPolicy->addUnigramWord(word, length, probability);
 }
 
 void Dictionary::addBigramWords(const int *const word0, const int length0, const int *const word1,
         const int length1, const int probability) {
+    ++mUpdateCount;
     mDictionaryStructureWithBufferPolicy->addBigramWords(word0, length0, word1, length1,
             probability);
 }
 
 void Dictionary::removeBigramWords(const int *const word0, const int length0,
         const int *const word1, const int length1) {
+    ++mUpdateCount;
     mDictionaryStructureWithBufferPolicy->removeBigramWords(word0, length0, word1, length1);
 }
 
@@ -121,15 +163,39 @@ void Dictionary::flush(const char *const filePath) {
 }
 
 void Dictionary::flushWithGC(const char *const filePath) {
+    ++mUpdateCount;
     mDictionaryStructureWithBufferPolicy->flushWithGC(filePath);
 }
 
+bool Dictionary::runGCIncrementally(const char *const filePath, const int maxPtNodeCount) {
+    ++mUpdateCount;
+    return mDictionaryStructureWithBufferPolicy->runGCIncrementally(filePath, maxPtNodeCount);
+}
+
 bool Dictionary::needsToRunGC(const bool mindsBlockByGC) {
     return mDictionaryStructureWithBufferPolicy->needsToRunGC(mindsBlockByGC);
 }
 
 void Dictionary::getProperty(const char *const query, char *const outResult,
         const int maxResultLength) {
+    if (strncmp(query, SUGGEST_STATS_QUERY, maxResultLength) == 0) {
+        pthread_mutex_lock(&mSharedStateMutex);
+        mLastSuggestStats.dumpToString(outResult, maxResultLength);
+        pthread_mutex_unlock(&mSharedStateMutex);
+        return;
+    }
+    if (strncmp(query, SUGGESTION_RESULTS_CACHE_STATS_QUERY, maxResultLength) == 0) {
+        pthread_mutex_lock(&mSharedStateMutex);
+        mSuggestionResultsCache.dumpStatsToString(outResult, maxResultLength);
+        pthread_mutex_unlock(&mSharedStateMutex);
+        return;
+    }
+    if (strncmp(query, CANCELLED_SUGGESTION_COUNT_QUERY, maxResultLength) == 0) {
+        pthread_mutex_lock(&mSharedStateMutex);
+        snprintf(outResult, maxResultLength, "%d", mCancelledSuggestionCount);
+        pthread_mutex_unlock(&mSharedStateMutex);
+        return;
+    }
     return mDictionaryStructureWithBufferPolicy->getProperty(query, outResult, maxResultLength);
 }
 
@@ -17,10 +17,13 @@
 #ifndef LATINIME_DICTIONARY_H
 #define LATINIME_DICTIONARY_H
 
+#include <pthread.h>
 #include <stdint.h>
 
 #include "defines.h"
 #include "jni.h"
+#include "suggest/core/dictionary/suggestion_results_cache.h"
+#include "suggest/core/session/suggest_stats.h"
 
 namespace latinime {
 
@@ -65,6 +68,11 @@ class Dictionary {
     int getBigrams(const int *word, int length, int *outWords, int *frequencies,
             int *outputTypes) const;
 
+    // Outputs the words within maxEditDistance of the word for the spell checker, in the same
+    // format as getBigrams(). See LevenshteinAutomatonLookup.
+    int getWordsWithinEditDistance(const int *word, int length, int maxEditDistance,
+            int *outWords, int *frequencies, int *outputTypes) const;
+
     int getProbability(const int *word, int length) const;
 
     int getBigramProbability(const int *word0, int length0, const int *word1, int length1) const;
@@ -81,6 +89,8 @@ class Dictionary {
 
     void flushWithGC(const char *const filePath);
 
+    bool runGCIncrementally(const char *const filePath, const int maxPtNodeCount);
+
     bool needsToRunGC(const bool mindsBlockByGC);
 
     void getProperty(const char *const query, char *const outResult,
@@ -90,17 +100,35 @@ class Dictionary {
         return mDictionaryStructureWithBufferPolicy;
     }
 
+    // Returns the number of operations that may have changed the dictionary content or moved
+    // PtNodes. Caches keyed by PtNode positions must be invalidated when this changes.
+    int getUpdateCount() const {
+        return mUpdateCount;
+    }
+
     virtual ~Dictionary();
 
  private:
     DISALLOW_IMPLICIT_CONSTRUCTORS(Dictionary);
 
     static const int HEADER_ATTRIBUTE_BUFFER_SIZE;
+    static const char *const SUGGEST_STATS_QUERY;
+    static const char *const SUGGESTION_RESULTS_CACHE_STATS_QUERY;
+    static const char *const CANCELLED_SUGGESTION_COUNT_QUERY;
 
     DictionaryStructureWithBufferPolicy *const mDictionaryStructureWithBufferPolicy;
     const BigramDictionary *const mBigramDictionary;
     const SuggestInterface *const mGestureSuggest;
     const SuggestInterface *const mTypingSuggest;
+    // Statistics of the last getSuggestions call, returned for SUGGEST_STATS_QUERY.
+    mutable SuggestStats mLastSuggestStats;
+    mutable SuggestionResultsCache mSuggestionResultsCache;
+    // The number of getSuggestions calls that have been cancelled by
+    // DicTraverseSession::requestCancel(), returned for CANCELLED_SUGGESTION_COUNT_QUERY.
+    mutable int mCancelledSuggestionCount;
+    // Guards the three members above, which are shared by the lookups on different sessions.
+    mutable pthread_mutex_t mSharedStateMutex;
+    int mUpdateCount;
 
     void logDictionaryInfo(JNIEnv *const env) const;
 };
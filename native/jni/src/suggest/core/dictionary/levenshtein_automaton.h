@@ -0,0 +1,100 @@
+/*
+ * Copyright (C) 2013 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+#ifndef LATINIME_LEVENSHTEIN_AUTOMATON_H
+#define LATINIME_LEVENSHTEIN_AUTOMATON_H
+
+#include "defines.h"
+#include "utils/char_utils.h"
+
+namespace latinime {
+
+/*
+ * Levenshtein automaton that accepts the strings within maxEditDistance of a word, with the
+ * same distance as DamerauLevenshteinEditDistancePolicy: the restricted Damerau-Levenshtein
+ * distance between the base lower case code points with unit costs.
+ *
+ * The automaton is simulated rather than compiled. A state is a row of the edit distance DP
+ * matrix, with the distances clamped to maxEditDistance + 1, so that the rows are the states of
+ * the deterministic automaton. A transition needs the two previous states because of the
+ * transpositions. This lets a trie traversal keep one state per depth and stop at the first
+ * code point after which no string can be accepted.
+ */
+class LevenshteinAutomaton {
+ public:
+    static const int MAX_EDIT_DISTANCE = 2;
+    // The length of a state.
+    static const int MAX_STATE_LENGTH = MAX_WORD_LENGTH + 1;
+
+    // The word must not be longer than MAX_WORD_LENGTH.
+    LevenshteinAutomaton(const int *const word, const int wordLength, const int maxEditDistance)
+            : mWordLength(min(wordLength, MAX_WORD_LENGTH)),
+              mMaxEditDistance(min(maxEditDistance, MAX_EDIT_DISTANCE)) {
+        for (int i = 0; i < mWordLength; ++i) {
+            mWord[i] = CharUtils::toBaseLowerCase(word[i]);
+        }
+    }
+
+    AK_FORCE_INLINE void initStartState(int *const outState) const {
+        for (int i = 0; i <= mWordLength; ++i) {
+            outState[i] = min(i, mMaxEditDistance + 1);
+        }
+    }
+
+    // Computes the state after the code point of the depth-th code point of a string. The
+    // previous code point and the state before it are only used when depth >= 2. Returns
+    // whether any string starting with the code points so far can be accepted.
+    AK_FORCE_INLINE bool transit(const int *const prevPrevState, const int prevCodePoint,
+            const int *const prevState, const int codePoint, const int depth,
+            int *const outState) const {
+        const int rejected = mMaxEditDistance + 1;
+        const int c = CharUtils::toBaseLowerCase(codePoint);
+        const int prevC = depth >= 2 ? CharUtils::toBaseLowerCase(prevCodePoint) : NOT_A_CODE_POINT;
+        outState[0] = min(depth, rejected);
+        bool canAccept = outState[0] < rejected;
+        for (int i = 1; i <= mWordLength; ++i) {
+            const bool isSameCodePoint = mWord[i - 1] == c;
+            int distance = min(min(prevState[i], outState[i - 1]) + 1,
+                    prevState[i - 1] + (isSameCodePoint ? 0 : 1));
+            if (!isSameCodePoint && i >= 2 && depth >= 2 && mWord[i - 1] == prevC
+                    && mWord[i - 2] == c) {
+                distance = min(distance, prevPrevState[i - 2] + 1);
+            }
+            outState[i] = min(distance, rejected);
+            canAccept |= outState[i] < rejected;
+        }
+        return canAccept;
+    }
+
+    // Returns the edit distance between the word and the string that has led to the state, or
+    // NOT_A_DISTANCE if it is larger than maxEditDistance.
+    AK_FORCE_INLINE int getEditDistance(const int *const state) const {
+        return state[mWordLength] <= mMaxEditDistance ? state[mWordLength] : NOT_A_DISTANCE;
+    }
+
+    int getMaxEditDistance() const {
+        return mMaxEditDistance;
+    }
+
+ private:
+    DISALLOW_IMPLICIT_CONSTRUCTORS(LevenshteinAutomaton);
+
+    const int mWordLength;
+    const int mMaxEditDistance;
+    int mWord[MAX_WORD_LENGTH];
+};
+} // namespace latinime
+#endif // LATINIME_LEVENSHTEIN_AUTOMATON_H
@@ -0,0 +1,144 @@
+/*
+ * Copyright (C) 2013 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+#include "suggest/core/dictionary/levenshtein_automaton_lookup.h"
+
+#include <cstring>
+#include <vector>
+
+#include "defines.h"
+#include "suggest/core/dicnode/dic_node.h"
+#include "suggest/core/dicnode/dic_node_utils.h"
+#include "suggest/core/dicnode/dic_node_vector.h"
+#include "suggest/core/dictionary/dictionary.h"
+#include "suggest/core/dictionary/levenshtein_automaton.h"
+#include "suggest/core/policy/dictionary_structure_with_buffer_policy.h"
+#include "suggest/policyimpl/typing/scoring_params.h"
+
+namespace latinime {
+
+/* static */ int LevenshteinAutomatonLookup::getWordsWithinEditDistance(
+        const DictionaryStructureWithBufferPolicy *const dictionaryStructurePolicy,
+        const int *const word, const int wordLength, const int maxEditDistance,
+        const int maxResultCount, int *const outWords, int *const outScores,
+        int *const outputTypes) {
+    if (wordLength <= 0 || wordLength > MAX_WORD_LENGTH || maxEditDistance < 0
+            || maxResultCount <= 0) {
+        return 0;
+    }
+    const LevenshteinAutomaton automaton(word, wordLength, maxEditDistance);
+    // states[d] is the state after the first d code points of the dicNode being visited. The
+    // dicNodes are visited in depth first order, so states[d - 1] is always the state of the
+    // parent of a dicNode of depth d when the dicNode is popped.
+    int states[MAX_WORD_LENGTH + 1][LevenshteinAutomaton::MAX_STATE_LENGTH];
+    automaton.initStartState(states[0]);
+
+    std::vector<DicNode> dicNodeStack;
+    DicNodeVector childDicNodes;
+    DicNode rootDicNode;
+    DicNodeUtils::initAsRoot(dictionaryStructurePolicy, NOT_A_DICT_POS, &rootDicNode);
+    dicNodeStack.push_back(rootDicNode);
+    int resultCount = 0;
+    while (!dicNodeStack.empty()) {
+        DicNode dicNode = dicNodeStack.back();
+        dicNodeStack.pop_back();
+        const int depth = dicNode.getNodeCodePointCount();
+        if (depth > 0) {
+            if (depth > MAX_WORD_LENGTH) {
+                continue;
+            }
+            const int *const codePoints = dicNode.getOutputWordBuf();
+            const bool canAccept = automaton.transit(states[max(depth - 2, 0)],
+                    depth >= 2 ? codePoints[depth - 2] : NOT_A_CODE_POINT, states[depth - 1],
+                    codePoints[depth - 1], depth, states[depth]);
+            if (!canAccept) {
+                continue;
+            }
+            const int editDistance = automaton.getEditDistance(states[depth]);
+            if (editDistance != NOT_A_DISTANCE && dicNode.isTerminalWordNode()
+                    && !dicNode.isBlacklistedOrNotAWord()) {
+                const int probability = dicNode.getProbability();
+                const bool isPossiblyOffensiveWord = dictionaryStructurePolicy->getProbability(
+                        probability, NOT_A_PROBABILITY) <= 0;
+                const int outputType = Dictionary::KIND_CORRECTION
+                        | (isPossiblyOffensiveWord ? Dictionary::KIND_FLAG_POSSIBLY_OFFENSIVE : 0)
+                        | (editDistance == 0 ? Dictionary::KIND_FLAG_EXACT_MATCH : 0);
+                resultCount = addResult(codePoints, depth,
+                        getScore(wordLength, editDistance, probability), outputType,
+                        maxResultCount, resultCount, outWords, outScores, outputTypes);
+            }
+        }
+        if (dicNode.isLeavingNode() && !dicNode.hasChildren()) {
+            continue;
+        }
+        childDicNodes.clear();
+        DicNodeUtils::getAllChildDicNodes(&dicNode, dictionaryStructurePolicy, &childDicNodes);
+        const int childDicNodesSize = childDicNodes.getSizeAndLock();
+        for (int i = 0; i < childDicNodesSize; ++i) {
+            dicNodeStack.push_back(*childDicNodes[i]);
+        }
+    }
+    return resultCount;
+}
+
+// Scores the words in the same way as TypingScoring::calculateFinalScore(), with a compound
+// distance made of the language cost and the cost of the edits, so that the scores can be
+// compared with the ones of the suggestions and the auto-correction thresholds. Every edit costs
+// as much as a substitution of the typing traversal, since the lookup does not know which keys
+// are close.
+/* static */ int LevenshteinAutomatonLookup::getScore(const int wordLength,
+        const int editDistance, const int probability) {
+    const int clampedProbability = max(0, min(probability, MAX_PROBABILITY));
+    const float languageCost = static_cast<float>(MAX_PROBABILITY - clampedProbability)
+            / static_cast<float>(MAX_PROBABILITY);
+    const float compoundDistance = languageCost * ScoringParams::DISTANCE_WEIGHT_LANGUAGE
+            + static_cast<float>(editDistance) * ScoringParams::SUBSTITUTION_COST;
+    const float maxDistance = ScoringParams::DISTANCE_WEIGHT_LANGUAGE
+            + static_cast<float>(wordLength) * ScoringParams::TYPING_MAX_OUTPUT_SCORE_PER_INPUT;
+    const float score = ScoringParams::TYPING_BASE_OUTPUT_SCORE - compoundDistance / maxDistance;
+    return static_cast<int>(score * SUGGEST_INTERFACE_OUTPUT_SCALE);
+}
+
+// Inserts the word in the results, which are sorted by descending order of the scores, and
+// returns the new number of results.
+/* static */ int LevenshteinAutomatonLookup::addResult(const int *const codePoints,
+        const int codePointCount, const int score, const int outputType,
+        const int maxResultCount, const int resultCount, int *const outWords,
+        int *const outScores, int *const outputTypes) {
+    int insertAt = resultCount;
+    while (insertAt > 0 && outScores[insertAt - 1] < score) {
+        --insertAt;
+    }
+    if (insertAt >= maxResultCount) {
+        return resultCount;
+    }
+    const int newResultCount = min(resultCount + 1, maxResultCount);
+    const int movedCount = newResultCount - insertAt - 1;
+    memmove(outScores + insertAt + 1, outScores + insertAt, movedCount * sizeof(outScores[0]));
+    memmove(outputTypes + insertAt + 1, outputTypes + insertAt,
+            movedCount * sizeof(outputTypes[0]));
+    memmove(outWords + (insertAt + 1) * MAX_WORD_LENGTH, outWords + insertAt * MAX_WORD_LENGTH,
+            movedCount * MAX_WORD_LENGTH * sizeof(outWords[0]));
+    outScores[insertAt] = score;
+    outputTypes[insertAt] = outputType;
+    int *const dest = outWords + insertAt * MAX_WORD_LENGTH;
+    memcpy(dest, codePoints, codePointCount * sizeof(dest[0]));
+    if (codePointCount < MAX_WORD_LENGTH) {
+        dest[codePointCount] = 0;
+    }
+    return newResultCount;
+}
+} // namespace latinime
@@ -0,0 +1,53 @@
+/*
+ * Copyright (C) 2013 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+#ifndef LATINIME_LEVENSHTEIN_AUTOMATON_LOOKUP_H
+#define LATINIME_LEVENSHTEIN_AUTOMATON_LOOKUP_H
+
+#include "defines.h"
+
+namespace latinime {
+
+class DictionaryStructureWithBufferPolicy;
+
+/*
+ * Looks up the words within an edit distance of a finished word, for the spell checker. Unlike
+ * Suggest, this uses neither the keyboard proximity nor the touch coordinates. The trie is
+ * traversed through DictionaryStructureWithBufferPolicy in depth first order with a
+ * LevenshteinAutomaton state per depth, and a branch is left as soon as the automaton rejects
+ * its prefix. Hence the cost is proportional to the number of prefixes within the edit distance
+ * of a prefix of the word rather than to the size of the dictionary.
+ */
+class LevenshteinAutomatonLookup {
+ public:
+    // Outputs the best maxResultCount words in the same format as Dictionary::getBigrams(), in
+    // descending order of the scores. Returns the number of output words.
+    static int getWordsWithinEditDistance(
+            const DictionaryStructureWithBufferPolicy *const dictionaryStructurePolicy,
+            const int *const word, const int wordLength, const int maxEditDistance,
+            const int maxResultCount, int *const outWords, int *const outScores,
+            int *const outputTypes);
+
+ private:
+    DISALLOW_IMPLICIT_CONSTRUCTORS(LevenshteinAutomatonLookup);
+
+    static int getScore(const int wordLength, const int editDistance, const int probability);
+    static int addResult(const int *const codePoints, const int codePointCount, const int score,
+            const int outputType, const int maxResultCount, const int resultCount,
+            int *const outWords, int *const outScores, int *const outputTypes);
+};
+} // namespace latinime
+#endif // LATINIME_LEVENSHTEIN_AUTOMATON_LOOKUP_H
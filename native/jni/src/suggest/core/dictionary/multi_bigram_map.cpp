@@ -24,10 +24,11 @@ namespace latinime {
 // could improve bigram lookup speed for multi-word suggestions, but at the cost of more memory
 // usage. Also, there are diminishing returns since the most frequently used bigrams are
 // typically near the beginning of the input and are thus the first ones to be cached. Note
-// that these bigrams are reset for each new composing word.
-const size_t MultiBigramMap::MAX_CACHED_PREV_WORDS_IN_BIGRAM_MAP = 25;
+// that these bigrams are kept across composing words until the dictionary is updated, so the
+// contexts of a word being typed are cached only once.
+const size_t MultiBigramMap::MAX_CACHED_PREV_WORDS_IN_BIGRAM_MAP = 32;
 
-// Most common previous word contexts currently have 100 bigrams
-const int MultiBigramMap::BigramMap::DEFAULT_HASH_MAP_SIZE_FOR_EACH_BIGRAM_MAP = 100;
+// 16 entries, i.e. 128 bytes, hold up to 8 bigrams without resizing.
+const int MultiBigramMap::BigramMap::MIN_TABLE_SIZE_LOG2 = 4;
 
 } // namespace latinime
@@ -18,6 +18,8 @@
 #define LATINIME_MULTI_BIGRAM_MAP_H
 
 #include <cstddef>
+#include <stdint.h>
+#include <vector>
 
 #include "defines.h"
 #include "suggest/core/dictionary/binary_dictionary_bigrams_iterator.h"
@@ -30,22 +32,30 @@ namespace latinime {
 // Class for caching bigram maps for multiple previous word contexts. This is useful since the
 // algorithm needs to look up the set of bigrams for every word pair that occurs in every
 // multi-word suggestion.
+// The cached maps are kept across searches until clear() is called, which must be done when the
+// dictionary is updated. When the cache is full, the least recently used map that has not been
+// used in the current search is evicted.
 class MultiBigramMap {
  public:
-    MultiBigramMap() : mBigramMaps() {}
+    MultiBigramMap()
+            : mBigramMaps(), mSearchCount(0), mHasEvictableBigramMaps(true), mCacheHitCount(0),
+              mCacheMissCount(0) {}
     ~MultiBigramMap() {}
 
     // Look up the bigram probability for the given word pair from the cached bigram maps.
-    // Also caches the bigrams if there is space remaining and they have not been cached already.
+    // Also caches the bigrams if they have not been cached already.
     int getBigramProbability(const DictionaryStructureWithBufferPolicy *const structurePolicy,
             const int wordPosition, const int nextWordPosition, const int unigramProbability) {
-        hash_map_compat<int, BigramMap>::const_iterator mapPosition =
-                mBigramMaps.find(wordPosition);
+        hash_map_compat<int, BigramMap>::iterator mapPosition = mBigramMaps.find(wordPosition);
         if (mapPosition != mBigramMaps.end()) {
+            ++mCacheHitCount;
+            mapPosition->second.setLastSearchCount(mSearchCount);
             return mapPosition->second.getBigramProbability(structurePolicy, nextWordPosition,
                     unigramProbability);
         }
-        if (mBigramMaps.size() < MAX_CACHED_PREV_WORDS_IN_BIGRAM_MAP) {
+        ++mCacheMissCount;
+        if (mBigramMaps.size() < MAX_CACHED_PREV_WORDS_IN_BIGRAM_MAP
+                || evictLeastRecentlyUsedBigramMap()) {
             addBigramsForWordPosition(structurePolicy, wordPosition);
             return mBigramMaps[wordPosition].getBigramProbability(structurePolicy,
                     nextWordPosition, unigramProbability);
@@ -54,21 +64,48 @@ class MultiBigramMap {
                 nextWordPosition, unigramProbability);
     }
 
+    // Must be called when a new search is started. Maps that are not used in the new search
+    // become candidates for eviction.
+    void onSearchStarted() {
+        ++mSearchCount;
+        mHasEvictableBigramMaps = true;
+    }
+
     void clear() {
         mBigramMaps.clear();
     }
 
+    // The hit and miss counts are never reset, so that they can be compared across calls.
+    int getCacheHitCount() const { return mCacheHitCount; }
+    int getCacheMissCount() const { return mCacheMissCount; }
+
  private:
     DISALLOW_COPY_AND_ASSIGN(MultiBigramMap);
 
+    // Open addressing hash table from bigram target positions to bigram probabilities. Keys and
+    // values are stored next to each other so that a lookup usually touches one cache line.
     class BigramMap {
      public:
-        BigramMap() : mBigramMap(DEFAULT_HASH_MAP_SIZE_FOR_EACH_BIGRAM_MAP), mBloomFilter() {}
+        BigramMap() : mEntries(), mHashShift(0), mBloomFilter(), mLastSearchCount(0) {}
         ~BigramMap() {}
 
         void init(const DictionaryStructureWithBufferPolicy *const structurePolicy,
                 const int nodePos) {
             const int bigramsListPos = structurePolicy->getBigramsPositionOfPtNode(nodePos);
+            int bigramCount = 0;
+            BinaryDictionaryBigramsIterator countingBigramsIt(
+                    structurePolicy->getBigramsStructurePolicy(), bigramsListPos);
+            while (countingBigramsIt.hasNext()) {
+                countingBigramsIt.next();
+                if (countingBigramsIt.getBigramPos() != NOT_A_DICT_POS) {
+                    ++bigramCount;
+                }
+            }
+            initTable(bigramCount);
+            mBloomFilter.init(bigramCount);
+            if (bigramCount == 0) {
+                return;
+            }
             BinaryDictionaryBigramsIterator bigramsIt(structurePolicy->getBigramsStructurePolicy(),
                     bigramsListPos);
             while (bigramsIt.hasNext()) {
@@ -76,7 +113,7 @@ class MultiBigramMap {
                 if (bigramsIt.getBigramPos() == NOT_A_DICT_POS) {
                     continue;
                 }
-                mBigramMap[bigramsIt.getBigramPos()] = bigramsIt.getProbability();
+                put(bigramsIt.getBigramPos(), bigramsIt.getProbability());
                 mBloomFilter.setInFilter(bigramsIt.getBigramPos());
             }
         }
@@ -86,26 +123,106 @@ class MultiBigramMap {
                 const int nextWordPosition, const int unigramProbability) const {
             int bigramProbability = NOT_A_PROBABILITY;
             if (mBloomFilter.isInFilter(nextWordPosition)) {
-                const hash_map_compat<int, int>::const_iterator bigramProbabilityIt =
-                        mBigramMap.find(nextWordPosition);
-                if (bigramProbabilityIt != mBigramMap.end()) {
-                    bigramProbability = bigramProbabilityIt->second;
-                }
+                bigramProbability = get(nextWordPosition);
             }
             return structurePolicy->getProbability(unigramProbability, bigramProbability);
         }
 
+        int getLastSearchCount() const { return mLastSearchCount; }
+        void setLastSearchCount(const int searchCount) { mLastSearchCount = searchCount; }
+
      private:
         // NOTE: The BigramMap class doesn't use DISALLOW_COPY_AND_ASSIGN() because its default
         // copy constructor is needed for use in hash_map.
-        static const int DEFAULT_HASH_MAP_SIZE_FOR_EACH_BIGRAM_MAP;
-        hash_map_compat<int, int> mBigramMap;
+        struct Entry {
+            int mKey;
+            int mValue;
+        };
+
+        static const int MIN_TABLE_SIZE_LOG2;
+
+        std::vector<Entry> mEntries;
+        int mHashShift;
         BloomFilter mBloomFilter;
+        int mLastSearchCount;
+
+        // Keeps the load factor at or below 0.5 so that probe sequences stay short.
+        void initTable(const int elementCount) {
+            if (elementCount == 0) {
+                mEntries.clear();
+                return;
+            }
+            int tableSizeLog2 = MIN_TABLE_SIZE_LOG2;
+            while ((1 << tableSizeLog2) < elementCount * 2) {
+                ++tableSizeLog2;
+            }
+            const Entry emptyEntry = { NOT_A_DICT_POS, NOT_A_PROBABILITY };
+            mEntries.assign(1 << tableSizeLog2, emptyEntry);
+            mHashShift = 32 - tableSizeLog2;
+        }
+
+        AK_FORCE_INLINE int getIndex(const int key) const {
+            // Fibonacci hashing; bigram target positions are dictionary offsets.
+            return static_cast<int>((static_cast<uint32_t>(key) * 0x9E3779B1u) >> mHashShift);
+        }
+
+        void put(const int key, const int value) {
+            const int mask = static_cast<int>(mEntries.size()) - 1;
+            for (int index = getIndex(key); ; index = (index + 1) & mask) {
+                if (mEntries[index].mKey == NOT_A_DICT_POS || mEntries[index].mKey == key) {
+                    mEntries[index].mKey = key;
+                    mEntries[index].mValue = value;
+                    return;
+                }
+            }
+        }
+
+        AK_FORCE_INLINE int get(const int key) const {
+            if (mEntries.empty()) {
+                return NOT_A_PROBABILITY;
+            }
+            const int mask = static_cast<int>(mEntries.size()) - 1;
+            for (int index = getIndex(key); ; index = (index + 1) & mask) {
+                if (mEntries[index].mKey == key) {
+                    return mEntries[index].mValue;
+                }
+                if (mEntries[index].mKey == NOT_A_DICT_POS) {
+                    return NOT_A_PROBABILITY;
+                }
+            }
+        }
     };
 
     AK_FORCE_INLINE void addBigramsForWordPosition(
             const DictionaryStructureWithBufferPolicy *const structurePolicy, const int position) {
-        mBigramMaps[position].init(structurePolicy, position);
+        BigramMap *const bigramMap = &mBigramMaps[position];
+        bigramMap->init(structurePolicy, position);
+        bigramMap->setLastSearchCount(mSearchCount);
+    }
+
+    // Returns whether a map has been evicted. Maps used in the current search are never evicted
+    // to avoid rebuilding maps over and over again within one search.
+    bool evictLeastRecentlyUsedBigramMap() {
+        if (!mHasEvictableBigramMaps) {
+            return false;
+        }
+        hash_map_compat<int, BigramMap>::iterator evictedMapPosition = mBigramMaps.end();
+        for (hash_map_compat<int, BigramMap>::iterator it = mBigramMaps.begin();
+                it != mBigramMaps.end(); ++it) {
+            if (it->second.getLastSearchCount() == mSearchCount) {
+                continue;
+            }
+            if (evictedMapPosition == mBigramMaps.end() || it->second.getLastSearchCount()
+                    < evictedMapPosition->second.getLastSearchCount()) {
+                evictedMapPosition = it;
+            }
+        }
+        if (evictedMapPosition == mBigramMaps.end()) {
+            mHasEvictableBigramMaps = false;
+            return false;
+        }
+        mBigramMaps.erase(evictedMapPosition);
+        return true;
     }
 
     AK_FORCE_INLINE int readBigramProbabilityFromBinaryDictionary(
@@ -127,6 +244,11 @@ class MultiBigramMap {
 
     static const size_t MAX_CACHED_PREV_WORDS_IN_BIGRAM_MAP;
     hash_map_compat<int, BigramMap> mBigramMaps;
+    // Incremented for each search and used as the clock of the LRU eviction.
+    int mSearchCount;
+    bool mHasEvictableBigramMaps;
+    int mCacheHitCount;
+    int mCacheMissCount;
 };
 } // namespace latinime
 #endif // LATINIME_MULTI_BIGRAM_MAP_H
@@ -0,0 +1,125 @@
+/*
+ * Copyright (C) 2013 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+#define LOG_TAG "LatinIME: suggestion_results_cache.cpp"
+
+#include "suggest/core/dictionary/suggestion_results_cache.h"
+
+#include <cstdio>
+#include <cstring>
+
+#include "suggest/core/layout/proximity_info.h"
+#include "suggest/core/suggest_options.h"
+
+namespace latinime {
+
+void SuggestionResultsCache::setKey(const int updateCount,
+        const ProximityInfo *const proximityInfo, const int *const xCoordinates,
+        const int *const yCoordinates, const int *const times, const int *const pointerIds,
+        const int *const inputCodePoints, const int inputSize,
+        const int *const prevWordCodePoints, const int prevWordLength, const int commitPoint,
+        const SuggestOptions *const suggestOptions) {
+    mKey.clear();
+    mKey.push_back(updateCount);
+    // The pointer is not enough because a new ProximityInfo may be allocated at the address of
+    // a deleted one.
+    mKey.push_back(proximityInfo ? proximityInfo->getId() : 0);
+    mKey.push_back(commitPoint);
+    mKey.push_back(suggestOptions->getOptionCount());
+    for (int i = 0; i < suggestOptions->getOptionCount(); ++i) {
+        mKey.push_back(suggestOptions->getOption(i));
+    }
+    mKey.push_back(prevWordCodePoints ? prevWordLength : 0);
+    for (int i = 0; prevWordCodePoints && i < prevWordLength; ++i) {
+        mKey.push_back(prevWordCodePoints[i]);
+    }
+    mKey.push_back(inputSize);
+    // For gesture input, inputSize is the number of pointers and may exceed the length of the
+    // code point array.
+    for (int i = 0; i < min(inputSize, MAX_WORD_LENGTH); ++i) {
+        mKey.push_back(inputCodePoints[i]);
+    }
+    for (int i = 0; i < inputSize; ++i) {
+        mKey.push_back(xCoordinates[i]);
+        mKey.push_back(yCoordinates[i]);
+        mKey.push_back(times[i]);
+        mKey.push_back(pointerIds[i]);
+    }
+    // FNV-1a
+    mKeyHash = 2166136261u;
+    for (size_t i = 0; i < mKey.size(); ++i) {
+        mKeyHash = (mKeyHash ^ static_cast<uint32_t>(mKey[i])) * 16777619u;
+    }
+}
+
+bool SuggestionResultsCache::lookUp(int *const outResultCount, int *const outWords,
+        int *const frequencies, int *const spaceIndices, int *const outputTypes,
+        int *const outputAutoCommitFirstWordConfidence) {
+    ++mUseCount;
+    for (int i = 0; i < MAX_ENTRY_COUNT; ++i) {
+        Entry *const entry = &mEntries[i];
+        if (entry->mKeyHash != mKeyHash || entry->mKey != mKey) {
+            continue;
+        }
+        ++mHitCount;
+        entry->mLastUsedCount = mUseCount;
+        const int resultCount = entry->mResultCount;
+        memcpy(outWords, entry->mOutWords, sizeof(outWords[0]) * MAX_WORD_LENGTH * resultCount);
+        memcpy(frequencies, entry->mFrequencies, sizeof(frequencies[0]) * resultCount);
+        memcpy(spaceIndices, entry->mSpaceIndices, sizeof(spaceIndices[0]) * resultCount);
+        memcpy(outputTypes, entry->mOutputTypes, sizeof(outputTypes[0]) * resultCount);
+        outputAutoCommitFirstWordConfidence[0] = entry->mOutputAutoCommitFirstWordConfidence;
+        *outResultCount = resultCount;
+        return true;
+    }
+    ++mMissCount;
+    return false;
+}
+
+void SuggestionResultsCache::put(const int resultCount, const int *const outWords,
+        const int *const frequencies, const int *const spaceIndices,
+        const int *const outputTypes, const int *const outputAutoCommitFirstWordConfidence) {
+    if (resultCount < 0 || resultCount > MAX_RESULTS) {
+        return;
+    }
+    // Unused entries have never been used and are the least recently used ones.
+    Entry *entry = &mEntries[0];
+    for (int i = 1; i < MAX_ENTRY_COUNT; ++i) {
+        if (mEntries[i].mLastUsedCount < entry->mLastUsedCount) {
+            entry = &mEntries[i];
+        }
+    }
+    // assign() reuses the storage of the evicted key.
+    entry->mKey.assign(mKey.begin(), mKey.end());
+    entry->mKeyHash = mKeyHash;
+    entry->mLastUsedCount = mUseCount;
+    entry->mResultCount = resultCount;
+    memcpy(entry->mOutWords, outWords, sizeof(outWords[0]) * MAX_WORD_LENGTH * resultCount);
+    memcpy(entry->mFrequencies, frequencies, sizeof(frequencies[0]) * resultCount);
+    memcpy(entry->mSpaceIndices, spaceIndices, sizeof(spaceIndices[0]) * resultCount);
+    memcpy(entry->mOutputTypes, outputTypes, sizeof(outputTypes[0]) * resultCount);
+    entry->mOutputAutoCommitFirstWordConfidence = outputAutoCommitFirstWordConfidence[0];
+}
+
+// Must be kept in sync with BinaryDictionary.SUGGESTION_RESULTS_CACHE_STATS_QUERY.
+void SuggestionResultsCache::dumpStatsToString(char *const outResult,
+        const int maxResultLength) const {
+    const int lookUpCount = mHitCount + mMissCount;
+    snprintf(outResult, maxResultLength, "HITS=%d MISSES=%d HIT_RATE_PERCENT=%d", mHitCount,
+            mMissCount, lookUpCount > 0
+                    ? static_cast<int>(static_cast<int64_t>(mHitCount) * 100 / lookUpCount) : 0);
+}
+} // namespace latinime
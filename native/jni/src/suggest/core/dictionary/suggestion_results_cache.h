@@ -0,0 +1,99 @@
+/*
+ * Copyright (C) 2013 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+#ifndef LATINIME_SUGGESTION_RESULTS_CACHE_H
+#define LATINIME_SUGGESTION_RESULTS_CACHE_H
+
+#include <stdint.h>
+#include <vector>
+
+#include "defines.h"
+
+namespace latinime {
+
+class ProximityInfo;
+class SuggestOptions;
+
+/*
+ * LRU cache of the results of Dictionary::getSuggestions().
+ *
+ * The spell checker and the recorrection of a touched word often request the suggestions for the
+ * same input again. The key is everything the results depend on: the input code points and
+ * pointers, the previous word, the options, the keyboard and the update count of the dictionary.
+ * Hence entries are never returned after the dictionary has been updated, and they are simply
+ * evicted instead of being invalidated.
+ *
+ * Usage: setKey(), then lookUp(), and put() the results of the search when lookUp() fails.
+ */
+class SuggestionResultsCache {
+ public:
+    SuggestionResultsCache() : mKey(), mKeyHash(0), mUseCount(0), mHitCount(0), mMissCount(0) {}
+    ~SuggestionResultsCache() {}
+
+    void setKey(const int updateCount, const ProximityInfo *const proximityInfo,
+            const int *const xCoordinates, const int *const yCoordinates, const int *const times,
+            const int *const pointerIds, const int *const inputCodePoints, const int inputSize,
+            const int *const prevWordCodePoints, const int prevWordLength, const int commitPoint,
+            const SuggestOptions *const suggestOptions);
+
+    // Copies the cached results for the key to the outputs and returns true, or returns false if
+    // the results are not cached.
+    bool lookUp(int *const outResultCount, int *const outWords, int *const frequencies,
+            int *const spaceIndices, int *const outputTypes,
+            int *const outputAutoCommitFirstWordConfidence);
+
+    void put(const int resultCount, const int *const outWords, const int *const frequencies,
+            const int *const spaceIndices, const int *const outputTypes,
+            const int *const outputAutoCommitFirstWordConfidence);
+
+    // Writes the hit and miss counts as space separated KEY=VALUE pairs.
+    void dumpStatsToString(char *const outResult, const int maxResultLength) const;
+
+ private:
+    DISALLOW_COPY_AND_ASSIGN(SuggestionResultsCache);
+
+    class Entry {
+     public:
+        Entry() : mKey(), mKeyHash(0), mLastUsedCount(0), mResultCount(0),
+                mOutputAutoCommitFirstWordConfidence(0) {}
+
+        // Empty if the entry is not used.
+        std::vector<int> mKey;
+        uint32_t mKeyHash;
+        int mLastUsedCount;
+        int mResultCount;
+        int mOutWords[MAX_WORD_LENGTH * MAX_RESULTS];
+        int mFrequencies[MAX_RESULTS];
+        int mSpaceIndices[MAX_RESULTS];
+        int mOutputTypes[MAX_RESULTS];
+        int mOutputAutoCommitFirstWordConfidence;
+
+     private:
+        DISALLOW_COPY_AND_ASSIGN(Entry);
+    };
+
+    static const int MAX_ENTRY_COUNT = 8;
+
+    Entry mEntries[MAX_ENTRY_COUNT];
+    // The key of the current call. The buffer is reused so that building a key doesn't allocate.
+    std::vector<int> mKey;
+    uint32_t mKeyHash;
+    int mUseCount;
+    int mHitCount;
+    int mMissCount;
+};
+} // namespace latinime
+#endif // LATINIME_SUGGESTION_RESULTS_CACHE_H
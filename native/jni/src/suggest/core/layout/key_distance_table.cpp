@@ -0,0 +1,145 @@
+/*
+ * Copyright (C) 2013 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+#define LOG_TAG "LatinIME: key_distance_table.cpp"
+
+#include "suggest/core/layout/key_distance_table.h"
+
+#include <pthread.h>
+
+#include "suggest/core/layout/geometry_utils.h"
+#include "suggest/core/layout/proximity_info.h"
+
+namespace latinime {
+
+const int KeyDistanceTable::MAX_ENTRY_COUNT = 256 * 1024;
+const int KeyDistanceTable::MAX_UNUSED_TABLE_COUNT = 2;
+
+// Tables are acquired and released by ProximityInfo instances, which may be created and deleted on
+// different threads.
+static pthread_mutex_t sTablesMutex = PTHREAD_MUTEX_INITIALIZER;
+static std::vector<KeyDistanceTable *> sTables;
+static int sUseCount = 0;
+// Incremented by the constructor, which is called only while sTablesMutex is held.
+static int sLastTableId = 0;
+
+/* static */ const KeyDistanceTable *KeyDistanceTable::acquire(
+        const ProximityInfo *const proximityInfo, const std::vector<int> *const geometry) {
+    const int keyCount = proximityInfo->getKeyCount();
+    const int entryCount = keyCount * (proximityInfo->getKeyboardWidth()
+            + 2 * proximityInfo->getKeyboardHeight());
+    if (keyCount <= 0 || proximityInfo->getKeyboardWidth() <= 0
+            || proximityInfo->getKeyboardHeight() <= 0 || entryCount > MAX_ENTRY_COUNT) {
+        return 0;
+    }
+    const uint32_t geometryHash = computeGeometryHash(geometry);
+    pthread_mutex_lock(&sTablesMutex);
+    ++sUseCount;
+    KeyDistanceTable *table = 0;
+    for (size_t i = 0; i < sTables.size(); ++i) {
+        if (sTables[i]->mGeometryHash == geometryHash && sTables[i]->mGeometry == *geometry) {
+            table = sTables[i];
+            break;
+        }
+    }
+    if (!table) {
+        if (DEBUG_PROXIMITY_INFO) {
+            AKLOGI("Create key distance table: hash = %x, entryCount = %d", geometryHash,
+                    entryCount);
+        }
+        table = new KeyDistanceTable(proximityInfo, geometry, geometryHash);
+        sTables.push_back(table);
+    }
+    ++table->mRefCount;
+    table->mLastUsedCount = sUseCount;
+    pthread_mutex_unlock(&sTablesMutex);
+    return table;
+}
+
+/* static */ void KeyDistanceTable::release(const KeyDistanceTable *const table) {
+    if (!table) {
+        return;
+    }
+    pthread_mutex_lock(&sTablesMutex);
+    ++sUseCount;
+    int unusedTableCount = 0;
+    for (size_t i = 0; i < sTables.size(); ++i) {
+        if (sTables[i] == table) {
+            --sTables[i]->mRefCount;
+            sTables[i]->mLastUsedCount = sUseCount;
+        }
+        if (sTables[i]->mRefCount <= 0) {
+            ++unusedTableCount;
+        }
+    }
+    // Keep a few unused tables because keyboards are often re-created with the same geometry
+    // after the previous one has been released.
+    while (unusedTableCount > MAX_UNUSED_TABLE_COUNT) {
+        int leastRecentlyUsedIndex = NOT_AN_INDEX;
+        for (size_t i = 0; i < sTables.size(); ++i) {
+            if (sTables[i]->mRefCount <= 0 && (leastRecentlyUsedIndex == NOT_AN_INDEX
+                    || sTables[i]->mLastUsedCount
+                            < sTables[leastRecentlyUsedIndex]->mLastUsedCount)) {
+                leastRecentlyUsedIndex = static_cast<int>(i);
+            }
+        }
+        delete sTables[leastRecentlyUsedIndex];
+        sTables.erase(sTables.begin() + leastRecentlyUsedIndex);
+        --unusedTableCount;
+    }
+    pthread_mutex_unlock(&sTablesMutex);
+}
+
+/* static */ uint32_t KeyDistanceTable::computeGeometryHash(
+        const std::vector<int> *const geometry) {
+    // FNV-1a
+    uint32_t hash = 2166136261u;
+    for (size_t i = 0; i < geometry->size(); ++i) {
+        hash = (hash ^ static_cast<uint32_t>((*geometry)[i])) * 16777619u;
+    }
+    return hash;
+}
+
+KeyDistanceTable::KeyDistanceTable(const ProximityInfo *const proximityInfo,
+        const std::vector<int> *const geometry, const uint32_t geometryHash)
+        : mId(++sLastTableId), mGeometry(*geometry), mGeometryHash(geometryHash),
+          mKeyCount(proximityInfo->getKeyCount()),
+          mKeyboardWidth(proximityInfo->getKeyboardWidth()),
+          mKeyboardHeight(proximityInfo->getKeyboardHeight()),
+          mSquaredDistancesX(mKeyCount * mKeyboardWidth),
+          mSquaredDistancesY(2 * mKeyCount * mKeyboardHeight), mRefCount(0),
+          mLastUsedCount(0) {
+    for (int keyId = 0; keyId < mKeyCount; ++keyId) {
+        // isGeometric is not used for X coordinates.
+        for (int x = 0; x < mKeyboardWidth; ++x) {
+            const float centerX = static_cast<float>(proximityInfo->getKeyCenterXOfKeyIdG(
+                    keyId, x, false /* isGeometric */));
+            mSquaredDistancesX[keyId * mKeyboardWidth + x] =
+                    GeometryUtils::SQUARE_FLOAT(centerX - static_cast<float>(x));
+        }
+        for (int y = 0; y < mKeyboardHeight; ++y) {
+            const float centerY = static_cast<float>(proximityInfo->getKeyCenterYOfKeyIdG(
+                    keyId, y, false /* isGeometric */));
+            const float centerYG = static_cast<float>(proximityInfo->getKeyCenterYOfKeyIdG(
+                    keyId, y, true /* isGeometric */));
+            mSquaredDistancesY[keyId * mKeyboardHeight + y] =
+                    GeometryUtils::SQUARE_FLOAT(centerY - static_cast<float>(y));
+            mSquaredDistancesY[(mKeyCount + keyId) * mKeyboardHeight + y] =
+                    GeometryUtils::SQUARE_FLOAT(centerYG - static_cast<float>(y));
+        }
+    }
+}
+} // namespace latinime
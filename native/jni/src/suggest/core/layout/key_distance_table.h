@@ -0,0 +1,94 @@
+/*
+ * Copyright (C) 2013 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+#ifndef LATINIME_KEY_DISTANCE_TABLE_H
+#define LATINIME_KEY_DISTANCE_TABLE_H
+
+#include <stdint.h>
+#include <vector>
+
+#include "defines.h"
+
+namespace latinime {
+
+class ProximityInfo;
+
+/*
+ * Precomputed squared distances from each pixel of the keyboard to the center of each key.
+ *
+ * The distance from a point to a key center is separable into X and Y components because the
+ * center X depends only on the point X and the center Y depends only on the point Y. Hence the
+ * table keeps, for each key, one row of KEYBOARD_WIDTH squared X distances and two rows of
+ * KEYBOARD_HEIGHT squared Y distances (for geometric and for typing input). Looking up a point is
+ * two loads and an addition, and gives exactly the same value as computing the distance.
+ *
+ * Tables are keyed by the keyboard geometry and shared by all ProximityInfo instances with the
+ * same geometry, e.g. the shifted and the unshifted keyboards of a layout, or a keyboard that has
+ * been re-created with the same size.
+ */
+class KeyDistanceTable {
+ public:
+    // Returns the table for the geometry of the proximityInfo, or 0 if the keyboard is too large
+    // to have a table. The returned table must be released by release().
+    static const KeyDistanceTable *acquire(const ProximityInfo *const proximityInfo,
+            const std::vector<int> *const geometry);
+    static void release(const KeyDistanceTable *const table);
+
+    // Unique among the tables created in the process, so that a re-created table can be told
+    // apart from the one it replaces.
+    int getId() const { return mId; }
+
+    // Returns the squared distance from (x, y) to the center of the key, or a negative value if
+    // the point or the key is out of the table.
+    AK_FORCE_INLINE float getSquaredDistanceFromCenter(const int keyId, const int x, const int y,
+            const bool isGeometric) const {
+        if (keyId < 0 || keyId >= mKeyCount || x < 0 || x >= mKeyboardWidth || y < 0
+                || y >= mKeyboardHeight) {
+            return -1.0f;
+        }
+        const int yRowIndex = isGeometric ? mKeyCount + keyId : keyId;
+        return mSquaredDistancesX[keyId * mKeyboardWidth + x]
+                + mSquaredDistancesY[yRowIndex * mKeyboardHeight + y];
+    }
+
+ private:
+    DISALLOW_IMPLICIT_CONSTRUCTORS(KeyDistanceTable);
+
+    // The maximum number of entries of a table. This is about 1MB.
+    static const int MAX_ENTRY_COUNT;
+    // The maximum number of tables that are not used by any ProximityInfo but kept to be reused.
+    static const int MAX_UNUSED_TABLE_COUNT;
+
+    KeyDistanceTable(const ProximityInfo *const proximityInfo,
+            const std::vector<int> *const geometry, const uint32_t geometryHash);
+    ~KeyDistanceTable() {}
+
+    static uint32_t computeGeometryHash(const std::vector<int> *const geometry);
+
+    const int mId;
+    const std::vector<int> mGeometry;
+    const uint32_t mGeometryHash;
+    const int mKeyCount;
+    const int mKeyboardWidth;
+    const int mKeyboardHeight;
+    std::vector<float> mSquaredDistancesX;
+    std::vector<float> mSquaredDistancesY;
+    int mRefCount;
+    // The value of sUseCount when this table was acquired or released last.
+    int mLastUsedCount;
+};
+} // namespace latinime
+#endif // LATINIME_KEY_DISTANCE_TABLE_H
@@ -25,11 +25,14 @@
 #include "jni.h"
 #include "suggest/core/layout/additional_proximity_chars.h"
 #include "suggest/core/layout/geometry_utils.h"
+#include "suggest/core/layout/key_distance_table.h"
 #include "suggest/core/layout/proximity_info_params.h"
 #include "utils/char_utils.h"
 
 namespace latinime {
 
+int ProximityInfo::sLastId = 0;
+
 static AK_FORCE_INLINE void safeGetOrFillZeroIntArrayRegion(JNIEnv *env, jintArray jArray,
         jsize len, jint *buffer) {
     if (jArray && buffer) {
@@ -55,7 +58,8 @@ ProximityInfo::ProximityInfo(JNIEnv *env, const jstring localeJStr,
         const jintArray keyYCoordinates, const jintArray keyWidths, const jintArray keyHeights,
         const jintArray keyCharCodes, const jfloatArray sweetSpotCenterXs,
         const jfloatArray sweetSpotCenterYs, const jfloatArray sweetSpotRadii)
-        : GRID_WIDTH(gridWidth), GRID_HEIGHT(gridHeight), MOST_COMMON_KEY_WIDTH(mostCommonKeyWidth),
+        : mId(__sync_add_and_fetch(&sLastId, 1)), GRID_WIDTH(gridWidth),
+          GRID_HEIGHT(gridHeight), MOST_COMMON_KEY_WIDTH(mostCommonKeyWidth),
           MOST_COMMON_KEY_WIDTH_SQUARE(mostCommonKeyWidth * mostCommonKeyWidth),
           MOST_COMMON_KEY_HEIGHT(mostCommonKeyHeight),
           NORMALIZED_SQUARED_MOST_COMMON_KEY_HYPOTENUSE(1.0f +
@@ -71,7 +75,7 @@ ProximityInfo::ProximityInfo(JNIEnv *env, const jstring localeJStr,
                   && sweetSpotCenterYs && sweetSpotRadii),
           mProximityCharsArray(new int[GRID_WIDTH * GRID_HEIGHT * MAX_PROXIMITY_CHARS_SIZE
                   /* proximityCharsLength */]),
-          mCodeToKeyMap() {
+          mCodeToKeyMap(), mKeyDistanceTable(0) {
     /* Let's check the input array length here to make sure */
     const jsize proximityCharsLength = env->GetArrayLength(proximityChars);
     if (proximityCharsLength != GRID_WIDTH * GRID_HEIGHT * MAX_PROXIMITY_CHARS_SIZE) {
@@ -100,12 +104,20 @@ ProximityInfo::ProximityInfo(JNIEnv *env, const jstring localeJStr,
     safeGetOrFillZeroFloatArrayRegion(env, sweetSpotCenterYs, KEY_COUNT, mSweetSpotCenterYs);
     safeGetOrFillZeroFloatArrayRegion(env, sweetSpotRadii, KEY_COUNT, mSweetSpotRadii);
     initializeG();
+    std::vector<int> geometry;
+    getGeometry(&geometry);
+    mKeyDistanceTable = KeyDistanceTable::acquire(this, &geometry);
 }
 
 ProximityInfo::~ProximityInfo() {
+    KeyDistanceTable::release(mKeyDistanceTable);
     delete[] mProximityCharsArray;
 }
 
+int ProximityInfo::getKeyDistanceTableId() const {
+    return mKeyDistanceTable ? mKeyDistanceTable->getId() : 0;
+}
+
 bool ProximityInfo::hasSpaceProximity(const int x, const int y) const {
     if (x < 0 || y < 0) {
         if (DEBUG_DICT) {
@@ -135,6 +147,14 @@ bool ProximityInfo::hasSpaceProximity(const int x, const int y) const {
 
 float ProximityInfo::getNormalizedSquaredDistanceFromCenterFloatG(
         const int keyId, const int x, const int y, const bool isGeometric) const {
+    if (mKeyDistanceTable) {
+        const float squaredDistance =
+                mKeyDistanceTable->getSquaredDistanceFromCenter(keyId, x, y, isGeometric);
+        if (squaredDistance >= 0.0f) {
+            return squaredDistance
+                    / GeometryUtils::SQUARE_FLOAT(static_cast<float>(getMostCommonKeyWidth()));
+        }
+    }
     const float centerX = static_cast<float>(getKeyCenterXOfKeyIdG(keyId, x, isGeometric));
     const float centerY = static_cast<float>(getKeyCenterYOfKeyIdG(keyId, y, isGeometric));
     const float touchX = static_cast<float>(x);
@@ -187,6 +207,29 @@ void ProximityInfo::initializeG() {
     }
 }
 
+// Returns the values that determine the key centers returned by getKeyCenterXOfKeyIdG() and
+// getKeyCenterYOfKeyIdG(). Instances with the same geometry share a KeyDistanceTable.
+void ProximityInfo::getGeometry(std::vector<int> *const outGeometry) const {
+    outGeometry->clear();
+    outGeometry->push_back(KEY_COUNT);
+    outGeometry->push_back(KEYBOARD_WIDTH);
+    outGeometry->push_back(KEYBOARD_HEIGHT);
+    outGeometry->push_back(MOST_COMMON_KEY_WIDTH);
+    outGeometry->push_back(HAS_TOUCH_POSITION_CORRECTION_DATA ? 1 : 0);
+    for (int i = 0; i < KEY_COUNT; ++i) {
+        outGeometry->push_back(mCenterXsG[i]);
+        outGeometry->push_back(mCenterYsG[i]);
+        outGeometry->push_back(mKeyWidths[i]);
+        outGeometry->push_back(mKeyHeights[i]);
+        if (HAS_TOUCH_POSITION_CORRECTION_DATA) {
+            // The sweet spot centers are truncated to int when they are used as key centers.
+            outGeometry->push_back(static_cast<int>(mSweetSpotCenterXs[i]));
+            outGeometry->push_back(static_cast<int>(mSweetSpotCenterYs[i]));
+            outGeometry->push_back(static_cast<int>(mSweetSpotCenterYsG[i]));
+        }
+    }
+}
+
 // referencePointX is used only for keys wider than most common key width. When the referencePointX
 // is NOT_A_COORDINATE, this method calculates the return value without using the line segment.
 // isGeometric is currently not used because we don't have extra X coordinates sweet spots for
@@ -17,6 +17,8 @@
 #ifndef LATINIME_PROXIMITY_INFO_H
 #define LATINIME_PROXIMITY_INFO_H
 
+#include <vector>
+
 #include "defines.h"
 #include "jni.h"
 #include "suggest/core/layout/proximity_info_utils.h"
@@ -24,6 +26,8 @@
 
 namespace latinime {
 
+class KeyDistanceTable;
+
 class ProximityInfo {
  public:
     ProximityInfo(JNIEnv *env, const jstring localeJStr,
@@ -56,6 +60,8 @@ class ProximityInfo {
         return NORMALIZED_SQUARED_MOST_COMMON_KEY_HYPOTENUSE;
     }
     int getKeyCount() const { return KEY_COUNT; }
+    // Unique among the instances created in the process, unlike the address.
+    int getId() const { return mId; }
     int getCellHeight() const { return CELL_HEIGHT; }
     int getCellWidth() const { return CELL_WIDTH; }
     int getGridWidth() const { return GRID_WIDTH; }
@@ -69,6 +75,8 @@ class ProximityInfo {
     int getKeyCenterYOfKeyIdG(
             const int keyId, const int referencePointY, const bool isGeometric) const;
     int getKeyKeyDistanceG(int keyId0, int keyId1) const;
+    // Returns the id of the shared KeyDistanceTable, or 0 if there is no table.
+    int getKeyDistanceTableId() const;
 
     AK_FORCE_INLINE void initializeProximities(const int *const inputCodes,
             const int *const inputXCoordinates, const int *const inputYCoordinates,
@@ -91,7 +99,11 @@ class ProximityInfo {
     DISALLOW_IMPLICIT_CONSTRUCTORS(ProximityInfo);
 
     void initializeG();
+    void getGeometry(std::vector<int> *const outGeometry) const;
+
+    static int sLastId;
 
+    const int mId;
     const int GRID_WIDTH;
     const int GRID_HEIGHT;
     const int MOST_COMMON_KEY_WIDTH;
@@ -123,6 +135,8 @@ class ProximityInfo {
     int mCenterXsG[MAX_KEY_COUNT_IN_A_KEYBOARD];
     int mCenterYsG[MAX_KEY_COUNT_IN_A_KEYBOARD];
     int mKeyKeyDistancesG[MAX_KEY_COUNT_IN_A_KEYBOARD][MAX_KEY_COUNT_IN_A_KEYBOARD];
+    // Shared with the other instances that have the same geometry. Can be 0.
+    const KeyDistanceTable *mKeyDistanceTable;
     // TODO: move to correction.h
 };
 } // namespace latinime
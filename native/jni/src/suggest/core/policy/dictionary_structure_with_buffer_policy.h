@@ -78,6 +78,11 @@ class DictionaryStructureWithBufferPolicy {
 
     virtual void flushWithGC(const char *const filePath) = 0;
 
+    // Runs a slice of GC that visits at most maxPtNodeCount PtNodes. Returns true when the GC has
+    // been finished and the GCed dictionary has been written to the file. The dictionary can be
+    // read but must not be updated while this method returns false.
+    virtual bool runGCIncrementally(const char *const filePath, const int maxPtNodeCount) = 0;
+
     virtual bool needsToRunGC(const bool mindsBlockByGC) const = 0;
 
     // Currently, this method is used only for testing. You may want to consider creating new
@@ -18,8 +18,11 @@
 
 #include "defines.h"
 #include "suggest/core/dictionary/dictionary.h"
+#include "suggest/core/layout/proximity_info.h"
 #include "suggest/core/policy/dictionary_header_structure_policy.h"
 #include "suggest/core/policy/dictionary_structure_with_buffer_policy.h"
+#include "suggest/core/session/expansion_worker_pool.h"
+#include "suggest/core/suggest_options.h"
 
 namespace latinime {
 
@@ -28,24 +31,48 @@ namespace latinime {
 const int DicTraverseSession::DICTIONARY_SIZE_THRESHOLD_TO_USE_LARGE_CACHE_FOR_SUGGESTION =
         256 * 1024;
 
+DicTraverseSession::~DicTraverseSession() {
+    delete mExpansionWorkerPool;
+}
+
 void DicTraverseSession::init(const Dictionary *const dictionary, const int *prevWord,
         int prevWordLength, const SuggestOptions *const suggestOptions) {
+    // The cached bigrams and frontier snapshots are kept across searches as long as the
+    // dictionary is not updated, because they refer to PtNode positions.
+    if (mDictionary != dictionary || mDictionaryUpdateCount != dictionary->getUpdateCount()) {
+        mMultiBigramMap.clear();
+        for (int i = 0; i < MAX_EXPANSION_SHARD_COUNT - 1; ++i) {
+            mExpansionMultiBigramMaps[i].clear();
+        }
+        mDicNodesCache.discardAllFrontierSnapshots();
+        mDictionaryUpdateCount = dictionary->getUpdateCount();
+    }
+    mMultiBigramMap.onSearchStarted();
+    for (int i = 0; i < MAX_EXPANSION_SHARD_COUNT - 1; ++i) {
+        mExpansionMultiBigramMaps[i].onSearchStarted();
+    }
     mDictionary = dictionary;
     mMultiWordCostMultiplier = getDictionaryStructurePolicy()->getHeaderStructurePolicy()
             ->getMultiWordCostMultiplier();
     mSuggestOptions = suggestOptions;
+    const int lastPrevWordPos = mPrevWordPos;
     if (!prevWord) {
         mPrevWordPos = NOT_A_DICT_POS;
-        return;
-    }
-    // TODO: merge following similar calls to getTerminalPosition into one case-insensitive call.
-    mPrevWordPos = getDictionaryStructurePolicy()->getTerminalNodePositionOfWord(
-            prevWord, prevWordLength, false /* forceLowerCaseSearch */);
-    if (mPrevWordPos == NOT_A_DICT_POS) {
-        // Check bigrams for lower-cased previous word if original was not found. Useful for
-        // auto-capitalized words like "The [current_word]".
+    } else {
+        // TODO: merge following similar calls to getTerminalPosition into one case-insensitive
+        // call.
         mPrevWordPos = getDictionaryStructurePolicy()->getTerminalNodePositionOfWord(
-                prevWord, prevWordLength, true /* forceLowerCaseSearch */);
+                prevWord, prevWordLength, false /* forceLowerCaseSearch */);
+        if (mPrevWordPos == NOT_A_DICT_POS) {
+            // Check bigrams for lower-cased previous word if original was not found. Useful for
+            // auto-capitalized words like "The [current_word]".
+            mPrevWordPos = getDictionaryStructurePolicy()->getTerminalNodePositionOfWord(
+                    prevWord, prevWordLength, true /* forceLowerCaseSearch */);
+        }
+    }
+    if (mPrevWordPos != lastPrevWordPos) {
+        // The scores of the snapshotted dicNodes depend on the previous word.
+        mDicNodesCache.discardAllFrontierSnapshots();
     }
 }
 
@@ -55,6 +82,8 @@ void DicTraverseSession::setupForGetSuggestions(const ProximityInfo *pInfo,
         const float maxSpatialDistance, const int maxPointerCount) {
     mProximityInfo = pInfo;
     mMaxPointerCount = maxPointerCount;
+    discardInvalidFrontierSnapshots(inputCodePoints, inputXs, inputYs, inputSize,
+            maxPointerCount);
     initializeProximityInfoStates(inputCodePoints, inputXs, inputYs, times, pointerIds, inputSize,
             maxSpatialDistance, maxPointerCount);
 }
@@ -64,13 +93,85 @@ const DictionaryStructureWithBufferPolicy *DicTraverseSession::getDictionaryStru
     return mDictionary->getDictionaryStructurePolicy();
 }
 
+ExpansionWorkerPool *DicTraverseSession::getExpansionWorkerPool() {
+    // The calling thread expands one of the shards, so the number of workers is one less than the
+    // maximum number of shards.
+    const int workerCount = mSuggestOptions ? min(
+            mSuggestOptions->getParallelExpansionWorkerCount(), MAX_EXPANSION_SHARD_COUNT - 1) : 0;
+    if (workerCount <= 0) {
+        return 0;
+    }
+    if (!mExpansionWorkerPool || mExpansionWorkerCount != workerCount) {
+        delete mExpansionWorkerPool;
+        mExpansionWorkerPool = new ExpansionWorkerPool(workerCount);
+        mExpansionWorkerCount = workerCount;
+        if (mExpansionWorkerPool->getThreadCount() == 0) {
+            // The other sessions use all the worker threads of the process. Expand serially and
+            // try again for the next search.
+            delete mExpansionWorkerPool;
+            mExpansionWorkerPool = 0;
+        }
+    }
+    return mExpansionWorkerPool;
+}
+
 void DicTraverseSession::resetCache(const int thresholdForNextActiveDicNodes, const int maxWords) {
     mDicNodesCache.reset(thresholdForNextActiveDicNodes /* nextActiveSize */,
             maxWords /* terminalSize */);
-    mMultiBigramMap.clear();
     mPartiallyCommited = false;
 }
 
+void DicTraverseSession::discardInvalidFrontierSnapshots(const int *const inputCodePoints,
+        const int *const inputXs, const int *const inputYs, const int inputSize,
+        const int maxPointerCount) {
+    if (updateSearchConditions() || maxPointerCount == MAX_POINTER_COUNT_G) {
+        // Frontier snapshots are used only for typing, and only with the keyboard layout and the
+        // suggest options they were taken with.
+        mDicNodesCache.discardAllFrontierSnapshots();
+        mLastInputCodePoints.clear();
+        mLastInputXs.clear();
+        mLastInputYs.clear();
+        return;
+    }
+    const int comparableInputSize = min(inputSize, static_cast<int>(mLastInputCodePoints.size()));
+    int unchangedInputSize = 0;
+    while (unchangedInputSize < comparableInputSize
+            && mLastInputCodePoints[unchangedInputSize] == inputCodePoints[unchangedInputSize]
+            && mLastInputXs[unchangedInputSize]
+                    == (inputXs ? inputXs[unchangedInputSize] : NOT_A_COORDINATE)
+            && mLastInputYs[unchangedInputSize]
+                    == (inputYs ? inputYs[unchangedInputSize] : NOT_A_COORDINATE)) {
+        ++unchangedInputSize;
+    }
+    mDicNodesCache.discardInvalidFrontierSnapshots(unchangedInputSize);
+    mLastInputCodePoints.assign(inputCodePoints, inputCodePoints + inputSize);
+    if (inputXs && inputYs) {
+        mLastInputXs.assign(inputXs, inputXs + inputSize);
+        mLastInputYs.assign(inputYs, inputYs + inputSize);
+    } else {
+        mLastInputXs.assign(inputSize, NOT_A_COORDINATE);
+        mLastInputYs.assign(inputSize, NOT_A_COORDINATE);
+    }
+}
+
+// Returns whether the keyboard layout or the suggest options differ from the last search.
+bool DicTraverseSession::updateSearchConditions() {
+    std::vector<int> searchConditions;
+    // The pointer is not enough because a new ProximityInfo may be allocated at the address of
+    // a deleted one.
+    searchConditions.push_back(mProximityInfo ? mProximityInfo->getId() : 0);
+    if (mSuggestOptions) {
+        for (int i = 0; i < mSuggestOptions->getOptionCount(); ++i) {
+            searchConditions.push_back(mSuggestOptions->getOption(i));
+        }
+    }
+    if (searchConditions == mLastSearchConditions) {
+        return false;
+    }
+    mLastSearchConditions.swap(searchConditions);
+    return true;
+}
+
 void DicTraverseSession::initializeProximityInfoStates(const int *const inputCodePoints,
         const int *const inputXs, const int *const inputYs, const int *const times,
         const int *const pointerIds, const int inputSize, const float maxSpatialDistance,
@@ -22,14 +22,17 @@
 
 #include "defines.h"
 #include "jni.h"
+#include "suggest/core/dicnode/dic_node_expansion_output.h"
 #include "suggest/core/dicnode/dic_nodes_cache.h"
 #include "suggest/core/dictionary/multi_bigram_map.h"
 #include "suggest/core/layout/proximity_info_state.h"
+#include "suggest/core/session/suggest_stats.h"
 
 namespace latinime {
 
 class Dictionary;
 class DictionaryStructureWithBufferPolicy;
+class ExpansionWorkerPool;
 class ProximityInfo;
 class SuggestOptions;
 
@@ -60,15 +63,19 @@ class DicTraverseSession {
 
     AK_FORCE_INLINE DicTraverseSession(JNIEnv *env, jstring localeStr, bool usesLargeCache)
             : mPrevWordPos(NOT_A_DICT_POS), mProximityInfo(0),
-              mDictionary(0), mSuggestOptions(0), mDicNodesCache(usesLargeCache),
-              mMultiBigramMap(), mInputSize(0), mPartiallyCommited(false), mMaxPointerCount(1),
-              mMultiWordCostMultiplier(1.0f) {
+              mDictionary(0), mDictionaryUpdateCount(0), mSuggestOptions(0),
+              mDicNodesCache(usesLargeCache), mLastInputCodePoints(), mLastInputXs(),
+              mLastInputYs(), mLastSearchConditions(),
+              mMultiBigramMap(), mExpansionWorkerPool(0), mExpansionWorkerCount(0),
+              mExpansionFrontier(), mInputSize(0), mPartiallyCommited(false), mMaxPointerCount(1),
+              mMultiWordCostMultiplier(1.0f), mSuggestStats(), mCancelRequestCount(0),
+              mCancelRequestCountAtSearchRequest(0) {
         // NOTE: mProximityInfoStates is an array of instances.
         // No need to initialize it explicitly here.
     }
 
-    // Non virtual inline destructor -- never inherit this class
-    AK_FORCE_INLINE ~DicTraverseSession() {}
+    // Non virtual destructor -- never inherit this class
+    ~DicTraverseSession();
 
     void init(const Dictionary *dictionary, const int *prevWord, int prevWordLength,
             const SuggestOptions *const suggestOptions);
@@ -93,10 +100,51 @@ class DicTraverseSession {
     int getDicRootPos() const { return 0; }
     DicNodesCache *getDicTraverseCache() { return &mDicNodesCache; }
     MultiBigramMap *getMultiBigramMap() { return &mMultiBigramMap; }
+    // Returns the worker pool for parallel expansion, or 0 if serial expansion is requested.
+    ExpansionWorkerPool *getExpansionWorkerPool();
+    // Each shard of parallel expansion has its own output and bigram map. Shard 0 uses the
+    // bigram map of the session.
+    DicNodeExpansionOutput *getExpansionOutput(const int shardIndex) {
+        return &mExpansionOutputs[shardIndex];
+    }
+    MultiBigramMap *getExpansionMultiBigramMap(const int shardIndex) {
+        return shardIndex == 0 ? &mMultiBigramMap : &mExpansionMultiBigramMaps[shardIndex - 1];
+    }
+    // The active dicNodes popped for parallel expansion.
+    std::vector<DicNode> *getExpansionFrontier() { return &mExpansionFrontier; }
+    SuggestStats *getSuggestStats() { return &mSuggestStats; }
+    const SuggestStats *getSuggestStats() const { return &mSuggestStats; }
     const ProximityInfoState *getProximityInfoState(int id) const {
         return &mProximityInfoStates[id];
     }
     int getInputSize() const { return mInputSize; }
+
+    // Cancels the searches requested on this session before the cancel request numbered
+    // cancelRequestCount, including those which have not started yet. Can be called from any
+    // thread. The search checks it cooperatively, so it is aborted at the next dicNode and
+    // returns no results. The requests are numbered by the caller, and may be given in any order.
+    void requestCancel(const int cancelRequestCount) {
+        int currentCount = mCancelRequestCount;
+        while (currentCount < cancelRequestCount) {
+            const int previousCount = __sync_val_compare_and_swap(&mCancelRequestCount,
+                    currentCount, cancelRequestCount);
+            if (previousCount == currentCount) {
+                break;
+            }
+            currentCount = previousCount;
+        }
+    }
+
+    // Must be called before a search is started, with the number of the last cancel request that
+    // had been made when the search was requested. Later cancel requests cancel the search.
+    void onSearchRequested(const int cancelRequestCount) {
+        mCancelRequestCountAtSearchRequest = cancelRequestCount;
+    }
+
+    bool isSearchCancelled() const {
+        return mCancelRequestCount > mCancelRequestCountAtSearchRequest;
+    }
+
     void setPartiallyCommited() { mPartiallyCommited = true; }
     bool isPartiallyCommited() const { return mPartiallyCommited; }
 
@@ -187,7 +235,12 @@ class DicTraverseSession {
     DISALLOW_IMPLICIT_CONSTRUCTORS(DicTraverseSession);
     // threshold to start caching
     static const int CACHE_START_INPUT_LENGTH_THRESHOLD;
+    static const int MAX_EXPANSION_SHARD_COUNT = 8;
     static const int DICTIONARY_SIZE_THRESHOLD_TO_USE_LARGE_CACHE_FOR_SUGGESTION;
+    void discardInvalidFrontierSnapshots(const int *const inputCodePoints,
+            const int *const inputXs, const int *const inputYs, const int inputSize,
+            const int maxPointerCount);
+    bool updateSearchConditions();
     void initializeProximityInfoStates(const int *const inputCodePoints, const int *const inputXs,
             const int *const inputYs, const int *const times, const int *const pointerIds,
             const int inputSize, const float maxSpatialDistance, const int maxPointerCount);
@@ -195,11 +248,27 @@ class DicTraverseSession {
     int mPrevWordPos;
     const ProximityInfo *mProximityInfo;
     const Dictionary *mDictionary;
+    // The update count of mDictionary when the caches that refer to PtNode positions were last
+    // cleared.
+    int mDictionaryUpdateCount;
     const SuggestOptions *mSuggestOptions;
 
     DicNodesCache mDicNodesCache;
-    // Temporary cache for bigram frequencies
+    // The typed input of the last search, used to find the frontier snapshots that are still
+    // valid for the current input.
+    std::vector<int> mLastInputCodePoints;
+    std::vector<int> mLastInputXs;
+    std::vector<int> mLastInputYs;
+    // The keyboard layout and the suggest options of the last search. The scores of the
+    // snapshotted dicNodes depend on both of them.
+    std::vector<int> mLastSearchConditions;
+    // Cache for bigram frequencies
     MultiBigramMap mMultiBigramMap;
+    ExpansionWorkerPool *mExpansionWorkerPool;
+    int mExpansionWorkerCount;
+    std::vector<DicNode> mExpansionFrontier;
+    DicNodeExpansionOutput mExpansionOutputs[MAX_EXPANSION_SHARD_COUNT];
+    MultiBigramMap mExpansionMultiBigramMaps[MAX_EXPANSION_SHARD_COUNT - 1];
     ProximityInfoState mProximityInfoStates[MAX_POINTER_COUNT_G];
 
     int mInputSize;
@@ -210,6 +279,12 @@ class DicTraverseSession {
     // Configuration per dictionary
     float mMultiWordCostMultiplier;
 
+    // Statistics of the last getSuggestions call.
+    SuggestStats mSuggestStats;
+
+    // Raised by requestCancel(), which may be called from another thread.
+    volatile int mCancelRequestCount;
+    int mCancelRequestCountAtSearchRequest;
 };
 } // namespace latinime
 #endif // LATINIME_DIC_TRAVERSE_SESSION_H
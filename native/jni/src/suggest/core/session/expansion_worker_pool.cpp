@@ -0,0 +1,126 @@
+/*
+ * Copyright (C) 2013 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+#include "suggest/core/session/expansion_worker_pool.h"
+
+namespace latinime {
+
+// The calling thread of a search expands a shard too, so this is as many threads as a single
+// session can use.
+const int ExpansionWorkerPool::MAX_THREAD_COUNT_IN_PROCESS = 7;
+
+// Pools are created and deleted by sessions, which may be used on different threads.
+static pthread_mutex_t sThreadCountMutex = PTHREAD_MUTEX_INITIALIZER;
+static int sThreadCount = 0;
+
+ExpansionWorkerPool::ExpansionWorkerPool(const int threadCount)
+        : mThreads(), mMutex(), mTaskAvailableCond(), mTaskFinishedCond(), mTask(0),
+          mShardCount(0), mNextShardIndex(0), mUnfinishedShardCount(0), mIsShuttingDown(false) {
+    pthread_mutex_init(&mMutex, 0);
+    pthread_cond_init(&mTaskAvailableCond, 0);
+    pthread_cond_init(&mTaskFinishedCond, 0);
+    const int reservedThreadCount = reserveThreads(threadCount);
+    for (int i = 0; i < reservedThreadCount; ++i) {
+        pthread_t thread;
+        if (pthread_create(&thread, 0, runWorkerThread, this) != 0) {
+            AKLOGE("Cannot create a worker thread for expansion. created: %d, requested: %d",
+                    i, reservedThreadCount);
+            break;
+        }
+        mThreads.push_back(thread);
+    }
+    releaseThreads(reservedThreadCount - getThreadCount());
+}
+
+ExpansionWorkerPool::~ExpansionWorkerPool() {
+    pthread_mutex_lock(&mMutex);
+    mIsShuttingDown = true;
+    pthread_cond_broadcast(&mTaskAvailableCond);
+    pthread_mutex_unlock(&mMutex);
+    for (std::vector<pthread_t>::iterator it = mThreads.begin(); it != mThreads.end(); ++it) {
+        pthread_join(*it, 0);
+    }
+    releaseThreads(getThreadCount());
+    pthread_cond_destroy(&mTaskFinishedCond);
+    pthread_cond_destroy(&mTaskAvailableCond);
+    pthread_mutex_destroy(&mMutex);
+}
+
+/* static */ int ExpansionWorkerPool::reserveThreads(const int requestedThreadCount) {
+    pthread_mutex_lock(&sThreadCountMutex);
+    const int reservedThreadCount = max(0,
+            min(requestedThreadCount, MAX_THREAD_COUNT_IN_PROCESS - sThreadCount));
+    sThreadCount += reservedThreadCount;
+    pthread_mutex_unlock(&sThreadCountMutex);
+    return reservedThreadCount;
+}
+
+/* static */ void ExpansionWorkerPool::releaseThreads(const int threadCount) {
+    pthread_mutex_lock(&sThreadCountMutex);
+    sThreadCount -= threadCount;
+    pthread_mutex_unlock(&sThreadCountMutex);
+}
+
+void ExpansionWorkerPool::run(Task *const task, const int shardCount) {
+    pthread_mutex_lock(&mMutex);
+    mTask = task;
+    mShardCount = shardCount;
+    mNextShardIndex = 0;
+    mUnfinishedShardCount = shardCount;
+    pthread_cond_broadcast(&mTaskAvailableCond);
+    // The calling thread runs shards too instead of just waiting for the worker threads.
+    while (mNextShardIndex < mShardCount) {
+        runNextShardLocked();
+    }
+    while (mUnfinishedShardCount > 0) {
+        pthread_cond_wait(&mTaskFinishedCond, &mMutex);
+    }
+    mTask = 0;
+    pthread_mutex_unlock(&mMutex);
+}
+
+/* static */ void *ExpansionWorkerPool::runWorkerThread(void *const pool) {
+    static_cast<ExpansionWorkerPool *>(pool)->runWorkerLoop();
+    return 0;
+}
+
+void ExpansionWorkerPool::runWorkerLoop() {
+    pthread_mutex_lock(&mMutex);
+    while (true) {
+        while (!mIsShuttingDown && (!mTask || mNextShardIndex >= mShardCount)) {
+            pthread_cond_wait(&mTaskAvailableCond, &mMutex);
+        }
+        if (mIsShuttingDown) {
+            break;
+        }
+        runNextShardLocked();
+    }
+    pthread_mutex_unlock(&mMutex);
+}
+
+void ExpansionWorkerPool::runNextShardLocked() {
+    Task *const task = mTask;
+    const int shardIndex = mNextShardIndex;
+    ++mNextShardIndex;
+    pthread_mutex_unlock(&mMutex);
+    task->run(shardIndex);
+    pthread_mutex_lock(&mMutex);
+    --mUnfinishedShardCount;
+    if (mUnfinishedShardCount == 0) {
+        pthread_cond_signal(&mTaskFinishedCond);
+    }
+}
+} // namespace latinime
@@ -0,0 +1,78 @@
+/*
+ * Copyright (C) 2013 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+#ifndef LATINIME_EXPANSION_WORKER_POOL_H
+#define LATINIME_EXPANSION_WORKER_POOL_H
+
+#include <pthread.h>
+#include <vector>
+
+#include "defines.h"
+
+namespace latinime {
+
+/*
+ * A pool of worker threads used to expand the active dicNodes in parallel. The work is divided
+ * into shards. The calling thread always takes part in the work, so the work is finished even if
+ * no worker thread could be created.
+ * Each session has its own pool, so the number of worker threads of all the pools is capped for
+ * the process. A pool gets fewer threads than requested, possibly none, when the cap is reached.
+ */
+class ExpansionWorkerPool {
+ public:
+    static const int MAX_THREAD_COUNT_IN_PROCESS;
+
+    class Task {
+     public:
+        virtual ~Task() {}
+        // Called exactly once for each shard, possibly on different threads at the same time.
+        virtual void run(const int shardIndex) = 0;
+    };
+
+    explicit ExpansionWorkerPool(const int threadCount);
+    ~ExpansionWorkerPool();
+
+    int getThreadCount() const {
+        return static_cast<int>(mThreads.size());
+    }
+
+    // Runs the task for all shards and returns when all of them are finished.
+    void run(Task *const task, const int shardCount);
+
+ private:
+    DISALLOW_IMPLICIT_CONSTRUCTORS(ExpansionWorkerPool);
+
+    std::vector<pthread_t> mThreads;
+    pthread_mutex_t mMutex;
+    pthread_cond_t mTaskAvailableCond;
+    pthread_cond_t mTaskFinishedCond;
+    Task *mTask;
+    int mShardCount;
+    int mNextShardIndex;
+    int mUnfinishedShardCount;
+    bool mIsShuttingDown;
+
+    // Reserves up to requestedThreadCount threads within the cap and returns how many were
+    // reserved.
+    static int reserveThreads(const int requestedThreadCount);
+    static void releaseThreads(const int threadCount);
+    static void *runWorkerThread(void *const pool);
+    void runWorkerLoop();
+    // Must be called with mMutex locked.
+    void runNextShardLocked();
+};
+} // namespace latinime
+#endif // LATINIME_EXPANSION_WORKER_POOL_H
@@ -0,0 +1,161 @@
+/*
+ * Copyright (C) 2013 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+#ifndef LATINIME_SUGGEST_STATS_H
+#define LATINIME_SUGGEST_STATS_H
+
+#include <cstdio>
+#include <stdint.h>
+#include <time.h>
+
+#include "defines.h"
+
+namespace latinime {
+
+// Statistics of one getSuggestions call. Unlike PROF_*, this is compiled in release builds, so it
+// only uses counter increments and a monotonic clock read at each phase boundary.
+class SuggestStats {
+ public:
+    enum Phase {
+        PHASE_INITIALIZE = 0,
+        PHASE_EXPAND,
+        PHASE_OUTPUT,
+        PHASE_COUNT
+    };
+
+    SuggestStats() : mExpandedDicNodeCount(0), mRestoredDicNodeCount(0),
+            mBigramCacheHitCount(0), mBigramCacheMissCount(0), mQueueOverflowCount(0),
+            mFrontierSnapshotHitCount(0), mFrontierSnapshotMissCount(0), mIsPartial(false),
+            mIsCancelled(false), mPhaseStartTimeNs(0) {
+        for (int i = 0; i < PHASE_COUNT; ++i) {
+            mPhaseTimeNs[i] = 0;
+        }
+    }
+
+    ~SuggestStats() {}
+
+    void reset() {
+        mExpandedDicNodeCount = 0;
+        mRestoredDicNodeCount = 0;
+        mBigramCacheHitCount = 0;
+        mBigramCacheMissCount = 0;
+        mQueueOverflowCount = 0;
+        mFrontierSnapshotHitCount = 0;
+        mFrontierSnapshotMissCount = 0;
+        mIsPartial = false;
+        mIsCancelled = false;
+        mPhaseStartTimeNs = 0;
+        for (int i = 0; i < PHASE_COUNT; ++i) {
+            mPhaseTimeNs[i] = 0;
+        }
+    }
+
+    AK_FORCE_INLINE void startPhase() {
+        mPhaseStartTimeNs = getMonotonicTimeNs();
+    }
+
+    AK_FORCE_INLINE void endPhase(const Phase phase) {
+        mPhaseTimeNs[phase] += getMonotonicTimeNs() - mPhaseStartTimeNs;
+    }
+
+    AK_FORCE_INLINE void onDicNodeExpanded() {
+        ++mExpandedDicNodeCount;
+    }
+
+    void setRestoredDicNodeCount(const int restoredDicNodeCount) {
+        mRestoredDicNodeCount = restoredDicNodeCount;
+    }
+
+    void setBigramCacheCounts(const int hitCount, const int missCount) {
+        mBigramCacheHitCount = hitCount;
+        mBigramCacheMissCount = missCount;
+    }
+
+    void setQueueOverflowCount(const int queueOverflowCount) {
+        mQueueOverflowCount = queueOverflowCount;
+    }
+
+    void onFrontierSnapshotHit() {
+        ++mFrontierSnapshotHitCount;
+    }
+
+    void onFrontierSnapshotMiss() {
+        ++mFrontierSnapshotMissCount;
+    }
+
+    void onSearchNarrowed() {
+        mIsPartial = true;
+    }
+
+    void onSearchCancelled() {
+        mIsCancelled = true;
+    }
+
+    int getExpandedDicNodeCount() const { return mExpandedDicNodeCount; }
+    bool isPartial() const { return mIsPartial; }
+    bool isCancelled() const { return mIsCancelled; }
+    int getQueueOverflowCount() const { return mQueueOverflowCount; }
+    int64_t getPhaseTimeNs(const Phase phase) const { return mPhaseTimeNs[phase]; }
+
+    static AK_FORCE_INLINE int64_t getMonotonicTimeNs() {
+        struct timespec now;
+        clock_gettime(CLOCK_MONOTONIC, &now);
+        return static_cast<int64_t>(now.tv_sec) * 1000000000LL + now.tv_nsec;
+    }
+
+    // Writes the statistics as space separated KEY=VALUE pairs.
+    // Must be kept in sync with SuggestStats.java.
+    void dumpToString(char *const outResult, const int maxResultLength) const {
+        snprintf(outResult, maxResultLength,
+                "EXPANDED_DIC_NODES=%d RESTORED_DIC_NODES=%d BIGRAM_CACHE_HITS=%d "
+                "BIGRAM_CACHE_MISSES=%d QUEUE_OVERFLOWS=%d FRONTIER_SNAPSHOT_HITS=%d "
+                "FRONTIER_SNAPSHOT_MISSES=%d PARTIAL=%d CANCELLED=%d INITIALIZE_NS=%lld "
+                "EXPAND_NS=%lld OUTPUT_NS=%lld",
+                mExpandedDicNodeCount, mRestoredDicNodeCount, mBigramCacheHitCount,
+                mBigramCacheMissCount, mQueueOverflowCount, mFrontierSnapshotHitCount,
+                mFrontierSnapshotMissCount, mIsPartial ? 1 : 0, mIsCancelled ? 1 : 0,
+                static_cast<long long>(mPhaseTimeNs[PHASE_INITIALIZE]),
+                static_cast<long long>(mPhaseTimeNs[PHASE_EXPAND]),
+                static_cast<long long>(mPhaseTimeNs[PHASE_OUTPUT]));
+    }
+
+ private:
+    // NOTE: This class doesn't use DISALLOW_COPY_AND_ASSIGN() because Dictionary keeps a copy
+    // of the statistics of the last call.
+
+    int mExpandedDicNodeCount;
+    // The number of dic nodes restored from the continuous suggestion cache or a frontier
+    // snapshot.
+    int mRestoredDicNodeCount;
+    int mBigramCacheHitCount;
+    int mBigramCacheMissCount;
+    // The number of dic nodes dropped or evicted because a priority queue was full.
+    int mQueueOverflowCount;
+    // Whether the search was restarted from a frontier snapshot instead of the root. A miss is
+    // counted only when the input is long enough for the continuous suggestion.
+    int mFrontierSnapshotHitCount;
+    int mFrontierSnapshotMissCount;
+    // Whether the search was narrowed because the search budget ran out. The results are the
+    // best ones found in the budget, but may be worse than the results of the full search.
+    bool mIsPartial;
+    // Whether the search was cancelled by DicTraverseSession::requestCancel(). No results are
+    // returned then.
+    bool mIsCancelled;
+    int64_t mPhaseStartTimeNs;
+    int64_t mPhaseTimeNs[PHASE_COUNT];
+};
+} // namespace latinime
+#endif // LATINIME_SUGGEST_STATS_H
@@ -17,6 +17,7 @@
 #include "suggest/core/suggest.h"
 
 #include "suggest/core/dicnode/dic_node.h"
+#include "suggest/core/dicnode/dic_node_expansion_output.h"
 #include "suggest/core/dicnode/dic_node_priority_queue.h"
 #include "suggest/core/dicnode/dic_node_vector.h"
 #include "suggest/core/dictionary/binary_dictionary_shortcut_iterator.h"
@@ -29,12 +30,17 @@
 #include "suggest/core/policy/traversal.h"
 #include "suggest/core/policy/weighting.h"
 #include "suggest/core/session/dic_traverse_session.h"
+#include "suggest/core/session/expansion_worker_pool.h"
+#include "suggest/core/session/suggest_stats.h"
+#include "suggest/core/suggest_options.h"
 
 namespace latinime {
 
 // Initialization of class constants.
 const int Suggest::MIN_LEN_FOR_MULTI_WORD_AUTOCORRECT = 16;
 const int Suggest::MIN_CONTINUOUS_SUGGESTION_INPUT_SIZE = 2;
+const int Suggest::MIN_DIC_NODE_COUNT_PER_EXPANSION_SHARD = 16;
+const int Suggest::MAX_ACTIVE_DIC_NODE_COUNT_AFTER_SEARCH_BUDGET = MAX_RESULTS;
 const float Suggest::AUTOCORRECT_CLASSIFICATION_THRESHOLD = 0.33f;
 
 /**
@@ -55,29 +61,69 @@ int Suggest::getSuggestions(ProximityInfo *pInfo, void *traverseSession,
     }
 
     PROF_OPEN;
+    PROF_DIC_NODE_COPY_RESET;
     PROF_START(0);
-    const float maxSpatialDistance = TRAVERSAL->getMaxSpatialDistance();
     DicTraverseSession *tSession = static_cast<DicTraverseSession *>(traverseSession);
+    SuggestStats *const stats = tSession->getSuggestStats();
+    stats->reset();
+    const int64_t searchStartTimeNs = SuggestStats::getMonotonicTimeNs();
+    stats->startPhase();
+    // The queue overflow and bigram cache counts are cumulative.
+    const int queueOverflowCountBefore = tSession->getDicTraverseCache()->getQueueOverflowCount();
+    const int bigramCacheHitCountBefore = tSession->getMultiBigramMap()->getCacheHitCount();
+    const int bigramCacheMissCountBefore = tSession->getMultiBigramMap()->getCacheMissCount();
+    const float maxSpatialDistance = TRAVERSAL->getMaxSpatialDistance();
     tSession->setupForGetSuggestions(pInfo, inputCodePoints, inputSize, inputXs, inputYs, times,
             pointerIds, maxSpatialDistance, TRAVERSAL->getMaxPointerCount());
     // TODO: Add the way to evaluate cache
 
     initializeSearch(tSession, commitPoint);
     PROF_END(0);
+    stats->endPhase(SuggestStats::PHASE_INITIALIZE);
     PROF_START(1);
+    stats->startPhase();
 
     // keep expanding search dicNodes until all have terminated.
+    bool isCancelled = false;
     while (tSession->getDicTraverseCache()->activeSize() > 0) {
+        if (!stats->isPartial() && isSearchBudgetExhausted(tSession, searchStartTimeNs)) {
+            // Finish the search with the best dicNodes found so far rather than giving up, so
+            // that there are still results for the whole input.
+            tSession->getDicTraverseCache()->narrowActiveDicNodes(
+                    MAX_ACTIVE_DIC_NODE_COUNT_AFTER_SEARCH_BUDGET);
+            stats->onSearchNarrowed();
+        }
         expandCurrentDicNodes(tSession);
+        if (tSession->isSearchCancelled()) {
+            isCancelled = true;
+            break;
+        }
         tSession->getDicTraverseCache()->advanceActiveDicNodes();
         tSession->getDicTraverseCache()->advanceInputIndex(inputSize);
     }
+    if (isCancelled) {
+        tSession->getDicTraverseCache()->abortSearch();
+        stats->onSearchCancelled();
+    }
+    if (stats->isPartial()) {
+        tSession->getDicTraverseCache()->finishNarrowedSearch();
+    }
     PROF_END(1);
+    stats->endPhase(SuggestStats::PHASE_EXPAND);
     PROF_START(2);
-    const int size = outputSuggestions(tSession, frequencies, outWords, outputIndices, outputTypes,
-            outputAutoCommitFirstWordConfidence);
+    stats->startPhase();
+    // The results of a cancelled search are not needed anymore.
+    const int size = isCancelled ? 0 : outputSuggestions(tSession, frequencies, outWords,
+            outputIndices, outputTypes, outputAutoCommitFirstWordConfidence);
     PROF_END(2);
+    stats->endPhase(SuggestStats::PHASE_OUTPUT);
     PROF_CLOSE;
+    PROF_DIC_NODE_COPY_OUT(sizeof(DicNode));
+    stats->setQueueOverflowCount(
+            tSession->getDicTraverseCache()->getQueueOverflowCount() - queueOverflowCountBefore);
+    stats->setBigramCacheCounts(
+            tSession->getMultiBigramMap()->getCacheHitCount() - bigramCacheHitCountBefore,
+            tSession->getMultiBigramMap()->getCacheMissCount() - bigramCacheMissCountBefore);
     return size;
 }
 
@@ -98,6 +144,8 @@ void Suggest::initializeSearch(DicTraverseSession *traverseSession, int commitPo
         if (commitPoint == 0) {
             // Continue suggestion
             traverseSession->getDicTraverseCache()->continueSearch();
+            traverseSession->getSuggestStats()->setRestoredDicNodeCount(
+                    traverseSession->getDicTraverseCache()->activeSize());
         } else {
             // Continue suggestion after partial commit.
             DicNode *topDicNode =
@@ -107,9 +155,21 @@ void Suggest::initializeSearch(DicTraverseSession *traverseSession, int commitPo
             traverseSession->setPartiallyCommited();
         }
     } else {
-        // Restart recognition at the root.
         traverseSession->resetCache(TRAVERSAL->getMaxCacheSize(traverseSession->getInputSize()),
                 MAX_RESULTS);
+        // Restart recognition at the latest frontier snapshot that is still valid, e.g. after
+        // backspace.
+        const int restoredDicNodeCount =
+                traverseSession->getDicTraverseCache()->restoreLatestFrontierSnapshot();
+        if (restoredDicNodeCount > 0) {
+            traverseSession->getSuggestStats()->setRestoredDicNodeCount(restoredDicNodeCount);
+            traverseSession->getSuggestStats()->onFrontierSnapshotHit();
+            return;
+        }
+        if (traverseSession->getInputSize() > MIN_CONTINUOUS_SUGGESTION_INPUT_SIZE) {
+            traverseSession->getSuggestStats()->onFrontierSnapshotMiss();
+        }
+        // Restart recognition at the root.
         // Create a new dic node here
         DicNode rootNode;
         DicNodeUtils::initAsRoot(traverseSession->getDictionaryStructurePolicy(),
@@ -118,6 +178,25 @@ void Suggest::initializeSearch(DicTraverseSession *traverseSession, int commitPo
     }
 }
 
+/**
+ * Returns whether the search has used up the time or expansion budget given by the options.
+ */
+bool Suggest::isSearchBudgetExhausted(const DicTraverseSession *const traverseSession,
+        const int64_t searchStartTimeNs) const {
+    const SuggestOptions *const suggestOptions = traverseSession->getSuggestOptions();
+    if (!suggestOptions) {
+        return false;
+    }
+    const int expansionBudget = suggestOptions->getSearchExpansionBudget();
+    if (expansionBudget > 0
+            && traverseSession->getSuggestStats()->getExpandedDicNodeCount() >= expansionBudget) {
+        return true;
+    }
+    const int timeBudgetMs = suggestOptions->getSearchTimeBudgetMs();
+    return timeBudgetMs > 0 && SuggestStats::getMonotonicTimeNs() - searchStartTimeNs
+            >= static_cast<int64_t>(timeBudgetMs) * 1000000LL;
+}
+
 /**
  * Outputs the final list of suggestions (i.e., terminal nodes).
  */
@@ -319,10 +398,6 @@ int Suggest::computeFirstWordConfidence(const DicNode *const terminalDicNode) co
  * nodes based on the next touch point(s) (or no touch points for lookahead)
  */
 void Suggest::expandCurrentDicNodes(DicTraverseSession *traverseSession) const {
-    const int inputSize = traverseSession->getInputSize();
-    DicNodeVector childDicNodes(TRAVERSAL->getDefaultExpandDicNodeSize());
-    DicNode correctionDicNode;
-
     // TODO: Find more efficient caching
     const bool shouldDepthLevelCache = TRAVERSAL->shouldDepthLevelCache(traverseSession);
     if (shouldDepthLevelCache) {
@@ -330,119 +405,215 @@ void Suggest::expandCurrentDicNodes(DicTraverseSession *traverseSession) const {
     }
     if (DEBUG_CACHE) {
         AKLOGI("expandCurrentDicNodes depth level cache = %d, inputSize = %d",
-                shouldDepthLevelCache, inputSize);
+                shouldDepthLevelCache, traverseSession->getInputSize());
     }
-    while (traverseSession->getDicTraverseCache()->activeSize() > 0) {
-        DicNode dicNode;
-        traverseSession->getDicTraverseCache()->popActive(&dicNode);
-        if (dicNode.isTotalInputSizeExceedingLimit()) {
-            return;
+    ExpansionWorkerPool *const workerPool = traverseSession->getExpansionWorkerPool();
+    if (workerPool) {
+        expandCurrentDicNodesInParallel(traverseSession, workerPool, shouldDepthLevelCache);
+        return;
+    }
+    DicNode correctionDicNode;
+    DicNodeExpansionOutput *const output = traverseSession->getExpansionOutput(0);
+    output->initToPushDirectly(traverseSession->getDicTraverseCache(),
+            traverseSession->getMultiBigramMap());
+    output->getChildDicNodes()->reserve(TRAVERSAL->getDefaultExpandDicNodeSize());
+    DicNode dicNode;
+    while (popActiveDicNodeToExpand(traverseSession, shouldDepthLevelCache, &dicNode)) {
+        expandDicNode(traverseSession, &dicNode, &correctionDicNode, output);
+    }
+}
+
+/**
+ * Expands the dicNodes in the current search priority queue on the worker threads. The active
+ * dicNodes are popped in the same order as the serial expansion and divided into contiguous
+ * shards. Each shard records its output, and the records are pushed to the next search priority
+ * queue in the order of the shards, so that the result is identical to the serial expansion.
+ */
+void Suggest::expandCurrentDicNodesInParallel(DicTraverseSession *traverseSession,
+        ExpansionWorkerPool *const workerPool, const bool shouldDepthLevelCache) const {
+    // Popping dicNodes also pushes them to the cache for continuous suggestion, so it has to be
+    // done serially.
+    std::vector<DicNode> *const frontier = traverseSession->getExpansionFrontier();
+    frontier->clear();
+    DicNode dicNode;
+    while (popActiveDicNodeToExpand(traverseSession, shouldDepthLevelCache, &dicNode)) {
+        frontier->push_back(dicNode);
+    }
+    const int frontierSize = static_cast<int>(frontier->size());
+    // The calling thread also expands a shard.
+    const int shardCount = min(workerPool->getThreadCount() + 1,
+            frontierSize / MIN_DIC_NODE_COUNT_PER_EXPANSION_SHARD);
+    if (shardCount <= 1) {
+        // Too few dicNodes to be worth dispatching to the worker threads.
+        DicNode correctionDicNode;
+        DicNodeExpansionOutput *const output = traverseSession->getExpansionOutput(0);
+        output->initToPushDirectly(traverseSession->getDicTraverseCache(),
+                traverseSession->getMultiBigramMap());
+        output->getChildDicNodes()->reserve(TRAVERSAL->getDefaultExpandDicNodeSize());
+        for (int i = 0; i < frontierSize; ++i) {
+            expandDicNode(traverseSession, &(*frontier)[i], &correctionDicNode, output);
         }
-        childDicNodes.clear();
-        const int point0Index = dicNode.getInputIndex(0);
-        const bool canDoLookAheadCorrection =
-                TRAVERSAL->canDoLookAheadCorrection(traverseSession, &dicNode);
-        const bool isLookAheadCorrection = canDoLookAheadCorrection
-                && traverseSession->getDicTraverseCache()->
-                        isLookAheadCorrectionInputIndex(static_cast<int>(point0Index));
-        const bool isCompletion = dicNode.isCompletion(inputSize);
-
-        const bool shouldNodeLevelCache =
-                TRAVERSAL->shouldNodeLevelCache(traverseSession, &dicNode);
-        if (shouldDepthLevelCache || shouldNodeLevelCache) {
-            if (DEBUG_CACHE) {
-                dicNode.dump("PUSH_CACHE");
-            }
-            traverseSession->getDicTraverseCache()->copyPushContinue(&dicNode);
-            dicNode.setCached();
+        return;
+    }
+    for (int i = 0; i < shardCount; ++i) {
+        traverseSession->getExpansionOutput(i)->initToRecord(
+                traverseSession->getExpansionMultiBigramMap(i));
+    }
+    ExpansionShardTask task(this, traverseSession, shardCount);
+    workerPool->run(&task, shardCount);
+    for (int i = 0; i < shardCount; ++i) {
+        traverseSession->getExpansionOutput(i)->replayRecords(
+                traverseSession->getDicTraverseCache());
+    }
+}
+
+void Suggest::ExpansionShardTask::run(const int shardIndex) {
+    std::vector<DicNode> *const frontier = mTraverseSession->getExpansionFrontier();
+    const int frontierSize = static_cast<int>(frontier->size());
+    const int beginIndex = frontierSize * shardIndex / mShardCount;
+    const int endIndex = frontierSize * (shardIndex + 1) / mShardCount;
+    DicNode correctionDicNode;
+    DicNodeExpansionOutput *const output = mTraverseSession->getExpansionOutput(shardIndex);
+    output->getChildDicNodes()->reserve(mSuggest->TRAVERSAL->getDefaultExpandDicNodeSize());
+    for (int i = beginIndex; i < endIndex; ++i) {
+        mSuggest->expandDicNode(mTraverseSession, &(*frontier)[i], &correctionDicNode, output);
+    }
+}
+
+/**
+ * Pops the next dicNode to expand from the current search priority queue and pushes it to the
+ * cache for continuous suggestion if needed. Returns false if there is no more dicNode to expand
+ * or the search has been cancelled.
+ */
+bool Suggest::popActiveDicNodeToExpand(DicTraverseSession *traverseSession,
+        const bool shouldDepthLevelCache, DicNode *const dicNode) const {
+    if (traverseSession->getDicTraverseCache()->activeSize() <= 0
+            || traverseSession->isSearchCancelled()) {
+        return false;
+    }
+    traverseSession->getDicTraverseCache()->popActive(dicNode);
+    traverseSession->getSuggestStats()->onDicNodeExpanded();
+    if (dicNode->isTotalInputSizeExceedingLimit()) {
+        return false;
+    }
+    const bool shouldNodeLevelCache = TRAVERSAL->shouldNodeLevelCache(traverseSession, dicNode);
+    if (shouldDepthLevelCache || shouldNodeLevelCache) {
+        if (DEBUG_CACHE) {
+            dicNode->dump("PUSH_CACHE");
+        }
+        traverseSession->getDicTraverseCache()->copyPushContinue(dicNode);
+        if (shouldDepthLevelCache) {
+            traverseSession->getDicTraverseCache()->copyPushFrontierSnapshot(dicNode);
         }
+        dicNode->setCached();
+    }
+    return true;
+}
 
-        if (dicNode.isInDigraph()) {
-            // Finish digraph handling if the node is in the middle of a digraph expansion.
-            processDicNodeAsDigraph(traverseSession, &dicNode);
-        } else if (isLookAheadCorrection) {
-            // The algorithm maintains a small set of "deferred" nodes that have not consumed the
-            // latest touch point yet. These are needed to apply look-ahead correction operations
-            // that require special handling of the latest touch point. For example, with insertions
-            // (e.g., "thiis" -> "this") the latest touch point should not be consumed at all.
-            processDicNodeAsTransposition(traverseSession, &dicNode);
-            processDicNodeAsInsertion(traverseSession, &dicNode);
-        } else { // !isLookAheadCorrection
-            // Only consider typing error corrections if the normalized compound distance is
-            // below a spatial distance threshold.
-            // NOTE: the threshold may need to be updated if scoring model changes.
-            // TODO: Remove. Do not prune node here.
-            const bool allowsErrorCorrections = TRAVERSAL->allowsErrorCorrections(&dicNode);
-            // Process for handling space substitution (e.g., hevis => he is)
-            if (allowsErrorCorrections
-                    && TRAVERSAL->isSpaceSubstitutionTerminal(traverseSession, &dicNode)) {
-                createNextWordDicNode(traverseSession, &dicNode, true /* spaceSubstitution */);
-            }
+/**
+ * Expands a dicNode popped from the current search priority queue and pushes the resulting dicNodes
+ * to the output. This may be called on worker threads, so the traverseSession must not be modified.
+ */
+void Suggest::expandDicNode(DicTraverseSession *traverseSession, DicNode *dicNode,
+        DicNode *correctionDicNode, DicNodeExpansionOutput *const output) const {
+    const int inputSize = traverseSession->getInputSize();
+    DicNodeVector *const childDicNodes = output->getChildDicNodes();
+    childDicNodes->clear();
+    const int point0Index = dicNode->getInputIndex(0);
+    const bool canDoLookAheadCorrection =
+            TRAVERSAL->canDoLookAheadCorrection(traverseSession, dicNode);
+    const bool isLookAheadCorrection = canDoLookAheadCorrection
+            && traverseSession->getDicTraverseCache()->
+                    isLookAheadCorrectionInputIndex(static_cast<int>(point0Index));
+    const bool isCompletion = dicNode->isCompletion(inputSize);
+
+    if (dicNode->isInDigraph()) {
+        // Finish digraph handling if the node is in the middle of a digraph expansion.
+        processDicNodeAsDigraph(traverseSession, dicNode, output);
+    } else if (isLookAheadCorrection) {
+        // The algorithm maintains a small set of "deferred" nodes that have not consumed the
+        // latest touch point yet. These are needed to apply look-ahead correction operations
+        // that require special handling of the latest touch point. For example, with insertions
+        // (e.g., "thiis" -> "this") the latest touch point should not be consumed at all.
+        processDicNodeAsTransposition(traverseSession, dicNode, output);
+        processDicNodeAsInsertion(traverseSession, dicNode, output);
+    } else { // !isLookAheadCorrection
+        // Only consider typing error corrections if the normalized compound distance is
+        // below a spatial distance threshold.
+        // NOTE: the threshold may need to be updated if scoring model changes.
+        // TODO: Remove. Do not prune node here.
+        const bool allowsErrorCorrections = TRAVERSAL->allowsErrorCorrections(dicNode);
+        // Process for handling space substitution (e.g., hevis => he is)
+        if (allowsErrorCorrections
+                && TRAVERSAL->isSpaceSubstitutionTerminal(traverseSession, dicNode)) {
+            createNextWordDicNode(traverseSession, dicNode, true /* spaceSubstitution */,
+                    output);
+        }
 
-            DicNodeUtils::getAllChildDicNodes(
-                    &dicNode, traverseSession->getDictionaryStructurePolicy(), &childDicNodes);
+        DicNodeUtils::getAllChildDicNodes(
+                dicNode, traverseSession->getDictionaryStructurePolicy(), childDicNodes);
 
-            const int childDicNodesSize = childDicNodes.getSizeAndLock();
-            for (int i = 0; i < childDicNodesSize; ++i) {
-                DicNode *const childDicNode = childDicNodes[i];
-                if (isCompletion) {
-                    // Handle forward lookahead when the lexicon letter exceeds the input size.
-                    processDicNodeAsMatch(traverseSession, childDicNode);
-                    continue;
-                }
-                if (DigraphUtils::hasDigraphForCodePoint(
-                        traverseSession->getDictionaryStructurePolicy()
-                                ->getHeaderStructurePolicy(),
-                        childDicNode->getNodeCodePoint())) {
-                    correctionDicNode.initByCopy(childDicNode);
-                    correctionDicNode.advanceDigraphIndex();
-                    processDicNodeAsDigraph(traverseSession, &correctionDicNode);
-                }
-                if (TRAVERSAL->isOmission(traverseSession, &dicNode, childDicNode,
-                        allowsErrorCorrections)) {
-                    // TODO: (Gesture) Change weight between omission and substitution errors
-                    // TODO: (Gesture) Terminal node should not be handled as omission
-                    correctionDicNode.initByCopy(childDicNode);
-                    processDicNodeAsOmission(traverseSession, &correctionDicNode);
-                }
-                const ProximityType proximityType = TRAVERSAL->getProximityType(
-                        traverseSession, &dicNode, childDicNode);
-                switch (proximityType) {
-                    // TODO: Consider the difference of proximityType here
-                    case MATCH_CHAR:
-                    case PROXIMITY_CHAR:
-                        processDicNodeAsMatch(traverseSession, childDicNode);
-                        break;
-                    case ADDITIONAL_PROXIMITY_CHAR:
-                        if (allowsErrorCorrections) {
-                            processDicNodeAsAdditionalProximityChar(traverseSession, &dicNode,
-                                    childDicNode);
-                        }
-                        break;
-                    case SUBSTITUTION_CHAR:
-                        if (allowsErrorCorrections) {
-                            processDicNodeAsSubstitution(traverseSession, &dicNode, childDicNode);
-                        }
-                        break;
-                    case UNRELATED_CHAR:
-                        // Just drop this node and do nothing.
-                        break;
-                    default:
-                        // Just drop this node and do nothing.
-                        break;
-                }
+        const int childDicNodesSize = childDicNodes->getSizeAndLock();
+        for (int i = 0; i < childDicNodesSize; ++i) {
+            DicNode *const childDicNode = (*childDicNodes)[i];
+            if (isCompletion) {
+                // Handle forward lookahead when the lexicon letter exceeds the input size.
+                processDicNodeAsMatch(traverseSession, childDicNode, output);
+                continue;
             }
-
-            // Push the node for look-ahead correction
-            if (allowsErrorCorrections && canDoLookAheadCorrection) {
-                traverseSession->getDicTraverseCache()->copyPushNextActive(&dicNode);
+            if (DigraphUtils::hasDigraphForCodePoint(
+                    traverseSession->getDictionaryStructurePolicy()
+                            ->getHeaderStructurePolicy(),
+                    childDicNode->getNodeCodePoint())) {
+                correctionDicNode->initByCopy(childDicNode);
+                correctionDicNode->advanceDigraphIndex();
+                processDicNodeAsDigraph(traverseSession, correctionDicNode, output);
             }
+            if (TRAVERSAL->isOmission(traverseSession, dicNode, childDicNode,
+                    allowsErrorCorrections)) {
+                // TODO: (Gesture) Change weight between omission and substitution errors
+                // TODO: (Gesture) Terminal node should not be handled as omission
+                correctionDicNode->initByCopy(childDicNode);
+                processDicNodeAsOmission(traverseSession, correctionDicNode, output);
+            }
+            const ProximityType proximityType = TRAVERSAL->getProximityType(
+                    traverseSession, dicNode, childDicNode);
+            switch (proximityType) {
+                // TODO: Consider the difference of proximityType here
+                case MATCH_CHAR:
+                case PROXIMITY_CHAR:
+                    processDicNodeAsMatch(traverseSession, childDicNode, output);
+                    break;
+                case ADDITIONAL_PROXIMITY_CHAR:
+                    if (allowsErrorCorrections) {
+                        processDicNodeAsAdditionalProximityChar(traverseSession, dicNode,
+                                childDicNode, output);
+                    }
+                    break;
+                case SUBSTITUTION_CHAR:
+                    if (allowsErrorCorrections) {
+                        processDicNodeAsSubstitution(traverseSession, dicNode, childDicNode,
+                                output);
+                    }
+                    break;
+                case UNRELATED_CHAR:
+                    // Just drop this node and do nothing.
+                    break;
+                default:
+                    // Just drop this node and do nothing.
+                    break;
+            }
+        }
+
+        // Push the node for look-ahead correction
+        if (allowsErrorCorrections && canDoLookAheadCorrection) {
+            output->copyPushNextActive(dicNode);
         }
     }
 }
 
-void Suggest::processTerminalDicNode(
-        DicTraverseSession *traverseSession, DicNode *dicNode) const {
+void Suggest::processTerminalDicNode(DicTraverseSession *traverseSession, DicNode *dicNode,
+        DicNodeExpansionOutput *const output) const {
     if (dicNode->getCompoundDistance() >= static_cast<float>(MAX_VALUE_FOR_WEIGHTING)) {
         return;
     }
@@ -458,65 +629,66 @@ void Suggest::processTerminalDicNode(
     if (TRAVERSAL->needsToTraverseAllUserInput()
             && dicNode->getInputIndex(0) < traverseSession->getInputSize()) {
         Weighting::addCostAndForwardInputIndex(WEIGHTING, CT_TERMINAL_INSERTION, traverseSession, 0,
-                &terminalDicNode, traverseSession->getMultiBigramMap());
+                &terminalDicNode, output->getMultiBigramMap());
     }
     Weighting::addCostAndForwardInputIndex(WEIGHTING, CT_TERMINAL, traverseSession, 0,
-            &terminalDicNode, traverseSession->getMultiBigramMap());
-    traverseSession->getDicTraverseCache()->copyPushTerminal(&terminalDicNode);
+            &terminalDicNode, output->getMultiBigramMap());
+    output->copyPushTerminal(&terminalDicNode);
 }
 
 /**
  * Adds the expanded dicNode to the next search priority queue. Also creates an additional next word
  * (by the space omission error correction) search path if input dicNode is on a terminal node.
  */
-void Suggest::processExpandedDicNode(
-        DicTraverseSession *traverseSession, DicNode *dicNode) const {
-    processTerminalDicNode(traverseSession, dicNode);
+void Suggest::processExpandedDicNode(DicTraverseSession *traverseSession, DicNode *dicNode,
+        DicNodeExpansionOutput *const output) const {
+    processTerminalDicNode(traverseSession, dicNode, output);
     if (dicNode->getCompoundDistance() < static_cast<float>(MAX_VALUE_FOR_WEIGHTING)) {
         if (TRAVERSAL->isSpaceOmissionTerminal(traverseSession, dicNode)) {
-            createNextWordDicNode(traverseSession, dicNode, false /* spaceSubstitution */);
+            createNextWordDicNode(traverseSession, dicNode, false /* spaceSubstitution */,
+                    output);
         }
         const int allowsLookAhead = !(dicNode->hasMultipleWords()
                 && dicNode->isCompletion(traverseSession->getInputSize()));
         if (dicNode->hasChildren() && allowsLookAhead) {
-            traverseSession->getDicTraverseCache()->copyPushNextActive(dicNode);
+            output->copyPushNextActive(dicNode);
         }
     }
     DicNode::managedDelete(dicNode);
 }
 
 void Suggest::processDicNodeAsMatch(DicTraverseSession *traverseSession,
-        DicNode *childDicNode) const {
+        DicNode *childDicNode, DicNodeExpansionOutput *const output) const {
     weightChildNode(traverseSession, childDicNode);
-    processExpandedDicNode(traverseSession, childDicNode);
+    processExpandedDicNode(traverseSession, childDicNode, output);
 }
 
 void Suggest::processDicNodeAsAdditionalProximityChar(DicTraverseSession *traverseSession,
-        DicNode *dicNode, DicNode *childDicNode) const {
+        DicNode *dicNode, DicNode *childDicNode, DicNodeExpansionOutput *const output) const {
     // Note: Most types of corrections don't need to look up the bigram information since they do
     // not treat the node as a terminal. There is no need to pass the bigram map in these cases.
     Weighting::addCostAndForwardInputIndex(WEIGHTING, CT_ADDITIONAL_PROXIMITY,
             traverseSession, dicNode, childDicNode, 0 /* multiBigramMap */);
     weightChildNode(traverseSession, childDicNode);
-    processExpandedDicNode(traverseSession, childDicNode);
+    processExpandedDicNode(traverseSession, childDicNode, output);
 }
 
 void Suggest::processDicNodeAsSubstitution(DicTraverseSession *traverseSession,
-        DicNode *dicNode, DicNode *childDicNode) const {
+        DicNode *dicNode, DicNode *childDicNode, DicNodeExpansionOutput *const output) const {
     Weighting::addCostAndForwardInputIndex(WEIGHTING, CT_SUBSTITUTION, traverseSession,
             dicNode, childDicNode, 0 /* multiBigramMap */);
     weightChildNode(traverseSession, childDicNode);
-    processExpandedDicNode(traverseSession, childDicNode);
+    processExpandedDicNode(traverseSession, childDicNode, output);
 }
 
 // Process the node codepoint as a digraph. This means that composite glyphs like the German
 // u-umlaut is expanded to the transliteration "ue". Note that this happens in parallel with
 // the normal non-digraph traversal, so both "uber" and "ueber" can be corrected to "[u-umlaut]ber".
 void Suggest::processDicNodeAsDigraph(DicTraverseSession *traverseSession,
-        DicNode *childDicNode) const {
+        DicNode *childDicNode, DicNodeExpansionOutput *const output) const {
     weightChildNode(traverseSession, childDicNode);
     childDicNode->advanceDigraphIndex();
-    processExpandedDicNode(traverseSession, childDicNode);
+    processExpandedDicNode(traverseSession, childDicNode, output);
 }
 
 /**
@@ -526,15 +698,16 @@ void Suggest::processDicNodeAsDigraph(DicTraverseSession *traverseSession,
  * the possible *next* letters after the omission to better limit search to plausible omissions.
  * Note that apostrophes are handled as omissions.
  */
-void Suggest::processDicNodeAsOmission(
-        DicTraverseSession *traverseSession, DicNode *dicNode) const {
-    DicNodeVector childDicNodes;
+void Suggest::processDicNodeAsOmission(DicTraverseSession *traverseSession, DicNode *dicNode,
+        DicNodeExpansionOutput *const output) const {
+    DicNodeVector *const childDicNodes = output->getCorrectionChildDicNodes();
+    childDicNodes->clear();
     DicNodeUtils::getAllChildDicNodes(
-            dicNode, traverseSession->getDictionaryStructurePolicy(), &childDicNodes);
+            dicNode, traverseSession->getDictionaryStructurePolicy(), childDicNodes);
 
-    const int size = childDicNodes.getSizeAndLock();
+    const int size = childDicNodes->getSizeAndLock();
     for (int i = 0; i < size; i++) {
-        DicNode *const childDicNode = childDicNodes[i];
+        DicNode *const childDicNode = (*childDicNodes)[i];
         // Treat this word as omission
         Weighting::addCostAndForwardInputIndex(WEIGHTING, CT_OMISSION, traverseSession,
                 dicNode, childDicNode, 0 /* multiBigramMap */);
@@ -542,7 +715,7 @@ void Suggest::processDicNodeAsOmission(
         if (!TRAVERSAL->isPossibleOmissionChildNode(traverseSession, dicNode, childDicNode)) {
             continue;
         }
-        processExpandedDicNode(traverseSession, childDicNode);
+        processExpandedDicNode(traverseSession, childDicNode, output);
     }
 }
 
@@ -551,21 +724,22 @@ void Suggest::processDicNodeAsOmission(
  * consider matches for the next touch point.
  */
 void Suggest::processDicNodeAsInsertion(DicTraverseSession *traverseSession,
-        DicNode *dicNode) const {
+        DicNode *dicNode, DicNodeExpansionOutput *const output) const {
     const int16_t pointIndex = dicNode->getInputIndex(0);
-    DicNodeVector childDicNodes;
+    DicNodeVector *const childDicNodes = output->getCorrectionChildDicNodes();
+    childDicNodes->clear();
     DicNodeUtils::getAllChildDicNodes(dicNode, traverseSession->getDictionaryStructurePolicy(),
-            &childDicNodes);
-    const int size = childDicNodes.getSizeAndLock();
+            childDicNodes);
+    const int size = childDicNodes->getSizeAndLock();
     for (int i = 0; i < size; i++) {
         if (traverseSession->getProximityInfoState(0)->getPrimaryCodePointAt(pointIndex + 1)
-                != childDicNodes[i]->getNodeCodePoint()) {
+                != (*childDicNodes)[i]->getNodeCodePoint()) {
             continue;
         }
-        DicNode *const childDicNode = childDicNodes[i];
+        DicNode *const childDicNode = (*childDicNodes)[i];
         Weighting::addCostAndForwardInputIndex(WEIGHTING, CT_INSERTION, traverseSession,
                 dicNode, childDicNode, 0 /* multiBigramMap */);
-        processExpandedDicNode(traverseSession, childDicNode);
+        processExpandedDicNode(traverseSession, childDicNode, output);
     }
 }
 
@@ -573,26 +747,28 @@ void Suggest::processDicNodeAsInsertion(DicTraverseSession *traverseSession,
  * Handle the dicNode as a transposition error (e.g., thsi => this). Swap the next two touch points.
  */
 void Suggest::processDicNodeAsTransposition(DicTraverseSession *traverseSession,
-        DicNode *dicNode) const {
+        DicNode *dicNode, DicNodeExpansionOutput *const output) const {
     const int16_t pointIndex = dicNode->getInputIndex(0);
-    DicNodeVector childDicNodes1;
+    DicNodeVector *const childDicNodes1 = output->getCorrectionChildDicNodes();
+    childDicNodes1->clear();
     DicNodeUtils::getAllChildDicNodes(dicNode, traverseSession->getDictionaryStructurePolicy(),
-            &childDicNodes1);
-    const int childSize1 = childDicNodes1.getSizeAndLock();
+            childDicNodes1);
+    const int childSize1 = childDicNodes1->getSizeAndLock();
     for (int i = 0; i < childSize1; i++) {
         const ProximityType matchedId1 = traverseSession->getProximityInfoState(0)
-                ->getProximityType(pointIndex + 1, childDicNodes1[i]->getNodeCodePoint(),
+                ->getProximityType(pointIndex + 1, (*childDicNodes1)[i]->getNodeCodePoint(),
                         true /* checkProximityChars */);
         if (!ProximityInfoUtils::isMatchOrProximityChar(matchedId1)) {
             continue;
         }
-        if (childDicNodes1[i]->hasChildren()) {
-            DicNodeVector childDicNodes2;
-            DicNodeUtils::getAllChildDicNodes(childDicNodes1[i],
-                    traverseSession->getDictionaryStructurePolicy(), &childDicNodes2);
-            const int childSize2 = childDicNodes2.getSizeAndLock();
+        if ((*childDicNodes1)[i]->hasChildren()) {
+            DicNodeVector *const childDicNodes2 = output->getCorrectionGrandchildDicNodes();
+            childDicNodes2->clear();
+            DicNodeUtils::getAllChildDicNodes((*childDicNodes1)[i],
+                    traverseSession->getDictionaryStructurePolicy(), childDicNodes2);
+            const int childSize2 = childDicNodes2->getSizeAndLock();
             for (int j = 0; j < childSize2; j++) {
-                DicNode *const childDicNode2 = childDicNodes2[j];
+                DicNode *const childDicNode2 = (*childDicNodes2)[j];
                 const ProximityType matchedId2 = traverseSession->getProximityInfoState(0)
                         ->getProximityType(pointIndex, childDicNode2->getNodeCodePoint(),
                                 true /* checkProximityChars */);
@@ -600,11 +776,12 @@ void Suggest::processDicNodeAsTransposition(DicTraverseSession *traverseSession,
                     continue;
                 }
                 Weighting::addCostAndForwardInputIndex(WEIGHTING, CT_TRANSPOSITION,
-                        traverseSession, childDicNodes1[i], childDicNode2, 0 /* multiBigramMap */);
-                processExpandedDicNode(traverseSession, childDicNode2);
+                        traverseSession, (*childDicNodes1)[i], childDicNode2,
+                        0 /* multiBigramMap */);
+                processExpandedDicNode(traverseSession, childDicNode2, output);
             }
         }
-        DicNode::managedDelete(childDicNodes1[i]);
+        DicNode::managedDelete((*childDicNodes1)[i]);
     }
 }
 
@@ -627,7 +804,7 @@ void Suggest::weightChildNode(DicTraverseSession *traverseSession, DicNode *dicN
  * incorporates the unigram / bigram score for the ending word into the new dicNode.
  */
 void Suggest::createNextWordDicNode(DicTraverseSession *traverseSession, DicNode *dicNode,
-        const bool spaceSubstitution) const {
+        const bool spaceSubstitution, DicNodeExpansionOutput *const output) const {
     if (!TRAVERSAL->isGoodToTraverseNextWord(dicNode)) {
         return;
     }
@@ -639,13 +816,13 @@ void Suggest::createNextWordDicNode(DicTraverseSession *traverseSession, DicNode
     const CorrectionType correctionType = spaceSubstitution ?
             CT_NEW_WORD_SPACE_SUBSTITUTION : CT_NEW_WORD_SPACE_OMISSION;
     Weighting::addCostAndForwardInputIndex(WEIGHTING, correctionType, traverseSession, dicNode,
-            &newDicNode, traverseSession->getMultiBigramMap());
+            &newDicNode, output->getMultiBigramMap());
     if (newDicNode.getCompoundDistance() < static_cast<float>(MAX_VALUE_FOR_WEIGHTING)) {
         // newDicNode is worth continuing to traverse.
         // CAVEAT: This pruning is important for speed. Remove this when we can afford not to prune
         // here because here is not the right place to do pruning. Pruning should take place only
         // in DicNodePriorityQueue.
-        traverseSession->getDicTraverseCache()->copyPushNextActive(&newDicNode);
+        output->copyPushNextActive(&newDicNode);
     }
 }
 } // namespace latinime
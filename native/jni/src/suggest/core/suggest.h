@@ -17,9 +17,12 @@
 #ifndef LATINIME_SUGGEST_IMPL_H
 #define LATINIME_SUGGEST_IMPL_H
 
+#include <stdint.h>
+
 #include "defines.h"
 #include "suggest/core/suggest_interface.h"
 #include "suggest/core/policy/suggest_policy.h"
+#include "suggest/core/session/expansion_worker_pool.h"
 
 namespace latinime {
 
@@ -33,6 +36,7 @@ namespace latinime {
 //       priority of a suggested word
 
 class DicNode;
+class DicNodeExpansionOutput;
 class DicTraverseSession;
 class ProximityInfo;
 class Scoring;
@@ -53,35 +57,70 @@ class Suggest : public SuggestInterface {
 
  private:
     DISALLOW_IMPLICIT_CONSTRUCTORS(Suggest);
+
+    // Expands a shard of the dicNodes popped for parallel expansion.
+    class ExpansionShardTask : public ExpansionWorkerPool::Task {
+     public:
+        ExpansionShardTask(const Suggest *const suggest, DicTraverseSession *const traverseSession,
+                const int shardCount)
+                : mSuggest(suggest), mTraverseSession(traverseSession), mShardCount(shardCount) {}
+        virtual ~ExpansionShardTask() {}
+        virtual void run(const int shardIndex);
+
+     private:
+        DISALLOW_IMPLICIT_CONSTRUCTORS(ExpansionShardTask);
+
+        const Suggest *const mSuggest;
+        DicTraverseSession *const mTraverseSession;
+        const int mShardCount;
+    };
+
     void createNextWordDicNode(DicTraverseSession *traverseSession, DicNode *dicNode,
-            const bool spaceSubstitution) const;
+            const bool spaceSubstitution, DicNodeExpansionOutput *const output) const;
     int outputSuggestions(DicTraverseSession *traverseSession, int *frequencies,
             int *outputCodePoints, int *outputIndicesToPartialCommit, int *outputTypes,
             int *outputAutoCommitFirstWordConfidence) const;
     int computeFirstWordConfidence(const DicNode *const terminalDicNode) const;
     void initializeSearch(DicTraverseSession *traverseSession, int commitPoint) const;
+    bool isSearchBudgetExhausted(const DicTraverseSession *const traverseSession,
+            const int64_t searchStartTimeNs) const;
     void expandCurrentDicNodes(DicTraverseSession *traverseSession) const;
-    void processTerminalDicNode(DicTraverseSession *traverseSession, DicNode *dicNode) const;
-    void processExpandedDicNode(DicTraverseSession *traverseSession, DicNode *dicNode) const;
+    void expandCurrentDicNodesInParallel(DicTraverseSession *traverseSession,
+            ExpansionWorkerPool *const workerPool, const bool shouldDepthLevelCache) const;
+    bool popActiveDicNodeToExpand(DicTraverseSession *traverseSession,
+            const bool shouldDepthLevelCache, DicNode *const dicNode) const;
+    void expandDicNode(DicTraverseSession *traverseSession, DicNode *dicNode,
+            DicNode *correctionDicNode, DicNodeExpansionOutput *const output) const;
+    void processTerminalDicNode(DicTraverseSession *traverseSession, DicNode *dicNode,
+            DicNodeExpansionOutput *const output) const;
+    void processExpandedDicNode(DicTraverseSession *traverseSession, DicNode *dicNode,
+            DicNodeExpansionOutput *const output) const;
     void weightChildNode(DicTraverseSession *traverseSession, DicNode *dicNode) const;
     float getAutocorrectScore(DicTraverseSession *traverseSession, DicNode *dicNode) const;
     void generateFeatures(
             DicTraverseSession *traverseSession, DicNode *dicNode, float *features) const;
-    void processDicNodeAsOmission(DicTraverseSession *traverseSession, DicNode *dicNode) const;
-    void processDicNodeAsDigraph(DicTraverseSession *traverseSession, DicNode *dicNode) const;
+    void processDicNodeAsOmission(DicTraverseSession *traverseSession, DicNode *dicNode,
+            DicNodeExpansionOutput *const output) const;
+    void processDicNodeAsDigraph(DicTraverseSession *traverseSession, DicNode *dicNode,
+            DicNodeExpansionOutput *const output) const;
     void processDicNodeAsTransposition(DicTraverseSession *traverseSession,
-            DicNode *dicNode) const;
-    void processDicNodeAsInsertion(DicTraverseSession *traverseSession, DicNode *dicNode) const;
+            DicNode *dicNode, DicNodeExpansionOutput *const output) const;
+    void processDicNodeAsInsertion(DicTraverseSession *traverseSession, DicNode *dicNode,
+            DicNodeExpansionOutput *const output) const;
     void processDicNodeAsAdditionalProximityChar(DicTraverseSession *traverseSession,
-            DicNode *dicNode, DicNode *childDicNode) const;
+            DicNode *dicNode, DicNode *childDicNode, DicNodeExpansionOutput *const output) const;
     void processDicNodeAsSubstitution(DicTraverseSession *traverseSession, DicNode *dicNode,
-            DicNode *childDicNode) const;
+            DicNode *childDicNode, DicNodeExpansionOutput *const output) const;
     void processDicNodeAsMatch(DicTraverseSession *traverseSession,
-            DicNode *childDicNode) const;
+            DicNode *childDicNode, DicNodeExpansionOutput *const output) const;
 
     // Inputs longer than this will autocorrect if the suggestion is multi-word
     static const int MIN_LEN_FOR_MULTI_WORD_AUTOCORRECT;
     static const int MIN_CONTINUOUS_SUGGESTION_INPUT_SIZE;
+    // Parallel expansion is not worth it unless each shard has this number of dicNodes at least.
+    static const int MIN_DIC_NODE_COUNT_PER_EXPANSION_SHARD;
+    // The number of the active dicNodes that are kept when the search budget has run out.
+    static const int MAX_ACTIVE_DIC_NODE_COUNT_AFTER_SEARCH_BUDGET;
 
     // Threshold for autocorrection classifier
     static const float AUTOCORRECT_CLASSIFICATION_THRESHOLD;
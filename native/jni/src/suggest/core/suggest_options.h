@@ -34,10 +34,31 @@ class SuggestOptions{
         return getBoolOption(USE_FULL_EDIT_DISTANCE);
     }
 
+    // The number of worker threads used in addition to the calling thread to expand the active
+    // dicNodes. 0 means the serial expansion.
+    AK_FORCE_INLINE int getParallelExpansionWorkerCount() const {
+        return getIntOption(PARALLEL_EXPANSION_WORKER_COUNT);
+    }
+
+    // The search is narrowed to the best dicNodes when it has taken this time. 0 means no limit.
+    AK_FORCE_INLINE int getSearchTimeBudgetMs() const {
+        return getIntOption(SEARCH_TIME_BUDGET_MS);
+    }
+
+    // The search is narrowed to the best dicNodes when it has expanded this number of dicNodes.
+    // 0 means no limit.
+    AK_FORCE_INLINE int getSearchExpansionBudget() const {
+        return getIntOption(SEARCH_EXPANSION_BUDGET);
+    }
+
     AK_FORCE_INLINE bool getAdditionalFeaturesBoolOption(const int key) const {
         return getBoolOption(key + ADDITIONAL_FEATURES_OPTIONS);
     }
 
+    // The raw options, used as a part of the key of the suggestion results cache.
+    int getOptionCount() const { return mLength; }
+    int getOption(const int key) const { return getIntOption(key); }
+
  private:
     DISALLOW_IMPLICIT_CONSTRUCTORS(SuggestOptions);
 
@@ -45,9 +66,12 @@ class SuggestOptions{
     // reorder options.
     static const int IS_GESTURE = 0;
     static const int USE_FULL_EDIT_DISTANCE = 1;
+    static const int PARALLEL_EXPANSION_WORKER_COUNT = 2;
+    static const int SEARCH_TIME_BUDGET_MS = 3;
+    static const int SEARCH_EXPANSION_BUDGET = 4;
     // Additional features options are stored after the other options and used as setting values of
     // experimental features.
-    static const int ADDITIONAL_FEATURES_OPTIONS = 2;
+    static const int ADDITIONAL_FEATURES_OPTIONS = 5;
 
     const int *const mOptions;
     const int mLength;
@@ -20,6 +20,8 @@
 
 #include "defines.h"
 #include "suggest/policyimpl/dictionary/dynamic_patricia_trie_policy.h"
+#include "suggest/policyimpl/dictionary/header/header_policy.h"
+#include "suggest/policyimpl/dictionary/header/header_read_write_utils.h"
 #include "suggest/policyimpl/dictionary/patricia_trie_policy.h"
 #include "suggest/policyimpl/dictionary/utils/format_utils.h"
 #include "suggest/policyimpl/dictionary/utils/mmapped_buffer.h"
@@ -36,12 +38,23 @@ namespace latinime {
     if (!mmapedBuffer) {
         return 0;
     }
-    switch (FormatUtils::detectFormatVersion(mmapedBuffer->getBuffer(),
-            mmapedBuffer->getBufferSize())) {
+    const FormatUtils::FORMAT_VERSION formatVersion = FormatUtils::detectFormatVersion(
+            mmapedBuffer->getBuffer(), mmapedBuffer->getBufferSize());
+    if (formatVersion != FormatUtils::UNKNOWN_VERSION && !verifyDictionaryIntegrity(mmapedBuffer)) {
+        AKLOGE("DICT: dictionary is broken. path=%s", path);
+        delete mmapedBuffer;
+        return 0;
+    }
+    switch (formatVersion) {
         case FormatUtils::VERSION_2:
             return new PatriciaTriePolicy(mmapedBuffer);
-        case FormatUtils::VERSION_3:
-            return new DynamicPatriciaTriePolicy(mmapedBuffer);
+        case FormatUtils::VERSION_3: {
+            DynamicPatriciaTriePolicy *const policy = new DynamicPatriciaTriePolicy(mmapedBuffer);
+            if (isUpdatable) {
+                policy->replayJournal(path);
+            }
+            return policy;
+        }
         default:
             AKLOGE("DICT: dictionary format is unknown, bad magic number");
             delete mmapedBuffer;
@@ -50,4 +63,18 @@ namespace latinime {
     }
 }
 
+// Detects a truncated or otherwise broken dictionary file by reading only the header.
+/* static */ bool DictionaryStructureWithBufferPolicyFactory::verifyDictionaryIntegrity(
+        const MmappedBuffer *const mmapedBuffer) {
+    // The header size has to be checked before the header is read.
+    const int headerSize = HeaderReadWriteUtils::getHeaderSize(mmapedBuffer->getBuffer());
+    if (headerSize < 0 || headerSize > mmapedBuffer->getBufferSize()) {
+        AKLOGE("DICT: invalid header size. header size=%d dict size=%d", headerSize,
+                mmapedBuffer->getBufferSize());
+        return false;
+    }
+    const HeaderPolicy headerPolicy(mmapedBuffer->getBuffer(), mmapedBuffer->getBufferSize());
+    return headerPolicy.verifyIntegrity(mmapedBuffer->getBufferSize());
+}
+
 } // namespace latinime
@@ -24,6 +24,8 @@
 
 namespace latinime {
 
+class MmappedBuffer;
+
 class DictionaryStructureWithBufferPolicyFactory {
  public:
     static DictionaryStructureWithBufferPolicy *newDictionaryStructureWithBufferPolicy(
@@ -31,6 +33,8 @@ class DictionaryStructureWithBufferPolicyFactory {
 
  private:
     DISALLOW_IMPLICIT_CONSTRUCTORS(DictionaryStructureWithBufferPolicyFactory);
+
+    static bool verifyDictionaryIntegrity(const MmappedBuffer *const mmapedBuffer);
 };
 } // namespace latinime
 #endif // LATINIME_DICTIONARY_STRUCTURE_WITH_BUFFER_POLICY_FACTORY_H
@@ -0,0 +1,166 @@
+/*
+ * Copyright (C) 2013, The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+#include "suggest/policyimpl/dictionary/dynamic_patricia_trie_incremental_gc.h"
+
+#include "suggest/policyimpl/dictionary/header/header_policy.h"
+#include "suggest/policyimpl/dictionary/utils/dict_file_writing_utils.h"
+#include "suggest/policyimpl/dictionary/utils/forgetting_curve_utils.h"
+
+namespace latinime {
+
+DynamicPatriciaTrieIncrementalGc::DynamicPatriciaTrieIncrementalGc(
+        BufferWithExtendableBuffer *const buffer, const HeaderPolicy *const headerPolicy,
+        DynamicShortcutListPolicy *const shortcutPolicy, const int rootPtNodeArrayPos,
+        const bool needsToDecay)
+        : mHeaderPolicy(headerPolicy), mRootPtNodeArrayPos(rootPtNodeArrayPos),
+          mNeedsToDecay(needsToDecay),
+          mBigramPolicy(headerPolicy, buffer, shortcutPolicy, needsToDecay),
+          mWritingHelper(buffer, &mBigramPolicy, shortcutPolicy, needsToDecay),
+          mReadingHelper(buffer, &mBigramPolicy, shortcutPolicy),
+          mBufferToWrite(0 /* originalBuffer */, 0 /* originalBufferSize */,
+                  DynamicPatriciaTrieWritingHelper::MAX_DICTIONARY_SIZE),
+          mDictPositionRelocationMap(), mNewDictShortcutPolicy(&mBufferToWrite),
+          mNewDictBigramPolicy(headerPolicy, &mBufferToWrite, &mNewDictShortcutPolicy,
+                  needsToDecay),
+          mNewDictReadingHelper(&mBufferToWrite, &mNewDictBigramPolicy, &mNewDictShortcutPolicy),
+          mTraversePolicyToUpdateUnigramProbabilityAndMarkUselessPtNodesAsDeleted(headerPolicy,
+                  &mWritingHelper, buffer, needsToDecay),
+          mTraversePolicyToUpdateBigramProbability(&mBigramPolicy),
+          mTraversePolicyToPlaceAndWriteValidPtNodesToBuffer(&mWritingHelper, &mBufferToWrite,
+                  &mDictPositionRelocationMap),
+          mTraversePolicyToUpdateAllPositionFields(&mWritingHelper, &mNewDictBigramPolicy,
+                  &mBufferToWrite, &mDictPositionRelocationMap),
+          mPhase(PHASE_UPDATE_UNIGRAM_PROBABILITY), mIsPhaseStarted(false) {
+    if (mNeedsToDecay) {
+        ForgettingCurveUtils::sTimeKeeper.setCurrentTime();
+    }
+}
+
+bool DynamicPatriciaTrieIncrementalGc::runSlice(const int maxPtNodeCount) {
+    if (isFinished()) {
+        return true;
+    }
+    if (!mIsPhaseStarted) {
+        if (!startPhase()) {
+            return false;
+        }
+        mIsPhaseStarted = true;
+    }
+    bool isPhaseFinished = false;
+    if (!continuePhase(maxPtNodeCount, &isPhaseFinished)) {
+        return false;
+    }
+    if (!isPhaseFinished) {
+        return true;
+    }
+    switch (mPhase) {
+        case PHASE_UPDATE_UNIGRAM_PROBABILITY:
+            if (mNeedsToDecay
+                    && mTraversePolicyToUpdateUnigramProbabilityAndMarkUselessPtNodesAsDeleted
+                            .getValidUnigramCount()
+                                    > ForgettingCurveUtils::MAX_UNIGRAM_COUNT_AFTER_GC) {
+                // TODO: Remove more unigrams.
+            }
+            mPhase = PHASE_UPDATE_BIGRAM_PROBABILITY;
+            break;
+        case PHASE_UPDATE_BIGRAM_PROBABILITY:
+            if (mNeedsToDecay && mTraversePolicyToUpdateBigramProbability.getValidBigramEntryCount()
+                    > ForgettingCurveUtils::MAX_BIGRAM_COUNT_AFTER_GC) {
+                // TODO: Remove more bigrams.
+            }
+            mPhase = PHASE_PLACE_AND_WRITE_VALID_PT_NODES;
+            break;
+        case PHASE_PLACE_AND_WRITE_VALID_PT_NODES:
+            mPhase = PHASE_UPDATE_ALL_POSITION_FIELDS;
+            break;
+        default:
+            mPhase = PHASE_FINISHED;
+            break;
+    }
+    mIsPhaseStarted = false;
+    return true;
+}
+
+void DynamicPatriciaTrieIncrementalGc::writeToDictFile(const char *const fileName) {
+    if (!isFinished()) {
+        AKLOGE("writeToDictFile() is called before the GC is finished.");
+        ASSERT(false);
+        return;
+    }
+    BufferWithExtendableBuffer headerBuffer(0 /* originalBuffer */, 0 /* originalBufferSize */,
+            HeaderPolicy::MAX_HEADER_BUFFER_SIZE);
+    if (!mHeaderPolicy->writeHeaderToBuffer(&headerBuffer, true /* updatesLastUpdatedTime */,
+            mNeedsToDecay, mTraversePolicyToUpdateAllPositionFields.getUnigramCount(),
+            mTraversePolicyToUpdateAllPositionFields.getBigramCount(),
+            0 /* extendedRegionSize */, mBufferToWrite.getTailPosition())) {
+        return;
+    }
+    DictFileWritingUtils::flushAllHeaderAndBodyToFile(fileName, &headerBuffer, &mBufferToWrite);
+}
+
+bool DynamicPatriciaTrieIncrementalGc::startPhase() {
+    switch (mPhase) {
+        case PHASE_UPDATE_UNIGRAM_PROBABILITY:
+            mReadingHelper.initWithPtNodeArrayPos(mRootPtNodeArrayPos);
+            return mReadingHelper.startTraversingAllPtNodesInPostorderDepthFirstManner(
+                    &mTraversePolicyToUpdateUnigramProbabilityAndMarkUselessPtNodesAsDeleted);
+        case PHASE_UPDATE_BIGRAM_PROBABILITY:
+            mReadingHelper.initWithPtNodeArrayPos(mRootPtNodeArrayPos);
+            return mReadingHelper.startTraversingAllPtNodesInPostorderDepthFirstManner(
+                    &mTraversePolicyToUpdateBigramProbability);
+        case PHASE_PLACE_AND_WRITE_VALID_PT_NODES:
+            mReadingHelper.initWithPtNodeArrayPos(mRootPtNodeArrayPos);
+            return mReadingHelper
+                    .startTraversingAllPtNodesInPtNodeArrayLevelPreorderDepthFirstManner(
+                            &mTraversePolicyToPlaceAndWriteValidPtNodesToBuffer);
+        case PHASE_UPDATE_ALL_POSITION_FIELDS:
+            mNewDictReadingHelper.initWithPtNodeArrayPos(mRootPtNodeArrayPos);
+            return mNewDictReadingHelper
+                    .startTraversingAllPtNodesInPtNodeArrayLevelPreorderDepthFirstManner(
+                            &mTraversePolicyToUpdateAllPositionFields);
+        default:
+            return false;
+    }
+}
+
+bool DynamicPatriciaTrieIncrementalGc::continuePhase(const int maxPtNodeCount,
+        bool *const outIsPhaseFinished) {
+    switch (mPhase) {
+        case PHASE_UPDATE_UNIGRAM_PROBABILITY:
+            return mReadingHelper.continueTraversingAllPtNodesInPostorderDepthFirstManner(
+                    &mTraversePolicyToUpdateUnigramProbabilityAndMarkUselessPtNodesAsDeleted,
+                    maxPtNodeCount, outIsPhaseFinished);
+        case PHASE_UPDATE_BIGRAM_PROBABILITY:
+            return mReadingHelper.continueTraversingAllPtNodesInPostorderDepthFirstManner(
+                    &mTraversePolicyToUpdateBigramProbability, maxPtNodeCount,
+                    outIsPhaseFinished);
+        case PHASE_PLACE_AND_WRITE_VALID_PT_NODES:
+            return mReadingHelper
+                    .continueTraversingAllPtNodesInPtNodeArrayLevelPreorderDepthFirstManner(
+                            &mTraversePolicyToPlaceAndWriteValidPtNodesToBuffer, maxPtNodeCount,
+                            outIsPhaseFinished);
+        case PHASE_UPDATE_ALL_POSITION_FIELDS:
+            return mNewDictReadingHelper
+                    .continueTraversingAllPtNodesInPtNodeArrayLevelPreorderDepthFirstManner(
+                            &mTraversePolicyToUpdateAllPositionFields, maxPtNodeCount,
+                            outIsPhaseFinished);
+        default:
+            return false;
+    }
+}
+
+} // namespace latinime
@@ -0,0 +1,104 @@
+/*
+ * Copyright (C) 2013, The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+#ifndef LATINIME_DYNAMIC_PATRICIA_TRIE_INCREMENTAL_GC_H
+#define LATINIME_DYNAMIC_PATRICIA_TRIE_INCREMENTAL_GC_H
+
+#include "defines.h"
+#include "suggest/policyimpl/dictionary/bigram/dynamic_bigram_list_policy.h"
+#include "suggest/policyimpl/dictionary/dynamic_patricia_trie_gc_event_listeners.h"
+#include "suggest/policyimpl/dictionary/dynamic_patricia_trie_reading_helper.h"
+#include "suggest/policyimpl/dictionary/dynamic_patricia_trie_writing_helper.h"
+#include "suggest/policyimpl/dictionary/shortcut/dynamic_shortcut_list_policy.h"
+#include "suggest/policyimpl/dictionary/utils/buffer_with_extendable_buffer.h"
+
+namespace latinime {
+
+class HeaderPolicy;
+
+/*
+ * This class runs GC of a dynamic patricia trie in slices. Each slice visits a bounded number of
+ * PtNodes, so that the dictionary can be read between slices. The dictionary must not be updated
+ * until the GC is finished because the GC keeps positions in the dictionary buffer.
+ *
+ * The GC consists of the following phases, each of which traverses all PtNodes once:
+ * 1. Update unigram probabilities and mark useless PtNodes as deleted in place.
+ * 2. Update bigram probabilities and remove useless bigram entries in place.
+ * 3. Write valid PtNodes to a new buffer.
+ * 4. Update position fields in the new buffer.
+ * Phase 1 and 2 are not idempotent for decaying dictionaries, so a GC that has been started must
+ * be finished rather than restarted.
+ */
+class DynamicPatriciaTrieIncrementalGc {
+ public:
+    DynamicPatriciaTrieIncrementalGc(BufferWithExtendableBuffer *const buffer,
+            const HeaderPolicy *const headerPolicy,
+            DynamicShortcutListPolicy *const shortcutPolicy, const int rootPtNodeArrayPos,
+            const bool needsToDecay);
+
+    ~DynamicPatriciaTrieIncrementalGc() {}
+
+    // Visits at most maxPtNodeCount PtNodes. Returns false if an error has occurred.
+    bool runSlice(const int maxPtNodeCount);
+
+    bool isFinished() const {
+        return mPhase == PHASE_FINISHED;
+    }
+
+    // Writes the GCed dictionary to the file. This must be called after the GC is finished.
+    void writeToDictFile(const char *const fileName);
+
+ private:
+    DISALLOW_IMPLICIT_CONSTRUCTORS(DynamicPatriciaTrieIncrementalGc);
+
+    enum Phase {
+        PHASE_UPDATE_UNIGRAM_PROBABILITY = 0,
+        PHASE_UPDATE_BIGRAM_PROBABILITY,
+        PHASE_PLACE_AND_WRITE_VALID_PT_NODES,
+        PHASE_UPDATE_ALL_POSITION_FIELDS,
+        PHASE_FINISHED
+    };
+
+    const HeaderPolicy *const mHeaderPolicy;
+    const int mRootPtNodeArrayPos;
+    const bool mNeedsToDecay;
+    DynamicBigramListPolicy mBigramPolicy;
+    DynamicPatriciaTrieWritingHelper mWritingHelper;
+    DynamicPatriciaTrieReadingHelper mReadingHelper;
+    BufferWithExtendableBuffer mBufferToWrite;
+    // Mapping from positions in the original buffer to positions in mBufferToWrite.
+    DynamicPatriciaTrieWritingHelper::DictPositionRelocationMap mDictPositionRelocationMap;
+    // Policy and reading helper instances for the GCed dictionary.
+    DynamicShortcutListPolicy mNewDictShortcutPolicy;
+    DynamicBigramListPolicy mNewDictBigramPolicy;
+    DynamicPatriciaTrieReadingHelper mNewDictReadingHelper;
+    DynamicPatriciaTrieGcEventListeners
+            ::TraversePolicyToUpdateUnigramProbabilityAndMarkUselessPtNodesAsDeleted
+                    mTraversePolicyToUpdateUnigramProbabilityAndMarkUselessPtNodesAsDeleted;
+    DynamicPatriciaTrieGcEventListeners::TraversePolicyToUpdateBigramProbability
+            mTraversePolicyToUpdateBigramProbability;
+    DynamicPatriciaTrieGcEventListeners::TraversePolicyToPlaceAndWriteValidPtNodesToBuffer
+            mTraversePolicyToPlaceAndWriteValidPtNodesToBuffer;
+    DynamicPatriciaTrieGcEventListeners::TraversePolicyToUpdateAllPositionFields
+            mTraversePolicyToUpdateAllPositionFields;
+    Phase mPhase;
+    bool mIsPhaseStarted;
+
+    bool startPhase();
+    bool continuePhase(const int maxPtNodeCount, bool *const outIsPhaseFinished);
+};
+} // namespace latinime
+#endif /* LATINIME_DYNAMIC_PATRICIA_TRIE_INCREMENTAL_GC_H */
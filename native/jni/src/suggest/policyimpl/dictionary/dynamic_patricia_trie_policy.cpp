@@ -23,6 +23,7 @@
 #include "defines.h"
 #include "suggest/core/dicnode/dic_node.h"
 #include "suggest/core/dicnode/dic_node_vector.h"
+#include "suggest/policyimpl/dictionary/dynamic_patricia_trie_incremental_gc.h"
 #include "suggest/policyimpl/dictionary/dynamic_patricia_trie_node_reader.h"
 #include "suggest/policyimpl/dictionary/dynamic_patricia_trie_reading_helper.h"
 #include "suggest/policyimpl/dictionary/dynamic_patricia_trie_reading_utils.h"
@@ -44,6 +45,12 @@ const char *const DynamicPatriciaTriePolicy::SET_NEEDS_TO_DECAY_FOR_TESTING_QUER
 const int DynamicPatriciaTriePolicy::MAX_DICT_EXTENDED_REGION_SIZE = 1024 * 1024;
 const int DynamicPatriciaTriePolicy::MIN_DICT_SIZE_TO_REFUSE_DYNAMIC_OPERATIONS =
         DynamicPatriciaTrieWritingHelper::MAX_DICTIONARY_SIZE - 1024;
+const int DynamicPatriciaTriePolicy::MAX_DICT_JOURNAL_SIZE = 256 * 1024;
+
+DynamicPatriciaTriePolicy::~DynamicPatriciaTriePolicy() {
+    delete mIncrementalGc;
+    delete mBuffer;
+}
 
 void DynamicPatriciaTriePolicy::createAndGetAllChildNodes(const DicNode *const dicNode,
         DicNodeVector *const childDicNodes) const {
@@ -220,6 +227,9 @@ bool DynamicPatriciaTriePolicy::addUnigramWord(const int *const word, const int
         AKLOGI("Warning: addUnigramWord() is called for non-updatable dictionary.");
         return false;
     }
+    if (isRunningGCIncrementally("addUnigramWord")) {
+        return false;
+    }
     if (mBufferWithExtendableBuffer.getTailPosition()
             >= MIN_DICT_SIZE_TO_REFUSE_DYNAMIC_OPERATIONS) {
         AKLOGE("The dictionary is too large to dynamically update.");
@@ -236,6 +246,7 @@ bool DynamicPatriciaTriePolicy::addUnigramWord(const int *const word, const int
         if (addedNewUnigram) {
             mUnigramCount++;
         }
+        mJournal.addUnigramWord(word, length, probability);
         return true;
     } else {
         return false;
@@ -248,6 +259,9 @@ bool DynamicPatriciaTriePolicy::addBigramWords(const int *const word0, const int
         AKLOGI("Warning: addBigramWords() is called for non-updatable dictionary.");
         return false;
     }
+    if (isRunningGCIncrementally("addBigramWords")) {
+        return false;
+    }
     if (mBufferWithExtendableBuffer.getTailPosition()
             >= MIN_DICT_SIZE_TO_REFUSE_DYNAMIC_OPERATIONS) {
         AKLOGE("The dictionary is too large to dynamically update.");
@@ -270,6 +284,7 @@ bool DynamicPatriciaTriePolicy::addBigramWords(const int *const word0, const int
         if (addedNewBigram) {
             mBigramCount++;
         }
+        mJournal.addBigramWords(word0, length0, word1, length1, probability);
         return true;
     } else {
         return false;
@@ -282,6 +297,9 @@ bool DynamicPatriciaTriePolicy::removeBigramWords(const int *const word0, const
         AKLOGI("Warning: removeBigramWords() is called for non-updatable dictionary.");
         return false;
     }
+    if (isRunningGCIncrementally("removeBigramWords")) {
+        return false;
+    }
     if (mBufferWithExtendableBuffer.getTailPosition()
             >= MIN_DICT_SIZE_TO_REFUSE_DYNAMIC_OPERATIONS) {
         AKLOGE("The dictionary is too large to dynamically update.");
@@ -301,6 +319,7 @@ bool DynamicPatriciaTriePolicy::removeBigramWords(const int *const word0, const
             &mBigramListPolicy, &mShortcutListPolicy, mHeaderPolicy.isDecayingDict());
     if (writingHelper.removeBigramWords(word0Pos, word1Pos)) {
         mBigramCount--;
+        mJournal.removeBigramWords(word0, length0, word1, length1);
         return true;
     } else {
         return false;
@@ -312,9 +331,26 @@ void DynamicPatriciaTriePolicy::flush(const char *const filePath) {
         AKLOGI("Warning: flush() is called for non-updatable dictionary.");
         return;
     }
+    if (isRunningGCIncrementally("flush")) {
+        return;
+    }
+    if (mJournal.flush(filePath)) {
+        return;
+    }
+    // Fall back to writing the whole dictionary. This removes the journal file.
     DynamicPatriciaTrieWritingHelper writingHelper(&mBufferWithExtendableBuffer,
             &mBigramListPolicy, &mShortcutListPolicy, false /* needsToDecay */);
     writingHelper.writeToDictFile(filePath, &mHeaderPolicy, mUnigramCount, mBigramCount);
+    mJournal.clear();
+}
+
+void DynamicPatriciaTriePolicy::replayJournal(const char *const filePath) {
+    if (!mBuffer->isUpdatable()) {
+        AKLOGI("Warning: replayJournal() is called for non-updatable dictionary.");
+        return;
+    }
+    mJournal.replay(filePath, mBuffer->getBuffer(), mHeaderPolicy.getSize(),
+            mBuffer->getBufferSize(), mHeaderPolicy.getFlushGeneration(), this);
 }
 
 void DynamicPatriciaTriePolicy::flushWithGC(const char *const filePath) {
@@ -322,15 +358,33 @@ void DynamicPatriciaTriePolicy::flushWithGC(const char *const filePath) {
         AKLOGI("Warning: flushWithGC() is called for non-updatable dictionary.");
         return;
     }
-    const bool needsToDecay = mHeaderPolicy.isDecayingDict()
-            && (mNeedsToDecayForTesting || ForgettingCurveUtils::needsToDecay(
-                    false /* mindsBlockByDecay */, mUnigramCount, mBigramCount, &mHeaderPolicy));
-    DynamicBigramListPolicy bigramListPolicyForGC(&mHeaderPolicy, &mBufferWithExtendableBuffer,
-            &mShortcutListPolicy, needsToDecay);
-    DynamicPatriciaTrieWritingHelper writingHelper(&mBufferWithExtendableBuffer,
-            &bigramListPolicyForGC, &mShortcutListPolicy, needsToDecay);
-    writingHelper.writeToDictFileWithGC(getRootPosition(), filePath, &mHeaderPolicy);
+    // Finish the GC in progress if any. It cannot be restarted because it has already updated
+    // probabilities in place.
+    while (!runGCIncrementally(filePath, S_INT_MAX /* maxPtNodeCount */)) {}
+}
+
+bool DynamicPatriciaTriePolicy::runGCIncrementally(const char *const filePath,
+        const int maxPtNodeCount) {
+    if (!mBuffer->isUpdatable()) {
+        AKLOGI("Warning: runGCIncrementally() is called for non-updatable dictionary.");
+        return true;
+    }
+    if (!mIncrementalGc) {
+        mIncrementalGc = createIncrementalGc();
+    }
+    if (!mIncrementalGc->runSlice(maxPtNodeCount)) {
+        AKLOGE("GC failed. The dictionary file is not updated.");
+    } else if (mIncrementalGc->isFinished()) {
+        // The journal file is removed with writing the GCed dictionary.
+        mIncrementalGc->writeToDictFile(filePath);
+        mJournal.clear();
+    } else {
+        return false;
+    }
+    delete mIncrementalGc;
+    mIncrementalGc = 0;
     mNeedsToDecayForTesting = false;
+    return true;
 }
 
 bool DynamicPatriciaTriePolicy::needsToRunGC(const bool mindsBlockByGC) const {
@@ -346,6 +400,9 @@ bool DynamicPatriciaTriePolicy::needsToRunGC(const bool mindsBlockByGC) const {
                     > MAX_DICT_EXTENDED_REGION_SIZE) {
         // Total extended region size exceeds the limit.
         return true;
+    } else if (mJournal.getJournalFileSize() > MAX_DICT_JOURNAL_SIZE) {
+        // The journal has to be compacted into the dictionary file.
+        return true;
     } else if (mBufferWithExtendableBuffer.getTailPosition()
             >= MIN_DICT_SIZE_TO_REFUSE_DYNAMIC_OPERATIONS
                     && mBufferWithExtendableBuffer.getUsedAdditionalBufferSize() > 0) {
@@ -358,6 +415,22 @@ bool DynamicPatriciaTriePolicy::needsToRunGC(const bool mindsBlockByGC) const {
     return false;
 }
 
+bool DynamicPatriciaTriePolicy::isRunningGCIncrementally(const char *const caller) const {
+    if (mIncrementalGc) {
+        AKLOGI("Warning: %s() is called while GC is running.", caller);
+        return true;
+    }
+    return false;
+}
+
+DynamicPatriciaTrieIncrementalGc *DynamicPatriciaTriePolicy::createIncrementalGc() {
+    const bool needsToDecay = mHeaderPolicy.isDecayingDict()
+            && (mNeedsToDecayForTesting || ForgettingCurveUtils::needsToDecay(
+                    false /* mindsBlockByDecay */, mUnigramCount, mBigramCount, &mHeaderPolicy));
+    return new DynamicPatriciaTrieIncrementalGc(&mBufferWithExtendableBuffer, &mHeaderPolicy,
+            &mShortcutListPolicy, getRootPosition(), needsToDecay);
+}
+
 void DynamicPatriciaTriePolicy::getProperty(const char *const query, char *const outResult,
         const int maxResultLength) {
     if (strncmp(query, UNIGRAM_COUNT_QUERY, maxResultLength) == 0) {
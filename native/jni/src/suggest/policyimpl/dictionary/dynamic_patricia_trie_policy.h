@@ -23,12 +23,14 @@
 #include "suggest/policyimpl/dictionary/header/header_policy.h"
 #include "suggest/policyimpl/dictionary/shortcut/dynamic_shortcut_list_policy.h"
 #include "suggest/policyimpl/dictionary/utils/buffer_with_extendable_buffer.h"
+#include "suggest/policyimpl/dictionary/utils/dict_update_journal.h"
 #include "suggest/policyimpl/dictionary/utils/mmapped_buffer.h"
 
 namespace latinime {
 
 class DicNode;
 class DicNodeVector;
+class DynamicPatriciaTrieIncrementalGc;
 
 class DynamicPatriciaTriePolicy : public DictionaryStructureWithBufferPolicy {
  public:
@@ -40,11 +42,10 @@ class DynamicPatriciaTriePolicy : public DictionaryStructureWithBufferPolicy {
               mBigramListPolicy(&mHeaderPolicy, &mBufferWithExtendableBuffer, &mShortcutListPolicy,
                       mHeaderPolicy.isDecayingDict()),
               mUnigramCount(mHeaderPolicy.getUnigramCount()),
-              mBigramCount(mHeaderPolicy.getBigramCount()), mNeedsToDecayForTesting(false) {}
+              mBigramCount(mHeaderPolicy.getBigramCount()), mNeedsToDecayForTesting(false),
+              mIncrementalGc(0), mJournal() {}
 
-    ~DynamicPatriciaTriePolicy() {
-        delete mBuffer;
-    }
+    ~DynamicPatriciaTriePolicy();
 
     AK_FORCE_INLINE int getRootPosition() const {
         return 0;
@@ -88,10 +89,15 @@ class DynamicPatriciaTriePolicy : public DictionaryStructureWithBufferPolicy {
     bool removeBigramWords(const int *const word0, const int length0, const int *const word1,
             const int length1);
 
+    // Applies the updates that have been journaled since the dictionary file was written.
+    void replayJournal(const char *const filePath);
+
     void flush(const char *const filePath);
 
     void flushWithGC(const char *const filePath);
 
+    bool runGCIncrementally(const char *const filePath, const int maxPtNodeCount);
+
     bool needsToRunGC(const bool mindsBlockByGC) const;
 
     void getProperty(const char *const query, char *const outResult,
@@ -107,6 +113,7 @@ class DynamicPatriciaTriePolicy : public DictionaryStructureWithBufferPolicy {
     static const char *const SET_NEEDS_TO_DECAY_FOR_TESTING_QUERY;
     static const int MAX_DICT_EXTENDED_REGION_SIZE;
     static const int MIN_DICT_SIZE_TO_REFUSE_DYNAMIC_OPERATIONS;
+    static const int MAX_DICT_JOURNAL_SIZE;
 
     const MmappedBuffer *const mBuffer;
     const HeaderPolicy mHeaderPolicy;
@@ -116,6 +123,15 @@ class DynamicPatriciaTriePolicy : public DictionaryStructureWithBufferPolicy {
     int mUnigramCount;
     int mBigramCount;
     int mNeedsToDecayForTesting;
+    // The GC in progress, or 0 if no GC is running. The dictionary must not be updated while a GC
+    // is running.
+    DynamicPatriciaTrieIncrementalGc *mIncrementalGc;
+    // Updates are journaled by flush() and compacted into the dictionary file by GC.
+    DictUpdateJournal mJournal;
+
+    bool isRunningGCIncrementally(const char *const caller) const;
+
+    DynamicPatriciaTrieIncrementalGc *createIncrementalGc();
 };
 } // namespace latinime
 #endif // LATINIME_DYNAMIC_PATRICIA_TRIE_POLICY_H
@@ -31,13 +31,27 @@ const size_t DynamicPatriciaTrieReadingHelper::MAX_READING_STATE_STACK_SIZE = MA
 //   \ x _ y
 bool DynamicPatriciaTrieReadingHelper::traverseAllPtNodesInPostorderDepthFirstManner(
         TraversingEventListener *const listener) {
-    bool alreadyVisitedChildren = false;
+    bool isFinished = false;
+    return startTraversingAllPtNodesInPostorderDepthFirstManner(listener)
+            && continueTraversingAllPtNodesInPostorderDepthFirstManner(listener,
+                    S_INT_MAX /* maxPtNodeCount */, &isFinished);
+}
+
+bool DynamicPatriciaTrieReadingHelper::startTraversingAllPtNodesInPostorderDepthFirstManner(
+        TraversingEventListener *const listener) {
+    mTraversalState.mAlreadyVisitedChildren = false;
+    mTraversalState.mAlreadyVisitedAllPtNodesInArray = false;
     // Descend from the root to the root PtNode array.
-    if (!listener->onDescend(getPosOfLastPtNodeArrayHead())) {
-        return false;
-    }
+    return listener->onDescend(getPosOfLastPtNodeArrayHead());
+}
+
+bool DynamicPatriciaTrieReadingHelper::continueTraversingAllPtNodesInPostorderDepthFirstManner(
+        TraversingEventListener *const listener, const int maxPtNodeCount,
+        bool *const outIsFinished) {
+    *outIsFinished = false;
+    int visitedPtNodeCount = 0;
     while (!isEnd()) {
-        if (!alreadyVisitedChildren) {
+        if (!mTraversalState.mAlreadyVisitedChildren) {
             if (mNodeReader.hasChildren()) {
                 // Move to the first child.
                 if (!listener->onDescend(mNodeReader.getChildrenPos())) {
@@ -46,12 +60,17 @@ bool DynamicPatriciaTrieReadingHelper::traverseAllPtNodesInPostorderDepthFirstMa
                 pushReadingStateToStack();
                 readChildNode();
             } else {
-                alreadyVisitedChildren = true;
+                mTraversalState.mAlreadyVisitedChildren = true;
             }
         } else {
+            if (visitedPtNodeCount >= maxPtNodeCount) {
+                // Suspend here. The traversal will be resumed from the current PtNode.
+                return true;
+            }
             if (!listener->onVisitingPtNode(&mNodeReader, mMergedNodeCodePoints)) {
                 return false;
             }
+            ++visitedPtNodeCount;
             readNextSiblingNode();
             if (isEnd()) {
                 // All PtNodes in current linked PtNode arrays have been visited.
@@ -66,10 +85,10 @@ bool DynamicPatriciaTrieReadingHelper::traverseAllPtNodesInPostorderDepthFirstMa
                     return false;
                 }
                 popReadingStateFromStack();
-                alreadyVisitedChildren = true;
+                mTraversalState.mAlreadyVisitedChildren = true;
             } else {
                 // Process sibling PtNode.
-                alreadyVisitedChildren = false;
+                mTraversalState.mAlreadyVisitedChildren = false;
             }
         }
     }
@@ -77,6 +96,7 @@ bool DynamicPatriciaTrieReadingHelper::traverseAllPtNodesInPostorderDepthFirstMa
     if (!listener->onAscend()) {
         return false;
     }
+    *outIsFinished = true;
     return !isError();
 }
 
@@ -87,8 +107,17 @@ bool DynamicPatriciaTrieReadingHelper::traverseAllPtNodesInPostorderDepthFirstMa
 //   \ x _ y
 bool DynamicPatriciaTrieReadingHelper::traverseAllPtNodesInPtNodeArrayLevelPreorderDepthFirstManner(
         TraversingEventListener *const listener) {
-    bool alreadyVisitedAllPtNodesInArray = false;
-    bool alreadyVisitedChildren = false;
+    bool isFinished = false;
+    return startTraversingAllPtNodesInPtNodeArrayLevelPreorderDepthFirstManner(listener)
+            && continueTraversingAllPtNodesInPtNodeArrayLevelPreorderDepthFirstManner(listener,
+                    S_INT_MAX /* maxPtNodeCount */, &isFinished);
+}
+
+bool DynamicPatriciaTrieReadingHelper
+        ::startTraversingAllPtNodesInPtNodeArrayLevelPreorderDepthFirstManner(
+                TraversingEventListener *const listener) {
+    mTraversalState.mAlreadyVisitedChildren = false;
+    mTraversalState.mAlreadyVisitedAllPtNodesInArray = false;
     // Descend from the root to the root PtNode array.
     if (!listener->onDescend(getPosOfLastPtNodeArrayHead())) {
         return false;
@@ -100,9 +129,18 @@ bool DynamicPatriciaTrieReadingHelper::traverseAllPtNodesInPtNodeArrayLevelPreor
         }
     }
     pushReadingStateToStack();
+    return true;
+}
+
+bool DynamicPatriciaTrieReadingHelper
+        ::continueTraversingAllPtNodesInPtNodeArrayLevelPreorderDepthFirstManner(
+                TraversingEventListener *const listener, const int maxPtNodeCount,
+                bool *const outIsFinished) {
+    *outIsFinished = false;
+    int visitedPtNodeCount = 0;
     while (!isEnd()) {
-        if (alreadyVisitedAllPtNodesInArray) {
-            if (alreadyVisitedChildren) {
+        if (mTraversalState.mAlreadyVisitedAllPtNodesInArray) {
+            if (mTraversalState.mAlreadyVisitedChildren) {
                 // Move to next sibling PtNode's children.
                 readNextSiblingNode();
                 if (isEnd()) {
@@ -114,10 +152,10 @@ bool DynamicPatriciaTrieReadingHelper::traverseAllPtNodesInPtNodeArrayLevelPreor
                         break;
                     }
                     popReadingStateFromStack();
-                    alreadyVisitedChildren = true;
-                    alreadyVisitedAllPtNodesInArray = true;
+                    mTraversalState.mAlreadyVisitedChildren = true;
+                    mTraversalState.mAlreadyVisitedAllPtNodesInArray = true;
                 } else {
-                    alreadyVisitedChildren = false;
+                    mTraversalState.mAlreadyVisitedChildren = false;
                 }
             } else {
                 if (mNodeReader.hasChildren()) {
@@ -129,16 +167,21 @@ bool DynamicPatriciaTrieReadingHelper::traverseAllPtNodesInPtNodeArrayLevelPreor
                     readChildNode();
                     // Push state to return the head of PtNode array.
                     pushReadingStateToStack();
-                    alreadyVisitedAllPtNodesInArray = false;
-                    alreadyVisitedChildren = false;
+                    mTraversalState.mAlreadyVisitedAllPtNodesInArray = false;
+                    mTraversalState.mAlreadyVisitedChildren = false;
                 } else {
-                    alreadyVisitedChildren = true;
+                    mTraversalState.mAlreadyVisitedChildren = true;
                 }
             }
         } else {
+            if (visitedPtNodeCount >= maxPtNodeCount) {
+                // Suspend here. The traversal will be resumed from the current PtNode.
+                return true;
+            }
             if (!listener->onVisitingPtNode(&mNodeReader, mMergedNodeCodePoints)) {
                 return false;
             }
+            ++visitedPtNodeCount;
             readNextSiblingNode();
             if (isEnd()) {
                 if (!listener->onReadingPtNodeArrayTail()) {
@@ -146,7 +189,7 @@ bool DynamicPatriciaTrieReadingHelper::traverseAllPtNodesInPtNodeArrayLevelPreor
                 }
                 // Return to the head of current PtNode array.
                 popReadingStateFromStack();
-                alreadyVisitedAllPtNodesInArray = true;
+                mTraversalState.mAlreadyVisitedAllPtNodesInArray = true;
             }
         }
     }
@@ -155,6 +198,7 @@ bool DynamicPatriciaTrieReadingHelper::traverseAllPtNodesInPtNodeArrayLevelPreor
     if (!listener->onAscend()) {
         return false;
     }
+    *outIsFinished = true;
     return !isError();
 }
 
@@ -65,7 +65,8 @@ class DynamicPatriciaTrieReadingHelper {
             const DictionaryBigramsStructurePolicy *const bigramsPolicy,
             const DictionaryShortcutsStructurePolicy *const shortcutsPolicy)
             : mIsError(false), mReadingState(), mBuffer(buffer),
-              mNodeReader(mBuffer, bigramsPolicy, shortcutsPolicy), mReadingStateStack() {}
+              mNodeReader(mBuffer, bigramsPolicy, shortcutsPolicy), mReadingStateStack(),
+              mTraversalState() {}
 
     ~DynamicPatriciaTrieReadingHelper() {}
 
@@ -215,6 +216,24 @@ class DynamicPatriciaTrieReadingHelper {
     bool traverseAllPtNodesInPtNodeArrayLevelPreorderDepthFirstManner(
             TraversingEventListener *const listener);
 
+    // Resumable versions of the above traversals. start*() has to be called once after
+    // initWithPtNodeArrayPos(). Then, continue*() visits at most maxPtNodeCount PtNodes and sets
+    // outIsFinished to true when all PtNodes have been visited. The traversal can be resumed by
+    // calling continue*() again as long as the buffer is not modified by others in between.
+    bool startTraversingAllPtNodesInPostorderDepthFirstManner(
+            TraversingEventListener *const listener);
+
+    bool continueTraversingAllPtNodesInPostorderDepthFirstManner(
+            TraversingEventListener *const listener, const int maxPtNodeCount,
+            bool *const outIsFinished);
+
+    bool startTraversingAllPtNodesInPtNodeArrayLevelPreorderDepthFirstManner(
+            TraversingEventListener *const listener);
+
+    bool continueTraversingAllPtNodesInPtNodeArrayLevelPreorderDepthFirstManner(
+            TraversingEventListener *const listener, const int maxPtNodeCount,
+            bool *const outIsFinished);
+
  private:
     DISALLOW_COPY_AND_ASSIGN(DynamicPatriciaTrieReadingHelper);
 
@@ -236,6 +255,16 @@ class DynamicPatriciaTrieReadingHelper {
         int mPosOfLastPtNodeArrayHead;
     };
 
+    // State of a traversal that has to be kept while the traversal is suspended.
+    class TraversalState {
+     public:
+        TraversalState() : mAlreadyVisitedChildren(false),
+                mAlreadyVisitedAllPtNodesInArray(false) {}
+
+        bool mAlreadyVisitedChildren;
+        bool mAlreadyVisitedAllPtNodesInArray;
+    };
+
     static const int MAX_CHILD_COUNT_TO_AVOID_INFINITE_LOOP;
     static const int MAX_NODE_ARRAY_COUNT_TO_AVOID_INFINITE_LOOP;
     static const size_t MAX_READING_STATE_STACK_SIZE;
@@ -247,6 +276,7 @@ class DynamicPatriciaTrieReadingHelper {
     DynamicPatriciaTrieNodeReader mNodeReader;
     int mMergedNodeCodePoints[MAX_WORD_LENGTH];
     std::vector<ReadingState> mReadingStateStack;
+    TraversalState mTraversalState;
 
     void nextPtNodeArray();
 
@@ -72,9 +72,6 @@ class DynamicPatriciaTrieWritingHelper {
     void writeToDictFile(const char *const fileName, const HeaderPolicy *const headerPolicy,
             const int unigramCount, const int bigramCount);
 
-    void writeToDictFileWithGC(const int rootPtNodeArrayPos, const char *const fileName,
-            const HeaderPolicy *const headerPolicy);
-
     // CAVEAT: This method must be called only from inner classes of
     // DynamicPatriciaTrieGcEventListeners.
     bool markNodeAsDeleted(const DynamicPatriciaTrieNodeReader *const nodeToUpdate);
@@ -128,10 +125,6 @@ class DynamicPatriciaTrieWritingHelper {
             const int probabilityOfNewPtNode, const int *const newNodeCodePoints,
             const int newNodeCodePointCount);
 
-    bool runGC(const int rootPtNodeArrayPos, const HeaderPolicy *const headerPolicy,
-            BufferWithExtendableBuffer *const bufferToWrite, int *const outUnigramCount,
-            int *const outBigramCount);
-
     int getUpdatedProbability(const int originalProbability, const int newProbability);
 };
 } // namespace latinime
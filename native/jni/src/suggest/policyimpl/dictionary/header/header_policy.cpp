@@ -27,6 +27,12 @@ const char *const HeaderPolicy::LAST_DECAYED_TIME_KEY = "LAST_DECAYED_TIME";
 const char *const HeaderPolicy::UNIGRAM_COUNT_KEY = "UNIGRAM_COUNT";
 const char *const HeaderPolicy::BIGRAM_COUNT_KEY = "BIGRAM_COUNT";
 const char *const HeaderPolicy::EXTENDED_REGION_SIZE_KEY = "EXTENDED_REGION_SIZE";
+const char *const HeaderPolicy::BODY_SIZE_KEY = "BODY_SIZE";
+const char *const HeaderPolicy::HEADER_CHECKSUM_KEY = "HEADER_CHECKSUM";
+const char *const HeaderPolicy::FLUSH_GENERATION_KEY = "FLUSH_GENERATION";
+// Checksums are non-negative.
+const int HeaderPolicy::MAX_HEADER_BUFFER_SIZE = 64 * 1024;
+const int HeaderPolicy::NOT_A_CHECKSUM = -1;
 const int HeaderPolicy::DEFAULT_MULTIPLE_WORDS_DEMOTION_RATE = 100;
 const float HeaderPolicy::MULTIPLE_WORD_COST_MULTIPLIER_SCALE = 100.0f;
 
@@ -65,7 +71,8 @@ float HeaderPolicy::readMultipleWordCostMultiplier() const {
 
 bool HeaderPolicy::writeHeaderToBuffer(BufferWithExtendableBuffer *const bufferToWrite,
         const bool updatesLastUpdatedTime, const bool updatesLastDecayedTime,
-        const int unigramCount, const int bigramCount, const int extendedRegionSize) const {
+        const int unigramCount, const int bigramCount, const int extendedRegionSize,
+        const int bodySize) const {
     int writingPos = 0;
     if (!HeaderReadWriteUtils::writeDictionaryVersion(bufferToWrite, mDictFormatVersion,
             &writingPos)) {
@@ -96,6 +103,13 @@ bool HeaderPolicy::writeHeaderToBuffer(BufferWithExtendableBuffer *const bufferT
         HeaderReadWriteUtils::setIntAttribute(&attributeMapTowrite, LAST_DECAYED_TIME_KEY,
                 time(0));
     }
+    HeaderReadWriteUtils::setIntAttribute(&attributeMapTowrite, BODY_SIZE_KEY, bodySize);
+    ++mFlushGeneration;
+    HeaderReadWriteUtils::setIntAttribute(&attributeMapTowrite, FLUSH_GENERATION_KEY,
+            mFlushGeneration);
+    // The checksum covers all other attributes.
+    HeaderReadWriteUtils::setIntAttribute(&attributeMapTowrite, HEADER_CHECKSUM_KEY,
+            calculateChecksum(&attributeMapTowrite));
     if (!HeaderReadWriteUtils::writeHeaderAttributes(bufferToWrite, &attributeMapTowrite,
             &writingPos)) {
         return false;
@@ -108,6 +122,62 @@ bool HeaderPolicy::writeHeaderToBuffer(BufferWithExtendableBuffer *const bufferT
     return true;
 }
 
+bool HeaderPolicy::verifyIntegrity(const int dictSize) const {
+    if (mSize > dictSize) {
+        AKLOGE("The header is larger than the dictionary. header size: %d, dict size: %d",
+                mSize, dictSize);
+        return false;
+    }
+    const int checksum = HeaderReadWriteUtils::readIntAttributeValue(&mAttributeMap,
+            HEADER_CHECKSUM_KEY, NOT_A_CHECKSUM);
+    if (checksum != NOT_A_CHECKSUM && checksum != calculateChecksum(&mAttributeMap)) {
+        AKLOGE("The header checksum doesn't match.");
+        return false;
+    }
+    const int bodySize = HeaderReadWriteUtils::readIntAttributeValue(&mAttributeMap,
+            BODY_SIZE_KEY, NOT_A_DICT_POS);
+    if (bodySize != NOT_A_DICT_POS && mSize + bodySize != dictSize) {
+        // The dictionary file has been truncated or appended.
+        AKLOGE("The dictionary size doesn't match. expected: %d, actual: %d", mSize + bodySize,
+                dictSize);
+        return false;
+    }
+    return true;
+}
+
+// Returns FNV-1a hash of the attributes other than the checksum. The result is non-negative so
+// that it can be stored as an int attribute.
+/* static */ int HeaderPolicy::calculateChecksum(
+        const HeaderReadWriteUtils::AttributeMap *const attributeMap) {
+    std::vector<int> checksumKey;
+    HeaderReadWriteUtils::insertCharactersIntoVector(HEADER_CHECKSUM_KEY, &checksumKey);
+    uint32_t hash = 2166136261u;
+    for (HeaderReadWriteUtils::AttributeMap::const_iterator it = attributeMap->begin();
+            it != attributeMap->end(); ++it) {
+        if (it->first == checksumKey || it->first.empty() || it->second.empty()) {
+            // Empty attributes are not written.
+            continue;
+        }
+        for (size_t i = 0; i < it->first.size(); ++i) {
+            hash = (hash ^ static_cast<uint32_t>(it->first[i])) * 16777619u;
+        }
+        // Separates a key from a value.
+        hash = (hash ^ 0xFFFFFFFFu) * 16777619u;
+        for (size_t i = 0; i < it->second.size(); ++i) {
+            hash = (hash ^ static_cast<uint32_t>(it->second[i])) * 16777619u;
+        }
+        hash = (hash ^ 0xFFFFFFFFu) * 16777619u;
+    }
+    return static_cast<int>(hash & 0x7FFFFFFF);
+}
+
+/* static */ int HeaderPolicy::readFlushGeneration(const uint8_t *const dictBuf) {
+    const HeaderReadWriteUtils::AttributeMap attributeMap =
+            createAttributeMapAndReadAllAttributes(dictBuf);
+    return HeaderReadWriteUtils::readIntAttributeValue(&attributeMap, FLUSH_GENERATION_KEY,
+            0 /* defaultValue */);
+}
+
 /* static */ HeaderReadWriteUtils::AttributeMap
         HeaderPolicy::createAttributeMapAndReadAllAttributes(const uint8_t *const dictBuf) {
     HeaderReadWriteUtils::AttributeMap attributeMap;
@@ -29,6 +29,9 @@ namespace latinime {
 
 class HeaderPolicy : public DictionaryHeaderStructurePolicy {
  public:
+    // The maximum size of a buffer the header is written to.
+    static const int MAX_HEADER_BUFFER_SIZE;
+
     // Reads information from existing dictionary buffer.
     HeaderPolicy(const uint8_t *const dictBuf, const int dictSize)
             : mDictFormatVersion(FormatUtils::detectFormatVersion(dictBuf, dictSize)),
@@ -47,7 +50,9 @@ class HeaderPolicy : public DictionaryHeaderStructurePolicy {
               mBigramCount(HeaderReadWriteUtils::readIntAttributeValue(&mAttributeMap,
                       BIGRAM_COUNT_KEY, 0 /* defaultValue */)),
               mExtendedRegionSize(HeaderReadWriteUtils::readIntAttributeValue(&mAttributeMap,
-                      EXTENDED_REGION_SIZE_KEY, 0 /* defaultValue */)) {}
+                      EXTENDED_REGION_SIZE_KEY, 0 /* defaultValue */)),
+              mFlushGeneration(HeaderReadWriteUtils::readIntAttributeValue(&mAttributeMap,
+                      FLUSH_GENERATION_KEY, 0 /* defaultValue */)) {}
 
     // Constructs header information using an attribute map.
     HeaderPolicy(const FormatUtils::FORMAT_VERSION dictFormatVersion,
@@ -62,7 +67,9 @@ class HeaderPolicy : public DictionaryHeaderStructurePolicy {
                       LAST_UPDATED_TIME_KEY, time(0) /* defaultValue */)),
               mLastDecayedTime(HeaderReadWriteUtils::readIntAttributeValue(&mAttributeMap,
                       LAST_UPDATED_TIME_KEY, time(0) /* defaultValue */)),
-              mUnigramCount(0), mBigramCount(0), mExtendedRegionSize(0) {}
+              mUnigramCount(0), mBigramCount(0), mExtendedRegionSize(0),
+              mFlushGeneration(HeaderReadWriteUtils::readIntAttributeValue(&mAttributeMap,
+                      FLUSH_GENERATION_KEY, 0 /* defaultValue */)) {}
 
     ~HeaderPolicy() {}
 
@@ -110,12 +117,31 @@ class HeaderPolicy : public DictionaryHeaderStructurePolicy {
         return mExtendedRegionSize;
     }
 
+    // The number of times the dictionary file has been written by this code, which identifies
+    // the version of the file. Files written elsewhere have 0.
+    AK_FORCE_INLINE int getFlushGeneration() const {
+        return mFlushGeneration;
+    }
+
+    // Reads the flush generation from the header of a dictionary file. dictBuf only has to
+    // contain the header.
+    static int readFlushGeneration(const uint8_t *const dictBuf);
+
     void readHeaderValueOrQuestionMark(const char *const key,
             int *outValue, int outValueSize) const;
 
+    // Writes the header for a dictionary body of bodySize bytes. The body size and a checksum of
+    // the header are written as attributes to detect a broken dictionary file when it's opened.
+    // Each call advances the flush generation, so that every written file has its own one even
+    // if the policy is not reloaded from it.
     bool writeHeaderToBuffer(BufferWithExtendableBuffer *const bufferToWrite,
             const bool updatesLastUpdatedTime, const bool updatesLastDecayedTime,
-            const int unigramCount, const int bigramCount, const int extendedRegionSize) const;
+            const int unigramCount, const int bigramCount, const int extendedRegionSize,
+            const int bodySize) const;
+
+    // Verifies the header checksum and the size of the dictionary without reading the body.
+    // Dictionaries written without these attributes are always regarded as valid.
+    bool verifyIntegrity(const int dictSize) const;
 
  private:
     DISALLOW_IMPLICIT_CONSTRUCTORS(HeaderPolicy);
@@ -127,6 +153,10 @@ class HeaderPolicy : public DictionaryHeaderStructurePolicy {
     static const char *const UNIGRAM_COUNT_KEY;
     static const char *const BIGRAM_COUNT_KEY;
     static const char *const EXTENDED_REGION_SIZE_KEY;
+    static const char *const BODY_SIZE_KEY;
+    static const char *const HEADER_CHECKSUM_KEY;
+    static const char *const FLUSH_GENERATION_KEY;
+    static const int NOT_A_CHECKSUM;
     static const int DEFAULT_MULTIPLE_WORDS_DEMOTION_RATE;
     static const float MULTIPLE_WORD_COST_MULTIPLIER_SCALE;
 
@@ -141,9 +171,13 @@ class HeaderPolicy : public DictionaryHeaderStructurePolicy {
     const int mUnigramCount;
     const int mBigramCount;
     const int mExtendedRegionSize;
+    // Advanced by writeHeaderToBuffer().
+    mutable int mFlushGeneration;
 
     float readMultipleWordCostMultiplier() const;
 
+    static int calculateChecksum(const HeaderReadWriteUtils::AttributeMap *const attributeMap);
+
     static HeaderReadWriteUtils::AttributeMap createAttributeMapAndReadAllAttributes(
             const uint8_t *const dictBuf);
 };
@@ -107,6 +107,12 @@ class PatriciaTriePolicy : public DictionaryStructureWithBufferPolicy {
         AKLOGI("Warning: flushWithGC() is called for non-updatable dictionary.");
     }
 
+    bool runGCIncrementally(const char *const filePath, const int maxPtNodeCount) {
+        // This method should not be called for non-updatable dictionary.
+        AKLOGI("Warning: runGCIncrementally() is called for non-updatable dictionary.");
+        return true;
+    }
+
     bool needsToRunGC(const bool mindsBlockByGC) const {
         // This method should not be called for non-updatable dictionary.
         AKLOGI("Warning: needsToRunGC() is called for non-updatable dictionary.");
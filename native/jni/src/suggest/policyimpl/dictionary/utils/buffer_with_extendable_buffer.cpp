@@ -16,13 +16,31 @@
 
 #include "suggest/policyimpl/dictionary/utils/buffer_with_extendable_buffer.h"
 
+#include <sys/mman.h>
+#include <unistd.h>
+
 namespace latinime {
 
-const size_t BufferWithExtendableBuffer::MAX_ADDITIONAL_BUFFER_SIZE = 1024 * 1024;
+const int BufferWithExtendableBuffer::MAX_ADDITIONAL_BUFFER_SIZE = 8 * 1024 * 1024;
 const int BufferWithExtendableBuffer::NEAR_BUFFER_LIMIT_THRESHOLD_PERCENTILE = 90;
-// TODO: Needs to allocate larger memory corresponding to the current vector size.
+// This has to be a multiple of the page size.
 const size_t BufferWithExtendableBuffer::EXTEND_ADDITIONAL_BUFFER_SIZE_STEP = 128 * 1024;
 
+BufferWithExtendableBuffer::BufferWithExtendableBuffer(uint8_t *const originalBuffer,
+        const int originalBufferSize, const int maxAdditionalBufferSize)
+        : mOriginalBuffer(originalBuffer), mOriginalBufferSize(originalBufferSize),
+          mMaxAdditionalBufferSize(maxAdditionalBufferSize),
+          mAdditionalBuffer(reserveAdditionalBuffer(maxAdditionalBufferSize)),
+          mAllocatedAdditionalBufferSize(0), mUsedAdditionalBufferSize(0) {
+    extendBuffer();
+}
+
+BufferWithExtendableBuffer::~BufferWithExtendableBuffer() {
+    if (mAdditionalBuffer) {
+        munmap(mAdditionalBuffer, getReservedAdditionalBufferSize(mMaxAdditionalBufferSize));
+    }
+}
+
 bool BufferWithExtendableBuffer::writeUintAndAdvancePosition(const uint32_t data, const int size,
         int *const pos) {
     if (!(size >= 1 && size <= 4)) {
@@ -34,7 +52,7 @@ bool BufferWithExtendableBuffer::writeUintAndAdvancePosition(const uint32_t data
         return false;
     }
     const bool usesAdditionalBuffer = isInAdditionalBuffer(*pos);
-    uint8_t *const buffer = usesAdditionalBuffer ? &mAdditionalBuffer[0] : mOriginalBuffer;
+    uint8_t *const buffer = usesAdditionalBuffer ? mAdditionalBuffer : mOriginalBuffer;
     if (usesAdditionalBuffer) {
         *pos -= mOriginalBufferSize;
     }
@@ -53,7 +71,7 @@ bool BufferWithExtendableBuffer::writeCodePointsAndAdvancePosition(const int *co
         return false;
     }
     const bool usesAdditionalBuffer = isInAdditionalBuffer(*pos);
-    uint8_t *const buffer = usesAdditionalBuffer ? &mAdditionalBuffer[0] : mOriginalBuffer;
+    uint8_t *const buffer = usesAdditionalBuffer ? mAdditionalBuffer : mOriginalBuffer;
     if (usesAdditionalBuffer) {
         *pos -= mOriginalBufferSize;
     }
@@ -65,13 +83,50 @@ bool BufferWithExtendableBuffer::writeCodePointsAndAdvancePosition(const int *co
     return true;
 }
 
+/* static */ size_t BufferWithExtendableBuffer::getReservedAdditionalBufferSize(
+        const size_t maxAdditionalBufferSize) {
+    // The size is rounded up to a multiple of the page size. At least one page is reserved.
+    const size_t pageSize = static_cast<size_t>(sysconf(_SC_PAGESIZE));
+    const size_t pageCount = (maxAdditionalBufferSize + pageSize - 1) / pageSize;
+    return (pageCount > 0 ? pageCount : 1) * pageSize;
+}
+
+/* static */ uint8_t *BufferWithExtendableBuffer::reserveAdditionalBuffer(
+        const size_t maxAdditionalBufferSize) {
+    // Only the address range is reserved here. Memory is committed chunk by chunk in
+    // extendBuffer().
+    void *const buffer = mmap(0, getReservedAdditionalBufferSize(maxAdditionalBufferSize),
+            PROT_NONE, MAP_PRIVATE | MAP_ANONYMOUS, -1 /* fd */, 0 /* offset */);
+    if (buffer == MAP_FAILED) {
+        AKLOGE("Cannot reserve the additional buffer. size: %d",
+                static_cast<int>(maxAdditionalBufferSize));
+        ASSERT(false);
+        return 0;
+    }
+    return static_cast<uint8_t *>(buffer);
+}
+
 bool BufferWithExtendableBuffer::extendBuffer() {
-    const size_t sizeAfterExtending =
-            mAdditionalBuffer.size() + EXTEND_ADDITIONAL_BUFFER_SIZE_STEP;
-    if (sizeAfterExtending > mMaxAdditionalBufferSize) {
+    if (!mAdditionalBuffer) {
+        return false;
+    }
+    const size_t reservedSize = getReservedAdditionalBufferSize(mMaxAdditionalBufferSize);
+    if (mAllocatedAdditionalBufferSize >= reservedSize) {
+        return false;
+    }
+    // The last chunk is smaller when the reserved size is not a multiple of the chunk size.
+    const size_t extendingSize = min(EXTEND_ADDITIONAL_BUFFER_SIZE_STEP,
+            reservedSize - mAllocatedAdditionalBufferSize);
+    const size_t sizeAfterExtending = mAllocatedAdditionalBufferSize + extendingSize;
+    // The new chunk directly follows the already allocated chunks, so existing data and
+    // positions in the additional buffer are kept.
+    if (mprotect(mAdditionalBuffer + mAllocatedAdditionalBufferSize, extendingSize,
+            PROT_READ | PROT_WRITE) != 0) {
+        AKLOGE("Cannot extend the additional buffer. size: %d",
+                static_cast<int>(sizeAfterExtending));
         return false;
     }
-    mAdditionalBuffer.resize(mAdditionalBuffer.size() + EXTEND_ADDITIONAL_BUFFER_SIZE_STEP);
+    mAllocatedAdditionalBufferSize = sizeAfterExtending;
     return true;
 }
 
@@ -80,7 +135,12 @@ bool BufferWithExtendableBuffer::checkAndPrepareWriting(const int pos, const int
         const int tailPosition = getTailPosition();
         if (pos == tailPosition) {
             // Append data to the tail.
-            if (pos + size > static_cast<int>(mAdditionalBuffer.size()) + mOriginalBufferSize) {
+            if (mUsedAdditionalBufferSize + size > static_cast<int>(mMaxAdditionalBufferSize)) {
+                // The reserved range may be larger than the maximum size, which is the limit.
+                return false;
+            }
+            if (pos + size > static_cast<int>(mAllocatedAdditionalBufferSize)
+                    + mOriginalBufferSize) {
                 // Need to extend buffer.
                 if (!extendBuffer()) {
                     return false;
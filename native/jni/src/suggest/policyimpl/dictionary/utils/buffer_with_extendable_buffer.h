@@ -19,7 +19,6 @@
 
 #include <cstddef>
 #include <stdint.h>
-#include <vector>
 
 #include "defines.h"
 #include "suggest/policyimpl/dictionary/utils/byte_array_utils.h"
@@ -30,13 +29,21 @@ namespace latinime {
 // To optimize performance, raw pointer is directly used for reading buffer. The position has to be
 // adjusted to access additional buffer. On the other hand, this class does not provide writable
 // raw pointer but provides several methods that handle boundary checking for writing data.
+//
+// The additional buffer is an address range of mMaxAdditionalBufferSize bytes that is reserved
+// when the buffer is created. The range is made accessible chunk by chunk as data is appended, so
+// the buffer can grow up to the maximum size without relocating existing data, and positions and
+// raw pointers to the additional buffer stay valid across chunks. The maximum size depends on what
+// the buffer holds; small buffers such as headers reserve a small range.
 class BufferWithExtendableBuffer {
  public:
+    // The maximum size of the additional buffer of a dictionary body.
+    static const int MAX_ADDITIONAL_BUFFER_SIZE;
+
     BufferWithExtendableBuffer(uint8_t *const originalBuffer, const int originalBufferSize,
-            const int maxAdditionalBufferSize = MAX_ADDITIONAL_BUFFER_SIZE)
-            : mOriginalBuffer(originalBuffer), mOriginalBufferSize(originalBufferSize),
-              mAdditionalBuffer(EXTEND_ADDITIONAL_BUFFER_SIZE_STEP), mUsedAdditionalBufferSize(0),
-              mMaxAdditionalBufferSize(maxAdditionalBufferSize) {}
+            const int maxAdditionalBufferSize = MAX_ADDITIONAL_BUFFER_SIZE);
+
+    ~BufferWithExtendableBuffer();
 
     AK_FORCE_INLINE int getTailPosition() const {
         return mOriginalBufferSize + mUsedAdditionalBufferSize;
@@ -53,11 +60,10 @@ class BufferWithExtendableBuffer {
         return position >= mOriginalBufferSize;
     }
 
-    // TODO: Resolve the issue that the address can be changed when the vector is resized.
     // CAVEAT!: Be careful about array out of bound access with buffers
     AK_FORCE_INLINE const uint8_t *getBuffer(const bool usesAdditionalBuffer) const {
         if (usesAdditionalBuffer) {
-            return &mAdditionalBuffer[0];
+            return mAdditionalBuffer;
         } else {
             return mOriginalBuffer;
         }
@@ -68,7 +74,7 @@ class BufferWithExtendableBuffer {
     }
 
     AK_FORCE_INLINE bool isNearSizeLimit() const {
-        return mAdditionalBuffer.size() >= ((mMaxAdditionalBufferSize
+        return mAllocatedAdditionalBufferSize >= ((mMaxAdditionalBufferSize
                 * NEAR_BUFFER_LIMIT_THRESHOLD_PERCENTILE) / 100);
     }
 
@@ -86,17 +92,22 @@ class BufferWithExtendableBuffer {
  private:
     DISALLOW_COPY_AND_ASSIGN(BufferWithExtendableBuffer);
 
-    static const size_t MAX_ADDITIONAL_BUFFER_SIZE;
     static const int NEAR_BUFFER_LIMIT_THRESHOLD_PERCENTILE;
     static const size_t EXTEND_ADDITIONAL_BUFFER_SIZE_STEP;
 
     uint8_t *const mOriginalBuffer;
     const int mOriginalBufferSize;
-    std::vector<uint8_t> mAdditionalBuffer;
-    int mUsedAdditionalBufferSize;
     const size_t mMaxAdditionalBufferSize;
+    // The reserved address range. This is 0 when the range couldn't be reserved.
+    uint8_t *const mAdditionalBuffer;
+    // The size of the accessible part of the additional buffer.
+    size_t mAllocatedAdditionalBufferSize;
+    int mUsedAdditionalBufferSize;
+
+    static size_t getReservedAdditionalBufferSize(const size_t maxAdditionalBufferSize);
+    static uint8_t *reserveAdditionalBuffer(const size_t maxAdditionalBufferSize);
 
-    // Return if the buffer is successfully extended or not.
+    // Return if the buffer is successfully extended or not. Data in the buffer is not moved.
     bool extendBuffer();
 
     // Returns if it is possible to write size-bytes from pos. When pos is at the tail position of
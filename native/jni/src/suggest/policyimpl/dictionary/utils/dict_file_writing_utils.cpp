@@ -16,17 +16,24 @@
 
 #include "suggest/policyimpl/dictionary/utils/dict_file_writing_utils.h"
 
+#include <cerrno>
+#include <climits>
 #include <cstdio>
 #include <cstring>
+#include <fcntl.h>
+#include <unistd.h>
 
 #include "suggest/policyimpl/dictionary/header/header_policy.h"
 #include "suggest/policyimpl/dictionary/dynamic_patricia_trie_writing_utils.h"
 #include "suggest/policyimpl/dictionary/utils/buffer_with_extendable_buffer.h"
+#include "suggest/policyimpl/dictionary/utils/dict_update_journal.h"
 #include "suggest/policyimpl/dictionary/utils/format_utils.h"
 
 namespace latinime {
 
 const char *const DictFileWritingUtils::TEMP_FILE_SUFFIX_FOR_WRITING_DICT_FILE = ".tmp";
+// An empty dictionary body is a root PtNode array without any PtNode.
+const int DictFileWritingUtils::MAX_EMPTY_DICT_BODY_SIZE = 1024;
 
 /* static */ bool DictFileWritingUtils::createEmptyDictFile(const char *const filePath,
         const int dictVersion, const HeaderReadWriteUtils::AttributeMap *const attributeMap) {
@@ -41,15 +48,17 @@ const char *const DictFileWritingUtils::TEMP_FILE_SUFFIX_FOR_WRITING_DICT_FILE =
 
 /* static */ bool DictFileWritingUtils::createEmptyV3DictFile(const char *const filePath,
         const HeaderReadWriteUtils::AttributeMap *const attributeMap) {
-    BufferWithExtendableBuffer headerBuffer(0 /* originalBuffer */, 0 /* originalBufferSize */);
-    HeaderPolicy headerPolicy(FormatUtils::VERSION_3, attributeMap);
-    headerPolicy.writeHeaderToBuffer(&headerBuffer, true /* updatesLastUpdatedTime */,
-            true /* updatesLastDecayedTime */, 0 /* unigramCount */, 0 /* bigramCount */,
-            0 /* extendedRegionSize */);
-    BufferWithExtendableBuffer bodyBuffer(0 /* originalBuffer */, 0 /* originalBufferSize */);
+    BufferWithExtendableBuffer bodyBuffer(0 /* originalBuffer */, 0 /* originalBufferSize */,
+            MAX_EMPTY_DICT_BODY_SIZE);
     if (!DynamicPatriciaTrieWritingUtils::writeEmptyDictionary(&bodyBuffer, 0 /* rootPos */)) {
         return false;
     }
+    BufferWithExtendableBuffer headerBuffer(0 /* originalBuffer */, 0 /* originalBufferSize */,
+            HeaderPolicy::MAX_HEADER_BUFFER_SIZE);
+    HeaderPolicy headerPolicy(FormatUtils::VERSION_3, attributeMap);
+    headerPolicy.writeHeaderToBuffer(&headerBuffer, true /* updatesLastUpdatedTime */,
+            true /* updatesLastDecayedTime */, 0 /* unigramCount */, 0 /* bigramCount */,
+            0 /* extendedRegionSize */, bodyBuffer.getTailPosition());
     return flushAllHeaderAndBodyToFile(filePath, &headerBuffer, &bodyBuffer);
 }
 
@@ -82,11 +91,65 @@ const char *const DictFileWritingUtils::TEMP_FILE_SUFFIX_FOR_WRITING_DICT_FILE =
         ASSERT(false);
         return false;
     }
+    // The data has to be on the storage before the file is published. Otherwise, the renamed file
+    // can be truncated by a crash.
+    if (fflush(file) != 0 || fsync(fileno(file)) != 0) {
+        fclose(file);
+        remove(tmpFileName);
+        AKLOGE("Dictionary file %s cannnot be synced.", tmpFileName);
+        ASSERT(false);
+        return false;
+    }
     fclose(file);
-    rename(tmpFileName, filePath);
+    // Renaming atomically replaces the dictionary file, so the old or the new dictionary is
+    // always available at filePath.
+    if (rename(tmpFileName, filePath) != 0) {
+        remove(tmpFileName);
+        AKLOGE("Dictionary file %s cannnot be renamed to %s.", tmpFileName, filePath);
+        ASSERT(false);
+        return false;
+    }
+    // The journaled updates are included in the new dictionary file. The journal is removed only
+    // once the new file is durable, so that a crash before that leaves the old file with its
+    // journal. A journal left next to the new file is rejected by its fingerprint on replay.
+    if (syncParentDirectory(filePath)) {
+        DictUpdateJournal::removeJournalFile(filePath);
+    }
     return true;
 }
 
+// Makes the rename durable. Returns whether the directory has been synced.
+/* static */ bool DictFileWritingUtils::syncParentDirectory(const char *const filePath) {
+    const char *const lastSeparator = strrchr(filePath, '/');
+    if (!lastSeparator) {
+        // The file is in the current directory.
+        return syncDirectory(".");
+    }
+    const int dirPathLength = (lastSeparator == filePath) ? 1 : lastSeparator - filePath;
+    if (dirPathLength >= PATH_MAX) {
+        AKLOGE("Directory path of %s is too long.", filePath);
+        return false;
+    }
+    char dirPath[PATH_MAX];
+    memcpy(dirPath, filePath, dirPathLength);
+    dirPath[dirPathLength] = '\0';
+    return syncDirectory(dirPath);
+}
+
+/* static */ bool DictFileWritingUtils::syncDirectory(const char *const dirPath) {
+    const int dirFd = open(dirPath, O_RDONLY);
+    if (dirFd < 0) {
+        AKLOGE("Directory %s cannot be opened. errno=%d", dirPath, errno);
+        return false;
+    }
+    const bool synced = fsync(dirFd) == 0;
+    if (!synced) {
+        AKLOGE("Directory %s cannot be synced. errno=%d", dirPath, errno);
+    }
+    close(dirFd);
+    return synced;
+}
+
 // This closes file pointer when an error is caused and returns whether the writing was succeeded
 // or not.
 /* static */ bool DictFileWritingUtils::writeBufferToFile(FILE *const file,
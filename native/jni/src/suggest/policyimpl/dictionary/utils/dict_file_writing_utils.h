@@ -39,12 +39,17 @@ class DictFileWritingUtils {
     DISALLOW_IMPLICIT_CONSTRUCTORS(DictFileWritingUtils);
 
     static const char *const TEMP_FILE_SUFFIX_FOR_WRITING_DICT_FILE;
+    static const int MAX_EMPTY_DICT_BODY_SIZE;
 
     static bool createEmptyV3DictFile(const char *const filePath,
             const HeaderReadWriteUtils::AttributeMap *const attributeMap);
 
     static bool writeBufferToFile(FILE *const file,
             const BufferWithExtendableBuffer *const buffer);
+
+    static bool syncParentDirectory(const char *const filePath);
+
+    static bool syncDirectory(const char *const dirPath);
 };
 } // namespace latinime
 #endif /* LATINIME_DICT_FILE_WRITING_UTILS_H */
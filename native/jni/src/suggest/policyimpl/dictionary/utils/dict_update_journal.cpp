@@ -0,0 +1,344 @@
+/*
+ * Copyright (C) 2013, The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+#include "suggest/policyimpl/dictionary/utils/dict_update_journal.h"
+
+#include <climits>
+#include <cstdio>
+#include <cstring>
+#include <unistd.h>
+
+#include "suggest/core/policy/dictionary_structure_with_buffer_policy.h"
+#include "suggest/policyimpl/dictionary/header/header_policy.h"
+#include "suggest/policyimpl/dictionary/header/header_read_write_utils.h"
+#include "suggest/policyimpl/dictionary/utils/byte_array_utils.h"
+
+namespace latinime {
+
+const char *const DictUpdateJournal::JOURNAL_FILE_SUFFIX = ".journal";
+const uint32_t DictUpdateJournal::JOURNAL_MAGIC_NUMBER = 0x4A524E4C;
+const int DictUpdateJournal::JOURNAL_HEADER_SIZE = 16;
+const int DictUpdateJournal::RECORD_HEADER_SIZE = 3;
+const int DictUpdateJournal::RECORD_CHECKSUM_SIZE = 2;
+// Two words and a probability.
+const int DictUpdateJournal::MAX_RECORD_SIZE = RECORD_HEADER_SIZE
+        + 2 * (1 + MAX_WORD_LENGTH * 3) + 1 + RECORD_CHECKSUM_SIZE;
+
+void DictUpdateJournal::addUnigramWord(const int *const word, const int length,
+        const int probability) {
+    appendRecord(RECORD_TYPE_ADD_UNIGRAM, word, length, 0 /* word1 */, 0 /* length1 */,
+            probability);
+}
+
+void DictUpdateJournal::addBigramWords(const int *const word0, const int length0,
+        const int *const word1, const int length1, const int probability) {
+    appendRecord(RECORD_TYPE_ADD_BIGRAM, word0, length0, word1, length1, probability);
+}
+
+void DictUpdateJournal::removeBigramWords(const int *const word0, const int length0,
+        const int *const word1, const int length1) {
+    appendRecord(RECORD_TYPE_REMOVE_BIGRAM, word0, length0, word1, length1, NOT_A_PROBABILITY);
+}
+
+bool DictUpdateJournal::flush(const char *const dictFilePath) {
+    if (mPendingRecords.empty()) {
+        return true;
+    }
+    char journalFilePath[PATH_MAX];
+    if (!getJournalFilePath(dictFilePath, journalFilePath)) {
+        return false;
+    }
+    FILE *const file = fopen(journalFilePath, "ab");
+    if (!file) {
+        AKLOGE("Journal file %s cannot be opened.", journalFilePath);
+        return false;
+    }
+    fseek(file, 0, SEEK_END);
+    const long journalFileSize = ftell(file);
+    if (journalFileSize == 0) {
+        // The journal is bound to the current dictionary file, so that a journal left for an
+        // older dictionary file is not applied to a new one.
+        uint32_t dictFileSize = 0;
+        uint32_t dictHeaderHash = 0;
+        uint32_t dictFlushGeneration = 0;
+        if (!readDictFileFingerprint(dictFilePath, &dictFileSize, &dictHeaderHash,
+                &dictFlushGeneration)) {
+            AKLOGE("Dictionary file %s cannot be read.", dictFilePath);
+            fclose(file);
+            return false;
+        }
+        uint8_t header[JOURNAL_HEADER_SIZE];
+        int pos = 0;
+        ByteArrayUtils::writeUintAndAdvancePosition(header, JOURNAL_MAGIC_NUMBER, 4, &pos);
+        ByteArrayUtils::writeUintAndAdvancePosition(header, dictFileSize, 4, &pos);
+        ByteArrayUtils::writeUintAndAdvancePosition(header, dictHeaderHash, 4, &pos);
+        ByteArrayUtils::writeUintAndAdvancePosition(header, dictFlushGeneration, 4, &pos);
+        if (fwrite(header, JOURNAL_HEADER_SIZE, 1, file) < 1) {
+            AKLOGE("Journal header cannot be written.");
+            fclose(file);
+            return false;
+        }
+    } else if (journalFileSize != mJournalFileSize) {
+        // The journal has been written by another instance.
+        AKLOGE("Journal file %s has been modified. size: %ld, expected: %d", journalFilePath,
+                journalFileSize, mJournalFileSize);
+        fclose(file);
+        return false;
+    }
+    // Records are written in a batch and synced once per flush.
+    if (fwrite(&mPendingRecords[0], mPendingRecords.size(), 1, file) < 1
+            || fflush(file) != 0 || fsync(fileno(file)) != 0) {
+        AKLOGE("Journal records cannot be written. size: %d",
+                static_cast<int>(mPendingRecords.size()));
+        fclose(file);
+        return false;
+    }
+    fclose(file);
+    mJournalFileSize = (journalFileSize == 0 ? JOURNAL_HEADER_SIZE : journalFileSize)
+            + mPendingRecords.size();
+    mPendingRecords.clear();
+    return true;
+}
+
+void DictUpdateJournal::replay(const char *const dictFilePath, const uint8_t *const dictBuf,
+        const int dictHeaderSize, const int dictFileSize, const int dictFlushGeneration,
+        DictionaryStructureWithBufferPolicy *const policy) {
+    clear();
+    char journalFilePath[PATH_MAX];
+    if (!getJournalFilePath(dictFilePath, journalFilePath)) {
+        return;
+    }
+    FILE *const file = fopen(journalFilePath, "rb");
+    if (!file) {
+        // No updates have been journaled since the dictionary file was written.
+        return;
+    }
+    fseek(file, 0, SEEK_END);
+    const long journalFileSize = ftell(file);
+    fseek(file, 0, SEEK_SET);
+    std::vector<uint8_t> journal(journalFileSize > 0 ? journalFileSize : 1);
+    const bool isRead = journalFileSize > JOURNAL_HEADER_SIZE
+            && fread(&journal[0], journalFileSize, 1, file) == 1;
+    fclose(file);
+    int pos = 0;
+    if (!isRead || ByteArrayUtils::readUint32AndAdvancePosition(&journal[0], &pos)
+            != JOURNAL_MAGIC_NUMBER
+            || static_cast<int>(ByteArrayUtils::readUint32AndAdvancePosition(&journal[0], &pos))
+                    != dictFileSize
+            || ByteArrayUtils::readUint32AndAdvancePosition(&journal[0], &pos)
+                    != calculateHeaderHash(dictBuf, dictHeaderSize)
+            || static_cast<int>(ByteArrayUtils::readUint32AndAdvancePosition(&journal[0], &pos))
+                    != dictFlushGeneration) {
+        AKLOGI("Journal file %s is discarded.", journalFilePath);
+        remove(journalFilePath);
+        return;
+    }
+    while (pos + RECORD_HEADER_SIZE + RECORD_CHECKSUM_SIZE <= journalFileSize) {
+        int readingPos = pos;
+        const int recordType = ByteArrayUtils::readUint8AndAdvancePosition(&journal[0],
+                &readingPos);
+        const int payloadSize = ByteArrayUtils::readUint16AndAdvancePosition(&journal[0],
+                &readingPos);
+        const int payloadPos = readingPos;
+        if (payloadPos + payloadSize + RECORD_CHECKSUM_SIZE > journalFileSize) {
+            break;
+        }
+        readingPos += payloadSize;
+        const uint16_t checksum = ByteArrayUtils::readUint16AndAdvancePosition(&journal[0],
+                &readingPos);
+        if (checksum != calculateChecksum(&journal[pos], RECORD_HEADER_SIZE + payloadSize)) {
+            break;
+        }
+        if (!applyRecord(&journal[0], recordType, payloadPos, payloadSize, policy)) {
+            AKLOGI("Journal record cannot be applied. type: %d", recordType);
+        }
+        pos = readingPos;
+    }
+    if (pos < journalFileSize) {
+        // The tail of the journal was not completely written.
+        AKLOGI("Journal file %s is truncated. size: %ld, valid size: %d", journalFilePath,
+                journalFileSize, pos);
+        if (truncate(journalFilePath, pos) != 0) {
+            remove(journalFilePath);
+            pos = 0;
+        }
+    }
+    // Applying the records has recorded them again.
+    mPendingRecords.clear();
+    mJournalFileSize = pos;
+}
+
+/* static */ void DictUpdateJournal::removeJournalFile(const char *const dictFilePath) {
+    char journalFilePath[PATH_MAX];
+    if (!getJournalFilePath(dictFilePath, journalFilePath)) {
+        return;
+    }
+    remove(journalFilePath);
+}
+
+void DictUpdateJournal::appendRecord(const RecordType type, const int *const word0,
+        const int length0, const int *const word1, const int length1, const int probability) {
+    if (length0 <= 0 || length0 > MAX_WORD_LENGTH || length1 < 0 || length1 > MAX_WORD_LENGTH) {
+        AKLOGE("Journal record cannot be created. length0: %d, length1: %d", length0, length1);
+        ASSERT(false);
+        return;
+    }
+    uint8_t record[MAX_RECORD_SIZE];
+    int pos = RECORD_HEADER_SIZE;
+    ByteArrayUtils::writeUintAndAdvancePosition(record, length0, 1, &pos);
+    for (int i = 0; i < length0; ++i) {
+        ByteArrayUtils::writeUintAndAdvancePosition(record, word0[i], 3, &pos);
+    }
+    if (word1) {
+        ByteArrayUtils::writeUintAndAdvancePosition(record, length1, 1, &pos);
+        for (int i = 0; i < length1; ++i) {
+            ByteArrayUtils::writeUintAndAdvancePosition(record, word1[i], 3, &pos);
+        }
+    }
+    if (type != RECORD_TYPE_REMOVE_BIGRAM) {
+        ByteArrayUtils::writeUintAndAdvancePosition(record, probability, 1, &pos);
+    }
+    const int payloadSize = pos - RECORD_HEADER_SIZE;
+    int headerPos = 0;
+    ByteArrayUtils::writeUintAndAdvancePosition(record, type, 1, &headerPos);
+    ByteArrayUtils::writeUintAndAdvancePosition(record, payloadSize, 2, &headerPos);
+    ByteArrayUtils::writeUintAndAdvancePosition(record, calculateChecksum(record, pos), 2, &pos);
+    mPendingRecords.insert(mPendingRecords.end(), record, record + pos);
+}
+
+/* static */ bool DictUpdateJournal::applyRecord(const uint8_t *const buffer,
+        const int recordType, const int payloadPos, const int payloadSize,
+        DictionaryStructureWithBufferPolicy *const policy) {
+    const int payloadEndPos = payloadPos + payloadSize;
+    int pos = payloadPos;
+    int word0[MAX_WORD_LENGTH];
+    int length0 = 0;
+    if (!readWord(buffer, payloadEndPos, &pos, word0, &length0)) {
+        return false;
+    }
+    if (recordType == RECORD_TYPE_ADD_UNIGRAM) {
+        if (pos + 1 != payloadEndPos) {
+            return false;
+        }
+        return policy->addUnigramWord(word0, length0,
+                ByteArrayUtils::readUint8AndAdvancePosition(buffer, &pos));
+    }
+    int word1[MAX_WORD_LENGTH];
+    int length1 = 0;
+    if (!readWord(buffer, payloadEndPos, &pos, word1, &length1)) {
+        return false;
+    }
+    if (recordType == RECORD_TYPE_ADD_BIGRAM) {
+        if (pos + 1 != payloadEndPos) {
+            return false;
+        }
+        return policy->addBigramWords(word0, length0, word1, length1,
+                ByteArrayUtils::readUint8AndAdvancePosition(buffer, &pos));
+    } else if (recordType == RECORD_TYPE_REMOVE_BIGRAM) {
+        if (pos != payloadEndPos) {
+            return false;
+        }
+        return policy->removeBigramWords(word0, length0, word1, length1);
+    }
+    return false;
+}
+
+/* static */ bool DictUpdateJournal::readWord(const uint8_t *const buffer,
+        const int payloadEndPos, int *const pos, int *const outWord, int *const outLength) {
+    if (*pos >= payloadEndPos) {
+        return false;
+    }
+    const int length = ByteArrayUtils::readUint8AndAdvancePosition(buffer, pos);
+    if (length <= 0 || length > MAX_WORD_LENGTH || *pos + length * 3 > payloadEndPos) {
+        return false;
+    }
+    for (int i = 0; i < length; ++i) {
+        outWord[i] = ByteArrayUtils::readUint24AndAdvancePosition(buffer, pos);
+    }
+    *outLength = length;
+    return true;
+}
+
+// Fletcher-16 checksum.
+/* static */ uint16_t DictUpdateJournal::calculateChecksum(const uint8_t *const buffer,
+        const int size) {
+    uint16_t sum0 = 0;
+    uint16_t sum1 = 0;
+    for (int i = 0; i < size; ++i) {
+        sum0 = (sum0 + buffer[i]) % 255;
+        sum1 = (sum1 + sum0) % 255;
+    }
+    return (sum1 << 8) | sum0;
+}
+
+// FNV-1a hash.
+/* static */ uint32_t DictUpdateJournal::calculateHeaderHash(const uint8_t *const dictHeader,
+        const int size) {
+    uint32_t hash = 2166136261u;
+    for (int i = 0; i < size; ++i) {
+        hash = (hash ^ dictHeader[i]) * 16777619u;
+    }
+    return hash;
+}
+
+// Reads the size of the dictionary file, the hash of its header and its flush generation, which
+// are recorded in the journal header.
+/* static */ bool DictUpdateJournal::readDictFileFingerprint(const char *const dictFilePath,
+        uint32_t *const outDictFileSize, uint32_t *const outHeaderHash,
+        uint32_t *const outFlushGeneration) {
+    FILE *const file = fopen(dictFilePath, "rb");
+    if (!file) {
+        return false;
+    }
+    fseek(file, 0, SEEK_END);
+    const long dictFileSize = ftell(file);
+    fseek(file, 0, SEEK_SET);
+    // The header size is stored before the header attributes.
+    const int headerSizeFieldEndPos = HeaderReadWriteUtils::getHeaderOptionsPosition();
+    std::vector<uint8_t> header(headerSizeFieldEndPos);
+    bool isRead = dictFileSize >= headerSizeFieldEndPos
+            && fread(&header[0], headerSizeFieldEndPos, 1, file) == 1;
+    if (isRead) {
+        const int headerSize = HeaderReadWriteUtils::getHeaderSize(&header[0]);
+        if (headerSize < headerSizeFieldEndPos || headerSize > dictFileSize) {
+            isRead = false;
+        } else if (headerSize > headerSizeFieldEndPos) {
+            header.resize(headerSize);
+            isRead = fread(&header[headerSizeFieldEndPos], headerSize - headerSizeFieldEndPos, 1,
+                    file) == 1;
+        }
+    }
+    fclose(file);
+    if (!isRead) {
+        return false;
+    }
+    *outDictFileSize = static_cast<uint32_t>(dictFileSize);
+    *outHeaderHash = calculateHeaderHash(&header[0], header.size());
+    *outFlushGeneration = static_cast<uint32_t>(HeaderPolicy::readFlushGeneration(&header[0]));
+    return true;
+}
+
+/* static */ bool DictUpdateJournal::getJournalFilePath(const char *const dictFilePath,
+        char *const outPath) {
+    const int length = snprintf(outPath, PATH_MAX, "%s%s", dictFilePath, JOURNAL_FILE_SUFFIX);
+    if (length < 0 || length >= PATH_MAX) {
+        AKLOGE("Journal file path is too long. dictionary file: %s", dictFilePath);
+        return false;
+    }
+    return true;
+}
+
+} // namespace latinime
@@ -0,0 +1,124 @@
+/*
+ * Copyright (C) 2013, The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+#ifndef LATINIME_DICT_UPDATE_JOURNAL_H
+#define LATINIME_DICT_UPDATE_JOURNAL_H
+
+#include <stdint.h>
+#include <vector>
+
+#include "defines.h"
+
+namespace latinime {
+
+class DictionaryStructureWithBufferPolicy;
+
+/*
+ * Append-only journal of dynamic updates of a dictionary.
+ *
+ * Updates are recorded in memory and appended to "<dictionary file>.journal" in a batch by
+ * flush(), so persisting learned words doesn't require writing the whole dictionary. The journal
+ * is replayed when the dictionary is opened and removed when the dictionary file is rewritten.
+ * The journal header identifies the dictionary file by its flush generation, which is advanced
+ * each time the file is written, as well as its size and a hash of its header, so that a journal
+ * left for another version of the file is never applied. The records are not idempotent, so
+ * applying them to another version would corrupt the probabilities.
+ *
+ * Journal file format:
+ * header: magic number (4 bytes) | size of the dictionary file (4 bytes)
+ *         | hash of the dictionary header (4 bytes) | flush generation of the dictionary (4 bytes)
+ * record: type (1 byte) | payload size (2 bytes) | payload | checksum (2 bytes)
+ * A word in a payload is stored as code point count (1 byte) | code points (3 bytes each).
+ */
+class DictUpdateJournal {
+ public:
+    DictUpdateJournal() : mPendingRecords(), mJournalFileSize(0) {}
+
+    ~DictUpdateJournal() {}
+
+    void addUnigramWord(const int *const word, const int length, const int probability);
+
+    void addBigramWords(const int *const word0, const int length0, const int *const word1,
+            const int length1, const int probability);
+
+    void removeBigramWords(const int *const word0, const int length0, const int *const word1,
+            const int length1);
+
+    // Appends the pending records to the journal file of the dictionary and syncs the file.
+    // Returns whether the records have been successfully written.
+    bool flush(const char *const dictFilePath);
+
+    // Applies the records in the journal file to the policy. The journal is discarded when it was
+    // written for another version of the dictionary file, and a broken record left by a crash
+    // while flushing is truncated with the records following it.
+    void replay(const char *const dictFilePath, const uint8_t *const dictBuf,
+            const int dictHeaderSize, const int dictFileSize, const int dictFlushGeneration,
+            DictionaryStructureWithBufferPolicy *const policy);
+
+    // Drops the journal state after the dictionary file has been rewritten.
+    void clear() {
+        mPendingRecords.clear();
+        mJournalFileSize = 0;
+    }
+
+    int getJournalFileSize() const {
+        return mJournalFileSize;
+    }
+
+    static void removeJournalFile(const char *const dictFilePath);
+
+ private:
+    DISALLOW_COPY_AND_ASSIGN(DictUpdateJournal);
+
+    enum RecordType {
+        RECORD_TYPE_ADD_UNIGRAM = 1,
+        RECORD_TYPE_ADD_BIGRAM = 2,
+        RECORD_TYPE_REMOVE_BIGRAM = 3
+    };
+
+    static const char *const JOURNAL_FILE_SUFFIX;
+    static const uint32_t JOURNAL_MAGIC_NUMBER;
+    static const int JOURNAL_HEADER_SIZE;
+    static const int RECORD_HEADER_SIZE;
+    static const int RECORD_CHECKSUM_SIZE;
+    static const int MAX_RECORD_SIZE;
+
+    std::vector<uint8_t> mPendingRecords;
+    int mJournalFileSize;
+
+    void appendRecord(const RecordType type, const int *const word0, const int length0,
+            const int *const word1, const int length1, const int probability);
+
+    static bool applyRecord(const uint8_t *const buffer, const int recordType,
+            const int payloadPos, const int payloadSize,
+            DictionaryStructureWithBufferPolicy *const policy);
+
+    static bool readWord(const uint8_t *const buffer, const int payloadEndPos, int *const pos,
+            int *const outWord, int *const outLength);
+
+    static uint16_t calculateChecksum(const uint8_t *const buffer, const int size);
+
+    static uint32_t calculateHeaderHash(const uint8_t *const dictHeader, const int size);
+
+    static bool readDictFileFingerprint(const char *const dictFilePath,
+            uint32_t *const outDictFileSize, uint32_t *const outHeaderHash,
+            uint32_t *const outFlushGeneration);
+
+    // outPath has to be PATH_MAX long. Returns false if the path is too long.
+    static bool getJournalFilePath(const char *const dictFilePath, char *const outPath);
+};
+} // namespace latinime
+#endif /* LATINIME_DICT_UPDATE_JOURNAL_H */
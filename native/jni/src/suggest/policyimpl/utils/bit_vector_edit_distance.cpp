@@ -0,0 +1,101 @@
+/*
+ * Copyright (C) 2013 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+#include "suggest/policyimpl/utils/bit_vector_edit_distance.h"
+
+#include "defines.h"
+#include "utils/char_utils.h"
+
+namespace latinime {
+
+const int BitVectorEditDistance::MAX_PATTERN_LENGTH;
+
+/* static */ int BitVectorEditDistance::getEditDistance(const int *const before,
+        const int beforeLength, const int *const after, const int afterLength) {
+    // The distance is symmetric, so the shorter string is used as the pattern.
+    if (beforeLength <= afterLength) {
+        if (beforeLength > MAX_PATTERN_LENGTH) {
+            return NOT_A_DISTANCE;
+        }
+        const BitVectorEditDistance editDistance(before, beforeLength);
+        return editDistance.getEditDistance(after, afterLength);
+    }
+    if (afterLength > MAX_PATTERN_LENGTH) {
+        return NOT_A_DISTANCE;
+    }
+    const BitVectorEditDistance editDistance(after, afterLength);
+    return editDistance.getEditDistance(before, beforeLength);
+}
+
+BitVectorEditDistance::BitVectorEditDistance(const int *const pattern, const int patternLength)
+        : mPatternLength(patternLength), mDistinctCodePointCount(0) {
+    if (!isAvailable()) {
+        return;
+    }
+    for (int i = 0; i < patternLength; ++i) {
+        const int codePoint = CharUtils::toBaseLowerCase(pattern[i]);
+        const uint64_t bit = static_cast<uint64_t>(1) << i;
+        int j = 0;
+        while (j < mDistinctCodePointCount && mDistinctCodePoints[j] != codePoint) {
+            ++j;
+        }
+        if (j == mDistinctCodePointCount) {
+            mDistinctCodePoints[j] = codePoint;
+            mMatchVectors[j] = 0;
+            ++mDistinctCodePointCount;
+        }
+        mMatchVectors[j] |= bit;
+    }
+}
+
+// Hyyro, "A Bit-Vector Algorithm for Computing Levenshtein and Damerau Edit Distances", 2003.
+// Each iteration computes the next column of the DP matrix from the vertical deltas of the
+// current column. The bits above the pattern length only carry upward, so they never affect
+// the bits of the pattern.
+int BitVectorEditDistance::getEditDistance(const int *const text, const int textLength) const {
+    if (mPatternLength == 0) {
+        return textLength;
+    }
+    const uint64_t lastBit = static_cast<uint64_t>(1) << (mPatternLength - 1);
+    // Bit i of verticalPositive (resp. verticalNegative) is set if the cell i + 1 of the column
+    // is one more (resp. one less) than the cell i.
+    uint64_t verticalPositive = ~static_cast<uint64_t>(0);
+    uint64_t verticalNegative = 0;
+    // Bit i of diagonalZero is set if the cell (i + 1, j + 1) is equal to the cell (i, j).
+    uint64_t diagonalZero = 0;
+    uint64_t prevMatchVector = 0;
+    int distance = mPatternLength;
+    for (int j = 0; j < textLength; ++j) {
+        const uint64_t matchVector = getMatchVector(CharUtils::toBaseLowerCase(text[j]));
+        const uint64_t transposition = (((~diagonalZero) & matchVector) << 1) & prevMatchVector;
+        diagonalZero = ((((matchVector & verticalPositive) + verticalPositive) ^ verticalPositive)
+                | matchVector | verticalNegative | transposition);
+        uint64_t horizontalPositive = verticalNegative | ~(diagonalZero | verticalPositive);
+        uint64_t horizontalNegative = verticalPositive & diagonalZero;
+        if (horizontalPositive & lastBit) {
+            ++distance;
+        } else if (horizontalNegative & lastBit) {
+            --distance;
+        }
+        horizontalPositive = (horizontalPositive << 1) | 1;
+        horizontalNegative <<= 1;
+        verticalPositive = horizontalNegative | ~(diagonalZero | horizontalPositive);
+        verticalNegative = horizontalPositive & diagonalZero;
+        prevMatchVector = matchVector;
+    }
+    return distance;
+}
+} // namespace latinime
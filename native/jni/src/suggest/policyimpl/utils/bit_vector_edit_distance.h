@@ -0,0 +1,76 @@
+/*
+ * Copyright (C) 2013 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+#ifndef LATINIME_BIT_VECTOR_EDIT_DISTANCE_H
+#define LATINIME_BIT_VECTOR_EDIT_DISTANCE_H
+
+#include <stdint.h>
+
+#include "defines.h"
+
+namespace latinime {
+
+/**
+ * Computes the same edit distance as EditDistance::getEditDistance() with
+ * DamerauLevenshteinEditDistancePolicy, that is, the restricted Damerau-Levenshtein distance
+ * (optimal string alignment) between the base lower case code points with unit costs, by using
+ * Hyyro's bit-parallel algorithm. The columns of the DP matrix for the pattern are encoded as
+ * 64-bit vectors, so that the distance is computed in O(text length) operations without
+ * allocating the matrix. The pattern is limited to MAX_PATTERN_LENGTH code points.
+ *
+ * The pattern is compiled once by the constructor, so that an instance can compute the distances
+ * between one typed word and many candidates.
+ */
+class BitVectorEditDistance {
+ public:
+    static const int MAX_PATTERN_LENGTH = 64;
+
+    // Returns NOT_A_DISTANCE if both strings are longer than MAX_PATTERN_LENGTH.
+    static int getEditDistance(const int *const before, const int beforeLength,
+            const int *const after, const int afterLength);
+
+    BitVectorEditDistance(const int *const pattern, const int patternLength);
+    ~BitVectorEditDistance() {}
+
+    bool isAvailable() const {
+        return mPatternLength <= MAX_PATTERN_LENGTH;
+    }
+
+    // Returns the edit distance between the pattern and the text. Must not be called if
+    // isAvailable() is false.
+    int getEditDistance(const int *const text, const int textLength) const;
+
+ private:
+    DISALLOW_IMPLICIT_CONSTRUCTORS(BitVectorEditDistance);
+
+    AK_FORCE_INLINE uint64_t getMatchVector(const int baseLowerCodePoint) const {
+        for (int i = 0; i < mDistinctCodePointCount; ++i) {
+            if (mDistinctCodePoints[i] == baseLowerCodePoint) {
+                return mMatchVectors[i];
+            }
+        }
+        return 0;
+    }
+
+    const int mPatternLength;
+    int mDistinctCodePointCount;
+    // The distinct base lower case code points of the pattern, and for each of them the vector
+    // whose bit i is set if the code point i of the pattern is the code point.
+    int mDistinctCodePoints[MAX_PATTERN_LENGTH];
+    uint64_t mMatchVectors[MAX_PATTERN_LENGTH];
+};
+} // namespace latinime
+#endif // LATINIME_BIT_VECTOR_EDIT_DISTANCE_H
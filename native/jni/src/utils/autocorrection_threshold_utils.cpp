@@ -19,6 +19,7 @@
 #include <cmath>
 
 #include "defines.h"
+#include "suggest/policyimpl/utils/bit_vector_edit_distance.h"
 #include "suggest/policyimpl/utils/edit_distance.h"
 #include "suggest/policyimpl/utils/damerau_levenshtein_edit_distance_policy.h"
 
@@ -30,6 +31,12 @@ const int AutocorrectionThresholdUtils::FULL_WORD_MULTIPLIER = 2;
 
 /* static */ int AutocorrectionThresholdUtils::editDistance(const int *before,
         const int beforeLength, const int *after, const int afterLength) {
+    const int distance = BitVectorEditDistance::getEditDistance(
+            before, beforeLength, after, afterLength);
+    if (distance != NOT_A_DISTANCE) {
+        return distance;
+    }
+    // Both words are too long for the bit-parallel algorithm.
     const DamerauLevenshteinEditDistancePolicy daemaruLevenshtein(
             before, beforeLength, after, afterLength);
     return static_cast<int>(EditDistance::getEditDistance(&daemaruLevenshtein));
@@ -71,7 +78,34 @@ const int AutocorrectionThresholdUtils::FULL_WORD_MULTIPLIER = 2;
     if (0 == beforeLength || 0 == afterLength) {
         return 0.0f;
     }
-    const int distance = editDistance(before, beforeLength, after, afterLength);
+    return calcNormalizedScoreWithEditDistance(beforeLength, after, afterLength, score,
+            editDistance(before, beforeLength, after, afterLength));
+}
+
+/* static */ void AutocorrectionThresholdUtils::calcNormalizedScores(const int *before,
+        const int beforeLength, const int *afterCodePoints, const int *afterLengths,
+        const int *scores, const int count, float *outNormalizedScores) {
+    // The typed word is compiled only once for all the candidates.
+    const BitVectorEditDistance editDistanceToBefore(before, beforeLength);
+    const int *after = afterCodePoints;
+    for (int i = 0; i < count; ++i) {
+        const int afterLength = afterLengths[i];
+        if (0 == beforeLength || 0 == afterLength) {
+            outNormalizedScores[i] = 0.0f;
+        } else {
+            const int distance = editDistanceToBefore.isAvailable()
+                    ? editDistanceToBefore.getEditDistance(after, afterLength)
+                    : editDistance(before, beforeLength, after, afterLength);
+            outNormalizedScores[i] = calcNormalizedScoreWithEditDistance(beforeLength, after,
+                    afterLength, scores[i], distance);
+        }
+        after += afterLength;
+    }
+}
+
+/* static */ float AutocorrectionThresholdUtils::calcNormalizedScoreWithEditDistance(
+        const int beforeLength, const int *after, const int afterLength, const int score,
+        const int distance) {
     int spaceCount = 0;
     for (int i = 0; i < afterLength; ++i) {
         if (after[i] == KEYCODE_SPACE) {
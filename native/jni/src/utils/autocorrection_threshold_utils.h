@@ -25,6 +25,11 @@ class AutocorrectionThresholdUtils {
  public:
     static float calcNormalizedScore(const int *before, const int beforeLength,
             const int *after, const int afterLength, const int score);
+    // Computes the normalized scores of count words against the same typed word. The code points
+    // of the words are packed one after another in afterCodePoints.
+    static void calcNormalizedScores(const int *before, const int beforeLength,
+            const int *afterCodePoints, const int *afterLengths, const int *scores,
+            const int count, float *outNormalizedScores);
     static int editDistance(const int *before, const int beforeLength, const int *after,
             const int afterLength);
 
@@ -34,6 +39,9 @@ class AutocorrectionThresholdUtils {
     static const int MAX_INITIAL_SCORE;
     static const int TYPED_LETTER_MULTIPLIER;
     static const int FULL_WORD_MULTIPLIER;
+
+    static float calcNormalizedScoreWithEditDistance(const int beforeLength, const int *after,
+            const int afterLength, const int score, const int distance);
 };
 } // namespace latinime
 #endif // LATINIME_AUTOCORRECTION_THRESHOLD_UTILS_H
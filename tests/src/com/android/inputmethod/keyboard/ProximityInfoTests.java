@@ -0,0 +1,84 @@
+/*
+ * Copyright (C) 2013 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.inputmethod.keyboard;
+
+import android.test.AndroidTestCase;
+import android.test.suitebuilder.annotation.SmallTest;
+
+import com.android.inputmethod.keyboard.internal.KeyboardIconsSet;
+import com.android.inputmethod.keyboard.internal.KeyboardParams;
+
+@SmallTest
+public class ProximityInfoTests extends AndroidTestCase {
+    private static final int GRID_WIDTH = 8;
+    private static final int GRID_HEIGHT = 4;
+    private static final int KEY_HEIGHT = 60;
+    // Must be equal to MAX_UNUSED_TABLE_COUNT in native/jni/src/suggest/core/layout/
+    // key_distance_table.cpp
+    private static final int MAX_UNUSED_TABLE_COUNT = 2;
+
+    // Creates a one-row keyboard. The shifted and the unshifted keyboards have the same geometry.
+    private static ProximityInfo createProximityInfo(final int keyWidth,
+            final boolean isShifted) {
+        final KeyboardParams params = new KeyboardParams();
+        final String letters = isShifted ? "QWERTY" : "qwerty";
+        final Key[] keys = new Key[letters.length()];
+        for (int i = 0; i < keys.length; ++i) {
+            final char letter = letters.charAt(i);
+            keys[i] = new Key(params, String.valueOf(letter), null /* hintLabel */,
+                    KeyboardIconsSet.ICON_UNDEFINED, letter, null /* outputText */,
+                    i * keyWidth, 0 /* y */, keyWidth, KEY_HEIGHT, 0 /* labelFlags */,
+                    Key.BACKGROUND_TYPE_NORMAL);
+        }
+        return new ProximityInfo("en_US", GRID_WIDTH, GRID_HEIGHT, keys.length * keyWidth,
+                KEY_HEIGHT, keyWidth, KEY_HEIGHT, keys, params.mTouchPositionCorrection);
+    }
+
+    public void testKeyDistanceTableIsSharedBySameGeometry() {
+        final ProximityInfo unshifted = createProximityInfo(40, false /* isShifted */);
+        final ProximityInfo shifted = createProximityInfo(40, true /* isShifted */);
+        final ProximityInfo wider = createProximityInfo(41, false /* isShifted */);
+        final int tableId = unshifted.getKeyDistanceTableIdForTests();
+        assertTrue("table is created", tableId != 0);
+        assertEquals("same geometry shares the table", tableId,
+                shifted.getKeyDistanceTableIdForTests());
+        assertTrue("other geometry has another table",
+                tableId != wider.getKeyDistanceTableIdForTests());
+        unshifted.releaseForTests();
+        shifted.releaseForTests();
+        wider.releaseForTests();
+    }
+
+    public void testUnusedKeyDistanceTablesAreEvicted() {
+        ProximityInfo proximityInfo = createProximityInfo(50, false /* isShifted */);
+        final int tableId = proximityInfo.getKeyDistanceTableIdForTests();
+        proximityInfo.releaseForTests();
+        // A keyboard re-created after the previous one has been released reuses its table.
+        proximityInfo = createProximityInfo(50, false /* isShifted */);
+        assertEquals("released table is kept", tableId,
+                proximityInfo.getKeyDistanceTableIdForTests());
+        proximityInfo.releaseForTests();
+        // Releasing more tables evicts the least recently used one.
+        for (int i = 1; i <= MAX_UNUSED_TABLE_COUNT; ++i) {
+            createProximityInfo(50 + i, false /* isShifted */).releaseForTests();
+        }
+        proximityInfo = createProximityInfo(50, false /* isShifted */);
+        assertTrue("least recently used table is evicted",
+                tableId != proximityInfo.getKeyDistanceTableIdForTests());
+        proximityInfo.releaseForTests();
+    }
+}
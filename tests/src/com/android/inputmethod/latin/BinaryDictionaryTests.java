@@ -21,11 +21,14 @@ import android.test.suitebuilder.annotation.LargeTest;
 import android.text.TextUtils;
 import android.util.Pair;
 
+import com.android.inputmethod.latin.SuggestedWords.SuggestedWordInfo;
 import com.android.inputmethod.latin.makedict.CodePointUtils;
 import com.android.inputmethod.latin.makedict.FormatSpec;
+import com.android.inputmethod.latin.utils.StringUtils;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.RandomAccessFile;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -86,6 +89,148 @@ public class BinaryDictionaryTests extends AndroidTestCase {
         binaryDictionary.close();
     }
 
+    public void testIsValidDictionaryForBrokenFile() {
+        File dictFile = null;
+        try {
+            dictFile = createEmptyDictionaryAndGetFile("TestBinaryDictionary");
+        } catch (IOException e) {
+            fail("IOException while writing an initial dictionary : " + e);
+        }
+        BinaryDictionary binaryDictionary = new BinaryDictionary(dictFile.getAbsolutePath(),
+                0 /* offset */, dictFile.length(), true /* useFullEditDistance */,
+                Locale.getDefault(), TEST_LOCALE, true /* isUpdatable */);
+        binaryDictionary.addUnigramWord("aaa", 100);
+        binaryDictionary.flushWithGC();
+        binaryDictionary.close();
+
+        try {
+            final RandomAccessFile file = new RandomAccessFile(dictFile, "rw");
+            file.setLength(file.length() - 1);
+            file.close();
+        } catch (IOException e) {
+            fail("IOException while truncating the dictionary : " + e);
+        }
+        binaryDictionary = new BinaryDictionary(dictFile.getAbsolutePath(), 0 /* offset */,
+                dictFile.length(), true /* useFullEditDistance */, Locale.getDefault(),
+                TEST_LOCALE, true /* isUpdatable */);
+        assertFalse("binaryDictionary must be invalid for truncated dictionary file.",
+                binaryDictionary.isValidDictionary());
+        binaryDictionary.close();
+        dictFile.delete();
+    }
+
+    public void testGetLastSuggestStats() {
+        File dictFile = null;
+        try {
+            dictFile = createEmptyDictionaryAndGetFile("TestBinaryDictionary");
+        } catch (IOException e) {
+            fail("IOException while writing an initial dictionary : " + e);
+        }
+        BinaryDictionary binaryDictionary = new BinaryDictionary(dictFile.getAbsolutePath(),
+                0 /* offset */, dictFile.length(), true /* useFullEditDistance */,
+                Locale.getDefault(), TEST_LOCALE, true /* isUpdatable */);
+        final SuggestStats stats = binaryDictionary.getLastSuggestStats();
+        assertNotNull(stats);
+        assertEquals(0, stats.mExpandedDicNodeCount);
+        assertEquals(0, stats.mFrontierSnapshotHitCount);
+        assertFalse(stats.mIsPartial);
+        assertFalse(stats.mIsCancelled);
+        assertEquals(0, stats.getTotalTimeNs());
+        final SuggestStats parsedStats = SuggestStats.parse(stats.toString());
+        assertEquals(stats.toString(), parsedStats.toString());
+        binaryDictionary.close();
+        assertNull(binaryDictionary.getLastSuggestStats());
+        dictFile.delete();
+    }
+
+    public void testSuggestionResultsCacheStats() {
+        File dictFile = null;
+        try {
+            dictFile = createEmptyDictionaryAndGetFile("TestBinaryDictionary");
+        } catch (IOException e) {
+            fail("IOException while writing an initial dictionary : " + e);
+        }
+        final BinaryDictionary binaryDictionary = new BinaryDictionary(
+                dictFile.getAbsolutePath(), 0 /* offset */, dictFile.length(),
+                true /* useFullEditDistance */, Locale.getDefault(), TEST_LOCALE,
+                true /* isUpdatable */);
+        assertEquals("HITS=0 MISSES=0 HIT_RATE_PERCENT=0", binaryDictionary.getPropertyForTests(
+                BinaryDictionary.SUGGESTION_RESULTS_CACHE_STATS_QUERY));
+        binaryDictionary.close();
+        dictFile.delete();
+    }
+
+    public void testCancelSuggestions() {
+        File dictFile = null;
+        try {
+            dictFile = createEmptyDictionaryAndGetFile("TestBinaryDictionary");
+        } catch (IOException e) {
+            fail("IOException while writing an initial dictionary : " + e);
+        }
+        final BinaryDictionary binaryDictionary = new BinaryDictionary(
+                dictFile.getAbsolutePath(), 0 /* offset */, dictFile.length(),
+                true /* useFullEditDistance */, Locale.getDefault(), TEST_LOCALE,
+                true /* isUpdatable */);
+        // Cancelling when no lookup is running does nothing.
+        binaryDictionary.cancelSuggestions(0 /* sessionId */);
+        assertEquals("0", binaryDictionary.getPropertyForTests(
+                BinaryDictionary.CANCELLED_SUGGESTION_COUNT_QUERY));
+        assertFalse(binaryDictionary.getLastSuggestStats().mIsCancelled);
+        binaryDictionary.close();
+        // Cancelling a closed dictionary does nothing either.
+        binaryDictionary.cancelSuggestions(0 /* sessionId */);
+        dictFile.delete();
+    }
+
+    public void testGetWordsWithinEditDistance() {
+        File dictFile = null;
+        try {
+            dictFile = createEmptyDictionaryAndGetFile("TestBinaryDictionary");
+        } catch (IOException e) {
+            fail("IOException while writing an initial dictionary : " + e);
+        }
+        final BinaryDictionary binaryDictionary = new BinaryDictionary(
+                dictFile.getAbsolutePath(), 0 /* offset */, dictFile.length(),
+                true /* useFullEditDistance */, Locale.getDefault(), TEST_LOCALE,
+                true /* isUpdatable */);
+        binaryDictionary.addUnigramWord("the", 200);
+        binaryDictionary.addUnigramWord("then", 150);
+        binaryDictionary.addUnigramWord("ten", 100);
+        binaryDictionary.addUnigramWord("hello", 100);
+
+        final ArrayList<String> words = new ArrayList<String>();
+        for (final SuggestedWordInfo info : binaryDictionary.getWordsWithinEditDistance(
+                "teh", 1 /* maxEditDistance */, false /* blockOffensiveWords */)) {
+            words.add(info.mWord);
+        }
+        // A transposition is one edit. "then" is two edits away.
+        assertTrue(words.contains("the"));
+        assertTrue(words.contains("ten"));
+        assertFalse(words.contains("then"));
+        assertFalse(words.contains("hello"));
+
+        words.clear();
+        for (final SuggestedWordInfo info : binaryDictionary.getWordsWithinEditDistance(
+                "teh", 2 /* maxEditDistance */, false /* blockOffensiveWords */)) {
+            words.add(info.mWord);
+        }
+        assertTrue(words.contains("then"));
+        // The results are in descending order of the scores, and "the" is the most probable.
+        assertEquals("the", words.get(0));
+
+        // The case and the accents are ignored.
+        final ArrayList<SuggestedWordInfo> exactMatches = binaryDictionary
+                .getWordsWithinEditDistance("H\u00E9llo", 0 /* maxEditDistance */,
+                        false /* blockOffensiveWords */);
+        assertEquals(1, exactMatches.size());
+        assertEquals("hello", exactMatches.get(0).mWord);
+
+        binaryDictionary.close();
+        assertNull(binaryDictionary.getWordsWithinEditDistance("teh", 1 /* maxEditDistance */,
+                false /* blockOffensiveWords */));
+        dictFile.delete();
+    }
+
     public void testAddUnigramWord() {
         File dictFile = null;
         try {
@@ -124,6 +269,101 @@ public class BinaryDictionaryTests extends AndroidTestCase {
         dictFile.delete();
     }
 
+    public void testAddUnigramWordsInBatch() {
+        File dictFile = null;
+        try {
+            dictFile = createEmptyDictionaryAndGetFile("TestBinaryDictionary");
+        } catch (IOException e) {
+            fail("IOException while writing an initial dictionary : " + e);
+        }
+        BinaryDictionary binaryDictionary = new BinaryDictionary(dictFile.getAbsolutePath(),
+                0 /* offset */, dictFile.length(), true /* useFullEditDistance */,
+                Locale.getDefault(), TEST_LOCALE, true /* isUpdatable */);
+
+        final String[] words = { "aaa", "aab", "aa", "b" };
+        final int[] probabilities = { 100, 110, 120, 130 };
+        final int[] codePoints = StringUtils.toCodePointArray(TextUtils.join("", words));
+        final int[] wordLengths = new int[words.length];
+        for (int i = 0; i < words.length; ++i) {
+            wordLengths[i] = words[i].length();
+        }
+        assertEquals(words.length, binaryDictionary.addUnigramWords(codePoints, wordLengths,
+                probabilities, 0 /* startIndex */, words.length));
+        for (int i = 0; i < words.length; ++i) {
+            assertEquals(probabilities[i], binaryDictionary.getFrequency(words[i]));
+        }
+
+        final int[] word0CodePoints = StringUtils.toCodePointArray("aaaaab");
+        final int[] word0Lengths = { 3, 3 };
+        final int[] word1CodePoints = StringUtils.toCodePointArray("aabaa");
+        final int[] word1Lengths = { 3, 2 };
+        final int[] bigramProbabilities = { 150, 160 };
+        assertEquals(2, binaryDictionary.addBigramWords(word0CodePoints, word0Lengths,
+                word1CodePoints, word1Lengths, bigramProbabilities, 0 /* startIndex */,
+                2 /* count */));
+        assertTrue(binaryDictionary.isValidBigram("aaa", "aab"));
+        assertTrue(binaryDictionary.isValidBigram("aab", "aa"));
+        assertFalse(binaryDictionary.isValidBigram("aaa", "aa"));
+
+        dictFile.delete();
+    }
+
+    public void testAddWordsInBatchWithInvalidArguments() {
+        File dictFile = null;
+        try {
+            dictFile = createEmptyDictionaryAndGetFile("TestBinaryDictionary");
+        } catch (IOException e) {
+            fail("IOException while writing an initial dictionary : " + e);
+        }
+        BinaryDictionary binaryDictionary = new BinaryDictionary(dictFile.getAbsolutePath(),
+                0 /* offset */, dictFile.length(), true /* useFullEditDistance */,
+                Locale.getDefault(), TEST_LOCALE, true /* isUpdatable */);
+
+        final int[] codePoints = StringUtils.toCodePointArray("aaab");
+        final int[] probabilities = { 100, 110 };
+        // The lengths exceed the code points.
+        try {
+            binaryDictionary.addUnigramWords(codePoints, new int[] { 3, 2 }, probabilities,
+                    0 /* startIndex */, 2 /* count */);
+            fail("addUnigramWords must reject lengths that exceed the code points.");
+        } catch (IllegalArgumentException e) {
+            // Expected.
+        }
+        // The count exceeds the lengths.
+        try {
+            binaryDictionary.addUnigramWords(codePoints, new int[] { 3 }, probabilities,
+                    0 /* startIndex */, 2 /* count */);
+            fail("addUnigramWords must reject a count that exceeds the arrays.");
+        } catch (IllegalArgumentException e) {
+            // Expected.
+        }
+        // The start index is negative.
+        try {
+            binaryDictionary.addUnigramWords(codePoints, new int[] { 3, 1 }, probabilities,
+                    -1 /* startIndex */, 2 /* count */);
+            fail("addUnigramWords must reject a negative start index.");
+        } catch (IllegalArgumentException e) {
+            // Expected.
+        }
+        // The word is too long.
+        final int longWordLength = BinaryDictionary.MAX_WORD_LENGTH + 1;
+        final int[] longWordCodePoints = new int[longWordLength];
+        for (int i = 0; i < longWordLength; ++i) {
+            longWordCodePoints[i] = 'a';
+        }
+        try {
+            binaryDictionary.addBigramWords(codePoints, new int[] { 3 }, longWordCodePoints,
+                    new int[] { longWordLength }, probabilities, 0 /* startIndex */,
+                    1 /* count */);
+            fail("addBigramWords must reject a word longer than MAX_WORD_LENGTH.");
+        } catch (IllegalArgumentException e) {
+            // Expected.
+        }
+        assertFalse(binaryDictionary.isValidWord("aaa"));
+
+        dictFile.delete();
+    }
+
     public void testRandomlyAddUnigramWord() {
         final int wordCount = 1000;
         final int codePointSetSize = 50;
@@ -371,6 +611,144 @@ public class BinaryDictionaryTests extends AndroidTestCase {
         dictFile.delete();
     }
 
+    public void testFlushToJournal() {
+        File dictFile = null;
+        try {
+            dictFile = createEmptyDictionaryAndGetFile("TestBinaryDictionary");
+        } catch (IOException e) {
+            fail("IOException while writing an initial dictionary : " + e);
+        }
+        final File journalFile = new File(dictFile.getAbsolutePath() + ".journal");
+        final long dictFileLength = dictFile.length();
+        BinaryDictionary binaryDictionary = new BinaryDictionary(dictFile.getAbsolutePath(),
+                0 /* offset */, dictFile.length(), true /* useFullEditDistance */,
+                Locale.getDefault(), TEST_LOCALE, true /* isUpdatable */);
+
+        final int unigramProbability = 100;
+        final int bigramProbability = 10;
+        binaryDictionary.addUnigramWord("aaa", unigramProbability);
+        binaryDictionary.addUnigramWord("abb", unigramProbability);
+        binaryDictionary.addBigramWords("aaa", "abb", bigramProbability);
+        binaryDictionary.flush();
+        // Flushing appends the updates to the journal without rewriting the dictionary file.
+        assertEquals(dictFileLength, dictFile.length());
+        assertTrue(journalFile.exists());
+        final long journalFileLength = journalFile.length();
+        binaryDictionary.addUnigramWord("bcc", unigramProbability);
+        binaryDictionary.removeBigramWords("aaa", "abb");
+        binaryDictionary.addBigramWords("abb", "bcc", bigramProbability);
+        binaryDictionary.flush();
+        assertEquals(dictFileLength, dictFile.length());
+        assertTrue(journalFile.length() > journalFileLength);
+        binaryDictionary.close();
+
+        binaryDictionary = new BinaryDictionary(dictFile.getAbsolutePath(),
+                0 /* offset */, dictFile.length(), true /* useFullEditDistance */,
+                Locale.getDefault(), TEST_LOCALE, true /* isUpdatable */);
+        assertEquals(unigramProbability, binaryDictionary.getFrequency("aaa"));
+        assertEquals(unigramProbability, binaryDictionary.getFrequency("abb"));
+        assertEquals(unigramProbability, binaryDictionary.getFrequency("bcc"));
+        assertEquals(false, binaryDictionary.isValidBigram("aaa", "abb"));
+        assertEquals(true, binaryDictionary.isValidBigram("abb", "bcc"));
+
+        // GC compacts the journal into the dictionary file.
+        binaryDictionary.flushWithGC();
+        assertFalse(journalFile.exists());
+        binaryDictionary.close();
+
+        binaryDictionary = new BinaryDictionary(dictFile.getAbsolutePath(),
+                0 /* offset */, dictFile.length(), true /* useFullEditDistance */,
+                Locale.getDefault(), TEST_LOCALE, true /* isUpdatable */);
+        assertEquals(unigramProbability, binaryDictionary.getFrequency("bcc"));
+        assertEquals(true, binaryDictionary.isValidBigram("abb", "bcc"));
+        binaryDictionary.close();
+
+        dictFile.delete();
+    }
+
+    public void testJournalOfAnotherDictionaryFileIsDiscarded() {
+        File dictFile = null;
+        try {
+            dictFile = createEmptyDictionaryAndGetFile("TestBinaryDictionary");
+        } catch (IOException e) {
+            fail("IOException while writing an initial dictionary : " + e);
+        }
+        final File journalFile = new File(dictFile.getAbsolutePath() + ".journal");
+        final File oldJournalFile = new File(dictFile.getAbsolutePath() + ".journal.old");
+        final long dictFileLength = dictFile.length();
+        BinaryDictionary binaryDictionary = new BinaryDictionary(dictFile.getAbsolutePath(),
+                0 /* offset */, dictFile.length(), true /* useFullEditDistance */,
+                Locale.getDefault(), TEST_LOCALE, true /* isUpdatable */);
+        binaryDictionary.addUnigramWord("aaa", 100 /* probability */);
+        binaryDictionary.flush();
+        binaryDictionary.close();
+        assertTrue(journalFile.renameTo(oldJournalFile));
+
+        // The header of the new file has another last updated time, which is in seconds.
+        try {
+            Thread.sleep(1100);
+        } catch (InterruptedException e) {
+        }
+        final Map<String, String> attributeMap = new HashMap<String, String>();
+        attributeMap.put(FormatSpec.FileHeader.SUPPORTS_DYNAMIC_UPDATE_ATTRIBUTE,
+                FormatSpec.FileHeader.ATTRIBUTE_VALUE_TRUE);
+        assertTrue(BinaryDictionary.createEmptyDictFile(dictFile.getAbsolutePath(),
+                3 /* dictVersion */, attributeMap));
+        // The journal would be applied if it were bound to the file only by its size.
+        assertEquals(dictFileLength, dictFile.length());
+        assertTrue(oldJournalFile.renameTo(journalFile));
+
+        binaryDictionary = new BinaryDictionary(dictFile.getAbsolutePath(),
+                0 /* offset */, dictFile.length(), true /* useFullEditDistance */,
+                Locale.getDefault(), TEST_LOCALE, true /* isUpdatable */);
+        assertEquals(Dictionary.NOT_A_PROBABILITY, binaryDictionary.getFrequency("aaa"));
+        assertFalse(journalFile.exists());
+        binaryDictionary.close();
+
+        dictFile.delete();
+    }
+
+    public void testJournalOfPreviousFlushGenerationIsDiscarded() {
+        File dictFile = null;
+        try {
+            dictFile = createEmptyDictionaryAndGetFile("TestBinaryDictionary");
+        } catch (IOException e) {
+            fail("IOException while writing an initial dictionary : " + e);
+        }
+        final File journalFile = new File(dictFile.getAbsolutePath() + ".journal");
+        final File oldJournalFile = new File(dictFile.getAbsolutePath() + ".journal.old");
+        final int probability = 100;
+        BinaryDictionary binaryDictionary = new BinaryDictionary(dictFile.getAbsolutePath(),
+                0 /* offset */, dictFile.length(), true /* useFullEditDistance */,
+                Locale.getDefault(), TEST_LOCALE, true /* isUpdatable */);
+        binaryDictionary.addUnigramWord("aaa", probability);
+        binaryDictionary.flushWithGC();
+        binaryDictionary.addUnigramWord("aaa", probability);
+        binaryDictionary.flush();
+        binaryDictionary.close();
+        assertTrue(journalFile.renameTo(oldJournalFile));
+        final long dictFileLength = dictFile.length();
+
+        // Rewrites the file with the same contents. Only the flush generation in the header is
+        // guaranteed to differ, since the last updated time is in seconds.
+        binaryDictionary = new BinaryDictionary(dictFile.getAbsolutePath(),
+                0 /* offset */, dictFile.length(), true /* useFullEditDistance */,
+                Locale.getDefault(), TEST_LOCALE, true /* isUpdatable */);
+        binaryDictionary.flushWithGC();
+        binaryDictionary.close();
+        assertEquals(dictFileLength, dictFile.length());
+        assertTrue(oldJournalFile.renameTo(journalFile));
+
+        binaryDictionary = new BinaryDictionary(dictFile.getAbsolutePath(),
+                0 /* offset */, dictFile.length(), true /* useFullEditDistance */,
+                Locale.getDefault(), TEST_LOCALE, true /* isUpdatable */);
+        assertFalse(journalFile.exists());
+        assertEquals(probability, binaryDictionary.getFrequency("aaa"));
+        binaryDictionary.close();
+
+        dictFile.delete();
+    }
+
     public void testFlushWithGCDictionary() {
         File dictFile = null;
         try {
@@ -415,6 +793,52 @@ public class BinaryDictionaryTests extends AndroidTestCase {
         dictFile.delete();
     }
 
+    public void testRunGCIncrementally() {
+        File dictFile = null;
+        try {
+            dictFile = createEmptyDictionaryAndGetFile("TestBinaryDictionary");
+        } catch (IOException e) {
+            fail("IOException while writing an initial dictionary : " + e);
+        }
+        final BinaryDictionary binaryDictionary = new BinaryDictionary(
+                dictFile.getAbsolutePath(), 0 /* offset */, dictFile.length(),
+                true /* useFullEditDistance */, Locale.getDefault(), TEST_LOCALE,
+                true /* isUpdatable */);
+
+        final int unigramProbability = 100;
+        final int bigramProbability = 10;
+        binaryDictionary.addUnigramWord("aaa", unigramProbability);
+        binaryDictionary.addUnigramWord("abb", unigramProbability);
+        binaryDictionary.addUnigramWord("bcc", unigramProbability);
+        binaryDictionary.addBigramWords("aaa", "abb", bigramProbability);
+        binaryDictionary.addBigramWords("abb", "bcc", bigramProbability);
+        final int probability = binaryDictionary.calculateProbability(unigramProbability,
+                bigramProbability);
+
+        int sliceCount = 0;
+        boolean isFinished = false;
+        while (!isFinished) {
+            isFinished = binaryDictionary.runGCIncrementally(1 /* maxPtNodeCount */);
+            sliceCount++;
+            assertEquals(!isFinished, binaryDictionary.isRunningGCIncrementally());
+            // The dictionary can be read between slices.
+            assertEquals(unigramProbability, binaryDictionary.getFrequency("aaa"));
+            assertEquals(probability, binaryDictionary.getBigramProbability("abb", "bcc"));
+        }
+        assertTrue(sliceCount > 1);
+        assertEquals(unigramProbability, binaryDictionary.getFrequency("abb"));
+        assertEquals(unigramProbability, binaryDictionary.getFrequency("bcc"));
+        assertEquals(probability, binaryDictionary.getBigramProbability("aaa", "abb"));
+        assertEquals(false, binaryDictionary.isValidBigram("bcc", "aaa"));
+
+        // The dictionary can be updated once the GC is finished.
+        binaryDictionary.addUnigramWord("bbb", unigramProbability);
+        assertEquals(unigramProbability, binaryDictionary.getFrequency("bbb"));
+        binaryDictionary.close();
+
+        dictFile.delete();
+    }
+
     // TODO: Evaluate performance of GC
     public void testAddBigramWordsAndFlashWithGC() {
         final int wordCount = 100;
@@ -631,6 +1055,71 @@ public class BinaryDictionaryTests extends AndroidTestCase {
         dictFile.delete();
     }
 
+    public void testAddUnigramWordsUpToSizeLimit() {
+        // Offsets in the dictionary are 3-byte signed fields.
+        final int maxOffset = 0x7FFFFF;
+        final int maxRoundCount = 64;
+        final int codePointSetSize = 50;
+
+        final long seed = System.currentTimeMillis();
+        final Random random = new Random(seed);
+
+        File dictFile = null;
+        try {
+            dictFile = createEmptyDictionaryAndGetFile("TestBinaryDictionary");
+        } catch (IOException e) {
+            fail("IOException while writing an initial dictionary : " + e);
+        }
+
+        final HashMap<String, Integer> unigramProbabilities = new HashMap<String, Integer>();
+        final int[] codePointSet = CodePointUtils.generateCodePointSet(codePointSetSize, random);
+
+        BinaryDictionary binaryDictionary = new BinaryDictionary(dictFile.getAbsolutePath(),
+                0 /* offset */, dictFile.length(), true /* useFullEditDistance */,
+                Locale.getDefault(), TEST_LOCALE, true /* isUpdatable */);
+        // This is the maximum dictionary size for a dictionary that doesn't decay.
+        final int maxDictSize = Integer.parseInt(
+                binaryDictionary.getPropertyForTests(BinaryDictionary.MAX_UNIGRAM_COUNT_QUERY));
+        assertTrue(maxDictSize <= maxOffset);
+        boolean isRefused = false;
+        for (int i = 0; i < maxRoundCount && !isRefused; i++) {
+            // Words added in this round are in the additional buffer, which grows chunk by chunk
+            // until the dictionary needs GC.
+            final HashMap<String, Integer> addedUnigramProbabilities =
+                    new HashMap<String, Integer>();
+            while (!binaryDictionary.needsToRunGC(true /* mindsBlockByGC */)) {
+                final String word = CodePointUtils.generateWord(random, codePointSet);
+                final int unigramProbability = random.nextInt(0xFF);
+                binaryDictionary.addUnigramWord(word, unigramProbability);
+                if (binaryDictionary.getFrequency(word) != unigramProbability) {
+                    // The dictionary is too large to be updated.
+                    isRefused = true;
+                    break;
+                }
+                addedUnigramProbabilities.put(word, unigramProbability);
+            }
+            for (final Map.Entry<String, Integer> entry : addedUnigramProbabilities.entrySet()) {
+                assertEquals(entry.getKey(), (int)entry.getValue(),
+                        binaryDictionary.getFrequency(entry.getKey()));
+            }
+            unigramProbabilities.putAll(addedUnigramProbabilities);
+            binaryDictionary.flushWithGC();
+            binaryDictionary.close();
+            assertTrue(dictFile.length() <= maxDictSize);
+            binaryDictionary = new BinaryDictionary(dictFile.getAbsolutePath(),
+                    0 /* offset */, dictFile.length(), true /* useFullEditDistance */,
+                    Locale.getDefault(), TEST_LOCALE, true /* isUpdatable */);
+        }
+        assertTrue("seed: " + seed, isRefused);
+        for (final Map.Entry<String, Integer> entry : unigramProbabilities.entrySet()) {
+            assertEquals(entry.getKey(), (int)entry.getValue(),
+                    binaryDictionary.getFrequency(entry.getKey()));
+        }
+        binaryDictionary.close();
+
+        dictFile.delete();
+    }
+
     public void testUnigramAndBigramCount() {
         final int flashWithGCIterationCount = 10;
         final int codePointSetSize = 50;
@@ -92,6 +92,47 @@ public class EditDistanceTests extends AndroidTestCase {
                 0, dist);
     }
 
+    public void testTransposition() {
+        final int dist = BinaryDictionary.editDistance("teh", "the");
+        assertEquals("a transposition of adjacent letters costs 1", 1, dist);
+        // The distance is the optimal string alignment distance, so a transposed pair is not
+        // edited again.
+        assertEquals(3, BinaryDictionary.editDistance("ca", "abc"));
+    }
+
+    public void testCaseAndAccents() {
+        final int dist = BinaryDictionary.editDistance("Cafe", "caf\u00E9");
+        assertEquals("case and accents are ignored", 0, dist);
+    }
+
+    public void testLongStrings() {
+        final StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 100; ++i) {
+            sb.append((char)('a' + i % 26));
+        }
+        final String arg1 = sb.toString();
+        final String arg2 = sb.substring(1) + "z";
+        // Both strings are longer than the words handled by the bit-parallel algorithm.
+        assertEquals(2, BinaryDictionary.editDistance(arg1, arg2));
+        // Only one of them is longer.
+        assertEquals(36, BinaryDictionary.editDistance(arg1, arg1.substring(0, 64)));
+    }
+
+    public void testCalcNormalizedScores() {
+        final String typedWord = "teh";
+        final String[] words = { "the", "ten", "", "tea", "tehran" };
+        final int[] scores = { 1000000, 2000000, 1000000, 0, 1500000 };
+        final float[] normalizedScores =
+                BinaryDictionary.calcNormalizedScores(typedWord, words, scores);
+        assertEquals(words.length, normalizedScores.length);
+        for (int i = 0; i < words.length; ++i) {
+            assertEquals(words[i], BinaryDictionary.calcNormalizedScore(typedWord, words[i],
+                    scores[i]), normalizedScores[i]);
+        }
+        assertEquals(0, BinaryDictionary.calcNormalizedScores(typedWord, new String[0],
+                new int[0]).length);
+    }
+
     public void testNullArg() {
         try {
             BinaryDictionary.editDistance(null, "aaa");
@@ -19,6 +19,17 @@ package com.android.inputmethod.latin;
 import android.test.suitebuilder.annotation.LargeTest;
 import android.view.inputmethod.BaseInputConnection;
 
+import com.android.inputmethod.latin.SuggestedWords.SuggestedWordInfo;
+import com.android.inputmethod.latin.makedict.FormatSpec;
+import com.android.inputmethod.latin.settings.DebugSettings;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
 @LargeTest
 public class InputLogicTests extends InputTestsBase {
 
@@ -141,6 +152,331 @@ public class InputLogicTests extends InputTestsBase {
         assertEquals("auto-correct with quote", EXPECTED_RESULT, mEditText.getText().toString());
     }
 
+    private static boolean containsWord(final ArrayList<SuggestedWordInfo> suggestions,
+            final String word) {
+        for (final SuggestedWordInfo suggestion : suggestions) {
+            if (word.equals(suggestion.mWord)) return true;
+        }
+        return false;
+    }
+
+    public void testSearchBudget() {
+        final String WORD_TO_TYPE = "tgis";
+        final String EXPECTED_SUGGESTION = "this";
+        File dictFile = null;
+        try {
+            dictFile = File.createTempFile("testSearchBudget", ".dict",
+                    getContext().getCacheDir());
+        } catch (IOException e) {
+            fail("IOException while creating a dictionary file : " + e);
+        }
+        final Map<String, String> attributeMap = new HashMap<String, String>();
+        attributeMap.put(FormatSpec.FileHeader.SUPPORTS_DYNAMIC_UPDATE_ATTRIBUTE,
+                FormatSpec.FileHeader.ATTRIBUTE_VALUE_TRUE);
+        assertTrue(BinaryDictionary.createEmptyDictFile(dictFile.getAbsolutePath(),
+                3 /* dictVersion */, attributeMap));
+        final BinaryDictionary binaryDictionary = new BinaryDictionary(
+                dictFile.getAbsolutePath(), 0 /* offset */, dictFile.length(),
+                true /* useFullEditDistance */, Locale.getDefault(), "test",
+                true /* isUpdatable */);
+        for (final String word : new String[] { "this", "thus", "tags", "togs", "tigers" }) {
+            binaryDictionary.addUnigramWord(word, 100 /* probability */);
+        }
+        final WordComposer composer = new WordComposer();
+        composer.setComposingWord(WORD_TO_TYPE, mKeyboard);
+
+        // A budget of one dic node runs out at the first input step. The search still reaches
+        // the end of the input with the best candidates, which are all of them here.
+        binaryDictionary.setSearchBudget(false /* isGesture */, 0 /* timeBudgetMs */,
+                1 /* expansionBudget */);
+        ArrayList<SuggestedWordInfo> suggestions = binaryDictionary.getSuggestions(composer,
+                null /* prevWord */, mKeyboard.getProximityInfo(),
+                false /* blockOffensiveWords */, null /* additionalFeaturesOptions */);
+        assertTrue("tiny budget gives partial results",
+                binaryDictionary.getLastSuggestStats().mIsPartial);
+        assertTrue("partial results keep the best suggestion",
+                containsWord(suggestions, EXPECTED_SUGGESTION));
+
+        // The budget for the gesture input doesn't apply to the typing input.
+        binaryDictionary.setSearchBudget(false /* isGesture */, 0 /* timeBudgetMs */,
+                0 /* expansionBudget */);
+        binaryDictionary.setSearchBudget(true /* isGesture */, 0 /* timeBudgetMs */,
+                1 /* expansionBudget */);
+        suggestions = binaryDictionary.getSuggestions(composer, null /* prevWord */,
+                mKeyboard.getProximityInfo(), false /* blockOffensiveWords */,
+                null /* additionalFeaturesOptions */);
+        assertFalse("no typing budget gives complete results",
+                binaryDictionary.getLastSuggestStats().mIsPartial);
+        assertTrue("complete results", containsWord(suggestions, EXPECTED_SUGGESTION));
+
+        binaryDictionary.close();
+        dictFile.delete();
+    }
+
+    public void testAutoCorrectWithParallelLookup() {
+        final String STRING_TO_TYPE = "tgis didn' ";
+        final String EXPECTED_RESULT = "this didn't ";
+        final boolean previousParallelLookupOption =
+                setBooleanPreference(DebugSettings.PREF_ENABLE_PARALLEL_LOOKUP, true, false);
+        try {
+            // Reopens the dictionaries with the new setting.
+            changeLanguage("en_US");
+            type(STRING_TO_TYPE);
+            assertEquals("auto-correct with parallel lookup", EXPECTED_RESULT,
+                    mEditText.getText().toString());
+        } finally {
+            setBooleanPreference(DebugSettings.PREF_ENABLE_PARALLEL_LOOKUP,
+                    previousParallelLookupOption, false);
+        }
+    }
+
+    private BinaryDictionary createDictionaryWithWords(final String name,
+            final String[] words, final int probability) {
+        File dictFile = null;
+        try {
+            dictFile = File.createTempFile(name, ".dict", getContext().getCacheDir());
+        } catch (IOException e) {
+            fail("IOException while creating a dictionary file : " + e);
+        }
+        dictFile.deleteOnExit();
+        final Map<String, String> attributeMap = new HashMap<String, String>();
+        attributeMap.put(FormatSpec.FileHeader.SUPPORTS_DYNAMIC_UPDATE_ATTRIBUTE,
+                FormatSpec.FileHeader.ATTRIBUTE_VALUE_TRUE);
+        assertTrue(BinaryDictionary.createEmptyDictFile(dictFile.getAbsolutePath(),
+                3 /* dictVersion */, attributeMap));
+        final BinaryDictionary binaryDictionary = new BinaryDictionary(
+                dictFile.getAbsolutePath(), 0 /* offset */, dictFile.length(),
+                true /* useFullEditDistance */, Locale.getDefault(), name,
+                true /* isUpdatable */);
+        for (final String word : words) {
+            binaryDictionary.addUnigramWord(word, probability);
+        }
+        return binaryDictionary;
+    }
+
+    private SuggestedWords getSuggestedWords(final Suggest suggest, final String word) {
+        final WordComposer composer = new WordComposer();
+        composer.setComposingWord(word, mKeyboard);
+        final SuggestedWords[] result = new SuggestedWords[1];
+        suggest.getSuggestedWords(composer, null /* prevWordForBigram */,
+                mKeyboard.getProximityInfo(), false /* blockOffensiveWords */,
+                true /* isCorrectionEnabled */, null /* additionalFeaturesOptions */,
+                Suggest.SESSION_TYPING, 0 /* sequenceNumber */,
+                new Suggest.OnGetSuggestedWordsCallback() {
+                    @Override
+                    public void onGetSuggestedWords(final SuggestedWords suggestedWords) {
+                        result[0] = suggestedWords;
+                    }
+                });
+        assertNotNull("suggestions are returned synchronously", result[0]);
+        return result[0];
+    }
+
+    public void testParallelLookupGivesTheSameSuggestedWords() {
+        final Suggest suggest = new Suggest(new AssetFileAddress[0], Locale.getDefault());
+        // Some words are in both dictionaries with the same probability, so that the order of
+        // the dictionaries breaks the ties.
+        suggest.getUnigramDictionaries().put("testParallelLookup1",
+                createDictionaryWithWords("testParallelLookup1",
+                        new String[] { "this", "thus", "tags", "togs", "tigers" },
+                        100 /* probability */));
+        suggest.getUnigramDictionaries().put("testParallelLookup2",
+                createDictionaryWithWords("testParallelLookup2",
+                        new String[] { "this", "this's", "tips", "tiger", "thesis" },
+                        100 /* probability */));
+        for (final String word : new String[] { "tgis", "this", "tigres", "thsis", "t" }) {
+            suggest.setParallelLookupEnabled(false);
+            final SuggestedWords serialSuggestedWords = getSuggestedWords(suggest, word);
+            suggest.setParallelLookupEnabled(true);
+            final SuggestedWords parallelSuggestedWords = getSuggestedWords(suggest, word);
+            assertEquals("typed word valid for " + word, serialSuggestedWords.mTypedWordValid,
+                    parallelSuggestedWords.mTypedWordValid);
+            assertEquals("will auto-correct for " + word, serialSuggestedWords.mWillAutoCorrect,
+                    parallelSuggestedWords.mWillAutoCorrect);
+            assertEquals("suggestion count for " + word, serialSuggestedWords.size(),
+                    parallelSuggestedWords.size());
+            for (int i = 0; i < serialSuggestedWords.size(); ++i) {
+                final SuggestedWordInfo serialInfo = serialSuggestedWords.getInfo(i);
+                final SuggestedWordInfo parallelInfo = parallelSuggestedWords.getInfo(i);
+                assertEquals("suggestion " + i + " for " + word, serialInfo.mWord,
+                        parallelInfo.mWord);
+                assertEquals("score of suggestion " + i + " for " + word, serialInfo.mScore,
+                        parallelInfo.mScore);
+                assertSame("source of suggestion " + i + " for " + word,
+                        serialInfo.mSourceDict, parallelInfo.mSourceDict);
+            }
+        }
+        suggest.close();
+    }
+
+    // Many words sharing prefixes, so that the search frontier is wide enough to be expanded in
+    // several shards.
+    private static String[] generateWordsWithCommonPrefixes() {
+        final ArrayList<String> words = new ArrayList<String>();
+        for (final String prefix : new String[] { "th", "ti", "ta", "to", "te", "sh", "si" }) {
+            for (final String middle : new String[] { "s", "g", "n", "r", "p" }) {
+                for (final String suffix : new String[] { "is", "es", "ers", "ing", "s", "" }) {
+                    words.add(prefix + middle + suffix);
+                }
+            }
+        }
+        return words.toArray(new String[words.size()]);
+    }
+
+    private static final String[] WORDS_TO_LOOK_UP =
+            { "tgis", "this", "tigres", "thsis", "t", "shrrs", "tapings" };
+
+    private void assertSameSuggestions(final String message,
+            final ArrayList<SuggestedWordInfo> expected,
+            final ArrayList<SuggestedWordInfo> actual) {
+        assertNotNull(message, expected);
+        assertNotNull(message, actual);
+        assertEquals("suggestion count " + message, expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); ++i) {
+            assertEquals("suggestion " + i + " " + message, expected.get(i).mWord,
+                    actual.get(i).mWord);
+            assertEquals("score of suggestion " + i + " " + message, expected.get(i).mScore,
+                    actual.get(i).mScore);
+        }
+    }
+
+    private ArrayList<SuggestedWordInfo> getSuggestions(final BinaryDictionary dictionary,
+            final String word) {
+        return getSuggestions(dictionary, null /* prevWord */, word);
+    }
+
+    private ArrayList<SuggestedWordInfo> getSuggestions(final BinaryDictionary dictionary,
+            final String prevWord, final String word) {
+        final WordComposer composer = new WordComposer();
+        composer.setComposingWord(word, mKeyboard);
+        return dictionary.getSuggestions(composer, prevWord, mKeyboard.getProximityInfo(),
+                false /* blockOffensiveWords */, null /* additionalFeaturesOptions */);
+    }
+
+    public void testParallelExpansionGivesTheSameSuggestions() {
+        final String[] words = generateWordsWithCommonPrefixes();
+        final BinaryDictionary dictionary1 = createDictionaryWithWords("testParallelExpansion1",
+                words, 100 /* probability */);
+        final BinaryDictionary dictionary2 = createDictionaryWithWords("testParallelExpansion2",
+                words, 100 /* probability */);
+        for (final String word : WORDS_TO_LOOK_UP) {
+            dictionary1.setParallelExpansionWorkerCount(0);
+            final ArrayList<SuggestedWordInfo> serialSuggestions =
+                    getSuggestions(dictionary1, word);
+            dictionary1.setParallelExpansionWorkerCount(7);
+            assertSameSuggestions("for " + word, serialSuggestions,
+                    getSuggestions(dictionary1, word));
+            // The worker threads are capped for the process and the first dictionary keeps
+            // its own, so the second one gets fewer threads or none.
+            dictionary2.setParallelExpansionWorkerCount(7);
+            assertSameSuggestions("without worker threads for " + word, serialSuggestions,
+                    getSuggestions(dictionary2, word));
+        }
+        dictionary1.close();
+        dictionary2.close();
+    }
+
+    public void testRepeatedLookupsGiveTheSameSuggestions() {
+        final String[] words = generateWordsWithCommonPrefixes();
+        final BinaryDictionary dictionary = createDictionaryWithWords("testRepeatedLookups",
+                words, 100 /* probability */);
+        // The expansion buffers of a session are reused by the following lookups, which must give
+        // the same suggestions as a new session. Long and short words are interleaved so that the
+        // buffers keep more elements than the following lookup needs. The second round also uses
+        // the buffers of the expansion shards.
+        for (int round = 0; round < 3; ++round) {
+            dictionary.setParallelExpansionWorkerCount(round == 1 ? 7 : 0);
+            for (final String word : WORDS_TO_LOOK_UP) {
+                final BinaryDictionary newDictionary = createDictionaryWithWords(
+                        "testRepeatedLookupsNew", words, 100 /* probability */);
+                assertSameSuggestions("in round " + round + " for " + word,
+                        getSuggestions(newDictionary, word), getSuggestions(dictionary, word));
+                newDictionary.close();
+            }
+        }
+        dictionary.close();
+    }
+
+    // More previous words than the bigram maps cached by a session, so that the maps are built,
+    // reused, evicted and bypassed while looking up the words.
+    private static final int PREV_WORD_COUNT = 40;
+    private static final int BIGRAM_COUNT_PER_PREV_WORD = 10;
+
+    private BinaryDictionary createDictionaryWithBigrams(final String name,
+            final String[] words) {
+        final BinaryDictionary dictionary = createDictionaryWithWords(name, words,
+                100 /* probability */);
+        for (int i = 0; i < PREV_WORD_COUNT; ++i) {
+            for (int j = 0; j < BIGRAM_COUNT_PER_PREV_WORD; ++j) {
+                dictionary.addBigramWords(words[i], words[(i * 7 + j) % words.length],
+                        150 /* probability */);
+            }
+        }
+        return dictionary;
+    }
+
+    public void testCachedBigramsGiveTheSameSuggestions() {
+        final String[] words = generateWordsWithCommonPrefixes();
+        final BinaryDictionary dictionary1 = createDictionaryWithBigrams("testCachedBigrams1",
+                words);
+        final BinaryDictionary dictionary2 = createDictionaryWithBigrams("testCachedBigrams2",
+                words);
+        // The dictionaries are looked up in different orders, so that the bigrams are read from
+        // the cached maps of one session while they are read from the dictionary by the other.
+        final ArrayList<ArrayList<SuggestedWordInfo>> expectedSuggestions =
+                new ArrayList<ArrayList<SuggestedWordInfo>>();
+        for (int i = 0; i < PREV_WORD_COUNT; ++i) {
+            for (final String word : WORDS_TO_LOOK_UP) {
+                expectedSuggestions.add(getSuggestions(dictionary2, words[i], word));
+            }
+        }
+        for (int j = 0; j < WORDS_TO_LOOK_UP.length; ++j) {
+            for (int i = 0; i < PREV_WORD_COUNT; ++i) {
+                assertSameSuggestions("for " + WORDS_TO_LOOK_UP[j] + " after " + words[i],
+                        expectedSuggestions.get(i * WORDS_TO_LOOK_UP.length + j),
+                        getSuggestions(dictionary1, words[i], WORDS_TO_LOOK_UP[j]));
+            }
+        }
+        // Updating the dictionary invalidates the cached maps.
+        final String prevWord = words[0];
+        final String word = WORDS_TO_LOOK_UP[0];
+        // A suggestion for the word, which is not a bigram of prevWord yet.
+        final String newBigramTarget = "tis";
+        dictionary1.addBigramWords(prevWord, newBigramTarget, 250 /* probability */);
+        final BinaryDictionary dictionary3 = createDictionaryWithBigrams("testCachedBigrams3",
+                words);
+        dictionary3.addBigramWords(prevWord, newBigramTarget, 250 /* probability */);
+        assertSameSuggestions("for " + word + " after " + prevWord + " with a new bigram",
+                getSuggestions(dictionary3, prevWord, word),
+                getSuggestions(dictionary1, prevWord, word));
+        dictionary1.close();
+        dictionary2.close();
+        dictionary3.close();
+    }
+
+    public void testFrontierSnapshotsAreNotReusedWithOtherSuggestOptions() {
+        final String[] words = generateWordsWithCommonPrefixes();
+        final BinaryDictionary dictionary1 = createDictionaryWithWords("testFrontierSnapshots1",
+                words, 100 /* probability */);
+        final BinaryDictionary dictionary2 = createDictionaryWithWords("testFrontierSnapshots2",
+                words, 100 /* probability */);
+        for (final String word : WORDS_TO_LOOK_UP) {
+            // Type the word with a tiny budget, so that the frontier snapshots keep only a part of
+            // the candidates.
+            dictionary1.setSearchBudget(false /* isGesture */, 0 /* timeBudgetMs */,
+                    1 /* expansionBudget */);
+            for (int i = 1; i < word.length(); ++i) {
+                getSuggestions(dictionary1, word.substring(0, i));
+            }
+            dictionary1.setSearchBudget(false /* isGesture */, 0 /* timeBudgetMs */,
+                    0 /* expansionBudget */);
+            assertSameSuggestions("after changing the options for " + word,
+                    getSuggestions(dictionary2, word), getSuggestions(dictionary1, word));
+        }
+        dictionary1.close();
+        dictionary2.close();
+    }
+
     public void testAutoCorrectWithPeriod() {
         final String STRING_TO_TYPE = "tgis.";
         final String EXPECTED_RESULT = "this.";
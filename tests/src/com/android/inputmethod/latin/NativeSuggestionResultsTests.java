@@ -0,0 +1,65 @@
+/*
+ * Copyright (C) 2013 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.inputmethod.latin;
+
+import android.test.AndroidTestCase;
+import android.test.suitebuilder.annotation.SmallTest;
+
+import java.nio.ByteBuffer;
+
+@SmallTest
+public class NativeSuggestionResultsTests extends AndroidTestCase {
+    public void testNewInstance() {
+        final NativeSuggestionResults results = new NativeSuggestionResults();
+        assertEquals(0, results.getCount());
+        final ByteBuffer buffer = results.getBuffer();
+        assertTrue(buffer.isDirect());
+        // The input code points are cleared.
+        assertEquals(Constants.NOT_A_CODE, buffer.asIntBuffer().get(0));
+    }
+
+    public void testSetPrevWord() {
+        final NativeSuggestionResults results = new NativeSuggestionResults();
+        assertEquals(NativeSuggestionResults.NO_PREV_WORD, results.setPrevWord(null));
+        assertEquals(0, results.setPrevWord(""));
+        assertEquals(3, results.setPrevWord("abc"));
+        // A surrogate pair is one code point.
+        assertEquals(2, results.setPrevWord("a\uD83D\uDE00"));
+        final StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < BinaryDictionary.MAX_WORD_LENGTH; ++i) {
+            sb.append('a');
+        }
+        assertEquals(BinaryDictionary.MAX_WORD_LENGTH, results.setPrevWord(sb.toString()));
+        sb.append('a');
+        assertEquals(NativeSuggestionResults.NO_PREV_WORD, results.setPrevWord(sb.toString()));
+    }
+
+    public void testInputCodePoints() {
+        final NativeSuggestionResults results = new NativeSuggestionResults();
+        final WordComposer composer = new WordComposer();
+        composer.add('a', 0, 0);
+        composer.add('b', 0, 0);
+        results.clearInputCodePoints();
+        assertTrue(results.setInputCodePoints(composer));
+        assertEquals('a', results.getBuffer().asIntBuffer().get(0));
+        assertEquals('b', results.getBuffer().asIntBuffer().get(1));
+        assertEquals(Constants.NOT_A_CODE, results.getBuffer().asIntBuffer().get(2));
+        results.clearInputCodePoints();
+        assertEquals(Constants.NOT_A_CODE, results.getBuffer().asIntBuffer().get(0));
+        assertEquals(Constants.NOT_A_CODE, results.getBuffer().asIntBuffer().get(1));
+    }
+}
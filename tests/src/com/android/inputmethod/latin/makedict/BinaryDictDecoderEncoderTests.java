@@ -24,6 +24,9 @@ import android.util.SparseArray;
 
 import com.android.inputmethod.latin.makedict.BinaryDictDecoderUtils.CharEncoding;
 import com.android.inputmethod.latin.makedict.BinaryDictDecoderUtils.DictBuffer;
+import com.android.inputmethod.latin.makedict.DictDecoder.DictionaryBufferFactory;
+import com.android.inputmethod.latin.makedict.DictDecoder.
+        DictionaryBufferFromSharedMappingFactory;
 import com.android.inputmethod.latin.makedict.FormatSpec.FileHeader;
 import com.android.inputmethod.latin.makedict.FormatSpec.FormatOptions;
 import com.android.inputmethod.latin.makedict.FusionDictionary.DictionaryOptions;
@@ -59,6 +62,7 @@ public class BinaryDictDecoderEncoderTests extends AndroidTestCase {
     private static final int TOLERANCE_OF_BIGRAM_FREQ = 5;
     private static final int NUM_OF_NODES_HAVING_SHORTCUTS = 50;
     private static final int NUM_OF_SHORTCUTS = 5;
+    private static final int NUM_OF_THREADS_FOR_SHARED_MAPPING = 4;
 
     private static final int USE_BYTE_ARRAY = 1;
     private static final int USE_BYTE_BUFFER = 2;
@@ -264,16 +268,22 @@ public class BinaryDictDecoderEncoderTests extends AndroidTestCase {
         return file;
     }
 
-    private DictDecoder getDictDecoder(final File file, final int bufferType,
-            final FormatOptions formatOptions, final DictionaryOptions dictOptions) {
+    private File getDictFile(final File file, final FormatOptions formatOptions,
+            final DictionaryOptions dictOptions) {
         if (formatOptions.mVersion == FormatSpec.VERSION4) {
             final FileHeader header = new FileHeader(0, dictOptions, formatOptions);
-            return FormatSpec.getDictDecoder(new File(getContext().getCacheDir(),
-                    header.getId() + "." + header.getVersion()), bufferType);
+            return new File(getContext().getCacheDir(),
+                    header.getId() + "." + header.getVersion());
         } else {
-            return FormatSpec.getDictDecoder(file, bufferType);
+            return file;
         }
     }
+
+    private DictDecoder getDictDecoder(final File file, final int bufferType,
+            final FormatOptions formatOptions, final DictionaryOptions dictOptions) {
+        return FormatSpec.getDictDecoder(getDictFile(file, formatOptions, dictOptions),
+                bufferType);
+    }
     // Tests for readDictionaryBinary and writeDictionaryBinary
 
     private long timeReadingAndCheckDict(final File file, final List<String> words,
@@ -383,6 +393,57 @@ public class BinaryDictDecoderEncoderTests extends AndroidTestCase {
         }
     }
 
+    // Tests for the bounded address computation
+
+    private byte[] writeDictWithMaxShrinkingPasses(final File file, final FusionDictionary dict,
+            final FormatOptions formatOptions, final int maxShrinkingPasses) throws IOException,
+                    UnsupportedFormatException {
+        final Ver3DictEncoder dictEncoder = new Ver3DictEncoder(file);
+        dictEncoder.setMaxShrinkingPassesForTests(maxShrinkingPasses);
+        dictEncoder.writeDictionary(dict, formatOptions);
+        final byte[] bytes = new byte[(int)file.length()];
+        final FileInputStream inStream = new FileInputStream(file);
+        try {
+            assertEquals(bytes.length, inStream.read(bytes));
+        } finally {
+            inStream.close();
+        }
+        return bytes;
+    }
+
+    private void runBoundedAddressComputation(final FormatOptions formatOptions)
+            throws IOException, UnsupportedFormatException {
+        final String dictName = "runBoundedAddressComputation";
+        final String dictVersion = Long.toString(System.currentTimeMillis());
+        final File file = setUpDictionaryFile(dictName, dictVersion);
+        final FusionDictionary dict = new FusionDictionary(new PtNodeArray(),
+                getDictionaryOptions(dictName, dictVersion));
+        addUnigrams(sWords.size(), dict, sWords, sShortcuts);
+        addBigrams(dict, sWords, sChainBigrams);
+
+        // Shrinking until nothing changes is how the addresses were computed before the number
+        // of passes was bounded. Dictionaries that converge within the bound must not change.
+        final byte[] unboundedBytes = writeDictWithMaxShrinkingPasses(file, dict, formatOptions,
+                Integer.MAX_VALUE);
+        final byte[] boundedBytes = writeDictWithMaxShrinkingPasses(file, dict, formatOptions,
+                BinaryDictEncoderUtils.MAX_SHRINKING_PASSES);
+        assertTrue(Arrays.equals(unboundedBytes, boundedBytes));
+
+        // Stopping after one pass falls back to fixed size addresses. The file is larger, but
+        // must read back the same words.
+        final byte[] fixedSizeBytes = writeDictWithMaxShrinkingPasses(file, dict, formatOptions,
+                1 /* maxShrinkingPasses */);
+        assertTrue(fixedSizeBytes.length > boundedBytes.length);
+        timeReadingAndCheckDict(file, sWords, sChainBigrams, sShortcuts, USE_BYTE_ARRAY,
+                formatOptions, dict.mOptions);
+    }
+
+    public void testBoundedAddressComputation() throws IOException, UnsupportedFormatException {
+        runBoundedAddressComputation(VERSION2);
+        runBoundedAddressComputation(VERSION3_WITHOUT_DYNAMIC_UPDATE);
+        runBoundedAddressComputation(VERSION3_WITH_DYNAMIC_UPDATE);
+    }
+
     // Tests for readUnigramsAndBigramsBinary
 
     private void checkWordMap(final List<String> expectedWords,
@@ -646,6 +707,79 @@ public class BinaryDictDecoderEncoderTests extends AndroidTestCase {
         }
     }
 
+    private void runGetTerminalPositionWithSharedMapping(final FormatOptions formatOptions) {
+        final String dictName = "testGetTerminalPositionWithSharedMapping";
+        final String dictVersion = Long.toString(System.currentTimeMillis());
+        final File file = setUpDictionaryFile(dictName, dictVersion);
+
+        final FusionDictionary dict = new FusionDictionary(new PtNodeArray(),
+                getDictionaryOptions(dictName, dictVersion));
+        addUnigrams(sWords.size(), dict, sWords, null /* shortcutMap */);
+        timeWritingDictToFile(file, dict, formatOptions);
+
+        final File dictFile = getDictFile(file, formatOptions, dict.mOptions);
+        final int[] expectedPositions = new int[sWords.size()];
+        try {
+            final DictDecoder referenceDecoder = FormatSpec.getDictDecoder(dictFile,
+                    DictDecoder.USE_BYTEARRAY);
+            for (int i = 0; i < sWords.size(); ++i) {
+                expectedPositions[i] = referenceDecoder.getTerminalPosition(sWords.get(i));
+            }
+        } catch (IOException e) {
+            fail("IOException while getTerminalPosition");
+        } catch (UnsupportedFormatException e) {
+            fail("UnsupportedFormatException while getTerminalPosition");
+        }
+
+        // All the decoders read the same mapping, each with its own position.
+        final DictionaryBufferFactory factory = new DictionaryBufferFromSharedMappingFactory();
+        final Thread[] threads = new Thread[NUM_OF_THREADS_FOR_SHARED_MAPPING];
+        final boolean[] succeeded = new boolean[threads.length];
+        for (int t = 0; t < threads.length; ++t) {
+            final int threadIndex = t;
+            threads[t] = new Thread() {
+                @Override
+                public void run() {
+                    final DictDecoder dictDecoder = FormatSpec.getDictDecoder(dictFile, factory);
+                    try {
+                        for (int i = 0; i < sWords.size(); ++i) {
+                            final int index = (i + threadIndex) % sWords.size();
+                            if (expectedPositions[index]
+                                    != dictDecoder.getTerminalPosition(sWords.get(index))) {
+                                return;
+                            }
+                        }
+                    } catch (IOException e) {
+                        Log.e(TAG, "IOException while getTerminalPosition", e);
+                        return;
+                    } catch (UnsupportedFormatException e) {
+                        Log.e(TAG, "UnsupportedFormatException while getTerminalPosition", e);
+                        return;
+                    }
+                    succeeded[threadIndex] = true;
+                }
+            };
+            threads[t].start();
+        }
+        for (int t = 0; t < threads.length; ++t) {
+            try {
+                threads[t].join();
+            } catch (InterruptedException e) {
+                fail("Interrupted while waiting for the lookups");
+            }
+            assertTrue("Lookups failed : " + outputOptions(USE_BYTE_BUFFER, formatOptions),
+                    succeeded[t]);
+        }
+    }
+
+    public void testGetTerminalPositionWithSharedMapping() {
+        runGetTerminalPositionWithSharedMapping(VERSION2);
+        runGetTerminalPositionWithSharedMapping(VERSION3_WITHOUT_DYNAMIC_UPDATE);
+        runGetTerminalPositionWithSharedMapping(VERSION3_WITH_DYNAMIC_UPDATE);
+        runGetTerminalPositionWithSharedMapping(VERSION4_WITHOUT_DYNAMIC_UPDATE);
+        runGetTerminalPositionWithSharedMapping(VERSION4_WITH_DYNAMIC_UPDATE);
+    }
+
     private void runTestDeleteWord(final FormatOptions formatOptions) {
         final String dictName = "testDeleteWord";
         final String dictVersion = Long.toString(System.currentTimeMillis());
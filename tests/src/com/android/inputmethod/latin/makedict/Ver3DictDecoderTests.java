@@ -21,6 +21,8 @@ import com.android.inputmethod.latin.makedict.DictDecoder.DictionaryBufferFactor
 import com.android.inputmethod.latin.makedict.DictDecoder.DictionaryBufferFromByteArrayFactory;
 import com.android.inputmethod.latin.makedict.DictDecoder.
         DictionaryBufferFromReadOnlyByteBufferFactory;
+import com.android.inputmethod.latin.makedict.DictDecoder.
+        DictionaryBufferFromSharedMappingFactory;
 import com.android.inputmethod.latin.makedict.DictDecoder.
         DictionaryBufferFromWritableByteBufferFactory;
 
@@ -41,10 +43,14 @@ public class Ver3DictDecoderTests extends AndroidTestCase {
 
     // Utilities for testing
     public void writeDataToFile(final File file) {
+        writeDataToFile(file, data);
+    }
+
+    public void writeDataToFile(final File file, final byte[] bytes) {
         FileOutputStream outStream = null;
         try {
             outStream = new FileOutputStream(file);
-            outStream.write(data);
+            outStream.write(bytes);
         } catch (IOException e) {
             fail ("Can't write data to the test file");
         } finally {
@@ -101,6 +107,11 @@ public class Ver3DictDecoderTests extends AndroidTestCase {
                 new DictionaryBufferFromWritableByteBufferFactory());
     }
 
+    public void testOpenBufferWithSharedMapping() {
+        runTestOpenBuffer("testOpenBufferWithSharedMapping",
+                new DictionaryBufferFromSharedMappingFactory());
+    }
+
     @SuppressWarnings("null")
     public void runTestGetBuffer(final String testName, final DictionaryBufferFactory factory) {
         File testFile = null;
@@ -147,4 +158,82 @@ public class Ver3DictDecoderTests extends AndroidTestCase {
         runTestGetBuffer("testGetBufferWithWritableByteBuffer",
                 new DictionaryBufferFromWritableByteBufferFactory());
     }
+
+    public void testGetBufferWithSharedMapping() {
+        runTestGetBuffer("testGetBufferWithSharedMapping",
+                new DictionaryBufferFromSharedMappingFactory());
+    }
+
+    public void testSharedMappingBuffersHaveTheirOwnPosition() {
+        File testFile = null;
+        try {
+            testFile = File.createTempFile("testSharedMappingBuffersHaveTheirOwnPosition", ".tmp",
+                    getContext().getCacheDir());
+        } catch (IOException e) {
+            Log.e(TAG, "IOException while the creating temporary file", e);
+        }
+        assertNotNull(testFile);
+        writeDataToFile(testFile);
+
+        final DictionaryBufferFactory factory = new DictionaryBufferFromSharedMappingFactory();
+        DictBuffer buffer1 = null;
+        DictBuffer buffer2 = null;
+        try {
+            buffer1 = factory.getDictionaryBuffer(testFile);
+            buffer2 = factory.getDictionaryBuffer(testFile);
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to get the buffers", e);
+        }
+        assertNotNull(buffer1);
+        assertNotNull(buffer2);
+
+        buffer1.position(4);
+        assertEquals(0, buffer2.position());
+        assertEquals(0x04050607, buffer1.readInt());
+        assertEquals(0x000102, buffer2.readUnsignedInt24());
+        assertEquals(8, buffer1.position());
+        assertEquals(3, buffer2.position());
+        assertEquals(0x0304, buffer2.readUnsignedShort());
+    }
+
+    public void testSharedMappingIsReplacedWithTheRewrittenFile() {
+        File testFile = null;
+        try {
+            testFile = File.createTempFile("testSharedMappingIsReplacedWithTheRewrittenFile",
+                    ".tmp", getContext().getCacheDir());
+        } catch (IOException e) {
+            Log.e(TAG, "IOException while the creating temporary file", e);
+        }
+        assertNotNull(testFile);
+        writeDataToFile(testFile);
+
+        final DictionaryBufferFactory factory = new DictionaryBufferFromSharedMappingFactory();
+        DictBuffer buffer = null;
+        try {
+            buffer = factory.getDictionaryBuffer(testFile);
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to get the buffer", e);
+        }
+        assertNotNull(buffer);
+        assertEquals(0, buffer.readUnsignedByte());
+
+        // Rewrite the file with the same length and modification time.
+        final long lastModified = testFile.lastModified();
+        final byte[] newData = new byte[data.length];
+        for (int i = 0; i < newData.length; ++i) {
+            newData[i] = (byte)(data[i] + 1);
+        }
+        writeDataToFile(testFile, newData);
+        assertTrue(testFile.setLastModified(lastModified));
+
+        try {
+            buffer = factory.getDictionaryBuffer(testFile);
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to get the buffer", e);
+        }
+        assertNotNull(buffer);
+        for (int i = 0; i < newData.length; ++i) {
+            assertEquals(newData[i], buffer.readUnsignedByte());
+        }
+    }
 }
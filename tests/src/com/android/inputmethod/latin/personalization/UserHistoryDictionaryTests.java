@@ -31,6 +31,7 @@ import java.util.List;
 import java.util.Random;
 import java.util.Set;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Unit tests for UserHistoryDictionary
@@ -236,4 +237,58 @@ public class UserHistoryDictionaryTests extends AndroidTestCase {
         }
     }
 
+    public void testConcurrentReadOps() {
+        final String testFilenameSuffix = "testConcurrentReadOps" + System.currentTimeMillis();
+        final int numberOfWords = 100;
+        final int numberOfThreads = 4;
+        final Random random = new Random(123456);
+        final List<String> words = generateWords(numberOfWords, random);
+        clearHistory(testFilenameSuffix);
+        final UserHistoryDictionary dict =
+                PersonalizationHelper.getUserHistoryDictionary(getContext(),
+                        testFilenameSuffix /* locale */, mPrefs);
+        try {
+            addToDict(dict, words);
+            try {
+                Thread.sleep(TimeUnit.MILLISECONDS.convert(5L, TimeUnit.SECONDS));
+            } catch (InterruptedException e) {
+            }
+            final int readOpCountBefore = dict.getReadOpCount();
+            final int timedOutReadOpCountBefore = dict.getTimedOutReadOpCount();
+            final AtomicInteger foundWordCount = new AtomicInteger();
+            final Thread[] threads = new Thread[numberOfThreads];
+            for (int i = 0; i < numberOfThreads; ++i) {
+                threads[i] = new Thread() {
+                    @Override
+                    public void run() {
+                        for (final String word : words) {
+                            if (dict.isValidWord(word)) {
+                                foundWordCount.incrementAndGet();
+                            }
+                        }
+                    }
+                };
+                threads[i].start();
+            }
+            for (final Thread thread : threads) {
+                try {
+                    thread.join();
+                } catch (InterruptedException e) {
+                    fail("Interrupted while waiting for the readers : " + e);
+                }
+            }
+            // Every read is counted, and a read only misses a word when it timed out.
+            final int readOpCount = numberOfThreads * numberOfWords;
+            assertEquals(readOpCount, dict.getReadOpCount() - readOpCountBefore);
+            assertEquals(readOpCount, foundWordCount.get()
+                    + dict.getTimedOutReadOpCount() - timedOutReadOpCountBefore);
+            dict.close();
+        } finally {
+            Log.d(TAG, "waiting for writing ...");
+            waitForWriting(testFilenameSuffix);
+            final String fileName = UserHistoryDictionary.NAME + "." + testFilenameSuffix
+                    + ExpandableBinaryDictionary.DICT_FILE_EXTENSION;
+            new File(getContext().getFilesDir(), fileName).delete();
+        }
+    }
 }
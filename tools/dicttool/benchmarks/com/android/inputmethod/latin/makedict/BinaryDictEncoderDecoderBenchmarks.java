@@ -0,0 +1,291 @@
+/*
+ * Copyright (C) 2013 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.inputmethod.latin.makedict;
+
+import com.android.inputmethod.latin.makedict.FormatSpec.FileHeader;
+import com.android.inputmethod.latin.makedict.FormatSpec.FormatOptions;
+import com.android.inputmethod.latin.makedict.FusionDictionary.DictionaryOptions;
+import com.android.inputmethod.latin.makedict.FusionDictionary.PtNodeArray;
+import com.android.inputmethod.latin.makedict.FusionDictionary.WeightedString;
+import com.android.inputmethod.latin.utils.CollectionUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Random;
+import java.util.TreeMap;
+
+/**
+ * Micro-benchmarks for the makedict encode/decode pipeline.
+ *
+ * Each benchmark builds a synthetic FusionDictionary of the requested size with bigrams and
+ * shortcuts, and measures address computation, encoding, full decoding, getTerminalPosition and
+ * readUnigramsAndBigramsBinary for each DictionaryBufferFactory. Every operation is run a number
+ * of times to warm up the JIT before it is measured. The throughput and the number of bytes
+ * allocated by the benchmark thread are reported for each operation.
+ */
+public class BinaryDictEncoderDecoderBenchmarks {
+    public static final int[] DEFAULT_VOCABULARY_SIZES = { 10000, 100000, 1000000 };
+    public static final int DEFAULT_WARMUP_ITERATIONS = 3;
+    public static final int DEFAULT_MEASURED_ITERATIONS = 5;
+
+    private static final int UNIGRAM_FREQ = 10;
+    private static final int BIGRAM_FREQ = 50;
+    private static final int SHORTCUT_FREQ = 14;
+    // One word in this many has a shortcut.
+    private static final int SHORTCUT_INTERVAL = 100;
+    private static final int MAX_BIGRAMS_PER_WORD = 3;
+    // The number of words looked up in each iteration of the getTerminalPosition benchmark.
+    private static final int LOOKUP_COUNT = 1000;
+
+    private static final int[] BUFFER_TYPES = {
+        DictDecoder.USE_READONLY_BYTEBUFFER,
+        DictDecoder.USE_BYTEARRAY,
+        DictDecoder.USE_WRITABLE_BYTEBUFFER
+    };
+
+    private final long mSeed;
+    private final int mWarmupIterations;
+    private final int mMeasuredIterations;
+    private final File mWorkingDir;
+    private final ThreadMXBean mThreadMXBean = ManagementFactory.getThreadMXBean();
+
+    public BinaryDictEncoderDecoderBenchmarks(final long seed, final int warmupIterations,
+            final int measuredIterations, final File workingDir) {
+        mSeed = seed;
+        mWarmupIterations = warmupIterations;
+        mMeasuredIterations = measuredIterations;
+        mWorkingDir = workingDir;
+    }
+
+    private interface Operation {
+        public void run() throws IOException, UnsupportedFormatException;
+    }
+
+    /**
+     * The result of a benchmark for one operation.
+     */
+    public static final class Result {
+        public final String mName;
+        public final int mIterations;
+        public final long mTotalNanos;
+        // -1 if the JVM can't measure the allocated bytes.
+        public final long mAllocatedBytes;
+
+        public Result(final String name, final int iterations, final long totalNanos,
+                final long allocatedBytes) {
+            mName = name;
+            mIterations = iterations;
+            mTotalNanos = totalNanos;
+            mAllocatedBytes = allocatedBytes;
+        }
+
+        public double getOperationsPerSecond() {
+            return mIterations * 1e9 / Math.max(1, mTotalNanos);
+        }
+
+        @Override
+        public String toString() {
+            final String allocation = mAllocatedBytes < 0 ? "n/a"
+                    : String.format(Locale.ROOT, "%d bytes/op", mAllocatedBytes / mIterations);
+            return String.format(Locale.ROOT, "%-70s %12.3f ops/s %10.3f ms/op  %s", mName,
+                    getOperationsPerSecond(), mTotalNanos / 1e6 / mIterations, allocation);
+        }
+    }
+
+    private long getAllocatedBytes() {
+        if (mThreadMXBean instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean)mThreadMXBean).getThreadAllocatedBytes(
+                    Thread.currentThread().getId());
+        }
+        return -1;
+    }
+
+    private Result measure(final String name, final Operation operation)
+            throws IOException, UnsupportedFormatException {
+        for (int i = 0; i < mWarmupIterations; ++i) {
+            operation.run();
+        }
+        final long allocatedBefore = getAllocatedBytes();
+        final long start = System.nanoTime();
+        for (int i = 0; i < mMeasuredIterations; ++i) {
+            operation.run();
+        }
+        final long elapsed = System.nanoTime() - start;
+        final long allocatedAfter = getAllocatedBytes();
+        final long allocated = (allocatedBefore < 0 || allocatedAfter < 0) ? -1
+                : allocatedAfter - allocatedBefore;
+        final Result result = new Result(name, mMeasuredIterations, elapsed, allocated);
+        System.out.println(result);
+        return result;
+    }
+
+    /**
+     * Generates a list of distinct random words.
+     */
+    private static ArrayList<String> generateWords(final int count, final Random random) {
+        final HashSet<String> wordSet = CollectionUtils.newHashSet();
+        final ArrayList<String> words = CollectionUtils.newArrayList(count);
+        while (words.size() < count) {
+            final String word = CodePointUtils.generateWord(random,
+                    CodePointUtils.LATIN_ALPHABETS_LOWER);
+            if (wordSet.add(word)) words.add(word);
+        }
+        return words;
+    }
+
+    private static DictionaryOptions getDictionaryOptions(final String id, final String version) {
+        final DictionaryOptions options = new DictionaryOptions(new HashMap<String, String>(),
+                false /* germanUmlautProcessing */, false /* frenchLigatureProcessing */);
+        options.mAttributes.put(FileHeader.DICTIONARY_VERSION_ATTRIBUTE, version);
+        options.mAttributes.put(FileHeader.DICTIONARY_ID_ATTRIBUTE, id);
+        return options;
+    }
+
+    /**
+     * Builds a synthetic dictionary with the given words, some bigrams and some shortcuts.
+     */
+    private static FusionDictionary buildDictionary(final ArrayList<String> words,
+            final Random random, final DictionaryOptions options) {
+        final FusionDictionary dict = new FusionDictionary(new PtNodeArray(), options);
+        final int wordCount = words.size();
+        for (int i = 0; i < wordCount; ++i) {
+            final ArrayList<WeightedString> shortcuts;
+            if (i % SHORTCUT_INTERVAL == 0) {
+                shortcuts = CollectionUtils.newArrayList();
+                shortcuts.add(new WeightedString(words.get((i + 1) % wordCount), SHORTCUT_FREQ));
+            } else {
+                shortcuts = null;
+            }
+            dict.add(words.get(i), UNIGRAM_FREQ, shortcuts, false /* isNotAWord */);
+        }
+        for (int i = 0; i < wordCount; ++i) {
+            final int bigramCount = random.nextInt(MAX_BIGRAMS_PER_WORD + 1);
+            for (int j = 0; j < bigramCount; ++j) {
+                dict.setBigram(words.get(i), words.get(random.nextInt(wordCount)), BIGRAM_FREQ);
+            }
+        }
+        return dict;
+    }
+
+    private DictEncoder getDictEncoder(final File file, final FormatOptions formatOptions) {
+        if (formatOptions.mVersion == FormatSpec.VERSION4) {
+            return new Ver4DictEncoder(mWorkingDir);
+        }
+        return new Ver3DictEncoder(file);
+    }
+
+    private File getDictFile(final File file, final FormatOptions formatOptions,
+            final DictionaryOptions dictOptions) {
+        if (formatOptions.mVersion == FormatSpec.VERSION4) {
+            final FileHeader header = new FileHeader(0, dictOptions, formatOptions);
+            return new File(mWorkingDir, header.getId() + "." + header.getVersion());
+        }
+        return file;
+    }
+
+    private static String getBufferTypeName(final int bufferType) {
+        switch (bufferType) {
+        case DictDecoder.USE_READONLY_BYTEBUFFER:
+            return "readOnlyByteBuffer";
+        case DictDecoder.USE_BYTEARRAY:
+            return "byteArray";
+        case DictDecoder.USE_WRITABLE_BYTEBUFFER:
+            return "writableByteBuffer";
+        default:
+            return "unknown";
+        }
+    }
+
+    /**
+     * Runs all the benchmarks for one vocabulary size and one format.
+     */
+    public ArrayList<Result> run(final int vocabularySize, final FormatOptions formatOptions)
+            throws IOException, UnsupportedFormatException {
+        final ArrayList<Result> results = CollectionUtils.newArrayList();
+        final Random random = new Random(mSeed);
+        final ArrayList<String> words = generateWords(vocabularySize, random);
+        final String dictName = "benchmark" + vocabularySize;
+        final String dictVersion = Long.toString(mSeed);
+        final DictionaryOptions dictOptions = getDictionaryOptions(dictName, dictVersion);
+        final FusionDictionary dict = buildDictionary(words, random, dictOptions);
+        final String suffix = " [" + vocabularySize + " words, v" + formatOptions.mVersion
+                + (formatOptions.mSupportsDynamicUpdate ? " dynamic" : "") + "]";
+
+        results.add(measure("computeAddresses" + suffix, new Operation() {
+            @Override
+            public void run() {
+                final ArrayList<PtNodeArray> flatNodes =
+                        BinaryDictEncoderUtils.flattenTree(dict.mRootNodeArray);
+                BinaryDictEncoderUtils.computeAddresses(dict, flatNodes, formatOptions);
+            }
+        }));
+
+        final File file = File.createTempFile(dictName, ".dict", mWorkingDir);
+        file.deleteOnExit();
+        results.add(measure("writeDictionary" + suffix, new Operation() {
+            @Override
+            public void run() throws IOException, UnsupportedFormatException {
+                getDictEncoder(file, formatOptions).writeDictionary(dict, formatOptions);
+            }
+        }));
+
+        final File dictFile = getDictFile(file, formatOptions, dictOptions);
+        final String[] lookupWords = new String[LOOKUP_COUNT];
+        for (int i = 0; i < LOOKUP_COUNT; ++i) {
+            lookupWords[i] = words.get(random.nextInt(vocabularySize));
+        }
+        for (final int bufferType : BUFFER_TYPES) {
+            final String bufferSuffix = " " + getBufferTypeName(bufferType) + suffix;
+            results.add(measure("readDictionaryBinary" + bufferSuffix, new Operation() {
+                @Override
+                public void run() throws IOException, UnsupportedFormatException {
+                    FormatSpec.getDictDecoder(dictFile, bufferType).readDictionaryBinary(
+                            null /* dict */, false /* deleteDictIfBroken */);
+                }
+            }));
+            results.add(measure("readUnigramsAndBigramsBinary" + bufferSuffix, new Operation() {
+                @Override
+                public void run() throws IOException, UnsupportedFormatException {
+                    final TreeMap<Integer, String> resultWords = CollectionUtils.newTreeMap();
+                    final TreeMap<Integer, Integer> resultFreqs = CollectionUtils.newTreeMap();
+                    final TreeMap<Integer, ArrayList<PendingAttribute>> resultBigrams =
+                            CollectionUtils.newTreeMap();
+                    FormatSpec.getDictDecoder(dictFile, bufferType).readUnigramsAndBigramsBinary(
+                            resultWords, resultFreqs, resultBigrams);
+                }
+            }));
+            final DictDecoder dictDecoder = FormatSpec.getDictDecoder(dictFile, bufferType);
+            dictDecoder.openDictBuffer();
+            results.add(measure("getTerminalPosition x" + LOOKUP_COUNT + bufferSuffix,
+                    new Operation() {
+                        @Override
+                        public void run() throws IOException, UnsupportedFormatException {
+                            for (final String word : lookupWords) {
+                                dictDecoder.getTerminalPosition(word);
+                            }
+                        }
+                    }));
+        }
+        return results;
+    }
+}
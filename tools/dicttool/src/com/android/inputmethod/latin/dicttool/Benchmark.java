@@ -0,0 +1,90 @@
+/*
+ * Copyright (C) 2013 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.inputmethod.latin.dicttool;
+
+import com.android.inputmethod.latin.makedict.BinaryDictEncoderDecoderBenchmarks;
+import com.android.inputmethod.latin.makedict.FormatSpec.FormatOptions;
+import com.android.inputmethod.latin.makedict.UnsupportedFormatException;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Dicttool command running the makedict encode/decode benchmarks.
+ */
+public class Benchmark extends Dicttool.Command {
+    public static final String COMMAND = "benchmark";
+
+    @Override
+    public String getHelp() {
+        return COMMAND + " [-s seed] [-n size[,size...]] [-w warmupIterations]"
+                + " [-i measuredIterations] [-v 3|4] [-d]\n"
+                + "Runs the makedict encode/decode benchmarks on synthetic dictionaries of the"
+                + " given sizes.\nDefault sizes are 10000, 100000 and 1000000 words. -d uses the"
+                + " dynamic update format.";
+    }
+
+    private static int[] parseSizes(final String arg) {
+        final String[] sizeStrings = arg.split(",");
+        final int[] sizes = new int[sizeStrings.length];
+        for (int i = 0; i < sizeStrings.length; ++i) {
+            sizes[i] = Integer.parseInt(sizeStrings[i]);
+        }
+        return sizes;
+    }
+
+    @Override
+    public void run() throws IOException, UnsupportedFormatException {
+        long seed = System.currentTimeMillis();
+        int[] sizes = BinaryDictEncoderDecoderBenchmarks.DEFAULT_VOCABULARY_SIZES;
+        int warmupIterations = BinaryDictEncoderDecoderBenchmarks.DEFAULT_WARMUP_ITERATIONS;
+        int measuredIterations = BinaryDictEncoderDecoderBenchmarks.DEFAULT_MEASURED_ITERATIONS;
+        int version = 3;
+        boolean supportsDynamicUpdate = false;
+        int i = 0;
+        while (i < mArgs.length) {
+            final String arg = mArgs[i++];
+            if ("-s".equals(arg)) {
+                seed = Long.parseLong(mArgs[i++]);
+            } else if ("-n".equals(arg)) {
+                sizes = parseSizes(mArgs[i++]);
+            } else if ("-w".equals(arg)) {
+                warmupIterations = Integer.parseInt(mArgs[i++]);
+            } else if ("-i".equals(arg)) {
+                measuredIterations = Integer.parseInt(mArgs[i++]);
+            } else if ("-v".equals(arg)) {
+                version = Integer.parseInt(mArgs[i++]);
+            } else if ("-d".equals(arg)) {
+                supportsDynamicUpdate = true;
+            } else {
+                throw new RuntimeException("Unknown argument : " + arg + "\n" + getHelp());
+            }
+        }
+        final File workingDir = File.createTempFile("dicttool-benchmark", "");
+        workingDir.delete();
+        workingDir.mkdirs();
+        workingDir.deleteOnExit();
+        System.out.println("Seed : " + seed);
+        final BinaryDictEncoderDecoderBenchmarks benchmarks =
+                new BinaryDictEncoderDecoderBenchmarks(seed, warmupIterations,
+                        measuredIterations, workingDir);
+        final FormatOptions formatOptions = new FormatOptions(version, supportsDynamicUpdate);
+        for (final int size : sizes) {
+            benchmarks.run(size, formatOptions);
+        }
+    }
+}
@@ -19,7 +19,6 @@ package com.android.inputmethod.latin.dicttool;
 import com.android.inputmethod.latin.makedict.FormatSpec;
 import com.android.inputmethod.latin.makedict.FusionDictionary;
 import com.android.inputmethod.latin.makedict.FusionDictionary.DictionaryOptions;
-import com.android.inputmethod.latin.makedict.FusionDictionary.PtNodeArray;
 import com.android.inputmethod.latin.makedict.FusionDictionary.WeightedString;
 import com.android.inputmethod.latin.makedict.Word;
 
@@ -34,6 +33,7 @@ import java.io.Writer;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.TreeSet;
+import java.util.concurrent.ExecutorService;
 
 /**
  * Reads and writes combined format for a FusionDictionary.
@@ -97,6 +97,19 @@ public class CombinedInputOutput {
      */
     public static FusionDictionary readDictionaryCombined(final InputStream source)
             throws IOException {
+        return readDictionaryCombined(source, null /* executor */);
+    }
+
+    /**
+     * Reads a dictionary from a combined format file, building it on the given executor.
+     *
+     * @param source the file to read the data from.
+     * @param executor the executor to build the dictionary on, or null to build it on the
+     *   calling thread.
+     * @return the in-memory representation of the dictionary.
+     */
+    public static FusionDictionary readDictionaryCombined(final InputStream source,
+            final ExecutorService executor) throws IOException {
         final BufferedReader reader = new BufferedReader(new InputStreamReader(source, "UTF-8"));
         String headerLine = reader.readLine();
         while (headerLine.startsWith(COMMENT_LINE_STARTER)) {
@@ -117,8 +130,8 @@ public class CombinedInputOutput {
         final boolean processLigatures =
                 FRENCH_LIGATURE_PROCESSING_OPTION.equals(attributes.get(OPTIONS_TAG));
         attributes.remove(OPTIONS_TAG);
-        final FusionDictionary dict = new FusionDictionary(new PtNodeArray(), new DictionaryOptions(
-                attributes, processUmlauts, processLigatures));
+        final FusionDictionaryBuilder builder = new FusionDictionaryBuilder(
+                new DictionaryOptions(attributes, processUmlauts, processLigatures), executor);
 
         String line;
         String word = null;
@@ -131,9 +144,9 @@ public class CombinedInputOutput {
             final String args[] = line.trim().split(",");
             if (args[0].matches(WORD_TAG + "=.*")) {
                 if (null != word) {
-                    dict.add(word, freq, shortcuts.isEmpty() ? null : shortcuts, isNotAWord);
+                    builder.add(word, freq, shortcuts.isEmpty() ? null : shortcuts, isNotAWord);
                     for (WeightedString s : bigrams) {
-                        dict.setBigram(word, s.mWord, s.mFrequency);
+                        builder.setBigram(word, s.mWord, s.mFrequency);
                     }
                 }
                 if (!shortcuts.isEmpty()) shortcuts = new ArrayList<WeightedString>();
@@ -189,13 +202,13 @@ public class CombinedInputOutput {
             }
         }
         if (null != word) {
-            dict.add(word, freq, shortcuts.isEmpty() ? null : shortcuts, isNotAWord);
+            builder.add(word, freq, shortcuts.isEmpty() ? null : shortcuts, isNotAWord);
             for (WeightedString s : bigrams) {
-                dict.setBigram(word, s.mWord, s.mFrequency);
+                builder.setBigram(word, s.mWord, s.mFrequency);
             }
         }
 
-        return dict;
+        return builder.build();
     }
 
     /**
@@ -28,5 +28,6 @@ public class CommandList {
         Dicttool.addCommand("unpackage", Package.Unpackager.class);
         Dicttool.addCommand("makedict", Makedict.class);
         Dicttool.addCommand("test", Test.class);
+        Dicttool.addCommand("benchmark", Benchmark.class);
     }
 }
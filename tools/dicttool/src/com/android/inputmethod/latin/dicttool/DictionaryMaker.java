@@ -24,6 +24,7 @@ import com.android.inputmethod.latin.makedict.FusionDictionary;
 import com.android.inputmethod.latin.makedict.MakedictLog;
 import com.android.inputmethod.latin.makedict.UnsupportedFormatException;
 import com.android.inputmethod.latin.makedict.Ver3DictEncoder;
+import com.android.inputmethod.latin.makedict.Ver3StreamingDictEncoder;
 import com.android.inputmethod.latin.makedict.Ver4DictEncoder;
 
 import java.io.BufferedWriter;
@@ -32,8 +33,15 @@ import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashSet;
 import java.util.LinkedList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import javax.xml.parsers.ParserConfigurationException;
 
@@ -43,6 +51,8 @@ import org.xml.sax.SAXException;
  * Main class/method for DictionaryMaker.
  */
 public class DictionaryMaker {
+    private static final String OPTION_THREADS = "-j";
+    private static final String JOB_SEPARATOR = "--";
 
     static class Arguments {
         private static final String OPTION_VERSION_2 = "-2";
@@ -54,6 +64,8 @@ public class DictionaryMaker {
         private static final String OPTION_OUTPUT_BINARY = "-d";
         private static final String OPTION_OUTPUT_XML = "-x";
         private static final String OPTION_OUTPUT_COMBINED = "-o";
+        private static final String OPTION_MERGE_TAILS = "-m";
+        private static final String OPTION_STREAMING = "-l";
         private static final String OPTION_HELP = "-h";
         public final String mInputBinary;
         public final String mInputCombined;
@@ -64,6 +76,8 @@ public class DictionaryMaker {
         public final String mOutputXml;
         public final String mOutputCombined;
         public final int mOutputBinaryFormatVersion;
+        public final boolean mMergeTails;
+        public final boolean mStreaming;
 
         private void checkIntegrity() throws IOException {
             checkHasExactlyOneInput();
@@ -84,6 +98,8 @@ public class DictionaryMaker {
             checkNotSameFile(mOutputBinary, mOutputXml);
             checkNotSameFile(mOutputBinary, mOutputCombined);
             checkNotSameFile(mOutputXml, mOutputCombined);
+            checkCanMergeTails();
+            checkCanStream();
         }
 
         private void checkHasExactlyOneInput() {
@@ -106,6 +122,25 @@ public class DictionaryMaker {
             }
         }
 
+        private void checkCanMergeTails() {
+            if (mMergeTails && null != mOutputBinary && 4 == mOutputBinaryFormatVersion) {
+                throw new RuntimeException("Tails can't be merged in version 4 dictionaries");
+            }
+        }
+
+        private void checkCanStream() {
+            if (!mStreaming) return;
+            if (null == mInputUnigramXml || null != mInputBigramXml) {
+                throw new RuntimeException("Streaming is only supported with XML input without"
+                        + " bigrams");
+            }
+            if (null == mOutputBinary || null != mOutputXml || null != mOutputCombined
+                    || 4 == mOutputBinaryFormatVersion || mMergeTails) {
+                throw new RuntimeException("Streaming is only supported with a single binary"
+                        + " output in version 2 or 3, without merging tails");
+            }
+        }
+
         /**
          * Utility method that throws an exception if path1 and path2 point to the same file.
          */
@@ -123,18 +158,28 @@ public class DictionaryMaker {
         }
 
         public static String getHelp() {
-            return "Usage: makedict "
+            return "Usage: makedict [-j <threads>] <job> [-- <job>...]\n"
+                    + "  where <job> is "
                     + "[-s <unigrams.xml> [-b <bigrams.xml>] [-c <shortcuts_and_whitelist.xml>] "
                     + "| [-s <combined format input]"
                     + "| [-s <binary input>] [-d <binary output>] [-x <xml output>] "
                     + " [-o <combined output>]"
-                    + "[-2] [-3] [-4]\n"
+                    + "[-2] [-3] [-4] [-m] [-l]\n"
                     + "\n"
                     + "  Converts a source dictionary file to one or several outputs.\n"
                     + "  Source can be an XML file, with an optional XML bigrams file, or a\n"
                     + "  binary dictionary file.\n"
                     + "  Binary version 2 (Jelly Bean), 3, 4, XML and\n"
-                    + "  combined format outputs are supported.";
+                    + "  combined format outputs are supported.\n"
+                    + "  -m merges identical tails of words to make the binary output smaller.\n"
+                    + "  Tails are not merged if the dictionary has bigrams. This is not\n"
+                    + "  supported with binary version 4.\n"
+                    + "  -l streams an XML input without bigrams to a version 2 or 3 binary\n"
+                    + "  output, sorting the words on disk so that memory use does not grow\n"
+                    + "  with the number of words.\n"
+                    + "  Several jobs separated by -- are compiled concurrently, and -j sets the\n"
+                    + "  number of threads used to compile them and to build each dictionary.\n"
+                    + "  The output does not depend on the number of threads.";
         }
 
         public Arguments(String[] argsArray) throws IOException {
@@ -151,6 +196,8 @@ public class DictionaryMaker {
             String outputXml = null;
             String outputCombined = null;
             int outputBinaryFormatVersion = 2; // the default version is 2.
+            boolean mergeTails = false;
+            boolean streaming = false;
 
             while (!args.isEmpty()) {
                 final String arg = args.get(0);
@@ -162,6 +209,10 @@ public class DictionaryMaker {
                         outputBinaryFormatVersion = 3;
                     } else if (OPTION_VERSION_4.equals(arg)) {
                         outputBinaryFormatVersion = 4;
+                    } else if (OPTION_MERGE_TAILS.equals(arg)) {
+                        mergeTails = true;
+                    } else if (OPTION_STREAMING.equals(arg)) {
+                        streaming = true;
                     } else if (OPTION_HELP.equals(arg)) {
                         displayHelp();
                     } else {
@@ -223,6 +274,8 @@ public class DictionaryMaker {
             mOutputXml = outputXml;
             mOutputCombined = outputCombined;
             mOutputBinaryFormatVersion = outputBinaryFormatVersion;
+            mMergeTails = mergeTails;
+            mStreaming = streaming;
             checkIntegrity();
         }
     }
@@ -230,26 +283,136 @@ public class DictionaryMaker {
     public static void main(String[] args)
             throws FileNotFoundException, ParserConfigurationException, SAXException, IOException,
             UnsupportedFormatException {
-        final Arguments parsedArgs = new Arguments(args);
-        FusionDictionary dictionary = readInputFromParsedArgs(parsedArgs);
-        writeOutputToParsedArgs(parsedArgs, dictionary);
+        int threadCount = 1;
+        int jobStart = 0;
+        if (args.length >= 2 && OPTION_THREADS.equals(args[0])) {
+            threadCount = Integer.parseInt(args[1]);
+            if (threadCount < 1) {
+                throw new IllegalArgumentException("The number of threads must be positive");
+            }
+            jobStart = 2;
+        }
+        final ArrayList<Arguments> jobs = new ArrayList<Arguments>();
+        for (int i = jobStart; i <= args.length; ++i) {
+            if (i == args.length || JOB_SEPARATOR.equals(args[i])) {
+                jobs.add(new Arguments(Arrays.copyOfRange(args, jobStart, i)));
+                jobStart = i + 1;
+            }
+        }
+        checkOutputsAreDistinct(jobs);
+        if (1 == threadCount) {
+            for (final Arguments job : jobs) {
+                makeDictionary(job, null /* executor */);
+            }
+            return;
+        }
+        // Jobs wait for the sub-tries they build, so they run on a separate executor to avoid
+        // starving the one building the sub-tries.
+        final ExecutorService buildExecutor = Executors.newFixedThreadPool(threadCount);
+        final ExecutorService jobExecutor =
+                Executors.newFixedThreadPool(Math.min(threadCount, jobs.size()));
+        try {
+            final ArrayList<Future<Void>> futures = new ArrayList<Future<Void>>(jobs.size());
+            for (final Arguments job : jobs) {
+                futures.add(jobExecutor.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() throws Exception {
+                        makeDictionary(job, buildExecutor);
+                        return null;
+                    }
+                }));
+            }
+            for (final Future<Void> future : futures) {
+                waitForJob(future);
+            }
+        } finally {
+            jobExecutor.shutdownNow();
+            buildExecutor.shutdownNow();
+        }
+    }
+
+    /**
+     * Throws an exception if two jobs write to the same file.
+     */
+    private static void checkOutputsAreDistinct(final ArrayList<Arguments> jobs)
+            throws IOException {
+        final HashSet<String> outputs = new HashSet<String>();
+        for (final Arguments job : jobs) {
+            for (final String output : new String[] {
+                    job.mOutputBinary, job.mOutputXml, job.mOutputCombined }) {
+                if (null == output) continue;
+                if (!outputs.add(new File(output).getCanonicalPath())) {
+                    throw new RuntimeException(output + " is the output of several jobs: "
+                            + " refusing to process.");
+                }
+            }
+        }
+    }
+
+    private static void waitForJob(final Future<Void> future)
+            throws FileNotFoundException, ParserConfigurationException, SAXException, IOException,
+            UnsupportedFormatException {
+        try {
+            future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while making dictionaries", e);
+        } catch (ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof IOException) throw (IOException)cause;
+            if (cause instanceof ParserConfigurationException) {
+                throw (ParserConfigurationException)cause;
+            }
+            if (cause instanceof SAXException) throw (SAXException)cause;
+            if (cause instanceof UnsupportedFormatException) {
+                throw (UnsupportedFormatException)cause;
+            }
+            if (cause instanceof RuntimeException) throw (RuntimeException)cause;
+            if (cause instanceof Error) throw (Error)cause;
+            throw new RuntimeException(cause);
+        }
+    }
+
+    /**
+     * Reads the input and writes the outputs of one job.
+     *
+     * @param args the parsed arguments of the job.
+     * @param executor the executor to build the dictionary on, or null to build it on the
+     *   calling thread.
+     */
+    private static void makeDictionary(final Arguments args, final ExecutorService executor)
+            throws FileNotFoundException, ParserConfigurationException, SAXException, IOException,
+            UnsupportedFormatException {
+        if (args.mStreaming) {
+            streamXmlFileToBinary(args.mInputUnigramXml, args.mInputShortcutXml,
+                    args.mOutputBinary, args.mOutputBinaryFormatVersion);
+            return;
+        }
+        FusionDictionary dictionary = readInputFromParsedArgs(args, executor);
+        if (args.mMergeTails) {
+            dictionary.mergeTails();
+        }
+        writeOutputToParsedArgs(args, dictionary);
     }
 
     /**
      * Invoke the right input method according to args.
      *
      * @param args the parsed command line arguments.
+     * @param executor the executor to build the dictionary on, or null.
      * @return the read dictionary.
      */
-    private static FusionDictionary readInputFromParsedArgs(final Arguments args)
+    private static FusionDictionary readInputFromParsedArgs(final Arguments args,
+            final ExecutorService executor)
             throws IOException, UnsupportedFormatException, ParserConfigurationException,
             SAXException, FileNotFoundException {
         if (null != args.mInputBinary) {
             return readBinaryFile(args.mInputBinary);
         } else if (null != args.mInputCombined) {
-            return readCombinedFile(args.mInputCombined);
+            return readCombinedFile(args.mInputCombined, executor);
         } else if (null != args.mInputUnigramXml) {
-            return readXmlFile(args.mInputUnigramXml, args.mInputShortcutXml, args.mInputBigramXml);
+            return readXmlFile(args.mInputUnigramXml, args.mInputShortcutXml, args.mInputBigramXml,
+                    executor);
         } else {
             throw new RuntimeException("No input file specified");
         }
@@ -275,17 +438,18 @@ public class DictionaryMaker {
      * Read a dictionary from the name of a combined file.
      *
      * @param combinedFilename the name of the file in the combined format.
+     * @param executor the executor to build the dictionary on, or null.
      * @return the read dictionary.
      * @throws FileNotFoundException if the file can't be found
      * @throws IOException if the input file can't be read
      */
-    private static FusionDictionary readCombinedFile(final String combinedFilename)
-        throws FileNotFoundException, IOException {
+    private static FusionDictionary readCombinedFile(final String combinedFilename,
+            final ExecutorService executor) throws FileNotFoundException, IOException {
         FileInputStream inStream = null;
         try {
             final File file = new File(combinedFilename);
             inStream = new FileInputStream(file);
-            return CombinedInputOutput.readDictionaryCombined(inStream);
+            return CombinedInputOutput.readDictionaryCombined(inStream, executor);
         } finally {
             if (null != inStream) {
                 try {
@@ -303,6 +467,7 @@ public class DictionaryMaker {
      * @param unigramXmlFilename the name of the unigram XML file. May not be null.
      * @param shortcutXmlFilename the name of the shortcut/whitelist XML file, or null if none.
      * @param bigramXmlFilename the name of the bigram XML file. Pass null if there are no bigrams.
+     * @param executor the executor to build the dictionary on, or null.
      * @return the read dictionary.
      * @throws FileNotFoundException if one of the files can't be found
      * @throws SAXException if one or more of the XML files is not well-formed
@@ -310,14 +475,42 @@ public class DictionaryMaker {
      * @throws ParserConfigurationException if the system can't create a SAX parser
      */
     private static FusionDictionary readXmlFile(final String unigramXmlFilename,
-            final String shortcutXmlFilename, final String bigramXmlFilename)
+            final String shortcutXmlFilename, final String bigramXmlFilename,
+            final ExecutorService executor)
             throws FileNotFoundException, SAXException, IOException, ParserConfigurationException {
         final FileInputStream unigrams = new FileInputStream(new File(unigramXmlFilename));
         final FileInputStream shortcuts = null == shortcutXmlFilename ? null :
                 new FileInputStream(new File(shortcutXmlFilename));
         final FileInputStream bigrams = null == bigramXmlFilename ? null :
                 new FileInputStream(new File(bigramXmlFilename));
-        return XmlDictInputOutput.readDictionaryXml(unigrams, shortcuts, bigrams);
+        return XmlDictInputOutput.readDictionaryXml(unigrams, shortcuts, bigrams, executor);
+    }
+
+    /**
+     * Convert a unigram XML file to a binary file without reading the whole dictionary in memory.
+     *
+     * @param unigramXmlFilename the name of the unigram XML file. May not be null.
+     * @param shortcutXmlFilename the name of the shortcut/whitelist XML file, or null if none.
+     * @param outputFilename the name of the file to write to.
+     * @param version the binary format version to use.
+     * @throws FileNotFoundException if one of the files can't be found
+     * @throws SAXException if one or more of the XML files is not well-formed
+     * @throws IOException if one the input files can't be read or the output can't be written
+     * @throws ParserConfigurationException if the system can't create a SAX parser
+     * @throws UnsupportedFormatException if the binary format version is not supported
+     */
+    private static void streamXmlFileToBinary(final String unigramXmlFilename,
+            final String shortcutXmlFilename, final String outputFilename, final int version)
+            throws FileNotFoundException, SAXException, IOException, ParserConfigurationException,
+            UnsupportedFormatException {
+        final FileInputStream unigrams = new FileInputStream(new File(unigramXmlFilename));
+        final FileInputStream shortcuts = null == shortcutXmlFilename ? null :
+                new FileInputStream(new File(shortcutXmlFilename));
+        final Ver3StreamingDictEncoder encoder = new Ver3StreamingDictEncoder(
+                new File(outputFilename), null /* tempDir */,
+                Ver3StreamingDictEncoder.DEFAULT_MAX_WORDS_IN_MEMORY);
+        XmlDictInputOutput.convertDictionaryXmlToBinary(unigrams, shortcuts, encoder,
+                new FormatSpec.FormatOptions(version));
     }
 
     /**
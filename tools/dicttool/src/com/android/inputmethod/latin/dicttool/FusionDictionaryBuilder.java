@@ -0,0 +1,169 @@
+/*
+ * Copyright (C) 2013 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.inputmethod.latin.dicttool;
+
+import com.android.inputmethod.latin.makedict.FusionDictionary;
+import com.android.inputmethod.latin.makedict.FusionDictionary.DictionaryOptions;
+import com.android.inputmethod.latin.makedict.FusionDictionary.PtNodeArray;
+import com.android.inputmethod.latin.makedict.FusionDictionary.WeightedString;
+
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Builds a FusionDictionary from a stream of words, building sub-tries in parallel.
+ *
+ * Words are grouped by their first code point. Each group is added, in the order the words
+ * were given, to its own sub-trie, and the sub-tries are then grafted under the root of the
+ * final dictionary. Since words with different first code points never share a PtNode, the
+ * resulting dictionary is the same as if all words had been added one by one, whatever the
+ * number of threads.
+ * Bigrams may add their target word to the dictionary, so they are only set once all the
+ * sub-tries have been grafted, in the order they were given.
+ */
+public class FusionDictionaryBuilder {
+    private static final class PendingWord {
+        public final String mWord;
+        public final int mFrequency;
+        public final ArrayList<WeightedString> mShortcutTargets;
+        public final boolean mIsNotAWord;
+
+        public PendingWord(final String word, final int frequency,
+                final ArrayList<WeightedString> shortcutTargets, final boolean isNotAWord) {
+            mWord = word;
+            mFrequency = frequency;
+            mShortcutTargets = shortcutTargets;
+            mIsNotAWord = isNotAWord;
+        }
+    }
+
+    private static final class PendingBigram {
+        public final String mWord1;
+        public final String mWord2;
+        public final int mFrequency;
+
+        public PendingBigram(final String word1, final String word2, final int frequency) {
+            mWord1 = word1;
+            mWord2 = word2;
+            mFrequency = frequency;
+        }
+    }
+
+    private final DictionaryOptions mOptions;
+    private final ExecutorService mExecutor;
+    // The words to add, grouped by first code point.
+    private final TreeMap<Integer, ArrayList<PendingWord>> mWords =
+            new TreeMap<Integer, ArrayList<PendingWord>>();
+    private final ArrayList<PendingBigram> mBigrams = new ArrayList<PendingBigram>();
+
+    /**
+     * Creates a builder.
+     *
+     * @param options the options of the dictionary to build.
+     * @param executor the executor to build the sub-tries on, or null to build them on the
+     *   calling thread.
+     */
+    public FusionDictionaryBuilder(final DictionaryOptions options,
+            final ExecutorService executor) {
+        mOptions = options;
+        mExecutor = executor;
+    }
+
+    /**
+     * Adds a word. See {@link FusionDictionary#add(String, int, ArrayList, boolean)}.
+     */
+    public void add(final String word, final int frequency,
+            final ArrayList<WeightedString> shortcutTargets, final boolean isNotAWord) {
+        final Integer firstCodePoint = word.codePointAt(0);
+        ArrayList<PendingWord> words = mWords.get(firstCodePoint);
+        if (null == words) {
+            words = new ArrayList<PendingWord>();
+            mWords.put(firstCodePoint, words);
+        }
+        words.add(new PendingWord(word, frequency, shortcutTargets, isNotAWord));
+    }
+
+    /**
+     * Sets a bigram. See {@link FusionDictionary#setBigram(String, String, int)}.
+     */
+    public void setBigram(final String word1, final String word2, final int frequency) {
+        mBigrams.add(new PendingBigram(word1, word2, frequency));
+    }
+
+    private FusionDictionary buildSubTrie(final ArrayList<PendingWord> words) {
+        final FusionDictionary subDictionary = new FusionDictionary(new PtNodeArray(), mOptions);
+        for (final PendingWord word : words) {
+            subDictionary.add(word.mWord, word.mFrequency, word.mShortcutTargets,
+                    word.mIsNotAWord);
+        }
+        return subDictionary;
+    }
+
+    /**
+     * Builds the dictionary. The builder must not be used after this call.
+     *
+     * @return the dictionary with all the added words and bigrams.
+     */
+    public FusionDictionary build() {
+        final FusionDictionary dict = new FusionDictionary(new PtNodeArray(), mOptions);
+        if (null == mExecutor) {
+            for (final ArrayList<PendingWord> words : mWords.values()) {
+                dict.graft(buildSubTrie(words));
+            }
+        } else {
+            final ArrayList<Future<FusionDictionary>> futures =
+                    new ArrayList<Future<FusionDictionary>>(mWords.size());
+            for (final Map.Entry<Integer, ArrayList<PendingWord>> entry : mWords.entrySet()) {
+                final ArrayList<PendingWord> words = entry.getValue();
+                futures.add(mExecutor.submit(new Callable<FusionDictionary>() {
+                    @Override
+                    public FusionDictionary call() {
+                        return buildSubTrie(words);
+                    }
+                }));
+            }
+            for (final Future<FusionDictionary> future : futures) {
+                dict.graft(getSubTrie(future));
+            }
+        }
+        mWords.clear();
+        for (final PendingBigram bigram : mBigrams) {
+            dict.setBigram(bigram.mWord1, bigram.mWord2, bigram.mFrequency);
+        }
+        mBigrams.clear();
+        return dict;
+    }
+
+    private static FusionDictionary getSubTrie(final Future<FusionDictionary> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while building the dictionary", e);
+        } catch (ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) throw (RuntimeException)cause;
+            if (cause instanceof Error) throw (Error)cause;
+            throw new RuntimeException(cause);
+        }
+    }
+}
@@ -16,10 +16,12 @@
 
 package com.android.inputmethod.latin.dicttool;
 
+import com.android.inputmethod.latin.makedict.FormatSpec.FormatOptions;
 import com.android.inputmethod.latin.makedict.FusionDictionary;
 import com.android.inputmethod.latin.makedict.FusionDictionary.DictionaryOptions;
-import com.android.inputmethod.latin.makedict.FusionDictionary.PtNodeArray;
 import com.android.inputmethod.latin.makedict.FusionDictionary.WeightedString;
+import com.android.inputmethod.latin.makedict.UnsupportedFormatException;
+import com.android.inputmethod.latin.makedict.Ver3StreamingDictEncoder;
 import com.android.inputmethod.latin.makedict.Word;
 
 import java.io.BufferedReader;
@@ -32,6 +34,7 @@ import java.io.Writer;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.TreeSet;
+import java.util.concurrent.ExecutorService;
 
 import javax.xml.parsers.ParserConfigurationException;
 import javax.xml.parsers.SAXParser;
@@ -69,7 +72,8 @@ public class XmlDictInputOutput {
         private static final int WORD = 2;
         private static final int UNKNOWN = 3;
 
-        FusionDictionary mDictionary;
+        final ExecutorService mExecutor;
+        FusionDictionaryBuilder mBuilder;
         int mState; // the state of the parser
         int mFreq; // the currently read freq
         String mWord; // the current word
@@ -79,9 +83,13 @@ public class XmlDictInputOutput {
          * Create the handler.
          *
          * @param shortcuts the shortcuts as a map. This may be empty, but may not be null.
+         * @param executor the executor to build the dictionary on, or null to build it on the
+         *   calling thread.
          */
-        public UnigramHandler(final HashMap<String, ArrayList<WeightedString>> shortcuts) {
-            mDictionary = null;
+        public UnigramHandler(final HashMap<String, ArrayList<WeightedString>> shortcuts,
+                final ExecutorService executor) {
+            mExecutor = executor;
+            mBuilder = null;
             mShortcutsMap = shortcuts;
             mWord = "";
             mState = START;
@@ -89,12 +97,12 @@ public class XmlDictInputOutput {
         }
 
         public FusionDictionary getFinalDictionary() {
-            final FusionDictionary dict = mDictionary;
+            final FusionDictionary dict = mBuilder.build();
             for (final String shortcutOnly : mShortcutsMap.keySet()) {
                 if (dict.hasWord(shortcutOnly)) continue;
                 dict.add(shortcutOnly, 1, mShortcutsMap.get(shortcutOnly), true /* isNotAWord */);
             }
-            mDictionary = null;
+            mBuilder = null;
             mShortcutsMap.clear();
             mWord = "";
             mState = START;
@@ -124,7 +132,7 @@ public class XmlDictInputOutput {
                         GERMAN_UMLAUT_PROCESSING_OPTION.equals(optionsString);
                 final boolean processLigatures =
                         FRENCH_LIGATURE_PROCESSING_OPTION.equals(optionsString);
-                mDictionary = new FusionDictionary(new PtNodeArray(),
+                startDictionary(
                         new DictionaryOptions(attributes, processUmlauts, processLigatures));
             } else {
                 mState = UNKNOWN;
@@ -142,12 +150,58 @@ public class XmlDictInputOutput {
         }
 
         @Override
-        public void endElement(String uri, String localName, String qName) {
+        public void endElement(String uri, String localName, String qName) throws SAXException {
             if (WORD == mState) {
-                mDictionary.add(mWord, mFreq, mShortcutsMap.get(mWord), false /* isNotAWord */);
+                addWord(mWord, mFreq);
                 mState = START;
             }
         }
+
+        protected void startDictionary(final DictionaryOptions options) {
+            mBuilder = new FusionDictionaryBuilder(options, mExecutor);
+        }
+
+        protected void addWord(final String word, final int frequency) throws SAXException {
+            mBuilder.add(word, frequency, mShortcutsMap.get(word), false /* isNotAWord */);
+        }
+    }
+
+    /**
+     * SAX handler for a unigram XML file that passes the words to a streaming encoder.
+     */
+    static private class StreamingUnigramHandler extends UnigramHandler {
+        final Ver3StreamingDictEncoder mEncoder;
+        DictionaryOptions mOptions;
+
+        public StreamingUnigramHandler(
+                final HashMap<String, ArrayList<WeightedString>> shortcuts,
+                final Ver3StreamingDictEncoder encoder) {
+            super(shortcuts, null /* executor */);
+            mEncoder = encoder;
+            mOptions = null;
+        }
+
+        @Override
+        protected void startDictionary(final DictionaryOptions options) {
+            mOptions = options;
+        }
+
+        @Override
+        protected void addWord(final String word, final int frequency) throws SAXException {
+            try {
+                mEncoder.add(word, frequency, mShortcutsMap.get(word), false /* isNotAWord */);
+            } catch (IOException e) {
+                throw new SAXException(e);
+            }
+        }
+
+        public DictionaryOptions finish() throws IOException {
+            for (final String shortcutOnly : mShortcutsMap.keySet()) {
+                mEncoder.addIfAbsent(shortcutOnly, 1, mShortcutsMap.get(shortcutOnly),
+                        true /* isNotAWord */);
+            }
+            return mOptions;
+        }
     }
 
     static private class AssociativeListHandler extends DefaultHandler {
@@ -305,6 +359,23 @@ public class XmlDictInputOutput {
     public static FusionDictionary readDictionaryXml(final InputStream unigrams,
             final InputStream shortcuts, final InputStream bigrams)
             throws SAXException, IOException, ParserConfigurationException {
+        return readDictionaryXml(unigrams, shortcuts, bigrams, null /* executor */);
+    }
+
+    /**
+     * Reads a dictionary from an XML file, building it on the given executor.
+     *
+     * @param unigrams the file to read the data from.
+     * @param shortcuts the file to read the shortcuts & whitelist from, or null.
+     * @param bigrams the file to read the bigrams from, or null.
+     * @param executor the executor to build the dictionary on, or null to build it on the
+     *   calling thread.
+     * @return the in-memory representation of the dictionary.
+     */
+    public static FusionDictionary readDictionaryXml(final InputStream unigrams,
+            final InputStream shortcuts, final InputStream bigrams,
+            final ExecutorService executor)
+            throws SAXException, IOException, ParserConfigurationException {
         final SAXParserFactory factory = SAXParserFactory.newInstance();
         factory.setNamespaceAware(true);
         final SAXParser parser = factory.newSAXParser();
@@ -316,7 +387,8 @@ public class XmlDictInputOutput {
         if (null != shortcuts) parser.parse(shortcuts, shortcutAndWhitelistHandler);
 
         final UnigramHandler unigramHandler =
-                new UnigramHandler(shortcutAndWhitelistHandler.getShortcutAndWhitelistMap());
+                new UnigramHandler(shortcutAndWhitelistHandler.getShortcutAndWhitelistMap(),
+                        executor);
         parser.parse(unigrams, unigramHandler);
         final FusionDictionary dict = unigramHandler.getFinalDictionary();
         final HashMap<String, ArrayList<WeightedString>> bigramMap = bigramHandler.getBigramMap();
@@ -331,6 +403,35 @@ public class XmlDictInputOutput {
         return dict;
     }
 
+    /**
+     * Converts an XML file to a binary dictionary without reading it into a FusionDictionary.
+     *
+     * The unigrams are streamed to a Ver3StreamingDictEncoder, which sorts them on disk, so
+     * the memory used does not depend on the number of words. Only the shortcuts & whitelist
+     * are kept in memory. Bigrams are not supported.
+     *
+     * @param unigrams the file to read the data from.
+     * @param shortcuts the file to read the shortcuts & whitelist from, or null.
+     * @param encoder the encoder to write the dictionary with.
+     * @param formatOptions file format options.
+     */
+    public static void convertDictionaryXmlToBinary(final InputStream unigrams,
+            final InputStream shortcuts, final Ver3StreamingDictEncoder encoder,
+            final FormatOptions formatOptions) throws SAXException, IOException,
+            ParserConfigurationException, UnsupportedFormatException {
+        final SAXParserFactory factory = SAXParserFactory.newInstance();
+        factory.setNamespaceAware(true);
+        final SAXParser parser = factory.newSAXParser();
+        final ShortcutAndWhitelistHandler shortcutAndWhitelistHandler =
+                new ShortcutAndWhitelistHandler();
+        if (null != shortcuts) parser.parse(shortcuts, shortcutAndWhitelistHandler);
+
+        final StreamingUnigramHandler unigramHandler = new StreamingUnigramHandler(
+                shortcutAndWhitelistHandler.getShortcutAndWhitelistMap(), encoder);
+        parser.parse(unigrams, unigramHandler);
+        encoder.writeDictionary(unigramHandler.finish(), formatOptions);
+    }
+
     /**
      * Reads a dictionary in the first, legacy XML format
      *
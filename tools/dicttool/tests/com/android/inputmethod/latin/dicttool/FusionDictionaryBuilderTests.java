@@ -0,0 +1,116 @@
+/*
+ * Copyright (C) 2013 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.inputmethod.latin.dicttool;
+
+import com.android.inputmethod.latin.makedict.FormatSpec.FormatOptions;
+import com.android.inputmethod.latin.makedict.FusionDictionary;
+import com.android.inputmethod.latin.makedict.FusionDictionary.DictionaryOptions;
+import com.android.inputmethod.latin.makedict.FusionDictionary.PtNodeArray;
+import com.android.inputmethod.latin.makedict.UnsupportedFormatException;
+import com.android.inputmethod.latin.makedict.Ver3DictEncoder;
+
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Unit tests for FusionDictionaryBuilder
+ */
+public class FusionDictionaryBuilderTests extends TestCase {
+    private static final int WORD_COUNT = 2000;
+    private static final int THREAD_COUNT = 4;
+
+    private static DictionaryOptions getOptions() {
+        return new DictionaryOptions(new HashMap<String, String>(),
+                false /* germanUmlautProcessing */, false /* frenchLigatureProcessing */);
+    }
+
+    private static ArrayList<String> generateWords(final Random random) {
+        final ArrayList<String> words = new ArrayList<String>();
+        while (words.size() < WORD_COUNT) {
+            final StringBuilder builder = new StringBuilder();
+            final int length = 1 + random.nextInt(8);
+            for (int i = 0; i < length; ++i) {
+                builder.append((char)('a' + random.nextInt(6)));
+            }
+            words.add(builder.toString());
+        }
+        return words;
+    }
+
+    private static byte[] writeToBytes(final FusionDictionary dict)
+            throws IOException, UnsupportedFormatException {
+        final File file = File.createTempFile("testFusionDictionaryBuilder", ".dict");
+        file.deleteOnExit();
+        new Ver3DictEncoder(file).writeDictionary(dict, new FormatOptions(3));
+        final byte[] bytes = new byte[(int)file.length()];
+        final FileInputStream inStream = new FileInputStream(file);
+        try {
+            inStream.read(bytes);
+        } finally {
+            inStream.close();
+        }
+        return bytes;
+    }
+
+    // Test that the built dictionary is the same as a dictionary built serially, whatever
+    // the number of threads.
+    public void testBuildIsDeterministic() throws IOException, UnsupportedFormatException {
+        final long seed = System.currentTimeMillis();
+        final Random random = new Random(seed);
+        final ArrayList<String> words = generateWords(random);
+        final int[] frequencies = new int[WORD_COUNT];
+        final int[] bigramTargets = new int[WORD_COUNT];
+        for (int i = 0; i < WORD_COUNT; ++i) {
+            frequencies[i] = random.nextInt(256);
+            bigramTargets[i] = random.nextInt(WORD_COUNT);
+        }
+
+        final FusionDictionary serialDict = new FusionDictionary(new PtNodeArray(), getOptions());
+        for (int i = 0; i < WORD_COUNT; ++i) {
+            serialDict.add(words.get(i), frequencies[i], null, false /* isNotAWord */);
+        }
+        for (int i = 0; i < WORD_COUNT; ++i) {
+            serialDict.setBigram(words.get(i), words.get(bigramTargets[i]), 10);
+        }
+
+        final ExecutorService executor = Executors.newFixedThreadPool(THREAD_COUNT);
+        try {
+            for (final ExecutorService builderExecutor : new ExecutorService[] {
+                    null, executor }) {
+                final FusionDictionaryBuilder builder =
+                        new FusionDictionaryBuilder(getOptions(), builderExecutor);
+                for (int i = 0; i < WORD_COUNT; ++i) {
+                    builder.add(words.get(i), frequencies[i], null, false /* isNotAWord */);
+                    builder.setBigram(words.get(i), words.get(bigramTargets[i]), 10);
+                }
+                assertTrue("Seed " + seed, Arrays.equals(writeToBytes(serialDict),
+                        writeToBytes(builder.build())));
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
@@ -16,11 +16,15 @@
 
 package com.android.inputmethod.latin.makedict;
 
+import com.android.inputmethod.latin.makedict.FormatSpec.FormatOptions;
 import com.android.inputmethod.latin.makedict.FusionDictionary.DictionaryOptions;
+import com.android.inputmethod.latin.makedict.FusionDictionary.PtNode;
 import com.android.inputmethod.latin.makedict.FusionDictionary.PtNodeArray;
 
 import junit.framework.TestCase;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
 
@@ -28,6 +32,23 @@ import java.util.HashMap;
  * Unit tests for BinaryDictEncoderUtils.flattenTree().
  */
 public class BinaryDictEncoderFlattenTreeTests extends TestCase {
+    private static FusionDictionary makeDictionary() {
+        return new FusionDictionary(new PtNodeArray(),
+                new DictionaryOptions(new HashMap<String, String>(),
+                        false /* germanUmlautProcessing */, false /* frenchLigatureProcessing */));
+    }
+
+    private static FusionDictionary makeDictionaryWithCommonTails() {
+        final FusionDictionary dict = makeDictionary();
+        dict.add("walking", 1, null, false /* isNotAWord */);
+        dict.add("walked", 1, null, false /* isNotAWord */);
+        dict.add("talking", 1, null, false /* isNotAWord */);
+        dict.add("talked", 1, null, false /* isNotAWord */);
+        dict.add("taking", 2, null, false /* isNotAWord */);
+        dict.add("taked", 1, null, false /* isNotAWord */);
+        return dict;
+    }
+
     // Test the flattened array contains the expected number of nodes, and
     // that it does not contain any duplicates.
     public void testFlattenNodes() {
@@ -47,4 +68,51 @@ public class BinaryDictEncoderFlattenTreeTests extends TestCase {
             assertFalse("Flattened array contained the same node twice", result.contains(n));
         }
     }
+
+    // Test that merged tails are only once in the flattened array.
+    public void testFlattenMergedTails() {
+        final FusionDictionary dict = makeDictionaryWithCommonTails();
+        final int nodeArrayCount = BinaryDictEncoderUtils.flattenTree(dict.mRootNodeArray).size();
+        dict.mergeTails();
+        final ArrayList<PtNodeArray> result =
+                BinaryDictEncoderUtils.flattenTree(dict.mRootNodeArray);
+        // The children of "walk" and "talk" are merged, but not those of "tak" because the
+        // frequency of "taking" is different.
+        assertEquals(nodeArrayCount - 1, result.size());
+        while (!result.isEmpty()) {
+            final PtNodeArray n = result.remove(0);
+            assertFalse("Flattened array contained the same node twice", result.contains(n));
+        }
+    }
+
+    // Test that tails are not merged if the dictionary has bigrams.
+    public void testDoNotMergeTailsWithBigrams() {
+        final FusionDictionary dict = makeDictionaryWithCommonTails();
+        dict.setBigram("walking", "talked", 10);
+        final int nodeArrayCount = BinaryDictEncoderUtils.flattenTree(dict.mRootNodeArray).size();
+        dict.mergeTails();
+        assertEquals(nodeArrayCount,
+                BinaryDictEncoderUtils.flattenTree(dict.mRootNodeArray).size());
+    }
+
+    // Test that a dictionary with merged tails can be written and read back.
+    public void testWriteAndReadMergedTails() throws IOException, UnsupportedFormatException {
+        final FusionDictionary dict = makeDictionaryWithCommonTails();
+        dict.mergeTails();
+        final File file = File.createTempFile("mergedtails", ".dict");
+        file.deleteOnExit();
+        final FormatOptions formatOptions = new FormatOptions(3);
+        new Ver3DictEncoder(file).writeDictionary(dict, formatOptions);
+        final FusionDictionary readDict = FormatSpec.getDictDecoder(file).readDictionaryBinary(
+                null /* dict */, false /* deleteDictIfBroken */);
+        int count = 0;
+        for (final Word word : readDict) {
+            final PtNode expected =
+                    FusionDictionary.findWordInTree(dict.mRootNodeArray, word.mWord);
+            ++count;
+            assertNotNull(word.mWord, expected);
+            assertEquals(word.mWord, expected.getFrequency(), word.mFrequency);
+        }
+        assertEquals(6, count);
+    }
 }
@@ -0,0 +1,141 @@
+/*
+ * Copyright (C) 2013 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.inputmethod.latin.makedict;
+
+import com.android.inputmethod.latin.makedict.FormatSpec.FormatOptions;
+import com.android.inputmethod.latin.makedict.FusionDictionary.DictionaryOptions;
+import com.android.inputmethod.latin.makedict.FusionDictionary.PtNodeArray;
+import com.android.inputmethod.latin.makedict.FusionDictionary.WeightedString;
+
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Random;
+
+/**
+ * Unit tests for Ver3StreamingDictEncoder
+ */
+public class Ver3StreamingDictEncoderTests extends TestCase {
+    private static final int WORD_COUNT = 3000;
+    // Small enough for the words to be spread over several runs.
+    private static final int MAX_WORDS_IN_MEMORY = 256;
+
+    private static DictionaryOptions getOptions() {
+        return new DictionaryOptions(new HashMap<String, String>(),
+                false /* germanUmlautProcessing */, false /* frenchLigatureProcessing */);
+    }
+
+    private static String generateWord(final Random random) {
+        final StringBuilder builder = new StringBuilder();
+        final int length = 1 + random.nextInt(8);
+        for (int i = 0; i < length; ++i) {
+            builder.append((char)('a' + random.nextInt(6)));
+        }
+        return builder.toString();
+    }
+
+    private static byte[] readBytes(final File file) throws IOException {
+        final byte[] bytes = new byte[(int)file.length()];
+        final FileInputStream inStream = new FileInputStream(file);
+        try {
+            inStream.read(bytes);
+        } finally {
+            inStream.close();
+        }
+        return bytes;
+    }
+
+    private static File createTempFile() throws IOException {
+        final File file = File.createTempFile("testVer3StreamingDictEncoder", ".dict");
+        file.deleteOnExit();
+        return file;
+    }
+
+    // FusionDictionary modifies the shortcut lists it is given, so each encoder gets its own.
+    private static ArrayList<WeightedString> makeShortcuts(final String shortcut,
+            final int frequency) {
+        if (null == shortcut) return null;
+        final ArrayList<WeightedString> shortcuts = new ArrayList<WeightedString>();
+        shortcuts.add(new WeightedString(shortcut, frequency));
+        return shortcuts;
+    }
+
+    private void runStreamingIsSameAsInMemory(final int version)
+            throws IOException, UnsupportedFormatException {
+        final long seed = System.currentTimeMillis();
+        final Random random = new Random(seed);
+        final FusionDictionary dict = new FusionDictionary(new PtNodeArray(), getOptions());
+        final File streamingFile = createTempFile();
+        final Ver3StreamingDictEncoder streamingEncoder =
+                new Ver3StreamingDictEncoder(streamingFile, null /* tempDir */,
+                        MAX_WORDS_IN_MEMORY);
+        // Words are drawn from a small alphabet, so there are many duplicates.
+        for (int i = 0; i < WORD_COUNT; ++i) {
+            final String word = generateWord(random);
+            final int frequency = random.nextInt(256);
+            final boolean hasShortcut = random.nextInt(20) == 0;
+            final String shortcut = hasShortcut ? generateWord(random) : null;
+            final int shortcutFrequency = random.nextInt(15);
+            dict.add(word, frequency, makeShortcuts(shortcut, shortcutFrequency),
+                    false /* isNotAWord */);
+            streamingEncoder.add(word, frequency, makeShortcuts(shortcut, shortcutFrequency),
+                    false /* isNotAWord */);
+        }
+        // Shortcut-only entries, added the way XmlDictInputOutput does.
+        for (int i = 0; i < WORD_COUNT / 10; ++i) {
+            final String word = generateWord(random);
+            final String shortcut = generateWord(random);
+            if (!dict.hasWord(word)) {
+                dict.add(word, 1, makeShortcuts(shortcut, 14), true /* isNotAWord */);
+            }
+            streamingEncoder.addIfAbsent(word, 1, makeShortcuts(shortcut, 14),
+                    true /* isNotAWord */);
+        }
+        final FormatOptions formatOptions = new FormatOptions(version);
+        streamingEncoder.writeDictionary(getOptions(), formatOptions);
+        final File file = createTempFile();
+        new Ver3DictEncoder(file).writeDictionary(dict, formatOptions);
+        assertTrue("Seed " + seed, Arrays.equals(readBytes(file), readBytes(streamingFile)));
+    }
+
+    public void testStreamingIsSameAsInMemoryVersion2()
+            throws IOException, UnsupportedFormatException {
+        runStreamingIsSameAsInMemory(2);
+    }
+
+    public void testStreamingIsSameAsInMemoryVersion3()
+            throws IOException, UnsupportedFormatException {
+        runStreamingIsSameAsInMemory(FormatSpec.VERSION3);
+    }
+
+    public void testRejectsDynamicFormat() throws IOException {
+        final Ver3StreamingDictEncoder encoder = new Ver3StreamingDictEncoder(createTempFile(),
+                null /* tempDir */, MAX_WORDS_IN_MEMORY);
+        encoder.add("abc", 10, null, false /* isNotAWord */);
+        try {
+            encoder.writeDictionary(getOptions(), new FormatOptions(3, true));
+            fail("Dynamic format should not be supported");
+        } catch (UnsupportedFormatException e) {
+            // Expected.
+        }
+    }
+}